@@ -13,8 +13,10 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.List;
 
+import model.ParameterStore;
 import model.Configure.PredictionMode;
 import tool.MathTool;
+import tool.VectorKernels;
 
 public class Prediction {
 	private String dataPath;
@@ -28,11 +30,11 @@ public class Prediction {
 	private String outputPath;
 	// User platform
 	private HashMap<String, String> userPlatforms;
+	// learned parameters of the users in the test data, indexed by userId2Index
+	private ParameterStore parameters;
+	private HashMap<String, Integer> userId2Index;
 	// CTRL model
-	private HashMap<String, double[]> userAuthorities;
-	private HashMap<String, double[]> userHubs;
 	private HashMap<String, double[]> userInterests;
-	private HashMap<String, double[][]> userPlatformPreferences;
 	private HashMap<String, double[]> userTopicIndependentPlatformPreferences;
 
 	// Common-Neighbor
@@ -114,7 +116,24 @@ public class Prediction {
 
 		// output_NonLinks();
 
-		if (predMode == PredictionMode.MPHAT) {
+		if (predMode == PredictionMode.MPHAT && new File(String.format("%s/l_userPlatformHubDistributions.csv",
+				resultPath)).exists()) {
+			// per-platform hubs and authorities exported by the model, one
+			// dot product per test pair
+			loadTestData(relationshipFile, userFile);
+
+			String authFilePath = String.format("%s/l_userPlatformAuthorityDistributions.csv", resultPath);
+			int authSize = loadUserPlatformVectors(authFilePath, nTopics, nPlatforms, parameters.platformAuthorities);
+			System.out.println("loaded platform authorities of " + authSize + " users");
+
+			String hubFilePath = String.format("%s/l_userPlatformHubDistributions.csv", resultPath);
+			int hubSize = loadUserPlatformVectors(hubFilePath, nTopics, nPlatforms, parameters.platformHubs);
+			System.out.println("loaded platform hubs of " + hubSize + " users");
+
+			System.out.println("compute prediction scores");
+			computeMPHATPlatformScores();
+
+		} else if (predMode == PredictionMode.MPHAT) {
 			loadTestData(relationshipFile, userFile);
 
 			String authFilePath = String.format("%s/l_userAuthorityDistributions.csv", resultPath);
@@ -202,19 +221,20 @@ public class Prediction {
 	private int loadUserAuthorities(String filename, int nTopics) {
 		BufferedReader br = null;
 		String line = null;
-		double[] authorities;
-		userAuthorities = new HashMap<String, double[]>();
+		int nLoaded = 0;
 		try {
 			File authFile = new File(filename);
 			br = new BufferedReader(new FileReader(authFile.getAbsolutePath()));
 			while ((line = br.readLine()) != null) {
 				String[] tokens = line.split(",");
-				String uid = tokens[0];
-				authorities = new double[nTopics];
+				Integer u = userId2Index.get(tokens[0]);
+				if (u == null) {
+					continue;
+				}
 				for (int i = 0; i < nTopics; i++) {
-					authorities[i] = Double.parseDouble(tokens[i + 1]);
+					parameters.authorities[parameters.topicIndex(u, i)] = Double.parseDouble(tokens[i + 1]);
 				}
-				userAuthorities.put(uid, authorities);
+				nLoaded++;
 			}
 			br.close();
 		} catch (Exception e) {
@@ -222,25 +242,26 @@ public class Prediction {
 			e.printStackTrace();
 			System.exit(0);
 		}
-		return userAuthorities.size();
+		return nLoaded;
 	}
 
 	private int loadUserHubs(String filename, int nTopics) {
 		BufferedReader br = null;
 		String line = null;
-		double[] hubs;
-		userHubs = new HashMap<String, double[]>();
+		int nLoaded = 0;
 		try {
 			File hubFile = new File(filename);
 			br = new BufferedReader(new FileReader(hubFile.getAbsolutePath()));
 			while ((line = br.readLine()) != null) {
 				String[] tokens = line.split(",");
-				String uid = tokens[0];
-				hubs = new double[nTopics];
+				Integer u = userId2Index.get(tokens[0]);
+				if (u == null) {
+					continue;
+				}
 				for (int i = 0; i < nTopics; i++) {
-					hubs[i] = Double.parseDouble(tokens[i + 1]);
+					parameters.hubs[parameters.topicIndex(u, i)] = Double.parseDouble(tokens[i + 1]);
 				}
-				userHubs.put(uid, hubs);
+				nLoaded++;
 			}
 			br.close();
 		} catch (Exception e) {
@@ -248,7 +269,7 @@ public class Prediction {
 			e.printStackTrace();
 			System.exit(0);
 		}
-		return userHubs.size();
+		return nLoaded;
 	}
 
 	private int loadUserInterests(String filename, int nTopics) {
@@ -280,18 +301,10 @@ public class Prediction {
 	private int loadUserPlatformPreferences(String filename, int nTopics, int nPlatforms) {
 		BufferedReader br = null;
 		String line = null;
-		double[][] preferences;
-		userPlatformPreferences = new HashMap<String, double[][]>();
 
 		// initialize values
-		for (int i = 0; i < users.length; i++) {
-			preferences = new double[nTopics][nPlatforms];
-			for (int z = 0; z < nTopics; z++) {
-				for (int p = 0; p < nPlatforms; p++) {
-					preferences[z][p] = Double.NEGATIVE_INFINITY;
-				}
-			}
-			userPlatformPreferences.put(users[i], preferences);
+		for (int i = 0; i < parameters.topicalPlatformPreference.length; i++) {
+			parameters.topicalPlatformPreference[i] = Double.NEGATIVE_INFINITY;
 		}
 
 		try {
@@ -299,21 +312,20 @@ public class Prediction {
 			br = new BufferedReader(new FileReader(interestFile.getAbsolutePath()));
 			while ((line = br.readLine()) != null) {
 				String[] tokens = line.split(",");
-				String uid = tokens[0];
-				preferences = userPlatformPreferences.get(uid);
+				Integer u = userId2Index.get(tokens[0]);
+				if (u == null) {
+					continue;
+				}
 				int topic = Integer.parseInt(tokens[1]);
 				for (int p = 0; p < nPlatforms; p++) {
-					preferences[topic][p] = Double.parseDouble(tokens[p + 2]);
+					parameters.setPlatformPreference(u, topic, p, Double.parseDouble(tokens[p + 2]));
 				}
-				// userPlatformPreferences.put(uid, preferences); no need to put
-				// again
 			}
 			br.close();
 
 			for (int u = 0; u < users.length; u++) {
-				preferences = userPlatformPreferences.get(users[u]);
 				for (int z = 0; z < nTopics; z++) {
-					preferences[z] = MathTool.softmax(preferences[z]);
+					parameters.updateRelativePlatformPreference(u, z);
 				}
 			}
 
@@ -322,7 +334,46 @@ public class Prediction {
 			e.printStackTrace();
 			System.exit(0);
 		}
-		return userPlatformPreferences.size();
+		return users.length;
+	}
+
+	/***
+	 * read per-platform vectors, one line "userId,platform,v_0,...,v_K-1" per
+	 * user and platform, into a [(u * nPlatforms + p) * nTopics + k] array of
+	 * the parameter store
+	 * 
+	 * @param filename
+	 * @param nTopics
+	 * @param nPlatforms
+	 * @param vectors
+	 * @return
+	 */
+	private int loadUserPlatformVectors(String filename, int nTopics, int nPlatforms, double[] vectors) {
+		BufferedReader br = null;
+		String line = null;
+		HashSet<String> loadedUsers = new HashSet<String>();
+		try {
+			File vectorFile = new File(filename);
+			br = new BufferedReader(new FileReader(vectorFile.getAbsolutePath()));
+			while ((line = br.readLine()) != null) {
+				String[] tokens = line.split(",");
+				Integer u = userId2Index.get(tokens[0]);
+				if (u == null) {
+					continue;
+				}
+				int index = parameters.platformIndex(u, Integer.parseInt(tokens[1]));
+				for (int i = 0; i < nTopics; i++) {
+					vectors[index + i] = Double.parseDouble(tokens[i + 2]);
+				}
+				loadedUsers.add(tokens[0]);
+			}
+			br.close();
+		} catch (Exception e) {
+			System.out.println("Error in reading user file!");
+			e.printStackTrace();
+			System.exit(0);
+		}
+		return loadedUsers.size();
 	}
 
 	private int loadUserTopicIndependentPlatformPreferences(String filename, int nTopics, int nPlatforms) {
@@ -553,6 +604,7 @@ public class Prediction {
 			br.close();
 
 			users = new String[nUser];
+			userId2Index = new HashMap<String, Integer>();
 
 			int iUser = 0;
 			br = new BufferedReader(new FileReader(userFile.getAbsolutePath()));
@@ -565,9 +617,11 @@ public class Prediction {
 				}
 				platforms = platforms.trim();
 				userPlatforms.put(users[iUser], platforms);
+				userId2Index.put(users[iUser], iUser);
 				iUser++;
 			}
 			br.close();
+			parameters = new ParameterStore(nUser, nTopics, nPlatforms);
 
 			File linkFile = new File(_relationshipFile);
 			br = new BufferedReader(new FileReader(linkFile.getAbsolutePath()));
@@ -705,36 +759,40 @@ public class Prediction {
 	}
 
 	private void computeMPHATScores() {
-		String uid = "";
-		String vid = "";
+		int u = 0;
+		int v = 0;
 		int platform = 0;
-		double[] Hu;
-		double[] Av;
-		double[][] Eta_u;
-		double[][] Eta_v;
 		double HupAvp = 0;
 		for (int i = 0; i < testLabels.length; i++) {
-			uid = testSrcUsers[i];
-			vid = testDesUsers[i];
+			u = userId2Index.get(testSrcUsers[i]);
+			v = userId2Index.get(testDesUsers[i]);
 			platform = testPlatforms[i];
-			Hu = userHubs.get(uid);
-			Av = userAuthorities.get(vid);
-			Eta_u = userPlatformPreferences.get(uid);
-			Eta_v = userPlatformPreferences.get(vid);
-			HupAvp = 0;
-			for (int z = 0; z < nTopics; z++) {
-				HupAvp += Hu[z] * Eta_u[z][platform] * Av[z] * Eta_v[z][platform];
-			}
+			HupAvp = VectorKernels.dotProduct(nTopics, parameters.hubs, parameters.topicIndex(u, 0),
+					parameters.topicalRelativePlatformPreference, parameters.preferenceIndex(u, 0, platform),
+					parameters.authorities, parameters.topicIndex(v, 0), parameters.topicalRelativePlatformPreference,
+					parameters.preferenceIndex(v, 0, platform), parameters.nPlatforms);
 			predictionScores[i] = HupAvp;
 		}
 	}
 
+	private void computeMPHATPlatformScores() {
+		int u = 0;
+		int v = 0;
+		int platform = 0;
+		for (int i = 0; i < testLabels.length; i++) {
+			u = userId2Index.get(testSrcUsers[i]);
+			v = userId2Index.get(testDesUsers[i]);
+			platform = testPlatforms[i];
+			predictionScores[i] = MathTool.dotProduct(nTopics, parameters.platformHubs,
+					parameters.platformIndex(u, platform), parameters.platformAuthorities,
+					parameters.platformIndex(v, platform));
+		}
+	}
+
 	private void computeMPHATTIScores() {
 		String uid = "";
 		String vid = "";
 		int platform = 0;
-		double[] Hu;
-		double[] Av;
 		double[] Eta_u;
 		double[] Eta_v;
 		double HupAvp = 0;
@@ -742,32 +800,27 @@ public class Prediction {
 			uid = testSrcUsers[i];
 			vid = testDesUsers[i];
 			platform = testPlatforms[i];
-			Hu = userHubs.get(uid);
-			Av = userAuthorities.get(vid);
+			int hubIndex = parameters.topicIndex(userId2Index.get(uid), 0);
+			int authorityIndex = parameters.topicIndex(userId2Index.get(vid), 0);
 			Eta_u = userTopicIndependentPlatformPreferences.get(uid);
 			Eta_v = userTopicIndependentPlatformPreferences.get(vid);
 			HupAvp = 0;
 			for (int z = 0; z < nTopics; z++) {
-				HupAvp += Hu[z] * Eta_u[platform] * Av[z] * Eta_v[platform];
+				HupAvp += parameters.hubs[hubIndex + z] * Eta_u[platform] * parameters.authorities[authorityIndex + z]
+						* Eta_v[platform];
 			}
 			predictionScores[i] = HupAvp;
 		}
 	}
 
 	private void computeHATScores() {
-		String uid = "";
-		String vid = "";
-		double[] Hu;
-		double[] Av;
 		double HuAv = 0;
 		for (int i = 0; i < testLabels.length; i++) {
-			uid = testSrcUsers[i];
-			vid = testDesUsers[i];
-			Hu = userHubs.get(uid);
-			Av = userAuthorities.get(vid);
+			int hubIndex = parameters.topicIndex(userId2Index.get(testSrcUsers[i]), 0);
+			int authorityIndex = parameters.topicIndex(userId2Index.get(testDesUsers[i]), 0);
 			HuAv = 0;
-			for (int z = 0; z < Hu.length; z++) {
-				HuAv += Hu[z] * Av[z];
+			for (int z = 0; z < nTopics; z++) {
+				HuAv += parameters.hubs[hubIndex + z] * parameters.authorities[authorityIndex + z];
 			}
 			predictionScores[i] = HuAv;
 
@@ -0,0 +1,127 @@
+package evaluation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+
+import model.Configure;
+import model.Configure.PredictionMode;
+import model.MultiThreadMPHAT;
+
+/***
+ * train MP-HAT on each dataset once with 64-bit and once with 32-bit storage
+ * (MultiThreadMPHAT.storagePrecision), and compare the training time, the
+ * likelihood of the kept solution, and the precision@k and MRR of MPHAT link
+ * prediction on the test batch. The datasets are those generated by
+ * data.Synthetic, or any dataset with a test batch.
+ *
+ * Arguments: nTopics batch testBatch outputPath datasetPath [datasetPath ...]
+ * The results of every run are in outputPath/datasetName/precision.
+ */
+public class StoragePrecisionBenchmark {
+	private static final int TOP_K = 5;// as output by Prediction
+
+	private static class Result {
+		long time;
+		double likelihood;
+		double[][] precisions;// [platform][k]
+		double[] mrrs;// [platform]
+	}
+
+	private static Result run(String datasetPath, int nTopics, int batch, int testBatch, String outputPath,
+			Configure.StoragePrecision precision) {
+		MultiThreadMPHAT.storagePrecision = precision;
+		Result result = new Result();
+		String resultPath = outputPath + "/" + nTopics + "/omega_" + MultiThreadMPHAT.omega + "_phi_"
+				+ MultiThreadMPHAT.phi;
+		new File(resultPath).mkdirs();
+		long startTime = System.currentTimeMillis();
+		MultiThreadMPHAT model = new MultiThreadMPHAT(datasetPath, nTopics, batch, outputPath);
+		model.train();
+		result.time = System.currentTimeMillis() - startTime;
+		result.likelihood = MultiThreadMPHAT.getTrainedLikelihood();
+
+		Prediction prediction = new Prediction(datasetPath, resultPath, nTopics, Configure.NUM_OF_PLATFORM,
+				testBatch, PredictionMode.MPHAT, outputPath);
+		prediction.evaluate();
+		result.precisions = new double[Configure.NUM_OF_PLATFORM][TOP_K];
+		result.mrrs = new double[Configure.NUM_OF_PLATFORM];
+		for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
+			readPrecisionRecall(String.format("%s/%d/%d_%s_UserLevel_PrecisionRecall.csv", outputPath, nTopics, p,
+					PredictionMode.MPHAT), result.precisions[p], result.mrrs, p);
+		}
+		return result;
+	}
+
+	/***
+	 * read the precision@k of the lines "k,precision,recall" and the MRR of
+	 * the line "MRR,mrr,mrr"
+	 */
+	private static void readPrecisionRecall(String filename, double[] precisions, double[] mrrs, int p) {
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(filename));
+			String line = null;
+			while ((line = br.readLine()) != null) {
+				String[] tokens = line.split(",");
+				if (tokens[0].equals("MRR")) {
+					mrrs[p] = Double.parseDouble(tokens[1]);
+				} else {
+					int k = Integer.parseInt(tokens[0]);
+					if (k < precisions.length) {
+						precisions[k] = Double.parseDouble(tokens[1]);
+					}
+				}
+			}
+			br.close();
+		} catch (Exception e) {
+			System.out.println("Error in reading precision and recall from " + filename);
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 5) {
+			System.out.println("usage: nTopics batch testBatch outputPath datasetPath [datasetPath ...]");
+			System.exit(-1);
+		}
+		int nTopics = Integer.parseInt(args[0]);
+		int batch = Integer.parseInt(args[1]);
+		int testBatch = Integer.parseInt(args[2]);
+		String outputPath = args[3];
+		Configure.StoragePrecision[] precisions = Configure.StoragePrecision.values();
+
+		Result[][] results = new Result[args.length - 4][precisions.length];
+		for (int d = 0; d < results.length; d++) {
+			String datasetPath = args[4 + d];
+			String name = new File(datasetPath).getName();
+			for (int i = 0; i < precisions.length; i++) {
+				results[d][i] = run(datasetPath, nTopics, batch, testBatch,
+						String.format("%s/%s/%s", outputPath, name, precisions[i]), precisions[i]);
+			}
+		}
+		MultiThreadMPHAT.storagePrecision = Configure.StoragePrecision.DOUBLE;
+
+		System.out.println();
+		System.out.println("dataset,precision,time(ms),likelihood,platform,MRR,precision@1..." + TOP_K);
+		for (int d = 0; d < results.length; d++) {
+			String name = new File(args[4 + d]).getName();
+			for (int i = 0; i < precisions.length; i++) {
+				Result result = results[d][i];
+				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
+					System.out.printf("%s,%s,%d,%f,%d,%.4f", name, precisions[i], result.time, result.likelihood, p,
+							result.mrrs[p]);
+					for (int k = 0; k < TOP_K; k++) {
+						System.out.printf(",%.4f", result.precisions[p][k]);
+					}
+					System.out.println();
+				}
+			}
+			// relative change of the likelihood of 32-bit w.r.t. 64-bit
+			double doubleLikelihood = results[d][Configure.StoragePrecision.DOUBLE.ordinal()].likelihood;
+			double floatLikelihood = results[d][Configure.StoragePrecision.FLOAT.ordinal()].likelihood;
+			System.out.printf("%s: FLOAT vs DOUBLE likelihood relative difference %.3e\n", name,
+					(floatLikelihood - doubleLikelihood) / Math.abs(doubleLikelihood));
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package model;
+
+/***
+ * per-coordinate adaptive step sizes for stochastic gradient ascent over one
+ * flat parameter array, by Adagrad or Adam. Adam uses the number of
+ * mini-batches so far for its bias correction, also for coordinates that are
+ * not updated in every mini-batch. The mini-batches are counted by the
+ * caller, so that the partitions of the users that are trained in parallel
+ * can count their own.
+ */
+public class AdaptiveUpdater {
+	private Configure.StochasticUpdateRule rule;
+	private double beta1;
+	private double beta2;
+	private double eps;
+	private double[] first;// Adam's first moments, unused by Adagrad
+	private double[] second;// sum of squared gradients (Adagrad) or second
+							// moments (Adam)
+
+	public AdaptiveUpdater(int size, Configure.StochasticUpdateRule _rule, double _beta1, double _beta2,
+			double _eps) {
+		rule = _rule;
+		beta1 = _beta1;
+		beta2 = _beta2;
+		eps = _eps;
+		second = new double[size];
+		if (rule == Configure.StochasticUpdateRule.ADAM) {
+			first = new double[size];
+		}
+	}
+
+	/***
+	 * the step to add to coordinate i for the gradient grad in the nSteps-th
+	 * mini-batch
+	 *
+	 * @param i
+	 * @param grad
+	 * @param learningRate
+	 * @param nSteps
+	 * @return
+	 */
+	public double getStep(int i, double grad, double learningRate, int nSteps) {
+		switch (rule) {
+		case ADAM:
+			first[i] = beta1 * first[i] + (1 - beta1) * grad;
+			second[i] = beta2 * second[i] + (1 - beta2) * grad * grad;
+			double correction1 = 1 - Math.pow(beta1, nSteps);
+			double correction2 = 1 - Math.pow(beta2, nSteps);
+			return learningRate * (first[i] / correction1) / (Math.sqrt(second[i] / correction2) + eps);
+		default:
+			second[i] += grad * grad;
+			return learningRate * grad / (Math.sqrt(second[i]) + eps);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package model;
+
+/***
+ * the objective of one alternating step: the negative likelihood as a
+ * function of one block of parameters of a user (the K topical interests,
+ * authorities or hubs, or the P platform preferences of one topic), together
+ * with its feasible set and the hooks that a BlockOptimizer uses to evaluate
+ * trial points and to write accepted points back to the model
+ */
+public interface BlockObjective {
+	/***
+	 * number of coordinates in the block
+	 */
+	int getDimension();
+
+	/***
+	 * f(x)
+	 */
+	double getValue(OptimizerContext ctx, double[] x);
+
+	/***
+	 * gradient of f at x, written into grad
+	 */
+	void getGradient(OptimizerContext ctx, double[] x, double[] grad);
+
+	/***
+	 * prepare the evaluations of the trial points x0 - t * direction, for the
+	 * objectives that can evaluate them faster than getValue()
+	 */
+	void prepareLineSearch(OptimizerContext ctx, double[] x0, double[] direction);
+
+	/***
+	 * f at the trial point x = project(x0 - ctx.lineSearch_lambda * direction)
+	 */
+	double getLineSearchValue(OptimizerContext ctx, double[] x0, double[] direction, double[] x);
+
+	/***
+	 * project x onto the feasible set in place, listing the topics that are
+	 * clamped in ctx.clampedTopics where the line search needs them
+	 */
+	void project(OptimizerContext ctx, double[] x);
+
+	/***
+	 * lower bound of coordinate i, Double.NEGATIVE_INFINITY if it is unbounded
+	 */
+	double getLowerBound(int i);
+
+	/***
+	 * true if coordinate i is not optimized, e.g., the preference for a
+	 * platform that the user is not in
+	 */
+	boolean isFixed(int i);
+
+	/***
+	 * write the accepted point x, which is also the last evaluated trial
+	 * point, back to the model
+	 */
+	void accept(OptimizerContext ctx, double[] x);
+
+	/***
+	 * print f after an iteration, if the family is verbose
+	 */
+	void reportIteration(int iter, double f);
+
+	/***
+	 * counters of the evaluations spent on this family of parameters
+	 */
+	OptimizerStats getStats();
+}
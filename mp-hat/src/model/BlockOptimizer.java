@@ -0,0 +1,18 @@
+package model;
+
+/***
+ * a method to minimize a BlockObjective over one block of parameters
+ */
+public interface BlockOptimizer {
+	/***
+	 * minimize the objective starting from x, for at most maxIterations
+	 * iterations. Every accepted point is passed to objective.accept() and
+	 * copied into x. The evaluations are added to objective.getStats()
+	 *
+	 * @param ctx
+	 * @param objective
+	 * @param x
+	 * @param maxIterations
+	 */
+	void minimize(OptimizerContext ctx, BlockObjective objective, double[] x, int maxIterations);
+}
@@ -0,0 +1,534 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * binary checkpoints of MultiThreadMPHAT training: the users' ids, all the
+ * users' parameters and their opt* snapshots, the posts' topics, the
+ * topic-word counts n_zw and the counts of the topics' word distributions,
+ * the user-topic counts n_zu and sum_nzu, the state of MultiThreadMPHAT.rand
+ * and of the ConvergenceMonitor, and the number of finished EM iterations. A checkpoint can also warm-start a new model, see WarmStart.
+ *
+ * save() copies the state into one of two buffers and returns, while a
+ * background thread writes the buffer to a temporary file that then replaces
+ * the checkpoint. Training only waits if both buffers are still being
+ * written. saveNow() writes synchronously.
+ *
+ * The state is only captured between training phases, when no worker is
+ * updating it. A shutdown hook therefore calls requestStop(), which waits for
+ * the training loop to see isStopRequested() at its next phase boundary, save
+ * and call stopped(); if that takes longer than the timeout, the last
+ * checkpoint written by save() is kept.
+ */
+public class CheckpointManager {
+	private static final int MAGIC = 0x4D504854;// "MPHT"
+	private static final int VERSION = 4;
+
+	// positions of the opt* arrays in getParameterArrays()
+	public static final int OPT_TOPICAL_INTERESTS = 7;
+	public static final int OPT_AUTHORITIES = 8;
+	public static final int OPT_HUBS = 9;
+	public static final int OPT_TOPICAL_PLATFORM_PREFERENCE = 10;
+
+	/***
+	 * a copy of the training state
+	 */
+	public static class Snapshot {
+		public int nextIteration;// number of finished EM iterations
+		public double maxLikelihood;
+		public int nUsers;
+		public int nTopics;
+		public int nPlatforms;
+		public int nWords;
+		public String[] userIds;
+		// parameters, in the order of getParameterArrays()
+		public double[][] parameterArrays;
+		public int[] postTopics;// topics of all the posts, user by user
+		// n_zw, topicWordDist and optTopicWordDist, see TopicWordStore.write()
+		public byte[] topicWords;
+		public int[] userTopicCounts;// n_zu, topic by topic, then sum_nzu
+		public byte[] randState;// serialized MultiThreadMPHAT.rand
+		public byte[] monitorState;// see ConvergenceMonitor.write()
+
+		/***
+		 * copy the current training state
+		 *
+		 * @param _nextIteration
+		 * @param _maxLikelihood
+		 * @param monitor
+		 */
+		public void capture(int _nextIteration, double _maxLikelihood, ConvergenceMonitor monitor) {
+			Dataset dataset = MultiThreadMPHAT.dataset;
+			ParameterStore parameters = MultiThreadMPHAT.parameters;
+			nextIteration = _nextIteration;
+			maxLikelihood = _maxLikelihood;
+			nUsers = parameters.nUsers;
+			nTopics = parameters.nTopics;
+			nPlatforms = parameters.nPlatforms;
+			nWords = dataset.vocabulary.length;
+
+			parameters.materializeOpt();
+			double[][] arrays = getParameterArrays(parameters);
+			float[][] floatArrays = getFloatParameterArrays(parameters);
+			if (parameterArrays == null) {
+				parameterArrays = new double[arrays.length][];
+				int nPosts = 0;
+				for (int u = 0; u < nUsers; u++) {
+					nPosts += dataset.users[u].nPosts;
+				}
+				postTopics = new int[nPosts];
+				userTopicCounts = new int[(nTopics + 1) * nUsers];
+				userIds = new String[nUsers];
+				for (int u = 0; u < nUsers; u++) {
+					userIds[u] = dataset.users[u].userId;
+				}
+			}
+			for (int i = 0; i < arrays.length; i++) {
+				int length = (arrays[i] != null) ? arrays[i].length : floatArrays[i].length;
+				if (parameterArrays[i] == null) {
+					parameterArrays[i] = new double[length];
+				}
+				if (arrays[i] != null) {
+					System.arraycopy(arrays[i], 0, parameterArrays[i], 0, length);
+				} else {
+					// stored in 32 bits, saved in 64 bits so that the file
+					// does not depend on the precision
+					for (int j = 0; j < length; j++) {
+						parameterArrays[i][j] = floatArrays[i][j];
+					}
+				}
+			}
+			int n = 0;
+			for (int u = 0; u < nUsers; u++) {
+				User currUser = dataset.users[u];
+				for (int s = 0; s < currUser.nPosts; s++) {
+					postTopics[n++] = currUser.posts[s].topic;
+				}
+			}
+			for (int z = 0; z < nTopics; z++) {
+				System.arraycopy(MultiThreadMPHAT.n_zu[z], 0, userTopicCounts, z * nUsers, nUsers);
+			}
+			System.arraycopy(MultiThreadMPHAT.sum_nzu, 0, userTopicCounts, nTopics * nUsers, nUsers);
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(bytes);
+				MultiThreadMPHAT.n_zw.write(out);
+				MultiThreadMPHAT.topicWordDist.write(out);
+				MultiThreadMPHAT.optTopicWordDist.write(out);
+				out.close();
+				topicWords = bytes.toByteArray();
+
+				bytes = new ByteArrayOutputStream();
+				out = new DataOutputStream(bytes);
+				monitor.write(out);
+				out.close();
+				monitorState = bytes.toByteArray();
+			} catch (IOException e) {
+				e.printStackTrace();
+				System.exit(-1);
+			}
+			randState = serialize(MultiThreadMPHAT.rand);
+		}
+
+		/***
+		 * the parameter array at position i of getParameterArrays()
+		 *
+		 * @param i
+		 * @return
+		 */
+		public double[] getParameterArray(int i) {
+			return parameterArrays[i];
+		}
+
+		/***
+		 * write the state back to the model, whose dataset and arrays must be
+		 * of the same sizes, except for the monitor, see restoreMonitor()
+		 */
+		public void restore() {
+			Dataset dataset = MultiThreadMPHAT.dataset;
+			ParameterStore parameters = MultiThreadMPHAT.parameters;
+			if (nUsers != parameters.nUsers || nTopics != parameters.nTopics || nPlatforms != parameters.nPlatforms
+					|| nWords != dataset.vocabulary.length) {
+				System.out.printf("[checkpoint] sizes (%d users, %d topics, %d platforms, %d words) do not match "
+						+ "the model\n", nUsers, nTopics, nPlatforms, nWords);
+				System.exit(-1);
+			}
+			double[][] arrays = getParameterArrays(parameters);
+			float[][] floatArrays = getFloatParameterArrays(parameters);
+			for (int i = 0; i < arrays.length; i++) {
+				if (arrays[i] != null) {
+					System.arraycopy(parameterArrays[i], 0, arrays[i], 0, arrays[i].length);
+				} else {
+					for (int j = 0; j < floatArrays[i].length; j++) {
+						floatArrays[i][j] = (float) parameterArrays[i][j];
+					}
+				}
+			}
+			int n = 0;
+			for (int u = 0; u < nUsers; u++) {
+				User currUser = dataset.users[u];
+				for (int s = 0; s < currUser.nPosts; s++) {
+					currUser.posts[s].topic = postTopics[n++];
+				}
+			}
+			for (int z = 0; z < nTopics; z++) {
+				System.arraycopy(userTopicCounts, z * nUsers, MultiThreadMPHAT.n_zu[z], 0, nUsers);
+			}
+			System.arraycopy(userTopicCounts, nTopics * nUsers, MultiThreadMPHAT.sum_nzu, 0, nUsers);
+			try {
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(topicWords));
+				MultiThreadMPHAT.n_zw.read(in);
+				MultiThreadMPHAT.topicWordDist.read(in);
+				MultiThreadMPHAT.optTopicWordDist.read(in);
+				in.close();
+			} catch (IOException e) {
+				System.out.println("[checkpoint] topic-word counts do not match the model");
+				e.printStackTrace();
+				System.exit(-1);
+			}
+			MultiThreadMPHAT.rand = deserialize(randState);
+		}
+
+		/***
+		 * write the state of the convergence monitor back
+		 *
+		 * @param monitor
+		 */
+		public void restoreMonitor(ConvergenceMonitor monitor) {
+			try {
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(monitorState));
+				monitor.read(in);
+				in.close();
+			} catch (IOException e) {
+				System.out.println("[checkpoint] failed to read the state of the convergence monitor");
+				e.printStackTrace();
+				System.exit(-1);
+			}
+		}
+	}
+
+	private String path;
+	private ConvergenceMonitor monitor;
+	private Snapshot[] buffers = new Snapshot[] { new Snapshot(), new Snapshot() };
+	private Future<?>[] pendingWrites = new Future<?>[2];
+	private int nextBuffer = 0;
+	private ExecutorService writer;
+
+	// progress of the training, for the checkpoint of the shutdown hook
+	private volatile int nextIteration = 0;
+	private volatile double maxLikelihood = Double.NEGATIVE_INFINITY;
+	// stop of the training requested by the shutdown hook
+	private volatile boolean stopRequested = false;
+	private CountDownLatch stopLatch = new CountDownLatch(1);
+
+	public CheckpointManager(String _path, ConvergenceMonitor _monitor) {
+		path = _path;
+		monitor = _monitor;
+		writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "checkpoint-writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/***
+	 * record the progress of the training
+	 *
+	 * @param _nextIteration
+	 * @param _maxLikelihood
+	 */
+	public void setProgress(int _nextIteration, double _maxLikelihood) {
+		nextIteration = _nextIteration;
+		maxLikelihood = _maxLikelihood;
+	}
+
+	/***
+	 * copy the current state and write it in the background
+	 */
+	public synchronized void save() {
+		final int b = nextBuffer;
+		nextBuffer = 1 - nextBuffer;
+		waitFor(b);
+		final Snapshot snapshot = buffers[b];
+		long startTime = System.currentTimeMillis();
+		snapshot.capture(nextIteration, maxLikelihood, monitor);
+		System.out.printf("[checkpoint] captured iteration %d in %d ms\n", nextIteration,
+				System.currentTimeMillis() - startTime);
+		pendingWrites[b] = writer.submit(new Runnable() {
+			@Override
+			public void run() {
+				write(snapshot);
+			}
+		});
+	}
+
+	/***
+	 * copy the current state and write it before returning
+	 */
+	public synchronized void saveNow() {
+		waitFor(0);
+		waitFor(1);
+		buffers[0].capture(nextIteration, maxLikelihood, monitor);
+		write(buffers[0]);
+	}
+
+	/***
+	 * ask the training loop to stop and save at its next phase boundary, and
+	 * wait for it for at most timeoutSeconds; called from a shutdown hook
+	 *
+	 * @param timeoutSeconds
+	 */
+	public void requestStop(int timeoutSeconds) {
+		stopRequested = true;
+		boolean saved = false;
+		try {
+			saved = stopLatch.await(timeoutSeconds, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (!saved) {
+			System.out.printf("[checkpoint] training did not stop within %d s, keeping the last checkpoint\n",
+					timeoutSeconds);
+			flush();
+		}
+	}
+
+	public boolean isStopRequested() {
+		return stopRequested;
+	}
+
+	/***
+	 * the training loop has stopped, and saved if a stop was requested
+	 */
+	public void stopped() {
+		stopLatch.countDown();
+	}
+
+	/***
+	 * wait for the pending writes
+	 */
+	private synchronized void flush() {
+		waitFor(0);
+		waitFor(1);
+	}
+
+	/***
+	 * wait for the pending writes and stop the writer thread
+	 */
+	public synchronized void close() {
+		flush();
+		writer.shutdown();
+	}
+
+	private void waitFor(int b) {
+		if (pendingWrites[b] == null) {
+			return;
+		}
+		try {
+			pendingWrites[b].get();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		pendingWrites[b] = null;
+	}
+
+	private static double[][] getParameterArrays(ParameterStore parameters) {
+		return new double[][] { parameters.topicalInterests, parameters.authorities, parameters.hubs,
+				parameters.topicalPlatformPreference, parameters.topicalRelativePlatformPreference,
+				parameters.platformAuthorities, parameters.platformHubs, parameters.optTopicalInterests,
+				parameters.optAuthorities, parameters.optHubs, parameters.optTopicalPlatformPreference,
+				parameters.optPlatformAuthorities, parameters.optPlatformHubs };
+	}
+
+	/***
+	 * the arrays of getParameterArrays() that are stored in 32 bits, at the
+	 * same positions, where getParameterArrays() has null
+	 */
+	private static float[][] getFloatParameterArrays(ParameterStore parameters) {
+		return new float[][] { null, null, null, null, null, parameters.platformAuthoritiesFloat,
+				parameters.platformHubsFloat, null, null, null, null, parameters.optPlatformAuthoritiesFloat,
+				parameters.optPlatformHubsFloat };
+	}
+
+	private void write(Snapshot snapshot) {
+		long startTime = System.currentTimeMillis();
+		File file = new File(path);
+		File temp = new File(path + ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(snapshot.nextIteration);
+			out.writeDouble(snapshot.maxLikelihood);
+			out.writeInt(snapshot.nUsers);
+			out.writeInt(snapshot.nTopics);
+			out.writeInt(snapshot.nPlatforms);
+			out.writeInt(snapshot.nWords);
+			for (String userId : snapshot.userIds) {
+				out.writeUTF(userId);
+			}
+			out.writeInt(snapshot.parameterArrays.length);
+			for (double[] array : snapshot.parameterArrays) {
+				writeDoubles(out, array);
+			}
+			writeInts(out, snapshot.postTopics);
+			out.writeInt(snapshot.topicWords.length);
+			out.write(snapshot.topicWords);
+			writeInts(out, snapshot.userTopicCounts);
+			out.writeInt(snapshot.randState.length);
+			out.write(snapshot.randState);
+			out.writeInt(snapshot.monitorState.length);
+			out.write(snapshot.monitorState);
+			out.close();
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			System.out.printf("[checkpoint] wrote iteration %d to %s in %d ms\n", snapshot.nextIteration, path,
+					System.currentTimeMillis() - startTime);
+		} catch (IOException e) {
+			System.out.printf("[checkpoint] failed to write %s\n", path);
+			e.printStackTrace();
+		}
+	}
+
+	/***
+	 * read a checkpoint
+	 *
+	 * @param path
+	 * @return
+	 */
+	public static Snapshot load(String path) {
+		Snapshot snapshot = new Snapshot();
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				in.close();
+				System.out.printf("[checkpoint] %s is not a checkpoint of this version\n", path);
+				System.exit(-1);
+			}
+			snapshot.nextIteration = in.readInt();
+			snapshot.maxLikelihood = in.readDouble();
+			snapshot.nUsers = in.readInt();
+			snapshot.nTopics = in.readInt();
+			snapshot.nPlatforms = in.readInt();
+			snapshot.nWords = in.readInt();
+			snapshot.userIds = new String[snapshot.nUsers];
+			for (int u = 0; u < snapshot.nUsers; u++) {
+				snapshot.userIds[u] = in.readUTF();
+			}
+			snapshot.parameterArrays = new double[in.readInt()][];
+			for (int i = 0; i < snapshot.parameterArrays.length; i++) {
+				snapshot.parameterArrays[i] = readDoubles(in);
+			}
+			snapshot.postTopics = readInts(in);
+			snapshot.topicWords = new byte[in.readInt()];
+			in.readFully(snapshot.topicWords);
+			snapshot.userTopicCounts = readInts(in);
+			snapshot.randState = new byte[in.readInt()];
+			in.readFully(snapshot.randState);
+			snapshot.monitorState = new byte[in.readInt()];
+			in.readFully(snapshot.monitorState);
+			in.close();
+		} catch (IOException e) {
+			System.out.printf("[checkpoint] failed to read %s\n", path);
+			e.printStackTrace();
+			System.exit(-1);
+		}
+		return snapshot;
+	}
+
+	private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+		out.writeInt(values.length);
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		for (int from = 0; from < values.length; from += buffer.capacity() / 8) {
+			int n = Math.min(buffer.capacity() / 8, values.length - from);
+			buffer.clear();
+			buffer.asDoubleBuffer().put(values, from, n);
+			out.write(buffer.array(), 0, n * 8);
+		}
+	}
+
+	private static double[] readDoubles(DataInputStream in) throws IOException {
+		double[] values = new double[in.readInt()];
+		byte[] bytes = new byte[1 << 16];
+		for (int from = 0; from < values.length; from += bytes.length / 8) {
+			int n = Math.min(bytes.length / 8, values.length - from);
+			in.readFully(bytes, 0, n * 8);
+			ByteBuffer.wrap(bytes, 0, n * 8).asDoubleBuffer().get(values, from, n);
+		}
+		return values;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		out.writeInt(values.length);
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		for (int from = 0; from < values.length; from += buffer.capacity() / 4) {
+			int n = Math.min(buffer.capacity() / 4, values.length - from);
+			buffer.clear();
+			buffer.asIntBuffer().put(values, from, n);
+			out.write(buffer.array(), 0, n * 4);
+		}
+	}
+
+	private static int[] readInts(DataInputStream in) throws IOException {
+		int[] values = new int[in.readInt()];
+		byte[] bytes = new byte[1 << 16];
+		for (int from = 0; from < values.length; from += bytes.length / 4) {
+			int n = Math.min(bytes.length / 4, values.length - from);
+			in.readFully(bytes, 0, n * 4);
+			ByteBuffer.wrap(bytes, 0, n * 4).asIntBuffer().get(values, from, n);
+		}
+		return values;
+	}
+
+	private static byte[] serialize(Random rand) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(rand);
+			out.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(-1);
+			return null;
+		}
+	}
+
+	private static Random deserialize(byte[] state) {
+		try {
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state));
+			Random rand = (Random) in.readObject();
+			in.close();
+			return rand;
+		} catch (IOException | ClassNotFoundException e) {
+			e.printStackTrace();
+			System.exit(-1);
+			return null;
+		}
+	}
+}
@@ -19,6 +19,33 @@ public class Configure {
 		MPHAT_TI,
 	}
 
+	public static enum OptimizerType {
+		GRADIENT_DESCENT, // steepest descent with Armijo backtracking
+		LBFGS, // projected limited-memory BFGS
+	}
+
+	public static enum StochasticUpdateRule {
+		ADAGRAD, // step / sqrt(sum of squared gradients)
+		ADAM, // bias-corrected first and second moments
+	}
+
+	public static enum TopicSamplerType {
+		EXACT, // evaluate the conditional of every topic for every post
+		ALIAS_MH, // Metropolis-Hastings with alias-table proposals
+		AUTO, // ALIAS_MH for many topics, EXACT otherwise
+	}
+
+	public static enum StoragePrecision {
+		DOUBLE, // 64-bit values
+		FLOAT, // 32-bit storage of values read from neighbors, 64-bit sums
+	}
+
+	public static enum LearningRateSchedule {
+		CONSTANT, // rate
+		INVERSE_TIME, // rate / (1 + decay * epoch)
+		EXPONENTIAL, // rate * decay^epoch
+	}
+
 	public final static int NUM_OF_PLATFORM = 2;
 	public final static double PROPTION_OF_POPULAR_USERS = 0.1;
 	public final static double PROPTION_OF_NONLINKS = 0.1; // we choose about 10 times the size of the number of links in each dataset
@@ -0,0 +1,198 @@
+package model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/***
+ * stopping and skipping rules of the EM iterations, all off by default. The
+ * training stops when the relative improvement of the likelihood per
+ * iteration stays in [0, tolerance) for patience iterations in a row, or when
+ * it has run for more than maxTrainingTime. An iteration that lowers the
+ * likelihood is not an improvement: it is reported, and restarts the count,
+ * so that an oscillating run is not taken as converged. A phase is skipped once the relative change of the
+ * likelihood over the phase stays below phaseTolerance in magnitude for
+ * phasePatience runs in a row. The magnitude is used because some phases, e.g.
+ * hub, platform preference or topic sampling, can lower the global likelihood
+ * while still changing the parameters. A skipped phase is run again every
+ * phaseRecheckInterval iterations, and no longer skipped if it changes the
+ * likelihood again.
+ */
+public class ConvergenceMonitor {
+	public static double tolerance = 1e-6;
+	public static int patience = 0;// 0: never stop early
+	public static long maxTrainingTime = 0;// ms, 0: no budget
+	public static double phaseTolerance = 1e-7;
+	public static int phasePatience = 0;// 0: never skip a phase
+	public static int phaseRecheckInterval = 10;
+
+	private long startTime;
+	private double lastLikelihood;
+	private int nSmallImprovements;
+	private int nDecreases;// in a row
+	private HashMap<String, Integer> phaseSmallImprovements;
+	private HashMap<String, Integer> skippedPhases;// iteration from which a
+													// phase is skipped
+	private String stopReason;
+
+	public ConvergenceMonitor() {
+		startTime = System.currentTimeMillis();
+		lastLikelihood = Double.NaN;
+		nSmallImprovements = 0;
+		nDecreases = 0;
+		phaseSmallImprovements = new HashMap<String, Integer>();
+		skippedPhases = new HashMap<String, Integer>();
+		stopReason = null;
+	}
+
+	public long getElapsedTime() {
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public boolean isOutOfTime() {
+		return maxTrainingTime > 0 && getElapsedTime() > maxTrainingTime;
+	}
+
+	private static double getRelativeImprovement(double before, double after) {
+		return (after - before) / Math.abs(before);
+	}
+
+	/***
+	 * true if the phase should be run in iteration iter
+	 *
+	 * @param phase
+	 * @param iter
+	 * @return
+	 */
+	public boolean shouldRunPhase(String phase, int iter) {
+		if (isOutOfTime()) {
+			System.out.printf("[iter-%d] out of time, skipping %s\n", iter, phase);
+			return false;
+		}
+		Integer since = skippedPhases.get(phase);
+		if (since == null || (iter - since) % phaseRecheckInterval == 0) {
+			return true;
+		}
+		System.out.printf("[iter-%d] skipping %s\n", iter, phase);
+		return false;
+	}
+
+	/***
+	 * record the likelihood before and after a run of the phase
+	 *
+	 * @param phase
+	 * @param iter
+	 * @param before
+	 * @param after
+	 */
+	public void recordPhase(String phase, int iter, double before, double after) {
+		if (phasePatience <= 0) {
+			return;
+		}
+		if (Math.abs(getRelativeImprovement(before, after)) < phaseTolerance) {
+			Integer count = phaseSmallImprovements.get(phase);
+			count = (count == null) ? 1 : count + 1;
+			phaseSmallImprovements.put(phase, count);
+			if (count >= phasePatience && !skippedPhases.containsKey(phase)) {
+				System.out.printf("[iter-%d] %s converged, skipping it from now on\n", iter, phase);
+				skippedPhases.put(phase, iter);
+			}
+		} else {
+			phaseSmallImprovements.put(phase, 0);
+			if (skippedPhases.remove(phase) != null) {
+				System.out.printf("[iter-%d] %s changes the likelihood again, no longer skipping it\n", iter,
+						phase);
+			}
+		}
+	}
+
+	/***
+	 * record the likelihood at the end of iteration iter
+	 *
+	 * @param iter
+	 * @param likelihood
+	 * @return true if the training should stop
+	 */
+	public boolean recordIteration(int iter, double likelihood) {
+		if (patience > 0 && !Double.isNaN(lastLikelihood)) {
+			double improvement = getRelativeImprovement(lastLikelihood, likelihood);
+			if (improvement < 0) {
+				nSmallImprovements = 0;
+				nDecreases++;
+				System.out.printf("[iter-%d] likelihood decreased (relative change %.3e, %d iterations in a row)\n",
+						iter, improvement, nDecreases);
+			} else if (improvement < tolerance) {
+				nDecreases = 0;
+				nSmallImprovements++;
+				if (nSmallImprovements >= patience) {
+					stopReason = String.format("relative improvement below %g for %d iterations", tolerance,
+							patience);
+				}
+			} else {
+				nDecreases = 0;
+				nSmallImprovements = 0;
+			}
+		}
+		lastLikelihood = likelihood;
+		if (stopReason == null && isOutOfTime()) {
+			stopReason = String.format("training time %d ms over the budget of %d ms", getElapsedTime(),
+					maxTrainingTime);
+		}
+		return stopReason != null;
+	}
+
+	public String getStopReason() {
+		return stopReason;
+	}
+
+	/***
+	 * write the state, for checkpoints: the training time so far, the last
+	 * likelihood, the counts of small improvements and decreases, and the
+	 * states of the phases
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeLong(getElapsedTime());
+		out.writeDouble(lastLikelihood);
+		out.writeInt(nSmallImprovements);
+		out.writeInt(nDecreases);
+		writeMap(out, phaseSmallImprovements);
+		writeMap(out, skippedPhases);
+	}
+
+	/***
+	 * read the state written by write(); the training time goes on from the
+	 * saved one
+	 *
+	 * @param in
+	 * @throws IOException
+	 */
+	public void read(DataInputStream in) throws IOException {
+		startTime = System.currentTimeMillis() - in.readLong();
+		lastLikelihood = in.readDouble();
+		nSmallImprovements = in.readInt();
+		nDecreases = in.readInt();
+		readMap(in, phaseSmallImprovements);
+		readMap(in, skippedPhases);
+	}
+
+	private static void writeMap(DataOutputStream out, HashMap<String, Integer> map) throws IOException {
+		out.writeInt(map.size());
+		for (Map.Entry<String, Integer> entry : map.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeInt(entry.getValue());
+		}
+	}
+
+	private static void readMap(DataInputStream in, HashMap<String, Integer> map) throws IOException {
+		map.clear();
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			map.put(in.readUTF(), in.readInt());
+		}
+	}
+}
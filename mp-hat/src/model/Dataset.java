@@ -22,9 +22,19 @@ public class Dataset {
 	public int nLinks = 0;
 	public int nNonLinks = 0;
 
+	// users' relations, in compressed sparse row form
+	public RelationGraph followings;
+	public RelationGraph followers;
+	public RelationGraph nonFollowings;
+	public RelationGraph nonFollowers;
+
 	// for selecting non-links
 	private KeyValuePair[] userRankByNFollowers;
 	private KeyValuePair[] userRankByNFollowings;
+	// selectedNonFollowings[p][u]: non-followings of u selected in platform
+	// p, until all the platforms are done and the graphs are built
+	private int[][][] selectedNonFollowings;
+	private int[][][] selectedNonFollowers;
 
 	// public int nWords; // number of words in vocabulary
 	public String[] vocabulary;
@@ -55,6 +65,7 @@ public class Dataset {
 			for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
 				selectNonRelationship(batch, p);
 			}
+			buildNonRelationship();
 			System.out.println("#Links:" + nLinks);
 			System.out.println("#NonLinks:" + nNonLinks);
 		}
@@ -240,29 +251,21 @@ public class Dataset {
 			}
 			br.close();
 
-			// initalize the users' follower and following arrays
+			// initalize the users' follower and following graphs
+			int[] nFollowers = new int[nUsers];
+			int[] nFollowings = new int[nUsers];
 			for (int u = 0; u < nUsers; u++) {
 				users[u].nPlatformFollowers = new int[nPlatforms];
-				for (int p = 0; p < nPlatforms; p++) {
-					users[u].nPlatformFollowers[p] = 0;
-				}
-
 				users[u].nPlatformFollowings = new int[nPlatforms];
-				if (users[u].nFollowers > 0) {
-					users[u].followers = new Follower[users[u].nFollowers];
-					users[u].followerBatches = new int[users[u].nFollowers];
-					users[u].nFollowers = 0;
-					users[u].nNonFollowers = 0;
-				}
-				if (users[u].nFollowings > 0) {
-					users[u].followings = new Following[users[u].nFollowings];
-					users[u].followingBatches = new int[users[u].nFollowings];
-					users[u].nFollowings = 0;
-					users[u].nNonFollowings = 0;
-				}
+				nFollowers[u] = users[u].nFollowers;
+				nFollowings[u] = users[u].nFollowings;
+				users[u].nNonFollowers = 0;
+				users[u].nNonFollowings = 0;
 			}
+			followers = new RelationGraph(nFollowers);
+			followings = new RelationGraph(nFollowings);
 
-			// Read and load user into users' follower and following array
+			// Read and load user into users' follower and following graphs
 			br = new BufferedReader(new FileReader(file.getAbsolutePath()));
 			while ((line = br.readLine()) != null) {
 				String[] tokens = line.split(",");
@@ -273,18 +276,10 @@ public class Dataset {
 
 				int src_user_index = userId2Index.get(src_user);
 				int des_user_index = userId2Index.get(des_user);
-				users[des_user_index].followers[users[des_user_index].nFollowers] = new Follower();
-				users[des_user_index].followers[users[des_user_index].nFollowers].followerIndex = src_user_index;
-				users[des_user_index].followers[users[des_user_index].nFollowers].platform = platform;
-				users[des_user_index].followerBatches[users[des_user_index].nFollowers] = batch;
-				users[des_user_index].nFollowers++;
+				followers.add(des_user_index, src_user_index, platform, batch);
 				users[des_user_index].nPlatformFollowers[platform]++;
 
-				users[src_user_index].followings[users[src_user_index].nFollowings] = new Following();
-				users[src_user_index].followings[users[src_user_index].nFollowings].followingIndex = des_user_index;
-				users[src_user_index].followings[users[src_user_index].nFollowings].platform = platform;
-				users[src_user_index].followingBatches[users[src_user_index].nFollowings] = batch;
-				users[src_user_index].nFollowings++;
+				followings.add(src_user_index, des_user_index, platform, batch);
 				users[src_user_index].nPlatformFollowings[platform]++;
 				if (batch == 1) {
 					nLinks++;
@@ -317,6 +312,12 @@ public class Dataset {
 
 	public void selectNonRelationship(int batch, int platform) {
 		rankUserbyPopuarlity(platform);
+		if (selectedNonFollowings == null) {
+			selectedNonFollowings = new int[Configure.NUM_OF_PLATFORM][][];
+			selectedNonFollowers = new int[Configure.NUM_OF_PLATFORM][][];
+		}
+		selectedNonFollowings[platform] = new int[nUsers][];
+		selectedNonFollowers[platform] = new int[nUsers][];
 
 		int[] userNonFollowerCounts = new int[nUsers];
 		int[] maxNonFollowers = new int[nUsers];
@@ -338,15 +339,15 @@ public class Dataset {
 			// users to many-followers (e.g., popular) users
 
 			// get followee set
-			HashSet<Integer> followings = new HashSet<Integer>();
-			for (int i = 0; i < users[u].nFollowings; i++) {
-				if (users[u].followingBatches[i] != batch) {
+			HashSet<Integer> followees = new HashSet<Integer>();
+			for (int i = followings.offsets[u]; i < followings.offsets[u + 1]; i++) {
+				if (followings.batches[i] != batch) {
 					continue;
 				}
-				if (users[u].followings[i].platform != platform) {
+				if (followings.platforms[i] != platform) {
 					continue;
 				}
-				followings.add(users[u].followings[i].followingIndex);
+				followees.add(followings.neighbors[i]);
 			}
 
 			// #selected non-followings:
@@ -362,7 +363,7 @@ public class Dataset {
 				if (v == u) {
 					continue;
 				}
-				if (followings.contains(v)) {
+				if (followees.contains(v)) {
 					continue;
 				}
 				if (userNonFollowerCounts[v] >= maxNonFollowers[v]) {
@@ -396,26 +397,26 @@ public class Dataset {
 			if (nNonFollowings > 0) {
 				// get nonfollwees among followees of followees
 				HashMap<Integer, Integer> followeesOfFollowees = new HashMap<Integer, Integer>();
-				for (int i = 0; i < users[u].nFollowings; i++) {
-					if (users[u].followingBatches[i] != batch) {
+				for (int i = followings.offsets[u]; i < followings.offsets[u + 1]; i++) {
+					if (followings.batches[i] != batch) {
 						continue;
 					}
-					if (users[u].followings[i].platform != platform) {
+					if (followings.platforms[i] != platform) {
 						continue;
 					}
-					int v = users[u].followings[i].followingIndex;
-					for (int j = 0; j < users[v].nFollowings; j++) {
-						if (users[v].followingBatches[j] != batch) {
+					int v = followings.neighbors[i];
+					for (int j = followings.offsets[v]; j < followings.offsets[v + 1]; j++) {
+						if (followings.batches[j] != batch) {
 							continue;
 						}
-						if (users[v].followings[j].platform != platform) {
+						if (followings.platforms[j] != platform) {
 							continue;
 						}
-						int w = users[v].followings[j].followingIndex;
+						int w = followings.neighbors[j];
 						if (w == u) {
 							continue;
 						}
-						if (followings.contains(w) || users[u].userId.equals(users[w].userId)) {
+						if (followees.contains(w) || users[u].userId.equals(users[w].userId)) {
 							continue;
 						}
 						if (users[w].platforms[platform] != 1) {
@@ -477,7 +478,7 @@ public class Dataset {
 					if (v == u) {
 						continue;
 					}
-					if (followings.contains(v) || users[u].userId.equals(users[v].userId)) {
+					if (followees.contains(v) || users[u].userId.equals(users[v].userId)) {
 						continue;
 					}
 					if (userNonFollowerCounts[v] >= maxNonFollowers[v]) {
@@ -503,31 +504,14 @@ public class Dataset {
 			}
 
 			// add into user's non-followee list
-			if (users[u].nNonFollowings == 0) {
-				users[u].nonFollowings = new Following[nonfollwings.size()];
-				users[u].nonFollowingBatches = new int[nonfollwings.size()];
-			} else {
-				// Expanding array
-				Following[] tempNonFollowings = new Following[users[u].nNonFollowings + nonfollwings.size()];
-				int[] tempNonFollowingBatches = new int[users[u].nNonFollowings + nonfollwings.size()];
-				System.arraycopy(users[u].nonFollowings, 0, tempNonFollowings, 0, users[u].nonFollowings.length);
-				System.arraycopy(users[u].nonFollowingBatches, 0, tempNonFollowingBatches, 0,
-						users[u].nonFollowingBatches.length);
-				users[u].nonFollowings = new Following[users[u].nNonFollowings + nonfollwings.size()];
-				users[u].nonFollowingBatches = new int[users[u].nNonFollowings + nonfollwings.size()];
-				System.arraycopy(tempNonFollowings, 0, users[u].nonFollowings, 0, tempNonFollowings.length);
-				System.arraycopy(tempNonFollowingBatches, 0, users[u].nonFollowingBatches, 0,
-						tempNonFollowingBatches.length);
-			}
+			int[] selected = new int[nonfollwings.size()];
+			int index = 0;
 			for (int v : nonfollwings) {
-				users[u].nonFollowings[users[u].nNonFollowings] = new Following();
-				users[u].nonFollowings[users[u].nNonFollowings].followingIndex = v;
-				users[u].nonFollowings[users[u].nNonFollowings].platform = platform;
-				users[u].nonFollowingBatches[users[u].nNonFollowings] = 1;
-				users[u].nNonFollowings++;
-				nNonLinks++;
+				selected[index++] = v;
 			}
-
+			selectedNonFollowings[platform][u] = selected;
+			users[u].nNonFollowings += selected.length;
+			nNonLinks += selected.length;
 		}
 
 		// Reverse infer the non-followers from the non-following
@@ -536,26 +520,45 @@ public class Dataset {
 			if (nonFollowers == null) {
 				continue;
 			}
-
-			if (users[v].nNonFollowers == 0) {
-				users[v].nonFollowers = new Follower[nonFollowers.size()];
-			} else {
-				// Expanding array
-				Follower[] tempNonFollowers = new Follower[users[v].nNonFollowers + nonFollowers.size()];
-				System.arraycopy(users[v].nonFollowers, 0, tempNonFollowers, 0, users[v].nonFollowers.length);
-				users[v].nonFollowers = new Follower[users[v].nNonFollowers + nonFollowers.size()];
-				System.arraycopy(tempNonFollowers, 0, users[v].nonFollowers, 0, tempNonFollowers.length);
-			}
+			int[] selected = new int[nonFollowers.size()];
+			int index = 0;
 			for (int u : nonFollowers) {
-				users[v].nonFollowers[users[v].nNonFollowers] = new Follower();
-				users[v].nonFollowers[users[v].nNonFollowers].followerIndex = u;
-				users[v].nonFollowers[users[v].nNonFollowers].platform = platform;
-				users[v].nNonFollowers++;
+				selected[index++] = u;
 			}
-			// System.out.println(users[v].userId + " " +
-			// users[v].nonFollowers.length);
+			selectedNonFollowers[platform][v] = selected;
+			users[v].nNonFollowers += selected.length;
 		}
+	}
 
+	/***
+	 * build the non-following and non-follower graphs from the non-links
+	 * selected in every platform, in the order of the platforms
+	 */
+	private void buildNonRelationship() {
+		int[] nNonFollowings = new int[nUsers];
+		int[] nNonFollowers = new int[nUsers];
+		for (int u = 0; u < nUsers; u++) {
+			nNonFollowings[u] = users[u].nNonFollowings;
+			nNonFollowers[u] = users[u].nNonFollowers;
+		}
+		nonFollowings = new RelationGraph(nNonFollowings);
+		nonFollowers = new RelationGraph(nNonFollowers);
+		for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
+			for (int u = 0; u < nUsers; u++) {
+				if (selectedNonFollowings[p][u] != null) {
+					for (int v : selectedNonFollowings[p][u]) {
+						nonFollowings.add(u, v, p, 1);
+					}
+				}
+				if (selectedNonFollowers[p][u] != null) {
+					for (int v : selectedNonFollowers[p][u]) {
+						nonFollowers.add(u, v, p, 1);
+					}
+				}
+			}
+		}
+		selectedNonFollowings = null;
+		selectedNonFollowers = null;
 	}
 
 	public static void main(String[] args) {
@@ -575,9 +578,9 @@ public class Dataset {
 			FileWriter fo = new FileWriter(f);
 			for (int u = 0; u < users.length; u++) {
 				String uid = users[u].userId;
-				for (int v = 0; v < users[u].nonFollowings.length; v++) {
-					String vid = users[users[u].nonFollowings[v].followingIndex].userId;
-					int platform = users[u].nonFollowings[v].platform;
+				for (int i = nonFollowings.offsets[u]; i < nonFollowings.offsets[u + 1]; i++) {
+					String vid = users[nonFollowings.neighbors[i]].userId;
+					int platform = nonFollowings.platforms[i];
 					fo.write(uid + "," + vid + "," + platform + "\n");
 				}
 			}
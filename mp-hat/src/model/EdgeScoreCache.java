@@ -0,0 +1,205 @@
+package model;
+
+import java.util.HashMap;
+
+
+/***
+ * cache of the platform-weighted score of every link and non-link, i.e.,
+ * lamda * sum_z H_uz * eta_uz^p * A_vz * eta_vz^p for edge (u, v, p), and of
+ * exp(-score). Each edge has one id that is shared by its two endpoints: the
+ * links take the ids of their positions in dataset.followings, the non-links
+ * follow at nonFollowingOffset + their positions in dataset.nonFollowings, and
+ * the in-edges of v (followers, non-followers) are mapped to the same ids by
+ * followerEdges and nonFollowerEdges, which are aligned with the positions in
+ * dataset.followers and dataset.nonFollowers.
+ *
+ * The scores are written by one user per edge in every phase: the target
+ * when authorities change, the source when hubs change, and the source in
+ * refreshOutEdges() after platform preferences change.
+ */
+public class EdgeScoreCache {
+	public int nEdges;
+	public double[] scores;// scores[e]: lamda * H_u^p * A_v^p of edge e
+	public double[] expScores;// expScores[e] = exp(-scores[e])
+
+	public int nonFollowingOffset;// id of the first non-link
+	public int[] followerEdges;// followerEdges[i]: id of the edge from
+								// dataset.followers.neighbors[i]
+	public int[] nonFollowerEdges;// nonFollowerEdges[i]: id of the edge from
+									// dataset.nonFollowers.neighbors[i]
+
+	private boolean[] dirtyUsers;// users whose platform preferences changed
+
+	public EdgeScoreCache(Dataset dataset) {
+		int nUsers = dataset.nUsers;
+		RelationGraph followings = dataset.followings;
+		RelationGraph nonFollowings = dataset.nonFollowings;
+		nonFollowingOffset = followings.nRelations;
+		nEdges = followings.nRelations + nonFollowings.nRelations;
+		HashMap<Long, Integer> linkIds = new HashMap<Long, Integer>();
+		HashMap<Long, Integer> nonLinkIds = new HashMap<Long, Integer>();
+		for (int u = 0; u < nUsers; u++) {
+			for (int i = followings.offsets[u]; i < followings.offsets[u + 1]; i++) {
+				linkIds.put(getKey(nUsers, u, followings.neighbors[i], followings.platforms[i]), i);
+			}
+			for (int i = nonFollowings.offsets[u]; i < nonFollowings.offsets[u + 1]; i++) {
+				nonLinkIds.put(getKey(nUsers, u, nonFollowings.neighbors[i], nonFollowings.platforms[i]),
+						nonFollowingOffset + i);
+			}
+		}
+
+		followerEdges = getInEdgeIds(linkIds, nUsers, dataset.followers);
+		nonFollowerEdges = getInEdgeIds(nonLinkIds, nUsers, dataset.nonFollowers);
+
+		scores = new double[nEdges];
+		expScores = new double[nEdges];
+		dirtyUsers = new boolean[nUsers];
+	}
+
+	private static long getKey(int nUsers, int u, int v, int platform) {
+		return ((long) u * nUsers + v) * Configure.NUM_OF_PLATFORM + platform;
+	}
+
+	private static int[] getInEdgeIds(HashMap<Long, Integer> ids, int nUsers, RelationGraph followers) {
+		int[] edgeIds = new int[followers.nRelations];
+		for (int v = 0; v < nUsers; v++) {
+			for (int i = followers.offsets[v]; i < followers.offsets[v + 1]; i++) {
+				Integer id = ids.get(getKey(nUsers, followers.neighbors[i], v, followers.platforms[i]));
+				if (id == null) {
+					System.out.printf("[EdgeScoreCache] edge %d -> %d on platform %d has no out-edge\n",
+							followers.neighbors[i], v, followers.platforms[i]);
+					System.exit(-1);
+				}
+				edgeIds[i] = id;
+			}
+		}
+		return edgeIds;
+	}
+
+	/***
+	 * id of the link at position i of dataset.followings
+	 *
+	 * @param i
+	 * @return
+	 */
+	public int getFollowingEdge(int i) {
+		return i;
+	}
+
+	/***
+	 * id of the non-link at position i of dataset.nonFollowings
+	 *
+	 * @param i
+	 * @return
+	 */
+	public int getNonFollowingEdge(int i) {
+		return nonFollowingOffset + i;
+	}
+
+	public void set(int e, double score) {
+		scores[e] = score;
+		expScores[e] = Math.exp(-score);
+	}
+
+	public void set(int e, double score, double expScore) {
+		scores[e] = score;
+		expScores[e] = expScore;
+	}
+
+	/***
+	 * score of the edge from src to des on platform p
+	 *
+	 * @param parameters
+	 * @param src
+	 * @param des
+	 * @param p
+	 * @param lamda
+	 * @return
+	 */
+	public static double computeScore(ParameterStore parameters, int src, int des, int p, double lamda) {
+		return parameters.getPlatformScore(src, des, p) * lamda;
+	}
+
+	/***
+	 * recompute the followers' and non-followers' edges of v
+	 *
+	 * @param dataset
+	 * @param parameters
+	 * @param v
+	 * @param lamda
+	 */
+	public void refreshInEdges(Dataset dataset, ParameterStore parameters, int v, double lamda) {
+		RelationGraph followers = dataset.followers;
+		for (int i = followers.offsets[v]; i < followers.offsets[v + 1]; i++) {
+			set(followerEdges[i], computeScore(parameters, followers.neighbors[i], v, followers.platforms[i], lamda));
+		}
+		RelationGraph nonFollowers = dataset.nonFollowers;
+		for (int i = nonFollowers.offsets[v]; i < nonFollowers.offsets[v + 1]; i++) {
+			set(nonFollowerEdges[i],
+					computeScore(parameters, nonFollowers.neighbors[i], v, nonFollowers.platforms[i], lamda));
+		}
+	}
+
+	/***
+	 * recompute the followings' and non-followings' edges of u
+	 *
+	 * @param dataset
+	 * @param parameters
+	 * @param u
+	 * @param lamda
+	 */
+	public void refreshOutEdges(Dataset dataset, ParameterStore parameters, int u, double lamda) {
+		RelationGraph followings = dataset.followings;
+		for (int i = followings.offsets[u]; i < followings.offsets[u + 1]; i++) {
+			set(getFollowingEdge(i),
+					computeScore(parameters, u, followings.neighbors[i], followings.platforms[i], lamda));
+		}
+		RelationGraph nonFollowings = dataset.nonFollowings;
+		for (int i = nonFollowings.offsets[u]; i < nonFollowings.offsets[u + 1]; i++) {
+			set(getNonFollowingEdge(i),
+					computeScore(parameters, u, nonFollowings.neighbors[i], nonFollowings.platforms[i], lamda));
+		}
+	}
+
+	/***
+	 * recompute the followings' and non-followings' edges of u whose source or
+	 * target is marked dirty
+	 *
+	 * @param dataset
+	 * @param parameters
+	 * @param u
+	 * @param lamda
+	 */
+	public void refreshDirtyOutEdges(Dataset dataset, ParameterStore parameters, int u, double lamda) {
+		RelationGraph followings = dataset.followings;
+		for (int i = followings.offsets[u]; i < followings.offsets[u + 1]; i++) {
+			int v = followings.neighbors[i];
+			if (dirtyUsers[u] || dirtyUsers[v]) {
+				set(getFollowingEdge(i), computeScore(parameters, u, v, followings.platforms[i], lamda));
+			}
+		}
+		RelationGraph nonFollowings = dataset.nonFollowings;
+		for (int i = nonFollowings.offsets[u]; i < nonFollowings.offsets[u + 1]; i++) {
+			int v = nonFollowings.neighbors[i];
+			if (dirtyUsers[u] || dirtyUsers[v]) {
+				set(getNonFollowingEdge(i), computeScore(parameters, u, v, nonFollowings.platforms[i], lamda));
+			}
+		}
+	}
+
+	public void markDirty(int u) {
+		dirtyUsers[u] = true;
+	}
+
+	public void markAllDirty() {
+		for (int u = 0; u < dirtyUsers.length; u++) {
+			dirtyUsers[u] = true;
+		}
+	}
+
+	public void clearDirty() {
+		for (int u = 0; u < dirtyUsers.length; u++) {
+			dirtyUsers[u] = false;
+		}
+	}
+}
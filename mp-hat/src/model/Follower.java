@@ -1,6 +0,0 @@
-package model;
-
-public class Follower {
-	public int followerIndex; // index of the follower
-	public int platform; // platform of the follower link
-}
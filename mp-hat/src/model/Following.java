@@ -1,7 +0,0 @@
-package model;
-
-public class Following {
-	public int followingIndex; // index of the following
-	public int platform; // platform of the following link
-	
-}
@@ -0,0 +1,85 @@
+package model;
+
+/***
+ * steepest descent with Armijo backtracking: the step size starts at beta and
+ * is multiplied by beta until f(x) - f(x0) <= -(alpha / step) * ||x - x0||^2,
+ * for at most maxLineSearchIterations trials. The optimization stops at the
+ * first iteration whose line search fails.
+ */
+public class GradientDescentOptimizer implements BlockOptimizer {
+	private double alpha;
+	private double beta;
+	private int maxLineSearchIterations;
+
+	public GradientDescentOptimizer(double _alpha, double _beta, int _maxLineSearchIterations) {
+		alpha = _alpha;
+		beta = _beta;
+		maxLineSearchIterations = _maxLineSearchIterations;
+	}
+
+	@Override
+	public void minimize(OptimizerContext ctx, BlockObjective objective, double[] currentX, int maxIterations) {
+		int nDim = objective.getDimension();
+		OptimizerContext.BlockBuffers buffers = ctx.getBlockBuffers(nDim);
+		double[] grad = buffers.grad;
+		double[] x = buffers.x;
+
+		double startF = objective.getValue(ctx, currentX);
+		double currentF = startF;
+		int nIterations = 0;
+		int nValueEvaluations = 1;
+		int nGradientEvaluations = 0;
+
+		boolean flag = true;
+		double diff = 0;
+		double f = Double.MAX_VALUE;
+
+		for (int iter = 0; iter < maxIterations; iter++) {
+			// compute gradient
+			objective.getGradient(ctx, currentX, grad);
+			nGradientEvaluations++;
+			// start line search
+			objective.prepareLineSearch(ctx, currentX, grad);
+			ctx.lineSearch_lambda = beta;
+			flag = false;
+
+			for (int lineSearchIter = 0; lineSearchIter < maxLineSearchIterations; lineSearchIter++) {
+				// find new x
+				for (int k = 0; k < nDim; k++) {
+					x[k] = currentX[k] - ctx.lineSearch_lambda * grad[k];
+				}
+				objective.project(ctx, x);
+
+				// compute f at the new x
+				f = objective.getLineSearchValue(ctx, currentX, grad, x);
+				nValueEvaluations++;
+
+				// compute ||currentX - x||^2
+				diff = 0;
+				for (int k = 0; k < nDim; k++) {
+					diff += Math.pow(currentX[k] - x[k], 2);
+				}
+				// check the condition to stop line search
+				if (f - currentF <= (-alpha / ctx.lineSearch_lambda) * diff) {
+					flag = true;
+					break;
+				} else {
+					ctx.lineSearch_lambda *= beta;
+				}
+			}
+			// to see if F actually reduce after every iteration
+			objective.reportIteration(iter, f);
+			if (flag) {// line search successful
+				currentF = f;
+				for (int k = 0; k < nDim; k++) {
+					currentX[k] = x[k];
+				}
+				objective.accept(ctx, currentX);
+				nIterations++;
+			} else {
+				break;// cannot improve further
+			}
+		}
+		objective.getStats().add(nIterations, nValueEvaluations, nGradientEvaluations, startF - currentF);
+	}
+}
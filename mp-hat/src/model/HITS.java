@@ -36,25 +36,20 @@ public class HITS {
 			}
 		}
 		for (int u = 0; u < nUsers; u++) {
-			User currUser = dataset.users[u];
-			if (currUser.followers != null) {
-			for (int i = 0; i < currUser.followers.length; i++) {
-				if (currUser.followerBatches[i] == 1) {
+			for (int i = dataset.followers.offsets[u]; i < dataset.followers.offsets[u + 1]; i++) {
+				if (dataset.followers.batches[i] == 1) {
 					//int in_link_index = currUser.followers[i];
-					int in_link_index = currUser.followers[i].followerIndex;
+					int in_link_index = dataset.followers.neighbors[i];
 					aInMatrix[u][in_link_index] = 1;
 				}
 			}
-			}
-			if (currUser.followings != null) {
-			for (int i = 0; i < currUser.followings.length; i++) {
-				if (currUser.followingBatches[i] == 1) {
+			for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+				if (dataset.followings.batches[i] == 1) {
 					//int out_link_index = currUser.followings[i];
-					int out_link_index = currUser.followings[i].followingIndex;
+					int out_link_index = dataset.followings.neighbors[i];
 					aOutMatrix[u][out_link_index] = 1;
 				}
 			}
-			}
 		}
 	}
 
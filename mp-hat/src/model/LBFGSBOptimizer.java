@@ -0,0 +1,202 @@
+package model;
+
+/***
+ * projected limited-memory BFGS for blocks with lower bounds, in the spirit of
+ * L-BFGS-B: the coordinates that sit at their bound with a gradient pushing
+ * outwards are held fixed, the quasi-Newton direction is computed by the
+ * two-loop recursion on the remaining free coordinates, and the trial points
+ * x0 - t * direction are projected back onto the bounds. The step t starts at
+ * 1, or, as in L-BFGS-B, at initialStepLength / ||grad|| for the steepest
+ * descent iterations (the first one and the restarts), so that their first
+ * trial does not depend on the scale of the gradient. It is multiplied by
+ * backtrack until the Armijo condition f(x) <= f(x0) + alpha * <grad, x - x0>
+ * holds and f(x) <= f(x0), as the projection can make the Armijo bound larger
+ * than f(x0). If a steepest descent line search fails, it is tried again over
+ * the steps of GradientDescentOptimizer, beta, beta^2, ..., and the
+ * optimization stops if that fails too. A failed quasi-Newton line search
+ * restarts from steepest descent, so no step that increases f is accepted.
+ */
+public class LBFGSBOptimizer implements BlockOptimizer {
+	private int memory;// number of (s, y) pairs kept
+	private double alpha;
+	private double backtrack;
+	private double initialStepLength;// of the steepest descent steps
+	private double beta;// of the fallback steps
+	private int maxLineSearchIterations;
+	private double tolerance;// on the largest free gradient coordinate
+
+	public LBFGSBOptimizer(int _memory, double _alpha, double _backtrack, double _initialStepLength, double _beta,
+			int _maxLineSearchIterations, double _tolerance) {
+		memory = _memory;
+		alpha = _alpha;
+		backtrack = _backtrack;
+		initialStepLength = _initialStepLength;
+		beta = _beta;
+		maxLineSearchIterations = _maxLineSearchIterations;
+		tolerance = _tolerance;
+	}
+
+	@Override
+	public void minimize(OptimizerContext ctx, BlockObjective objective, double[] currentX, int maxIterations) {
+		int nDim = objective.getDimension();
+		OptimizerContext.BlockBuffers buffers = ctx.getBlockBuffers(nDim);
+		buffers.ensureHistory(memory);
+		double[] grad = buffers.grad;
+		double[] previousGrad = buffers.previousGrad;
+		double[] direction = buffers.direction;
+		double[] x = buffers.x;
+		double[][] s = buffers.s;
+		double[][] y = buffers.y;
+		double[] rho = buffers.rho;
+		double[] historyAlpha = buffers.historyAlpha;
+
+		double startF = objective.getValue(ctx, currentX);
+		double currentF = startF;
+		objective.getGradient(ctx, currentX, grad);
+		int nIterations = 0;
+		int nValueEvaluations = 1;
+		int nGradientEvaluations = 1;
+		int nPairs = 0;
+		int newest = -1;
+
+		for (int iter = 0; iter < maxIterations; iter++) {
+			// free coordinates: not fixed, and not at the bound with the
+			// gradient pushing outwards. The direction is 0 elsewhere
+			double maxGrad = 0;
+			for (int i = 0; i < nDim; i++) {
+				if (isFree(objective, currentX, grad, i)) {
+					direction[i] = grad[i];
+					maxGrad = Math.max(maxGrad, Math.abs(grad[i]));
+				} else {
+					direction[i] = 0;
+				}
+			}
+			if (maxGrad < tolerance) {
+				break;
+			}
+
+			// two-loop recursion: direction = H * grad on the free
+			// coordinates
+			boolean steepest = true;
+			if (nPairs > 0) {
+				for (int j = 0; j < nPairs; j++) {
+					int h = (newest - j + memory) % memory;
+					historyAlpha[h] = rho[h] * dot(nDim, s[h], direction);
+					for (int i = 0; i < nDim; i++) {
+						direction[i] -= historyAlpha[h] * y[h][i];
+					}
+				}
+				double scale = dot(nDim, s[newest], y[newest]) / dot(nDim, y[newest], y[newest]);
+				for (int i = 0; i < nDim; i++) {
+					direction[i] *= scale;
+				}
+				for (int j = nPairs - 1; j >= 0; j--) {
+					int h = (newest - j + memory) % memory;
+					double b = rho[h] * dot(nDim, y[h], direction);
+					for (int i = 0; i < nDim; i++) {
+						direction[i] += s[h][i] * (historyAlpha[h] - b);
+					}
+				}
+				for (int i = 0; i < nDim; i++) {
+					if (!isFree(objective, currentX, grad, i)) {
+						direction[i] = 0;
+					}
+				}
+				if (dot(nDim, grad, direction) > 0) {
+					steepest = false;
+				} else {
+					// not a descent direction, restart from steepest descent
+					nPairs = 0;
+					for (int i = 0; i < nDim; i++) {
+						direction[i] = isFree(objective, currentX, grad, i) ? grad[i] : 0;
+					}
+				}
+			}
+
+			// projected backtracking line search along -direction, then for
+			// steepest descent over the steps of GradientDescentOptimizer
+			objective.prepareLineSearch(ctx, currentX, direction);
+			boolean flag = false;
+			double f = Double.MAX_VALUE;
+			for (int attempt = 0; attempt < (steepest ? 2 : 1) && !flag; attempt++) {
+				double factor = backtrack;
+				if (attempt == 1) {
+					ctx.lineSearch_lambda = beta;
+					factor = beta;
+				} else if (steepest) {
+					ctx.lineSearch_lambda = initialStepLength / Math.sqrt(dot(nDim, direction, direction));
+				} else {
+					ctx.lineSearch_lambda = 1;
+				}
+				for (int lineSearchIter = 0; lineSearchIter < maxLineSearchIterations; lineSearchIter++) {
+					for (int i = 0; i < nDim; i++) {
+						x[i] = (direction[i] == 0) ? currentX[i] : currentX[i] - ctx.lineSearch_lambda * direction[i];
+					}
+					objective.project(ctx, x);
+					f = objective.getLineSearchValue(ctx, currentX, direction, x);
+					nValueEvaluations++;
+					double decrease = 0;
+					for (int i = 0; i < nDim; i++) {
+						if (direction[i] != 0) {
+							decrease += grad[i] * (x[i] - currentX[i]);
+						}
+					}
+					if (f <= currentF + alpha * decrease && f <= currentF) {
+						flag = true;
+						break;
+					}
+					ctx.lineSearch_lambda *= factor;
+				}
+			}
+			objective.reportIteration(iter, f);
+			if (!flag) {
+				if (steepest) {
+					break;// cannot improve further
+				}
+				// restart from steepest descent
+				nPairs = 0;
+				continue;
+			}
+
+			// accept, and store the new (s, y) pair
+			int h = (newest + 1) % memory;
+			for (int i = 0; i < nDim; i++) {
+				s[h][i] = (direction[i] == 0) ? 0 : x[i] - currentX[i];
+				currentX[i] = x[i];
+			}
+			currentF = f;
+			objective.accept(ctx, currentX);
+			nIterations++;
+
+			System.arraycopy(grad, 0, previousGrad, 0, nDim);
+			objective.getGradient(ctx, currentX, grad);
+			nGradientEvaluations++;
+			for (int i = 0; i < nDim; i++) {
+				y[h][i] = (objective.isFixed(i)) ? 0 : grad[i] - previousGrad[i];
+			}
+			double sy = dot(nDim, s[h], y[h]);
+			if (sy > 1e-10 * dot(nDim, y[h], y[h])) {
+				// curvature condition holds, keep the pair
+				rho[h] = 1 / sy;
+				newest = h;
+				nPairs = Math.min(nPairs + 1, memory);
+			}
+		}
+		objective.getStats().add(nIterations, nValueEvaluations, nGradientEvaluations, startF - currentF);
+	}
+
+	private static boolean isFree(BlockObjective objective, double[] x, double[] grad, int i) {
+		if (objective.isFixed(i)) {
+			return false;
+		}
+		return !(x[i] <= objective.getLowerBound(i) && grad[i] > 0);
+	}
+
+	private static double dot(int nDim, double[] x, double[] y) {
+		double d = 0;
+		for (int i = 0; i < nDim; i++) {
+			d += x[i] * y[i];
+		}
+		return d;
+	}
+}
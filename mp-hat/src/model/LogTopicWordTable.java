@@ -0,0 +1,192 @@
+package model;
+
+/***
+ * logarithms of the topics' word distributions, computed once whenever the
+ * distributions change and then only read by the samplers and likelihoods.
+ * Values are stored per word, [slot(w) * nTopics + z], so that the K values
+ * of a word are adjacent. Words that are in no post of the dataset need not
+ * be stored: if they are fewer than sparseRatio of the vocabulary, only the
+ * words in posts get a slot, and the others are computed from the source
+ * distributions when asked for.
+ *
+ * The table can be stored in 32 bits (logProbsFloat instead of logProbs),
+ * which halves the bytes that the samplers read per word; the values are
+ * added up in 64 bits by addTo() and the likelihoods.
+ */
+public class LogTopicWordTable {
+	public static double sparseRatio = 0.5;
+
+	private int nTopics;
+	private int nWords;
+	private boolean base10;
+	private int[] wordSlots;// slot of word w, -1 if it has none
+	private int[] slotWords;// word of each slot
+	private int nSlots;
+	public double[] logProbs;// [slot * nTopics + z]
+	public float[] logProbsFloat;// same, if stored in 32 bits
+	private TopicWordStore topicWordDist;// the source of the table
+
+	// ranges of slots to build the table in parallel
+	public int[] startSlots;
+	public int[] endSlots;
+
+	/***
+	 * @param dataset
+	 * @param _nTopics
+	 * @param _base10
+	 *            log10 instead of the natural logarithm
+	 * @param nRanges
+	 *            number of ranges of slots to build the table in parallel
+	 */
+	public LogTopicWordTable(Dataset dataset, int _nTopics, boolean _base10, int nRanges) {
+		this(dataset, _nTopics, _base10, nRanges, false);
+	}
+
+	/***
+	 * @param dataset
+	 * @param _nTopics
+	 * @param _base10
+	 * @param nRanges
+	 * @param singlePrecision
+	 *            store the table in 32 bits
+	 */
+	public LogTopicWordTable(Dataset dataset, int _nTopics, boolean _base10, int nRanges, boolean singlePrecision) {
+		nTopics = _nTopics;
+		nWords = dataset.vocabulary.length;
+		base10 = _base10;
+		boolean[] isInPosts = new boolean[nWords];
+		int nWordsInPosts = 0;
+		for (int u = 0; u < dataset.nUsers; u++) {
+			User currUser = dataset.users[u];
+			for (int n = 0; n < currUser.nPosts; n++) {
+				int[] words = currUser.posts[n].words;
+				for (int i = 0; i < words.length; i++) {
+					if (!isInPosts[words[i]]) {
+						isInPosts[words[i]] = true;
+						nWordsInPosts++;
+					}
+				}
+			}
+		}
+		boolean sparse = nWordsInPosts < sparseRatio * nWords;
+		wordSlots = new int[nWords];
+		slotWords = new int[sparse ? nWordsInPosts : nWords];
+		nSlots = 0;
+		for (int w = 0; w < nWords; w++) {
+			if (!sparse || isInPosts[w]) {
+				slotWords[nSlots] = w;
+				wordSlots[w] = nSlots++;
+			} else {
+				wordSlots[w] = -1;
+			}
+		}
+		if (singlePrecision) {
+			logProbsFloat = new float[nSlots * nTopics];
+		} else {
+			logProbs = new double[nSlots * nTopics];
+		}
+		nRanges = Math.max(1, Math.min(nRanges, nSlots));
+		startSlots = new int[nRanges];
+		endSlots = new int[nRanges];
+		for (int i = 0; i < nRanges; i++) {
+			startSlots[i] = (int) ((long) i * nSlots / nRanges);
+			endSlots[i] = (int) ((long) (i + 1) * nSlots / nRanges);
+		}
+	}
+
+	public boolean isSparse() {
+		return nSlots < nWords;
+	}
+
+	/***
+	 * set the distributions to build the table from, then build the table by
+	 * build() over all the ranges of slots
+	 *
+	 * @param _topicWordDist
+	 */
+	public void setSource(TopicWordStore _topicWordDist) {
+		topicWordDist = _topicWordDist;
+	}
+
+	/***
+	 * compute the logarithms of the words in slots [startSlot, endSlot)
+	 *
+	 * @param startSlot
+	 * @param endSlot
+	 */
+	public void build(int startSlot, int endSlot) {
+		for (int slot = startSlot; slot < endSlot; slot++) {
+			int w = slotWords[slot];
+			int offset = slot * nTopics;
+			if (logProbs != null) {
+				for (int z = 0; z < nTopics; z++) {
+					logProbs[offset + z] = log(topicWordDist.getProb(z, w));
+				}
+			} else {
+				for (int z = 0; z < nTopics; z++) {
+					logProbsFloat[offset + z] = (float) log(topicWordDist.getProb(z, w));
+				}
+			}
+		}
+	}
+
+	private double log(double x) {
+		return base10 ? Math.log10(x) : Math.log(x);
+	}
+
+	/***
+	 * offset of the K values of word w in logProbs (or logProbsFloat), or -1
+	 * if w has no slot
+	 *
+	 * @param w
+	 * @return
+	 */
+	public int getOffset(int w) {
+		int slot = wordSlots[w];
+		return (slot < 0) ? -1 : slot * nTopics;
+	}
+
+	/***
+	 * log of the probability of word w in topic z
+	 *
+	 * @param z
+	 * @param w
+	 * @return
+	 */
+	public double get(int z, int w) {
+		int slot = wordSlots[w];
+		if (slot < 0) {
+			return log(topicWordDist.getProb(z, w));
+		}
+		if (logProbs == null) {
+			return logProbsFloat[slot * nTopics + z];
+		}
+		return logProbs[slot * nTopics + z];
+	}
+
+	/***
+	 * add the log of the probability of word w in every topic z to p[z]
+	 *
+	 * @param w
+	 * @param p
+	 */
+	public void addTo(int w, double[] p) {
+		int slot = wordSlots[w];
+		if (slot < 0) {
+			for (int z = 0; z < nTopics; z++) {
+				p[z] += log(topicWordDist.getProb(z, w));
+			}
+			return;
+		}
+		int offset = slot * nTopics;
+		if (logProbs != null) {
+			for (int z = 0; z < nTopics; z++) {
+				p[z] += logProbs[offset + z];
+			}
+		} else {
+			for (int z = 0; z < nTopics; z++) {
+				p[z] += logProbsFloat[offset + z];
+			}
+		}
+	}
+}
@@ -11,6 +11,8 @@ import java.io.FileWriter;
 public class MPHAT {
 	public String datapath;
 	public Dataset dataset;
+	// users' parameters, in flat per-family arrays
+	public ParameterStore parameters;
 	public int nTopics;
 	public int batch;
 
@@ -115,131 +117,119 @@ public class MPHAT {
 		for (int u = 0; u < dataset.nUsers; u++) {
 			User currUser = dataset.users[u];
 
-			if (currUser.followings != null) {
-				for (int i = 0; i < currUser.followings.length; i++) {
-					for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-						int v = currUser.followings[i].followingIndex;
-						User following = dataset.users[v];
-						int followingPlatform = currUser.followings[i].platform;
-
-						// only consider this user if he exist in the platform
-						if (currUser.platforms[p] == 1) {
-							// only consider follower relationships in the
-							// platform
-							if (followingPlatform == p) {
-								// Compute H_u^p * A_v^p
-								double HupAvp = 0;
-								for (int z = 0; z < nTopics; z++) {
-									HupAvp += currUser.hubs[z] * currUser.topicalPlatformPreference[z][p]
-											* following.authorities[z] * following.topicalPlatformPreference[z][p];
-								}
-								HupAvp = HupAvp * lamda;
-								linkRelationshipLikelihood += Math.log(1 - Math.exp(-HupAvp))
-										- Math.log(Math.exp(-HupAvp) + 1);
+			for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
+					int v = dataset.followings.neighbors[i];
+					int followingPlatform = dataset.followings.platforms[i];
+
+					// only consider this user if he exist in the platform
+					if (currUser.platforms[p] == 1) {
+						// only consider follower relationships in the
+						// platform
+						if (followingPlatform == p) {
+							// Compute H_u^p * A_v^p
+							double HupAvp = 0;
+							for (int z = 0; z < nTopics; z++) {
+								HupAvp += parameters.getHub(u, z) * parameters.getPlatformPreference(u, z, p)
+										* parameters.getAuthority(v, z) * parameters.getPlatformPreference(v, z, p);
 							}
+							HupAvp = HupAvp * lamda;
+							linkRelationshipLikelihood += Math.log(1 - Math.exp(-HupAvp))
+									- Math.log(Math.exp(-HupAvp) + 1);
 						}
 					}
 				}
 			}
-			if (currUser.followers != null) {
-				for (int i = 0; i < currUser.followers.length; i++) {
-					for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-						int v = currUser.followers[i].followerIndex;
-						User follower = dataset.users[v];
-						int followerPlatform = currUser.followers[i].platform;
-
-						// only consider this user if he exist in the platform
-						if (currUser.platforms[p] == 1) {
-							// only consider follower relationships in the
-							// platform
-							if (followerPlatform == p) {
-								// Compute H_u^p * A_v^p
-								double HupAvp = 0;
-								for (int z = 0; z < nTopics; z++) {
-									HupAvp += follower.hubs[z] * follower.topicalPlatformPreference[z][p]
-											* currUser.authorities[z] * currUser.topicalPlatformPreference[z][p];
-
-								}
-								HupAvp = HupAvp * lamda;
-								linkRelationshipLikelihood += Math.log(1 - Math.exp(-HupAvp))
-										- Math.log(Math.exp(-HupAvp) + 1);
+			for (int i = dataset.followers.offsets[u]; i < dataset.followers.offsets[u + 1]; i++) {
+				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
+					int v = dataset.followers.neighbors[i];
+					int followerPlatform = dataset.followers.platforms[i];
+
+					// only consider this user if he exist in the platform
+					if (currUser.platforms[p] == 1) {
+						// only consider follower relationships in the
+						// platform
+						if (followerPlatform == p) {
+							// Compute H_u^p * A_v^p
+							double HupAvp = 0;
+							for (int z = 0; z < nTopics; z++) {
+								HupAvp += parameters.getHub(v, z) * parameters.getPlatformPreference(v, z, p)
+										* parameters.getAuthority(u, z) * parameters.getPlatformPreference(u, z, p);
+
 							}
+							HupAvp = HupAvp * lamda;
+							linkRelationshipLikelihood += Math.log(1 - Math.exp(-HupAvp))
+									- Math.log(Math.exp(-HupAvp) + 1);
 						}
 					}
 				}
 			}
-			if (currUser.nonFollowings != null) {
-				for (int i = 0; i < currUser.nonFollowings.length; i++) {
-					for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-						int v = currUser.nonFollowings[i].followingIndex;
-						User nonFollowing = dataset.users[v];
-						int nonFollowingPlatform = currUser.nonFollowings[i].platform;
-
-						// only consider this user if he exist in the platform
-						if (currUser.platforms[p] == 1) {
-							// only consider follower relationships in the
-							// platform
-							if (nonFollowingPlatform == p) {
-								// Compute H_u^p * A_v^p
-								double HupAvp = 0;
-								for (int z = 0; z < nTopics; z++) {
-									HupAvp += currUser.hubs[z] * currUser.topicalPlatformPreference[z][p]
-											* nonFollowing.authorities[z]
-											* nonFollowing.topicalPlatformPreference[z][p];
-
-								}
-								HupAvp = HupAvp * lamda;
-								linkRelationshipLikelihood += Math.log(2) - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
+			for (int i = dataset.nonFollowings.offsets[u]; i < dataset.nonFollowings.offsets[u + 1]; i++) {
+				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
+					int v = dataset.nonFollowings.neighbors[i];
+					int nonFollowingPlatform = dataset.nonFollowings.platforms[i];
+
+					// only consider this user if he exist in the platform
+					if (currUser.platforms[p] == 1) {
+						// only consider follower relationships in the
+						// platform
+						if (nonFollowingPlatform == p) {
+							// Compute H_u^p * A_v^p
+							double HupAvp = 0;
+							for (int z = 0; z < nTopics; z++) {
+								HupAvp += parameters.getHub(u, z) * parameters.getPlatformPreference(u, z, p)
+										* parameters.getAuthority(v, z)
+										* parameters.getPlatformPreference(v, z, p);
+
 							}
+							HupAvp = HupAvp * lamda;
+							linkRelationshipLikelihood += Math.log(2) - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
 						}
 					}
 				}
 			}
-			if (currUser.nonFollowers != null) {
-				for (int i = 0; i < currUser.nonFollowers.length; i++) {
-					for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-						int v = currUser.nonFollowers[i].followerIndex;
-						User nonFollower = dataset.users[v];
-						int nonFollowerPlatform = currUser.nonFollowers[i].platform;
-
-						// only consider this user if he exist in the platform
-						if (currUser.platforms[p] == 1) {
-							// only consider follower relationships in the
-							// platform
-							if (nonFollowerPlatform == p) {
-								// Compute H_u^p * A_v^p
-								double HupAvp = 0;
-								for (int z = 0; z < nTopics; z++) {
-									HupAvp += nonFollower.hubs[z] * nonFollower.topicalPlatformPreference[z][p]
-											* currUser.authorities[z] * currUser.topicalPlatformPreference[z][p];
-
-								}
-								HupAvp = HupAvp * lamda;
-								linkRelationshipLikelihood += Math.log(2) - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
+			for (int i = dataset.nonFollowers.offsets[u]; i < dataset.nonFollowers.offsets[u + 1]; i++) {
+				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
+					int v = dataset.nonFollowers.neighbors[i];
+					int nonFollowerPlatform = dataset.nonFollowers.platforms[i];
+
+					// only consider this user if he exist in the platform
+					if (currUser.platforms[p] == 1) {
+						// only consider follower relationships in the
+						// platform
+						if (nonFollowerPlatform == p) {
+							// Compute H_u^p * A_v^p
+							double HupAvp = 0;
+							for (int z = 0; z < nTopics; z++) {
+								HupAvp += parameters.getHub(v, z) * parameters.getPlatformPreference(v, z, p)
+										* parameters.getAuthority(u, z) * parameters.getPlatformPreference(u, z, p);
+
 							}
+							HupAvp = HupAvp * lamda;
+							linkRelationshipLikelihood += Math.log(2) - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
 						}
 					}
 				}
 			}
 
 			for (int k = 0; k < nTopics; k++) {
-				linkAuthorityLikelihood += ((sigma - 1) * Math.log(currUser.authorities[k]))
-						- ((currUser.authorities[k] * sigma) / currUser.topicalInterests[k])
-						- (sigma * Math.log(currUser.topicalInterests[k]));
+				linkAuthorityLikelihood += ((sigma - 1) * Math.log(parameters.getAuthority(u, k)))
+						- ((parameters.getAuthority(u, k) * sigma) / parameters.getTopicalInterest(u, k))
+						- (sigma * Math.log(parameters.getTopicalInterest(u, k)));
 				if (Double.isInfinite(linkAuthorityLikelihood)) {
-					System.out.printf("[authority] A[%d] = %.12f\n", k, currUser.authorities[k]);
+					System.out.printf("[authority] A[%d] = %.12f\n", k, parameters.getAuthority(u, k));
 				}
-				linkHubLikelihood += ((delta - 1) * Math.log(currUser.hubs[k]))
-						- ((currUser.hubs[k] * delta) / currUser.topicalInterests[k])
-						- (delta * Math.log(currUser.topicalInterests[k]));
+				linkHubLikelihood += ((delta - 1) * Math.log(parameters.getHub(u, k)))
+						- ((parameters.getHub(u, k) * delta) / parameters.getTopicalInterest(u, k))
+						- (delta * Math.log(parameters.getTopicalInterest(u, k)));
 				if (Double.isInfinite(linkHubLikelihood)) {
-					System.out.printf("[hub] H[%d] = %.12f\n", k, currUser.hubs[k]);
+					System.out.printf("[hub] H[%d] = %.12f\n", k, parameters.getHub(u, k));
 				}
 				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-					linkPlatformLikelihood += (alpha - 1) * Math.log(currUser.topicalPlatformPreference[k][p])
-							- (currUser.topicalPlatformPreference[k][p] / theta);
+					linkPlatformLikelihood += (alpha - 1) * Math.log(parameters.getPlatformPreference(u, k, p))
+							- (parameters.getPlatformPreference(u, k, p) / theta);
 					if (Double.isInfinite(linkPlatformLikelihood)) {
-						System.out.printf("[platform] P[%d] = %.12f\n", k, currUser.topicalPlatformPreference[k][p]);
+						System.out.printf("[platform] P[%d] = %.12f\n", k, parameters.getPlatformPreference(u, k, p));
 					}
 				}
 			}
@@ -255,35 +245,36 @@ public class MPHAT {
 					}
 					double denominator = 0;
 					for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-						denominator += Math.exp(currUser.topicalPlatformPreference[currPost.topic][p]);
+						denominator += Math.exp(parameters.getPlatformPreference(u, currPost.topic, p));
 					}
 					postPlatformLikelihood += Math
-							.log(Math.exp(currUser.topicalPlatformPreference[currPost.topic][currPost.platform])
+							.log(Math.exp(parameters.getPlatformPreference(u, currPost.topic, currPost.platform))
 									/ denominator);
 					if (Double.isInfinite(postPlatformLikelihood)) {
 						System.out.printf("[Post] platform[%d] = %.12f\n", currPost.platform,
-								currUser.topicalPlatformPreference[currPost.topic][currPost.platform]);
+								parameters.getPlatformPreference(u, currPost.topic, currPost.platform));
 					}
 					denominator = 0;
 					for (int k = 0; k < nTopics; k++) {
-						denominator += Math.exp(currUser.topicalInterests[currPost.topic]);
+						denominator += Math.exp(parameters.getTopicalInterest(u, currPost.topic));
 					}
-					postTopicLikelihood += Math.log(Math.exp(currUser.topicalInterests[currPost.topic]) / denominator);
+					postTopicLikelihood += Math.log(Math.exp(parameters.getTopicalInterest(u, currPost.topic))
+							/ denominator);
 					if (Double.isInfinite(postTopicLikelihood)) {
 						System.out.printf("[Post] topic[%d] = %.12f\n", currPost.topic,
-								currUser.topicalInterests[currPost.topic]);
+								parameters.getTopicalInterest(u, currPost.topic));
 					}
 				}
 			}
 
 			for (int k = 0; k < nTopics; k++) {
-				postXLikelihood += ((kappa - 1) * Math.log(currUser.topicalInterests[k]))
-						- (currUser.topicalInterests[k] / theta);
+				postXLikelihood += ((kappa - 1) * Math.log(parameters.getTopicalInterest(u, k)))
+						- (parameters.getTopicalInterest(u, k) / theta);
 				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-					postEtaLikelihood += (alpha - 1) * Math.log(currUser.topicalPlatformPreference[k][p])
-							- (currUser.topicalPlatformPreference[k][p] / theta);
+					postEtaLikelihood += (alpha - 1) * Math.log(parameters.getPlatformPreference(u, k, p))
+							- (parameters.getPlatformPreference(u, k, p) / theta);
 					if (Double.isInfinite(postEtaLikelihood)) {
-						System.out.printf("[Eta] Eta[%d] = %.12f\n", k, currUser.topicalPlatformPreference[k][p]);
+						System.out.printf("[Eta] Eta[%d] = %.12f\n", k, parameters.getPlatformPreference(u, k, p));
 					}
 				}
 			}
@@ -331,10 +322,10 @@ public class MPHAT {
 
 		for (int k = 0; k < nTopics; k++) {
 			// First term in eqn 16
-			hubLikelihood += -((currUser.hubs[k] * delta) / x[k]) - (delta * Math.log(x[k]));
+			hubLikelihood += -((parameters.getHub(u, k) * delta) / x[k]) - (delta * Math.log(x[k]));
 
 			// Second term in eqn 16
-			authorityLikelihood += -((currUser.authorities[k] * sigma) / x[k]) - (sigma * Math.log(x[k]));
+			authorityLikelihood += -((parameters.getAuthority(u, k) * sigma) / x[k]) - (sigma * Math.log(x[k]));
 
 			// Fourth term in eqn 16
 			topicLikelihood += ((kappa - 1) * Math.log(x[k])) - (x[k] / theta);
@@ -384,10 +375,10 @@ public class MPHAT {
 		User currUser = dataset.users[u];
 
 		// First term in eqn 18
-		hubLikelihood = ((currUser.hubs[k] * delta) / Math.pow(x, 2)) - (delta / x);
+		hubLikelihood = ((parameters.getHub(u, k) * delta) / Math.pow(x, 2)) - (delta / x);
 
 		// Second term in eqn 18
-		authorityLikelihood = ((currUser.authorities[k] * sigma) / Math.pow(x, 2)) - (sigma / x);
+		authorityLikelihood = ((parameters.getAuthority(u, k) * sigma) / Math.pow(x, 2)) - (sigma / x);
 
 		// Third term in eqn 18
 		double first_sub_term = 0;
@@ -397,7 +388,7 @@ public class MPHAT {
 			if (z == k) {
 				denominator += Math.exp(x);
 			} else {
-				denominator += Math.exp(currUser.topicalInterests[z]);
+				denominator += Math.exp(parameters.getTopicalInterest(u, z));
 			}
 		}
 		for (int i = 0; i < currUser.nPosts; i++) {
@@ -434,7 +425,8 @@ public class MPHAT {
 	 */
 	private void altOptimize_topicalInterest(int u) {
 		double[] grad = new double[nTopics];
-		double[] currentX = dataset.users[u].topicalInterests;
+		double[] currentX = new double[nTopics];
+		parameters.getTopicVector(parameters.topicalInterests, u, currentX);
 		double[] x = new double[nTopics];
 
 		double currentF = 0 - getLikelihood_topicalInterest(u, currentX);
@@ -482,6 +474,7 @@ public class MPHAT {
 				for (int k = 0; k < nTopics; k++) {
 					currentX[k] = x[k];
 				}
+				parameters.setTopicVector(parameters.topicalInterests, u, currentX);
 				// to see if F actually reduce after every iteration
 				// System.out.printf("alt_topic: u = %d iter = %d f = %f\n", u,
 				// iter, f);
@@ -511,58 +504,52 @@ public class MPHAT {
 		double likelihood = 0;
 
 		// Set the current user to be v
-		User currUser = dataset.users[v];
 
 		// First term in eqn 24. Compute follower likelihood.
-		if (currUser.followers != null) {
-			for (int i = 0; i < currUser.followers.length; i++) {
-				int u = currUser.followers[i].followerIndex;
-				User follower = dataset.users[u];
-				int p = currUser.followers[i].platform;
-
-				// Compute H_u^p * A_v^p
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					HupAvp += follower.hubs[z] * follower.topicalPlatformPreference[z][p] * x[z]
-							* currUser.topicalPlatformPreference[z][p];// now
-					// A_v
-					// is
-					// x
-				}
-				HupAvp = HupAvp * lamda;
-				// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
-				// followerLikelihood += Math.log(fHupAvp);
-				followerLikelihood += Math.log(1 - Math.exp(-HupAvp)) - Math.log(Math.exp(-HupAvp) + 1);
+		for (int i = dataset.followers.offsets[v]; i < dataset.followers.offsets[v + 1]; i++) {
+			int u = dataset.followers.neighbors[i];
+			int p = dataset.followers.platforms[i];
 
+			// Compute H_u^p * A_v^p
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				HupAvp += parameters.getHub(u, z) * parameters.getPlatformPreference(u, z, p) * x[z]
+						* parameters.getPlatformPreference(v, z, p);// now
+				// A_v
+				// is
+				// x
 			}
+			HupAvp = HupAvp * lamda;
+			// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
+			// followerLikelihood += Math.log(fHupAvp);
+			followerLikelihood += Math.log(1 - Math.exp(-HupAvp)) - Math.log(Math.exp(-HupAvp) + 1);
+
 		}
 
 		// Second term in eqn 24. Compute non follower likelihood.
-		if (currUser.nonFollowers != null) {
-			for (int i = 0; i < currUser.nonFollowers.length; i++) {
-				int u = currUser.nonFollowers[i].followerIndex;
-				User nonFollower = dataset.users[u];
-				int p = currUser.nonFollowers[i].platform;
-
-				// Compute H_u * A_v
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					HupAvp += nonFollower.hubs[z] * nonFollower.topicalPlatformPreference[z][p] * x[z]
-							* currUser.topicalPlatformPreference[z][p];// now
-					// A_v
-					// is
-					// x
-				}
-				HupAvp = HupAvp * lamda;
-				// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
-				// nonFollowerLikelihood += Math.log(1 - fHupAvp);
-				nonFollowerLikelihood += Math.log(2) - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
+		for (int i = dataset.nonFollowers.offsets[v]; i < dataset.nonFollowers.offsets[v + 1]; i++) {
+			int u = dataset.nonFollowers.neighbors[i];
+			int p = dataset.nonFollowers.platforms[i];
 
+			// Compute H_u * A_v
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				HupAvp += parameters.getHub(u, z) * parameters.getPlatformPreference(u, z, p) * x[z]
+						* parameters.getPlatformPreference(v, z, p);// now
+				// A_v
+				// is
+				// x
 			}
+			HupAvp = HupAvp * lamda;
+			// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
+			// nonFollowerLikelihood += Math.log(1 - fHupAvp);
+			nonFollowerLikelihood += Math.log(2) - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
+
 		}
 		// Third term in eqn 24. Compute post likelihood.
 		for (int k = 0; k < nTopics; k++) {
-			postLikelihood += ((sigma - 1) * Math.log(x[k])) - ((x[k] * sigma) / currUser.topicalInterests[k]);// now
+			postLikelihood += ((sigma - 1) * Math.log(x[k]))
+					- ((x[k] * sigma) / parameters.getTopicalInterest(v, k));// now
 			// A_v
 			// is
 			// x
@@ -591,67 +578,61 @@ public class MPHAT {
 		double gradLikelihood = 0;
 
 		// Set the current user to be v
-		User currUser = dataset.users[v];
 
 		// First term in eqn 26. Compute follower likelihood
-		if (currUser.followers != null) {
-			for (int i = 0; i < currUser.followers.length; i++) {
-				int u = currUser.followers[i].followerIndex;
-				User follower = dataset.users[u];
-				int p = currUser.followers[i].platform;
+		for (int i = dataset.followers.offsets[v]; i < dataset.followers.offsets[v + 1]; i++) {
+			int u = dataset.followers.neighbors[i];
+			int p = dataset.followers.platforms[i];
 
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					if (z == k) {
-						HupAvp += follower.hubs[z] * follower.topicalPlatformPreference[z][p] * x
-								* currUser.topicalPlatformPreference[z][p];
-					} else {
-						HupAvp += follower.hubs[z] * follower.topicalPlatformPreference[z][p] * currUser.authorities[z]
-								* currUser.topicalPlatformPreference[z][p];
-					}
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				if (z == k) {
+					HupAvp += parameters.getHub(u, z) * parameters.getPlatformPreference(u, z, p) * x
+							* parameters.getPlatformPreference(v, z, p);
+				} else {
+					HupAvp += parameters.getHub(u, z) * parameters.getPlatformPreference(u, z, p)
+							* parameters.getAuthority(v, z)
+							* parameters.getPlatformPreference(v, z, p);
 				}
-				HupAvp = HupAvp * lamda;
+			}
+			HupAvp = HupAvp * lamda;
 
-				followerLikelihood += (1 / (1 - Math.exp(-HupAvp)) * -Math.exp(-HupAvp) * -lamda
-						* follower.topicalPlatformPreference[k][p] * follower.hubs[k]
-						* currUser.topicalPlatformPreference[k][p])
-						- (1 / (Math.exp(-HupAvp) + 1) * Math.exp(-HupAvp) * -lamda
-								* follower.topicalPlatformPreference[k][p] * follower.hubs[k]
-								* currUser.topicalPlatformPreference[k][p]);
+			followerLikelihood += (1 / (1 - Math.exp(-HupAvp)) * -Math.exp(-HupAvp) * -lamda
+					* parameters.getPlatformPreference(u, k, p) * parameters.getHub(u, k)
+					* parameters.getPlatformPreference(v, k, p))
+					- (1 / (Math.exp(-HupAvp) + 1) * Math.exp(-HupAvp) * -lamda
+							* parameters.getPlatformPreference(u, k, p) * parameters.getHub(u, k)
+							* parameters.getPlatformPreference(v, k, p));
 
-			}
 		}
 
 		// Second term in eqn 26. Compute non follower likelihood
-		if (currUser.nonFollowers != null) {
-			for (int i = 0; i < currUser.nonFollowers.length; i++) {
-				int u = currUser.nonFollowers[i].followerIndex;
-				User nonFollower = dataset.users[u];
-				int p = currUser.nonFollowers[i].platform;
+		for (int i = dataset.nonFollowers.offsets[v]; i < dataset.nonFollowers.offsets[v + 1]; i++) {
+			int u = dataset.nonFollowers.neighbors[i];
+			int p = dataset.nonFollowers.platforms[i];
 
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					if (z == k) {
-						HupAvp += nonFollower.hubs[z] * nonFollower.topicalPlatformPreference[z][p] * x
-								* currUser.topicalPlatformPreference[z][p];
-					} else {
-						HupAvp += nonFollower.hubs[z] * nonFollower.topicalPlatformPreference[z][p]
-								* currUser.authorities[z] * currUser.topicalPlatformPreference[z][p];
-					}
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				if (z == k) {
+					HupAvp += parameters.getHub(u, z) * parameters.getPlatformPreference(u, z, p) * x
+							* parameters.getPlatformPreference(v, z, p);
+				} else {
+					HupAvp += parameters.getHub(u, z) * parameters.getPlatformPreference(u, z, p)
+							* parameters.getAuthority(v, z) * parameters.getPlatformPreference(v, z, p);
 				}
-				HupAvp = HupAvp * lamda;
+			}
+			HupAvp = HupAvp * lamda;
 
-				nonFollowerLikelihood += (-lamda * currUser.topicalPlatformPreference[k][p] * nonFollower.hubs[k]
-						* nonFollower.topicalPlatformPreference[k][p])
-						- ((1 / (Math.exp(-HupAvp) + 1)) * (Math.exp(-HupAvp))
-								* (-lamda * nonFollower.hubs[k] * nonFollower.topicalPlatformPreference[k][p]
-										* currUser.topicalPlatformPreference[k][p]));
+			nonFollowerLikelihood += (-lamda * parameters.getPlatformPreference(v, k, p) * parameters.getHub(u, k)
+					* parameters.getPlatformPreference(u, k, p))
+					- ((1 / (Math.exp(-HupAvp) + 1)) * (Math.exp(-HupAvp))
+							* (-lamda * parameters.getHub(u, k) * parameters.getPlatformPreference(u, k, p)
+							* parameters.getPlatformPreference(v, k, p)));
 
-			}
 		}
 
 		// Third term in eqn 26. Compute post likelihood
-		postLikelihood = ((sigma - 1) / x) - (sigma / currUser.topicalInterests[k]);
+		postLikelihood = ((sigma - 1) / x) - (sigma / parameters.getTopicalInterest(v, k));
 
 		gradLikelihood = nonFollowerLikelihood + followerLikelihood + postLikelihood;
 
@@ -665,7 +646,8 @@ public class MPHAT {
 	 */
 	private void altOptimize_Authorities(int u) {
 		double[] grad = new double[nTopics];
-		double[] currentX = dataset.users[u].authorities;
+		double[] currentX = new double[nTopics];
+		parameters.getTopicVector(parameters.authorities, u, currentX);
 		double[] x = new double[nTopics];
 
 		double currentF = 0 - getLikelihood_authority(u, currentX);
@@ -713,6 +695,7 @@ public class MPHAT {
 				for (int k = 0; k < nTopics; k++) {
 					currentX[k] = x[k];
 				}
+				parameters.setTopicVector(parameters.authorities, u, currentX);
 				// to see if F actually reduce after every iteration
 				// System.out.printf("alt_authority: u = %d iter = %d f = %f\n",
 				// u, iter, f);
@@ -743,57 +726,51 @@ public class MPHAT {
 		double likelihood = 0;
 
 		// Set the current user to be v
-		User currUser = dataset.users[u];
 
 		// First term in eqn 20. Compute following likelihood.
-		if (currUser.followings != null) {
-			for (int i = 0; i < currUser.followings.length; i++) {
-				int v = currUser.followings[i].followingIndex;
-				User following = dataset.users[v];
-				int p = currUser.followings[i].platform;
-
-				// Compute H_u^p * A_v^p
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					HupAvp += x[z] * currUser.topicalPlatformPreference[z][p] * following.authorities[z]
-							* following.topicalPlatformPreference[z][p];// now
-					// H_u
-					// is
-					// x
-				}
-				HupAvp = HupAvp * lamda;
-				// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
-				// followingLikelihood += Math.log(fHupAvp);
-				followingLikelihood += Math.log(1 - Math.exp(-HupAvp)) - Math.log(Math.exp(-HupAvp) + 1);
+		for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+			int v = dataset.followings.neighbors[i];
+			int p = dataset.followings.platforms[i];
 
+			// Compute H_u^p * A_v^p
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				HupAvp += x[z] * parameters.getPlatformPreference(u, z, p) * parameters.getAuthority(v, z)
+						* parameters.getPlatformPreference(v, z, p);// now
+				// H_u
+				// is
+				// x
 			}
+			HupAvp = HupAvp * lamda;
+			// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
+			// followingLikelihood += Math.log(fHupAvp);
+			followingLikelihood += Math.log(1 - Math.exp(-HupAvp)) - Math.log(Math.exp(-HupAvp) + 1);
+
 		}
 		// Second term in eqn 20. Compute non following likelihood.
-		if (currUser.nonFollowings != null) {
-			for (int i = 0; i < currUser.nonFollowings.length; i++) {
-				int v = currUser.nonFollowings[i].followingIndex;
-				User nonFollowing = dataset.users[v];
-				int p = currUser.nonFollowings[i].platform;
-				// Compute H_u * A_v
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					HupAvp += x[z] * currUser.topicalPlatformPreference[z][p] * nonFollowing.authorities[z]
-							* nonFollowing.topicalPlatformPreference[z][p];// now
-					// H_u
-					// is
-					// x
-				}
-				HupAvp = HupAvp * lamda;
-				// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
-				// nonFollowingLikelihood += Math.log(1 - fHupAvp);
-				nonFollowingLikelihood += Math.log(2) - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
-
+		for (int i = dataset.nonFollowings.offsets[u]; i < dataset.nonFollowings.offsets[u + 1]; i++) {
+			int v = dataset.nonFollowings.neighbors[i];
+			int p = dataset.nonFollowings.platforms[i];
+			// Compute H_u * A_v
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				HupAvp += x[z] * parameters.getPlatformPreference(u, z, p) * parameters.getAuthority(v, z)
+						* parameters.getPlatformPreference(v, z, p);// now
+				// H_u
+				// is
+				// x
 			}
+			HupAvp = HupAvp * lamda;
+			// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
+			// nonFollowingLikelihood += Math.log(1 - fHupAvp);
+			nonFollowingLikelihood += Math.log(2) - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
+
 		}
 
 		// Third term in eqn 20. Compute post likelihood.
 		for (int k = 0; k < nTopics; k++) {
-			postLikelihood += ((delta - 1) * Math.log(x[k])) - ((x[k] * delta) / currUser.topicalInterests[k]);// now
+			postLikelihood += ((delta - 1) * Math.log(x[k]))
+					- ((x[k] * delta) / parameters.getTopicalInterest(u, k));// now
 			// H_u
 			// is
 			// x
@@ -823,66 +800,60 @@ public class MPHAT {
 		double gradLikelihood = 0;
 
 		// Set the current user to be u
-		User currUser = dataset.users[u];
 
 		// First term in eqn 22. Compute following likelihood
-		if (currUser.followings != null) {
-			for (int i = 0; i < currUser.followings.length; i++) {
-				int v = currUser.followings[i].followingIndex;
-				User following = dataset.users[v];
-				int p = currUser.followings[i].platform;
+		for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+			int v = dataset.followings.neighbors[i];
+			int p = dataset.followings.platforms[i];
 
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					if (z == k) {
-						HupAvp += x * currUser.topicalPlatformPreference[z][p] * following.authorities[z]
-								* following.topicalPlatformPreference[z][p];
-					} else {
-						HupAvp += currUser.hubs[z] * currUser.topicalPlatformPreference[z][p] * following.authorities[z]
-								* following.topicalPlatformPreference[z][p];
-					}
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				if (z == k) {
+					HupAvp += x * parameters.getPlatformPreference(u, z, p) * parameters.getAuthority(v, z)
+							* parameters.getPlatformPreference(v, z, p);
+				} else {
+					HupAvp += parameters.getHub(u, z) * parameters.getPlatformPreference(u, z, p)
+							* parameters.getAuthority(v, z)
+							* parameters.getPlatformPreference(v, z, p);
 				}
-				HupAvp = HupAvp * lamda;
+			}
+			HupAvp = HupAvp * lamda;
 
-				followingLikelihood += (1 / (1 - Math.exp(-HupAvp)) * -Math.exp(-HupAvp)
-						* (-lamda * following.authorities[k] * following.topicalPlatformPreference[k][p]
-								* currUser.topicalPlatformPreference[k][p]))
-						- (1 / (Math.exp(-HupAvp) + 1) * Math.exp(-HupAvp)
-								* (-lamda * following.authorities[k] * following.topicalPlatformPreference[k][p]
-										* currUser.topicalPlatformPreference[k][p]));
+			followingLikelihood += (1 / (1 - Math.exp(-HupAvp)) * -Math.exp(-HupAvp)
+					* (-lamda * parameters.getAuthority(v, k) * parameters.getPlatformPreference(v, k, p)
+					* parameters.getPlatformPreference(u, k, p)))
+					- (1 / (Math.exp(-HupAvp) + 1) * Math.exp(-HupAvp)
+							* (-lamda * parameters.getAuthority(v, k) * parameters.getPlatformPreference(v, k, p)
+							* parameters.getPlatformPreference(u, k, p)));
 
-			}
 		}
 
 		// Second term in eqn 22. Compute non following likelihood
-		if (currUser.nonFollowings != null) {
-			for (int i = 0; i < currUser.nonFollowings.length; i++) {
-				int v = currUser.nonFollowings[i].followingIndex;
-				User nonFollowing = dataset.users[v];
-				int p = currUser.nonFollowings[i].platform;
+		for (int i = dataset.nonFollowings.offsets[u]; i < dataset.nonFollowings.offsets[u + 1]; i++) {
+			int v = dataset.nonFollowings.neighbors[i];
+			int p = dataset.nonFollowings.platforms[i];
 
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					if (z == k) {
-						HupAvp += x * currUser.topicalPlatformPreference[z][p] * nonFollowing.authorities[z]
-								* nonFollowing.topicalPlatformPreference[z][p];
-					} else {
-						HupAvp += currUser.hubs[z] * currUser.topicalPlatformPreference[z][p]
-								* nonFollowing.authorities[z] * nonFollowing.topicalPlatformPreference[z][p];
-					}
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				if (z == k) {
+					HupAvp += x * parameters.getPlatformPreference(u, z, p) * parameters.getAuthority(v, z)
+							* parameters.getPlatformPreference(v, z, p);
+				} else {
+					HupAvp += parameters.getHub(u, z) * parameters.getPlatformPreference(u, z, p)
+							* parameters.getAuthority(v, z) * parameters.getPlatformPreference(v, z, p);
 				}
-				HupAvp = HupAvp * lamda;
+			}
+			HupAvp = HupAvp * lamda;
 
-				nonFollowingLikelihood += (-lamda * currUser.topicalPlatformPreference[k][p]
-						* nonFollowing.authorities[k] * nonFollowing.topicalPlatformPreference[k][p])
-						- ((1 / (Math.exp(-HupAvp) + 1)) * (Math.exp(-HupAvp))
-								* (-lamda * nonFollowing.authorities[k] * nonFollowing.topicalPlatformPreference[k][p]
-										* currUser.topicalPlatformPreference[k][p]));
+			nonFollowingLikelihood += (-lamda * parameters.getPlatformPreference(u, k, p)
+					* parameters.getAuthority(v, k) * parameters.getPlatformPreference(v, k, p))
+					- ((1 / (Math.exp(-HupAvp) + 1)) * (Math.exp(-HupAvp))
+							* (-lamda * parameters.getAuthority(v, k) * parameters.getPlatformPreference(v, k, p)
+							* parameters.getPlatformPreference(u, k, p)));
 
-			}
 		}
 		// Third term in eqn 22. Compute post likelihood
-		postLikelihood = ((delta - 1) / x) - (delta / currUser.topicalInterests[k]);
+		postLikelihood = ((delta - 1) / x) - (delta / parameters.getTopicalInterest(u, k));
 
 		gradLikelihood = nonFollowingLikelihood + followingLikelihood + postLikelihood;
 		// gradLikelihood = followingLikelihood;
@@ -897,7 +868,8 @@ public class MPHAT {
 	 */
 	private void altOptimize_Hubs(int u) {
 		double[] grad = new double[nTopics];
-		double[] currentX = dataset.users[u].hubs;
+		double[] currentX = new double[nTopics];
+		parameters.getTopicVector(parameters.hubs, u, currentX);
 		double[] x = new double[nTopics];
 
 		double currentF = 0 - getLikelihood_hub(u, currentX);
@@ -945,6 +917,7 @@ public class MPHAT {
 				for (int k = 0; k < nTopics; k++) {
 					currentX[k] = x[k];
 				}
+				parameters.setTopicVector(parameters.hubs, u, currentX);
 				// to see if F actually reduce after every iteration
 				// System.out.printf("alt_hub: u = %d iter = %d f = %f\n", u,
 				// iter, f);
@@ -977,116 +950,107 @@ public class MPHAT {
 		User currUser = dataset.users[u];
 
 		// First term in eqn 28. Compute link likelihood.
-		if (currUser.followings != null) {
-			for (int i = 0; i < currUser.followings.length; i++) {
-				int v = currUser.followings[i].followingIndex;
-				User following = dataset.users[v];
-				int p = currUser.followings[i].platform;
-
-				// Compute H_u^p * A_v^p
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					if (z == k) {
-						HupAvp += currUser.hubs[z] * x[p] * following.authorities[z]
-								* following.topicalPlatformPreference[z][p];// now
-						// Eta_u,k
-						// is
-						// x
-					} else {
-						HupAvp += currUser.hubs[z] * currUser.topicalPlatformPreference[z][p] * following.authorities[z]
-								* following.topicalPlatformPreference[z][p];
-					}
+		for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+			int v = dataset.followings.neighbors[i];
+			int p = dataset.followings.platforms[i];
 
+			// Compute H_u^p * A_v^p
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				if (z == k) {
+					HupAvp += parameters.getHub(u, z) * x[p] * parameters.getAuthority(v, z)
+							* parameters.getPlatformPreference(v, z, p);// now
+					// Eta_u,k
+					// is
+					// x
+				} else {
+					HupAvp += parameters.getHub(u, z) * parameters.getPlatformPreference(u, z, p)
+							* parameters.getAuthority(v, z)
+							* parameters.getPlatformPreference(v, z, p);
 				}
-				HupAvp = HupAvp * lamda;
-				// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
-				// linkLikelihood += Math.log(fHupAvp);
-				linkLikelihood += Math.log(1 - Math.exp(-HupAvp)) - Math.log(Math.exp(-HupAvp) + 1);
 
 			}
+			HupAvp = HupAvp * lamda;
+			// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
+			// linkLikelihood += Math.log(fHupAvp);
+			linkLikelihood += Math.log(1 - Math.exp(-HupAvp)) - Math.log(Math.exp(-HupAvp) + 1);
+
 		}
-		if (currUser.followers != null) {
-			for (int i = 0; i < currUser.followers.length; i++) {
-				int v = currUser.followers[i].followerIndex;
-				User follower = dataset.users[v];
-				int p = currUser.followers[i].platform;
+		for (int i = dataset.followers.offsets[u]; i < dataset.followers.offsets[u + 1]; i++) {
+			int v = dataset.followers.neighbors[i];
+			int p = dataset.followers.platforms[i];
 
-				// Compute H_u^p * A_v^p
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					if (z == k) {
-						HupAvp += follower.hubs[z] * follower.topicalPlatformPreference[z][p] * currUser.authorities[z]
-								* x[p];// now
-						// Eta_u,k
-						// is
-						// x
-					} else {
-						HupAvp += follower.hubs[z] * follower.topicalPlatformPreference[z][p] * currUser.authorities[z]
-								* currUser.topicalPlatformPreference[z][p];
-					}
+			// Compute H_u^p * A_v^p
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				if (z == k) {
+					HupAvp += parameters.getHub(v, z) * parameters.getPlatformPreference(v, z, p)
+							* parameters.getAuthority(u, z)
+							* x[p];// now
+					// Eta_u,k
+					// is
+					// x
+				} else {
+					HupAvp += parameters.getHub(v, z) * parameters.getPlatformPreference(v, z, p)
+							* parameters.getAuthority(u, z)
+							* parameters.getPlatformPreference(u, z, p);
 				}
-				HupAvp = HupAvp * lamda;
-				// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
-				// linkLikelihood += Math.log(fHupAvp);
-				linkLikelihood += Math.log(1 - Math.exp(-HupAvp)) - Math.log(Math.exp(-HupAvp) + 1);
-
 			}
+			HupAvp = HupAvp * lamda;
+			// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
+			// linkLikelihood += Math.log(fHupAvp);
+			linkLikelihood += Math.log(1 - Math.exp(-HupAvp)) - Math.log(Math.exp(-HupAvp) + 1);
+
 		}
 
 		// Second term in eqn 28. Compute non link likelihood.
-		if (currUser.nonFollowings != null) {
-			for (int i = 0; i < currUser.nonFollowings.length; i++) {
-				int v = currUser.nonFollowings[i].followingIndex;
-				User nonFollowing = dataset.users[v];
-				int p = currUser.nonFollowings[i].platform;
+		for (int i = dataset.nonFollowings.offsets[u]; i < dataset.nonFollowings.offsets[u + 1]; i++) {
+			int v = dataset.nonFollowings.neighbors[i];
+			int p = dataset.nonFollowings.platforms[i];
 
-				// Compute H_u^p * A_v^p
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					if (z == k) {
-						HupAvp += currUser.hubs[z] * x[p] * nonFollowing.authorities[z]
-								* nonFollowing.topicalPlatformPreference[z][p];// now
-						// Eta_u,k
-						// is
-						// x
-					} else {
-						HupAvp += currUser.hubs[z] * currUser.topicalPlatformPreference[z][p]
-								* nonFollowing.authorities[z] * nonFollowing.topicalPlatformPreference[z][p];
-					}
+			// Compute H_u^p * A_v^p
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				if (z == k) {
+					HupAvp += parameters.getHub(u, z) * x[p] * parameters.getAuthority(v, z)
+							* parameters.getPlatformPreference(v, z, p);// now
+					// Eta_u,k
+					// is
+					// x
+				} else {
+					HupAvp += parameters.getHub(u, z) * parameters.getPlatformPreference(u, z, p)
+							* parameters.getAuthority(v, z) * parameters.getPlatformPreference(v, z, p);
 				}
-				HupAvp = HupAvp * lamda;
-				// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
-				// nonLinkLikelihood += Math.log(1 - fHupAvp);
-				nonLinkLikelihood += Math.log(2) - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
-
 			}
+			HupAvp = HupAvp * lamda;
+			// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
+			// nonLinkLikelihood += Math.log(1 - fHupAvp);
+			nonLinkLikelihood += Math.log(2) - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
+
 		}
-		if (currUser.nonFollowers != null) {
-			for (int i = 0; i < currUser.nonFollowers.length; i++) {
-				int v = currUser.nonFollowers[i].followerIndex;
-				User nonFollower = dataset.users[v];
-				int p = currUser.nonFollowers[i].platform;
+		for (int i = dataset.nonFollowers.offsets[u]; i < dataset.nonFollowers.offsets[u + 1]; i++) {
+			int v = dataset.nonFollowers.neighbors[i];
+			int p = dataset.nonFollowers.platforms[i];
 
-				// Compute H_u^p * A_v^p
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					if (z == k) {
-						HupAvp += nonFollower.hubs[z] * nonFollower.topicalPlatformPreference[z][p]
-								* currUser.authorities[z] * x[p];// now
-						// Eta_u,k
-						// is
-						// x
-					} else {
-						HupAvp += nonFollower.hubs[z] * nonFollower.topicalPlatformPreference[z][p]
-								* currUser.authorities[z] * currUser.topicalPlatformPreference[z][p];
-					}
+			// Compute H_u^p * A_v^p
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				if (z == k) {
+					HupAvp += parameters.getHub(v, z) * parameters.getPlatformPreference(v, z, p)
+							* parameters.getAuthority(u, z) * x[p];// now
+					// Eta_u,k
+					// is
+					// x
+				} else {
+					HupAvp += parameters.getHub(v, z) * parameters.getPlatformPreference(v, z, p)
+							* parameters.getAuthority(u, z) * parameters.getPlatformPreference(u, z, p);
 				}
-				HupAvp = HupAvp * lamda;
-				// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
-				// nonLinkLikelihood += Math.log(1 - fHupAvp);
-				nonLinkLikelihood += Math.log(2) - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
-
 			}
+			HupAvp = HupAvp * lamda;
+			// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
+			// nonLinkLikelihood += Math.log(1 - fHupAvp);
+			nonLinkLikelihood += Math.log(2) - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
+
 		}
 
 		// Third term in eqn 28. Compute post likelihood.
@@ -1137,128 +1101,120 @@ public class MPHAT {
 		User currUser = dataset.users[u];
 
 		// First term in eqn 31. Compute link likelihood.
-		if (currUser.followings != null) {
-			for (int i = 0; i < currUser.followings.length; i++) {
-				int v = currUser.followings[i].followingIndex;
-				User following = dataset.users[v];
-				int followingPlatform = currUser.followings[i].platform;
-				if (followingPlatform == p) {
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						if (z == k) {
-							HupAvp += currUser.hubs[z] * x * following.authorities[z]
-									* following.topicalPlatformPreference[z][p];// now
-							// Eta_u,k,p
-							// is
-							// x
-						} else {
-							HupAvp += currUser.hubs[z] * currUser.topicalPlatformPreference[z][p]
-									* following.authorities[z] * following.topicalPlatformPreference[z][p];
-						}
-
+		for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+			int v = dataset.followings.neighbors[i];
+			int followingPlatform = dataset.followings.platforms[i];
+			if (followingPlatform == p) {
+				// Compute H_u^p * A_v^p
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					if (z == k) {
+						HupAvp += parameters.getHub(u, z) * x * parameters.getAuthority(v, z)
+								* parameters.getPlatformPreference(v, z, p);// now
+						// Eta_u,k,p
+						// is
+						// x
+					} else {
+						HupAvp += parameters.getHub(u, z) * parameters.getPlatformPreference(u, z, p)
+								* parameters.getAuthority(v, z) * parameters.getPlatformPreference(v, z, p);
 					}
-					HupAvp = HupAvp * lamda;
 
-					linkLikelihood += (1 / (1 - Math.exp(-HupAvp)) * -Math.exp(-HupAvp)
-							* (-lamda * currUser.hubs[k] * following.authorities[k]
-									* following.topicalPlatformPreference[k][p]))
-							- (1 / (Math.exp(-HupAvp) + 1) * Math.exp(-HupAvp) * (-lamda * currUser.hubs[k]
-									* following.authorities[k] * following.topicalPlatformPreference[k][p]));
 				}
+				HupAvp = HupAvp * lamda;
 
+				linkLikelihood += (1 / (1 - Math.exp(-HupAvp)) * -Math.exp(-HupAvp)
+						* (-lamda * parameters.getHub(u, k) * parameters.getAuthority(v, k)
+						* parameters.getPlatformPreference(v, k, p)))
+						- (1 / (Math.exp(-HupAvp) + 1) * Math.exp(-HupAvp)
+								* (-lamda * parameters.getHub(u, k) * parameters.getAuthority(v, k)
+								* parameters.getPlatformPreference(v, k, p)));
 			}
+
 		}
-		if (currUser.followers != null) {
-			for (int i = 0; i < currUser.followers.length; i++) {
-				int v = currUser.followers[i].followerIndex;
-				User follower = dataset.users[v];
-				int followerPlatform = currUser.followers[i].platform;
-				if (followerPlatform == p) {
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						if (z == k) {
-							HupAvp += follower.hubs[z] * follower.topicalPlatformPreference[z][p]
-									* currUser.authorities[z] * x;// now
-							// Eta_u,k
-							// is x
-						} else {
-							HupAvp += follower.hubs[z] * follower.topicalPlatformPreference[z][p]
-									* currUser.authorities[z] * currUser.topicalPlatformPreference[z][p];
-						}
+		for (int i = dataset.followers.offsets[u]; i < dataset.followers.offsets[u + 1]; i++) {
+			int v = dataset.followers.neighbors[i];
+			int followerPlatform = dataset.followers.platforms[i];
+			if (followerPlatform == p) {
+				// Compute H_u^p * A_v^p
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					if (z == k) {
+						HupAvp += parameters.getHub(v, z) * parameters.getPlatformPreference(v, z, p)
+								* parameters.getAuthority(u, z) * x;// now
+						// Eta_u,k
+						// is x
+					} else {
+						HupAvp += parameters.getHub(v, z) * parameters.getPlatformPreference(v, z, p)
+								* parameters.getAuthority(u, z) * parameters.getPlatformPreference(u, z, p);
 					}
-					HupAvp = HupAvp * lamda;
-
-					linkLikelihood += (1 / (1 - Math.exp(-HupAvp)) * -Math.exp(-HupAvp)
-							* (-lamda * follower.hubs[k] * follower.topicalPlatformPreference[k][p]
-									* currUser.authorities[k]))
-							- (1 / (Math.exp(-HupAvp) + 1) * Math.exp(-HupAvp) * (-lamda * follower.hubs[k]
-									* follower.topicalPlatformPreference[k][p] * currUser.authorities[k]));
 				}
+				HupAvp = HupAvp * lamda;
 
+				linkLikelihood += (1 / (1 - Math.exp(-HupAvp)) * -Math.exp(-HupAvp)
+						* (-lamda * parameters.getHub(v, k) * parameters.getPlatformPreference(v, k, p)
+						* parameters.getAuthority(u, k)))
+						- (1 / (Math.exp(-HupAvp) + 1) * Math.exp(-HupAvp)
+								* (-lamda * parameters.getHub(v, k) * parameters.getPlatformPreference(v, k, p)
+								* parameters.getAuthority(u, k)));
 			}
+
 		}
 
 		// Second term in eqn 31. Compute non link likelihood.
-		if (currUser.nonFollowings != null) {
-			for (int i = 0; i < currUser.nonFollowings.length; i++) {
-				int v = currUser.nonFollowings[i].followingIndex;
-				User nonFollowing = dataset.users[v];
-				int nonFollowingPlatform = currUser.nonFollowings[i].platform;
-				if (nonFollowingPlatform == p) {
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						if (z == k) {
-							HupAvp += currUser.hubs[z] * x * nonFollowing.authorities[z]
-									* nonFollowing.topicalPlatformPreference[z][p];// now
-							// Eta_u,k
-							// is
-							// x
-						} else {
-							HupAvp += currUser.hubs[z] * currUser.topicalPlatformPreference[z][p]
-									* nonFollowing.authorities[z] * nonFollowing.topicalPlatformPreference[z][p];
-						}
+		for (int i = dataset.nonFollowings.offsets[u]; i < dataset.nonFollowings.offsets[u + 1]; i++) {
+			int v = dataset.nonFollowings.neighbors[i];
+			int nonFollowingPlatform = dataset.nonFollowings.platforms[i];
+			if (nonFollowingPlatform == p) {
+				// Compute H_u^p * A_v^p
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					if (z == k) {
+						HupAvp += parameters.getHub(u, z) * x * parameters.getAuthority(v, z)
+								* parameters.getPlatformPreference(v, z, p);// now
+						// Eta_u,k
+						// is
+						// x
+					} else {
+						HupAvp += parameters.getHub(u, z) * parameters.getPlatformPreference(u, z, p)
+								* parameters.getAuthority(v, z) * parameters.getPlatformPreference(v, z, p);
 					}
-					HupAvp = HupAvp * lamda;
-
-					nonLinkLikelihood += (-lamda * currUser.hubs[k] * nonFollowing.authorities[k]
-							* nonFollowing.topicalPlatformPreference[k][p])
-							- ((1 / (Math.exp(-HupAvp) + 1)) * (Math.exp(-HupAvp)) * (-lamda * currUser.hubs[k]
-									* nonFollowing.authorities[k] * nonFollowing.topicalPlatformPreference[k][p]));
 				}
+				HupAvp = HupAvp * lamda;
 
+				nonLinkLikelihood += (-lamda * parameters.getHub(u, k) * parameters.getAuthority(v, k)
+						* parameters.getPlatformPreference(v, k, p))
+						- ((1 / (Math.exp(-HupAvp) + 1)) * (Math.exp(-HupAvp))
+								* (-lamda * parameters.getHub(u, k) * parameters.getAuthority(v, k)
+								* parameters.getPlatformPreference(v, k, p)));
 			}
+
 		}
-		if (currUser.nonFollowers != null) {
-			for (int i = 0; i < currUser.nonFollowers.length; i++) {
-				int v = currUser.nonFollowers[i].followerIndex;
-				User nonFollower = dataset.users[v];
-				int nonFollowerPlatform = currUser.nonFollowers[i].platform;
-				if (nonFollowerPlatform == p) {
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						if (z == k) {
-							HupAvp += nonFollower.hubs[z] * nonFollower.topicalPlatformPreference[z][p]
-									* currUser.authorities[z] * x;// now
-							// Eta_u,k
-							// is x
-						} else {
-							HupAvp += nonFollower.hubs[z] * nonFollower.topicalPlatformPreference[z][p]
-									* currUser.authorities[z] * currUser.topicalPlatformPreference[z][p];
-						}
+		for (int i = dataset.nonFollowers.offsets[u]; i < dataset.nonFollowers.offsets[u + 1]; i++) {
+			int v = dataset.nonFollowers.neighbors[i];
+			int nonFollowerPlatform = dataset.nonFollowers.platforms[i];
+			if (nonFollowerPlatform == p) {
+				// Compute H_u^p * A_v^p
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					if (z == k) {
+						HupAvp += parameters.getHub(v, z) * parameters.getPlatformPreference(v, z, p)
+								* parameters.getAuthority(u, z) * x;// now
+						// Eta_u,k
+						// is x
+					} else {
+						HupAvp += parameters.getHub(v, z) * parameters.getPlatformPreference(v, z, p)
+								* parameters.getAuthority(u, z) * parameters.getPlatformPreference(u, z, p);
 					}
-					HupAvp = HupAvp * lamda;
-
-					nonLinkLikelihood += (-lamda * nonFollower.hubs[k] * nonFollower.topicalPlatformPreference[k][p]
-							* currUser.authorities[k])
-							- ((1 / (Math.exp(-HupAvp) + 1)) * (Math.exp(-HupAvp)) * (-lamda * nonFollower.hubs[k]
-									* nonFollower.topicalPlatformPreference[k][p] * currUser.authorities[k]));
 				}
+				HupAvp = HupAvp * lamda;
 
+				nonLinkLikelihood += (-lamda * parameters.getHub(v, k) * parameters.getPlatformPreference(v, k, p)
+						* parameters.getAuthority(u, k))
+						- ((1 / (Math.exp(-HupAvp) + 1)) * (Math.exp(-HupAvp))
+								* (-lamda * parameters.getHub(v, k) * parameters.getPlatformPreference(v, k, p)
+								* parameters.getAuthority(u, k)));
 			}
+
 		}
 
 		// Third term in eqn 31. Compute post likelihood.
@@ -1269,7 +1225,7 @@ public class MPHAT {
 			if (p == t) {
 				thirdSubTerm += Math.exp(x);
 			} else {
-				thirdSubTerm += Math.exp(currUser.topicalPlatformPreference[k][t]);
+				thirdSubTerm += Math.exp(parameters.getPlatformPreference(u, k, t));
 			}
 		}
 		for (int s = 0; s < currUser.nPosts; s++) {
@@ -1313,7 +1269,8 @@ public class MPHAT {
 		//	currentX[i] = dataset.users[u].topicalPlatformPreference[k][i];
 		//}
 		
-		double[] currentX = dataset.users[u].topicalPlatformPreference[k];
+		double[] currentX = new double[Configure.NUM_OF_PLATFORM];
+		parameters.getPlatformPreferences(u, k, currentX);
 
 		double currentF = 0 - getLikelihood_platformPreference(u, k, currentX);
 
@@ -1356,6 +1313,7 @@ public class MPHAT {
 				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
 					currentX[p] = x[p];
 				}
+				parameters.setPlatformPreferences(u, k, currentX);
 				// to see if F actually reduce after every iteration
 				// System.out.printf("alt_hub: u = %d iter = %d f = %f\n",
 				// u,
@@ -1389,7 +1347,9 @@ public class MPHAT {
 		double max = -Double.MAX_VALUE;
 
 		// Softmax to covert the user topical interests to between 0-1
-		double[] currUserTopicalInterests = tool.MathTool.softmax(currUser.topicalInterests);
+		double[] currUserTopicalInterests = new double[nTopics];
+		tool.MathTool.softmax(parameters.topicalInterests, parameters.topicIndex(u, 0), nTopics,
+				currUserTopicalInterests, 0);
 
 		for (int z = 0; z < nTopics; z++) {
 			// User-topic
@@ -1443,7 +1403,8 @@ public class MPHAT {
 		}
 		System.err.println("Something wrong!!! ");
 		for (int k = 0; k < nTopics; k++) {
-			System.out.printf("theta[%d] = %.12f \t p[%d] = %.12f sump = %.12f\n", k, currUser.topicalInterests[k], k,
+			System.out.printf("theta[%d] = %.12f \t p[%d] = %.12f sump = %.12f\n", k,
+					parameters.getTopicalInterest(u, k), k,
 					p[k], sump);
 		}
 		System.exit(-1);
@@ -1496,7 +1457,8 @@ public class MPHAT {
 	public void gradCheck_TopicalInterest(int u, int k) {
 		double DELTA = 1;
 
-		double[] x = dataset.users[u].topicalInterests;
+		double[] x = new double[nTopics];
+		parameters.getTopicVector(parameters.topicalInterests, u, x);
 
 		double f = getLikelihood_topicalInterest(u, x);
 		double g = gradLikelihood_topicalInterest(u, k, x[k]);
@@ -1525,7 +1487,8 @@ public class MPHAT {
 	public void gradCheck_Authority(int v, int k) {
 		double DELTA = 1;
 
-		double[] x = dataset.users[v].authorities;
+		double[] x = new double[nTopics];
+		parameters.getTopicVector(parameters.authorities, v, x);
 		double f = getLikelihood_authority(v, x);
 		double g = gradLikelihood_authority(v, k, x[k]);
 
@@ -1553,7 +1516,8 @@ public class MPHAT {
 	public void gradCheck_Hub(int u, int k) {
 		double DELTA = 1;
 
-		double[] x = dataset.users[u].hubs;
+		double[] x = new double[nTopics];
+		parameters.getTopicVector(parameters.hubs, u, x);
 
 		double f = getLikelihood_hub(u, x);
 		double g = gradLikelihood_hub(u, k, x[k]);
@@ -1585,7 +1549,7 @@ public class MPHAT {
 
 		double[] x = new double[Configure.NUM_OF_PLATFORM];
 		for (int i = 0; i < Configure.NUM_OF_PLATFORM; i++) {
-			x[i] = dataset.users[u].topicalPlatformPreference[k][i];
+			x[i] = parameters.getPlatformPreference(u, k, i);
 		}
 
 		double f = getLikelihood_platformPreference(u, k, x);
@@ -1669,7 +1633,7 @@ public class MPHAT {
 		System.err.println("Something wrong!!! ");
 		for (int k = 0; k < nTopics; k++) {
 			System.out.printf("theta[%d] = %.12f \t p[%d] = %.12f sump = %.12f\n", k,
-					dataset.users[u].topicalInterests[k], k, p[k], sump);
+					parameters.getTopicalInterest(u, k), k, p[k], sump);
 		}
 		System.exit(-1);
 	}
@@ -1775,11 +1739,10 @@ public class MPHAT {
 		// users' topical interests
 		for (int u = 0; u < dataset.nUsers; u++) {
 			for (int z = 0; z < nTopics; z++) {
-				dataset.users[u].topicalInterests[z] = (final_n_zu[z][u] + alpha)
-						/ (final_sum_nzu[u] + nTopics * alpha);
+				parameters.setTopicalInterest(u, z, (final_n_zu[z][u] + alpha) / (final_sum_nzu[u] + nTopics * alpha));
 
-				if (dataset.users[u].topicalInterests[z] < 0) {
-					System.out.printf("u = %d z = %d theta = %f\n", u, z, dataset.users[u].topicalInterests[z]);
+				if (parameters.getTopicalInterest(u, z) < 0) {
+					System.out.printf("u = %d z = %d theta = %f\n", u, z, parameters.getTopicalInterest(u, z));
 					System.exit(-1);
 				}
 			}
@@ -1806,18 +1769,8 @@ public class MPHAT {
 		n_zw = new int[nTopics][dataset.vocabulary.length];
 		sum_nzw = new int[nTopics];
 		
-		// allocate memory for the users
-		for (int u = 0; u < dataset.nUsers; u++) {
-			User currUser = dataset.users[u];
-			currUser.authorities = new double[nTopics];
-			currUser.hubs = new double[nTopics];
-			currUser.topicalInterests = new double[nTopics];
-			currUser.topicalPlatformPreference = new double[nTopics][Configure.NUM_OF_PLATFORM];
-			currUser.optAuthorities = new double[nTopics];
-			currUser.optHubs = new double[nTopics];
-			currUser.optTopicalInterests = new double[nTopics];
-			currUser.optTopicalPlatformPreference = new double[nTopics][Configure.NUM_OF_PLATFORM];
-		}
+		// allocate memory for the users' parameters
+		parameters = new ParameterStore(dataset.nUsers, nTopics, Configure.NUM_OF_PLATFORM);
 
 		// allocate memory for topics
 		topicWordDist = new double[nTopics][dataset.vocabulary.length];
@@ -1851,7 +1804,7 @@ public class MPHAT {
 					}
 				}
 				for (int z = 0; z < nTopics; z++) {
-					currUser.topicalInterests[z] = (n_zu[z][u] + alpha) / (currUser.nPosts + nTopics * alpha);
+					parameters.setTopicalInterest(u, z, (n_zu[z][u] + alpha) / (currUser.nPosts + nTopics * alpha));
 
 				}
 			}
@@ -1862,20 +1815,20 @@ public class MPHAT {
 			if (initByTopicModeling){
 				double min = Double.POSITIVE_INFINITY;
 				for (int k = 0; k < nTopics; k++) {
-					if (min > currUser.topicalInterests[k]) {
-						min = currUser.topicalInterests[k];
+					if (min > parameters.getTopicalInterest(u, k)) {
+						min = parameters.getTopicalInterest(u, k);
 					}
 				}
 
 				double norm = 1 / min + 0.1;
 
 				for (int k = 0; k < nTopics; k++) {
-					currUser.topicalInterests[k] = Math.log(currUser.topicalInterests[k] * norm);
+					parameters.setTopicalInterest(u, k, Math.log(parameters.getTopicalInterest(u, k) * norm));
 				}
 			} else {
 				for (int k = 0; k < nTopics; k++) {
 					GammaDistribution g = new GammaDistribution(kappa, theta);
-					currUser.topicalInterests[k] = g.sample();
+					parameters.setTopicalInterest(u, k, g.sample());
 				}
 				altOptimize_topics();
 			}
@@ -1887,17 +1840,17 @@ public class MPHAT {
 				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
 					if (currUser.platforms[p] == 1) {
 						g = new GammaDistribution(alpha, theta);
-						currUser.topicalPlatformPreference[k][p] = g.sample();
+						parameters.setPlatformPreference(u, k, p, g.sample());
 					} else {
-						currUser.topicalPlatformPreference[k][p] = Double.NEGATIVE_INFINITY;
+						parameters.setPlatformPreference(u, k, p, Double.NEGATIVE_INFINITY);
 					}
 				}
 				// authority
-				g = new GammaDistribution(sigma, currUser.topicalInterests[k] / sigma);
-				currUser.authorities[k] = g.sample();
+				g = new GammaDistribution(sigma, parameters.getTopicalInterest(u, k) / sigma);
+				parameters.setAuthority(u, k, g.sample());
 				// hub
-				g = new GammaDistribution(delta, currUser.topicalInterests[k] / delta);
-				currUser.hubs[k] = g.sample();
+				g = new GammaDistribution(delta, parameters.getTopicalInterest(u, k) / delta);
+				parameters.setHub(u, k, g.sample());
 			}
 		}
 	}
@@ -1931,11 +1884,8 @@ public class MPHAT {
 			}
 
 			// UserTopicalInterest
-			for (int u = 0; u < dataset.nUsers; u++) {
-				for (int z = 0; z < nTopics; z++) {
-					dataset.users[u].optTopicalInterests[z] = dataset.users[u].topicalInterests[z];
-				}
-			}
+			System.arraycopy(parameters.topicalInterests, 0, parameters.optTopicalInterests, 0,
+					parameters.topicalInterests.length);
 			output_topicWord();
 			output_topicInterest();
 			outputPostTopicTopWords(20);
@@ -1989,17 +1939,7 @@ public class MPHAT {
 					// TopicWordsDist
 					optTopicWordDist = topicWordDist;
 					// set optimized user topical interest, authority and hub
-					for (int u = 0; u < dataset.nUsers; u++) {
-						User currUser = dataset.users[u];
-						for (int z = 0; z < nTopics; z++) {
-							currUser.optTopicalInterests[z] = currUser.topicalInterests[z];
-							currUser.optAuthorities[z] = currUser.authorities[z];
-							currUser.optHubs[z] = currUser.hubs[z];
-							for (int p=0;p < Configure.NUM_OF_PLATFORM; p ++){
-								currUser.optTopicalPlatformPreference[z][p] = currUser.topicalPlatformPreference[z][p];
-							}	
-						}
-					}
+					parameters.saveOpt(0, dataset.nUsers);
 				}
 			}
 			System.out.printf("likelihood after %d steps: %f, max %f ", iter, currentLikelihood, maxLikelihood);
@@ -2061,7 +2001,7 @@ public class MPHAT {
 				User currUser = dataset.users[u];
 				String text = currUser.userId;
 				for (int k = 0; k < nTopics; k++) {
-					text = text + "," + Double.toString(currUser.optTopicalInterests[k]);
+					text = text + "," + Double.toString(parameters.getOptTopicalInterest(u, k));
 				}
 				fo.write(text + "\n");
 			}
@@ -2083,7 +2023,7 @@ public class MPHAT {
 				for (int k = 0; k < nTopics; k++) {
 					for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
 						text = text + "," + p + "," + k + ","
-								+ Double.toString(currUser.optTopicalPlatformPreference[k][p]);
+								+ Double.toString(parameters.getOptPlatformPreference(u, k, p));
 					}
 				}
 				fo.write(text + "\n");
@@ -2104,7 +2044,7 @@ public class MPHAT {
 				User currUser = dataset.users[u];
 				String text = currUser.userId;
 				for (int k = 0; k < nTopics; k++) {
-					text = text + "," + Double.toString(currUser.optAuthorities[k]);
+					text = text + "," + Double.toString(parameters.getOptAuthority(u, k));
 				}
 				fo.write(text + "\n");
 			}
@@ -2124,7 +2064,7 @@ public class MPHAT {
 				User currUser = dataset.users[u];
 				String text = currUser.userId;
 				for (int k = 0; k < nTopics; k++) {
-					text = text + "," + Double.toString(currUser.optHubs[k]);
+					text = text + "," + Double.toString(parameters.getOptHub(u, k));
 				}
 				fo.write(text + "\n");
 			}
@@ -4,12 +4,13 @@ import tool.*;
 
 import java.io.BufferedWriter;
 import java.util.Random;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.math3.distribution.GammaDistribution;
 
 import hoang.larc.tooler.SystemTool;
+import model.PhaseScheduler.Phase;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -23,6 +24,8 @@ public class MultiThreadMPHAT {
 
 	public static String datapath;
 	public static Dataset dataset;
+	// users' parameters, in flat per-family arrays
+	public static ParameterStore parameters;
 	public static int nTopics;
 	public static int nPlatforms = 2;
 	public static int batch;
@@ -47,6 +50,39 @@ public class MultiThreadMPHAT {
 	public static int gibbs_BurningPeriods = 50;
 	public static int max_Gibbs_Iterations = 200; // 200
 	public static int gibbs_Sampling_Gap = 20; // 10
+	// Gibbs initialization in parallel (approximate distributed LDA): the
+	// users are split into gibbs_Ranges ranges, each range is sampled
+	// against its own copy of n_zw taken at the start of the
+	// sweep, and the changes of all the copies are merged after the sweep.
+	// Every post draws from its own stream (see StreamRandom), so the result
+	// depends on the seed and gibbs_Ranges but not on the number of threads.
+	// With one range this is the sequential collapsed Gibbs sampler. The
+	// copies are TopicWordStores like n_zw, so they take gibbs_Ranges times
+	// n_zw.getMemoryBytes(): nTopics ints per dense head word, plus two ints
+	// per slot of the hash tables of the tail words (see TopicWordStore)
+	public static int gibbs_Ranges = 8;
+	private static int[] gibbsStartIndexes = null;
+	private static int[] gibbsEndIndexes = null;
+	private static TopicWordStore[] gibbsLocal_n_zw = null;// [range]
+	private static StreamRandom[] gibbsRands = null;
+	private static int gibbsSweep = 0;
+	// EM iteration of the current topic sampling, which keys its streams
+	private static int topicSampleIteration = 0;
+	private static double[][] gibbsTopicProbs = null;
+	private static int[] gibbsTopicStartIndexes = null;
+	private static int[] gibbsTopicEndIndexes = null;
+
+	// sample the topics of posts, in the Gibbs initialization and EM-Gibbs,
+	// by Metropolis-Hastings with alias-table proposals (TopicAliasSampler)
+	// instead of evaluating every topic. AUTO does so from
+	// aliasSampler_MinTopics topics on
+	public static Configure.TopicSamplerType topicSamplerType = Configure.TopicSamplerType.AUTO;
+	public static int aliasSampler_MinTopics = 64;
+	private static TopicAliasSampler aliasSampler = null;
+
+	// log(topicWordDist), rebuilt whenever topicWordDist changes
+	private static LogTopicWordTable logTopicWordDist = null;
+	private static LogTopicWordTable logTableToBuild = null;
 
 	// priors
 	public static double alpha;// prior for users' platform preferences
@@ -70,22 +106,30 @@ public class MultiThreadMPHAT {
 										// that are
 	// observed in posts by user u
 
-	// topic-word counts
-	public static int[][] n_zw = null; // n_wz[z][w]: number of times word w is
-	// generated by topic z in a post
-	public static int[] sum_nzw = null; // sum_nwz[z]: total number of times
-										// words that
-	// are generated by topic z in a post
+	// topic-word counts, see TopicWordStore
+	public static TopicWordStore n_zw = null; // n_zw.get(z, w): number of times
+	// word w is generated by topic z in a post, n_zw.getSum(z): total number
+	// of times words that are generated by topic z in a post
+	// slots of the words whose counts are dense in the topic-word stores
+	private static int[] topicWordHeadSlots = null;
 
 	// topic-word distribution
-	public static double[][] topicWordDist = null; // topicWordDist[k][w]: the
-	// distribution of word w for topic
-	// k. Sum of each words distribution
-	// for each k = 1. This tau in our
-	// paper
-
-	public static double[][] optTopicWordDist = null; // optimized
-														// topicWordDist[k][w]
+	public static TopicWordStore topicWordDist = null; // the counts of
+	// topicWordDist.getProb(k, w): the distribution of word w for topic k.
+	// Sum of each words distribution for each k = 1. This tau in our paper
+
+	public static TopicWordStore optTopicWordDist = null; // optimized
+															// topicWordDist
+	// the buffer that altOptimize_topics() writes into while topicWordDist
+	// is shared with optTopicWordDist, see saveOptimalSolution()
+	private static TopicWordStore spareTopicWordDist = null;
+	// re-estimate the topics' word distributions on all the threads (see
+	// TopicWordCounter), false: the single-threaded reference
+	public static boolean useParallelTopicCounts = true;
+	// also count on a single thread and check that the counts are the same
+	public static boolean verifyParallelTopicCounts = false;
+	private static TopicWordCounter topicWordCounter = null;
+	private static int topicWordMergeStride;
 
 	public static double globalTopicInterestsMin = Double.POSITIVE_INFINITY;
 
@@ -93,158 +137,374 @@ public class MultiThreadMPHAT {
 	public static double lineSearch_alpha = 0.0001;
 	public static double lineSearch_beta = 0.1;
 	public static int lineSearch_MaxIterations = 10;
-	public static double lineSearch_lambda;
+	// compute gradients of all the topics in one pass over the neighbors
+	public static boolean useFusedGradients = true;
+	// evaluate line search steps of authorities and hubs from cached per-edge
+	// dot products instead of recomputing the edge scores
+	public static boolean useDirectionalLineSearch = true;
+	// keep the scores of all the links and non-links in an edge-indexed cache
+	// that is updated when hubs, authorities, or platform preferences change
+	public static boolean useEdgeScoreCache = true;
+	// save a new best solution by sharing the current topics and users'
+	// parameters with the optimized ones, copying them only when they change
+	// afterwards, instead of copying all of them at once
+	public static boolean useLazyOptSnapshot = true;
+	public static EdgeScoreCache edgeScoreCache = null;
+	// likelihood of the solution kept by the last train()
+	private static double trainedLikelihood = Double.NaN;
+	// line search state and scratch buffers of each worker thread
+	private static ThreadLocal<OptimizerContext> optimizerContexts = new ThreadLocal<OptimizerContext>() {
+		@Override
+		protected OptimizerContext initialValue() {
+			return new OptimizerContext();
+		}
+	};
 
 	public static int maxIteration_topicalInterest = 10;
 	public static int maxIteration_Authorities = 10;
 	public static int maxIteration_Hubs = 10;
 	public static int maxIteration_platformPreference = 10;
 
+	// optimizer of each family of parameters
+	public static Configure.OptimizerType optimizer_topicalInterest = Configure.OptimizerType.GRADIENT_DESCENT;
+	public static Configure.OptimizerType optimizer_Authorities = Configure.OptimizerType.GRADIENT_DESCENT;
+	public static Configure.OptimizerType optimizer_Hubs = Configure.OptimizerType.GRADIENT_DESCENT;
+	public static Configure.OptimizerType optimizer_platformPreference = Configure.OptimizerType.GRADIENT_DESCENT;
+	// number of (s, y) pairs kept by L-BFGS, its stopping tolerance on the
+	// largest free gradient coordinate, and the length of the first trial of
+	// its steepest descent steps
+	public static int lbfgs_Memory = 5;
+	public static double lbfgs_Tolerance = 1e-6;
+	public static double lbfgs_InitialStepLength = 1;
+	// print the iterations and evaluations of the optimizers after each phase
+	public static boolean opt_stats_verbose = false;
+	// the optimizers are created again in train() from the current settings
+	private static BlockOptimizer interestOptimizer = createBlockOptimizer(optimizer_topicalInterest);
+	private static BlockOptimizer authorityOptimizer = createBlockOptimizer(optimizer_Authorities);
+	private static BlockOptimizer hubOptimizer = createBlockOptimizer(optimizer_Hubs);
+	private static BlockOptimizer platformPreferenceOptimizer = createBlockOptimizer(optimizer_platformPreference);
+	private static OptimizerStats interestStats = new OptimizerStats();
+	private static OptimizerStats authorityStats = new OptimizerStats();
+	private static OptimizerStats hubStats = new OptimizerStats();
+	private static OptimizerStats platformPreferenceStats = new OptimizerStats();
+
 	public static int max_GibbsEM_Iterations = 200;
 
+	// write a checkpoint every checkpoint_Interval EM iterations (0: never)
+	// and on shutdown, to checkpoint_Path or else outputPath/checkpoint.bin,
+	// see CheckpointManager and resume(). On shutdown, training stops at the
+	// end of the current phase, waited for at most checkpoint_StopTimeout
+	// seconds before keeping the last checkpoint. The shutdown hook is only
+	// installed if checkpoint_Interval > 0
+	public static int checkpoint_Interval = 0;
+	public static String checkpoint_Path = null;
+	public static int checkpoint_StopTimeout = 30;
+	private static String resumePath = null;
+
+	// warm start from a previous model of the same number of topics: its
+	// output directory (outputPath/K/omega_*_phi_*) or a checkpoint, see
+	// WarmStart and warmStart(). The users in it start from its parameters,
+	// the new users from the Gibbs initialization, which then runs
+	// warmStart_GibbsBurningPeriods + warmStart_GibbsIterations sweeps, as
+	// the previous users' posts start close to the previous topics
+	public static int warmStart_GibbsBurningPeriods = 20;
+	public static int warmStart_GibbsIterations = 40;
+	private static String warmStartPath = null;
+	private static WarmStart warmStart = null;
+
+	// learn hubs and authorities (and platform preferences, if links are used
+	// in learning them) by mini-batch SGD over the links with non-links drawn
+	// on the fly, see StochasticTrainer, instead of the alternating steps
+	public static boolean useStochasticTraining = false;
+	// check that the mini-batch SGD epochs of every EM iteration raise the
+	// likelihood or the held-out likelihood, see StochasticTrainer
+	public static boolean verifyStochasticTraining = false;
+	private static StochasticTrainer stochasticTrainer = null;
+
+	// update the topical interests, authorities, hubs and platform
+	// preferences of every user in turn, with the users taken from a shared
+	// queue by all the workers and the parameters updated in place without
+	// locks or barriers between the families (Hogwild). Each EM iteration
+	// runs async_EpochsPerIteration sweeps over the users while a background
+	// thread samples the likelihood and ends the training once it converges.
+	// Every sweep is a phase of its own, in a new random order of the users,
+	// so that a user is only updated by one worker at a time (as assumed by
+	// ParameterStore.beforeUpdate)
+	public static boolean asynchronousTraining = false;
+	public static int async_EpochsPerIteration = 1;
+	public static long async_LikelihoodInterval = 1000;// ms
+	public static int async_LikelihoodSampleSize = 1000;// users
+	public static double async_Tolerance = 1e-5;// relative improvement
+	public static int async_Patience = 3;// samples
+	private static int[] asyncUserOrder = null;
+	private static AtomicLong asyncNextUpdate = new AtomicLong();
+	private static volatile long asyncFinishedUpdates = 0;// by past sweeps
+	private static volatile boolean asyncStop = false;
+	private static volatile boolean asyncConverged = false;
+
 	public static int nParallelThreads = 20;
 	public static int[] threadStartIndexes = null;
 	public static int[] threadEndIndexes = null;
+	public static PhaseScheduler scheduler = null;
+	// split users into chunks of equal estimated cost (by #posts and degree)
+	// instead of equal #users. Each thread gets about nChunksPerThread chunks
+	// and idle threads steal the remaining ones
+	public static boolean balanceUserPartitions = true;
+	public static int nChunksPerThread = 4;
+	// FLOAT: store the per-platform authorities and hubs and the log
+	// topic-word table in 32 bits (see ParameterStore)
+	public static Configure.StoragePrecision storagePrecision = Configure.StoragePrecision.DOUBLE;
 
 	public static double[] threadLikelihood;
 
+	// keep the likelihood contribution of every user and recompute only
+	// those of the users whose parameters, or whose neighbors' hubs,
+	// authorities or platform preferences, changed since the last
+	// computation. The topics' prior is cached until topicWordDist changes
+	public static boolean useIncrementalLikelihood = true;
+	// also compute the likelihood from scratch and compare
+	public static boolean verifyIncrementalLikelihood = false;
+	private static double[] userLikelihoods = null;
+	private static boolean[] isLikelihoodDirty = null;
+	private static boolean[] isNeighborLikelihoodDirty = null;
+	private static volatile boolean hasDirtyLikelihood = true;
+	private static double cachedUserLikelihood;
+	private static double topicPriorLikelihood;
+	private static boolean isTopicPriorDirty = true;
+
 	private double postLastLogLikelidhood;
 	private double postLastLogPerplexity;
 	private double postOptLogLikelidhood;
 	private double postOptLogPerplexity;
 
-	static class ChildThread implements Runnable {
+	static class ChildThread extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
 		private int threadId;
 		private int threadStartIndex;
 		private int threadEndIndex;
-		private String runOption;
-
-		public ChildThread(int start, int end, String run) {
-			this.threadStartIndex = start;
-			this.threadEndIndex = end;
-			runOption = run;
-		}
+		private Phase phase;
 
-		public ChildThread(int _threadId, int start, int end) {
+		public ChildThread(int _threadId, int start, int end, Phase _phase) {
 			this.threadId = _threadId;
 			this.threadStartIndex = start;
 			this.threadEndIndex = end;
-			runOption = "getLoglikelihood";
+			this.phase = _phase;
 		}
 
 		@Override
-		public void run() {
-			if (runOption.equals("optTopicInterests")) {
-				optTopicalInterests(threadStartIndex, threadEndIndex);
-			} else if (runOption.equals("optAuthorities")) {
-				optAuthorities(threadStartIndex, threadEndIndex);
-			} else if (runOption.equals("optHubs")) {
-				optHubs(threadStartIndex, threadEndIndex);
-			} else if (runOption.equals("optPlatformPreferences")) {
-				optPlatformPreferences(threadStartIndex, threadEndIndex);
-			} else if (runOption.equals("topicSample")) {
-				topicSample(threadStartIndex, threadEndIndex);
-			} else if (runOption.equals("updateOpt")) {
+		protected void compute() {
+			long startTime = System.nanoTime();
+			OptimizerContext ctx = getOptimizerContext();
+			switch (phase) {
+			case OPT_TOPIC_INTERESTS:
+				optTopicalInterests(ctx, threadStartIndex, threadEndIndex);
+				break;
+			case OPT_AUTHORITIES:
+				optAuthorities(ctx, threadStartIndex, threadEndIndex);
+				break;
+			case OPT_HUBS:
+				optHubs(ctx, threadStartIndex, threadEndIndex);
+				break;
+			case OPT_PLATFORM_PREFERENCES:
+				optPlatformPreferences(ctx, threadStartIndex, threadEndIndex);
+				break;
+			case TOPIC_SAMPLE:
+				topicSample(ctx, threadStartIndex, threadEndIndex);
+				break;
+			case UPDATE_OPT:
 				updateOptimalParams(threadStartIndex, threadEndIndex);
-			} else if (runOption.equals("initPostTopic")) {
-				initUserPostTopic(threadStartIndex, threadEndIndex);
-			} else if (runOption.equals("getLoglikelihood")) {
+				break;
+			case INIT_POST_TOPIC:
+				initUserPostTopic(ctx, threadStartIndex, threadEndIndex);
+				break;
+			case GET_LOGLIKELIHOOD:
 				getLogLikelihood(threadStartIndex, threadEndIndex);
-			} else if (runOption.equals("randomInitUser")) {
-				randomInitAuthorityHubPlatformPreference(threadStartIndex, threadEndIndex);
-			} else if (runOption.equals("gibbsInitUser")) {
+				break;
+			case MARK_LIKELIHOOD_NEIGHBORS:
+				markLikelihoodNeighbors(threadStartIndex, threadEndIndex);
+				break;
+			case RANDOM_INIT_USER:
+				randomInitAuthorityHubPlatformPreference(ctx, threadStartIndex, threadEndIndex);
+				break;
+			case GIBBS_INIT_USER:
 				gibbsInitAuthorityHubPlatformPreference(threadStartIndex, threadEndIndex);
+				break;
+			case REFRESH_EDGE_SCORES:
+				refreshEdgeScores(threadStartIndex, threadEndIndex);
+				break;
+			case ASYNC_OPT_USERS:
+				optUsersAsynchronously(ctx);
+				break;
+			case GIBBS_INIT_SWEEP:
+				gibbsSweep(threadId, threadStartIndex, threadEndIndex);
+				break;
+			case GIBBS_INIT_MERGE:
+				mergeGibbsCounts(threadStartIndex, threadEndIndex);
+				break;
+			case SGD_HUBS:
+				stochasticTrainer.trainHubs(threadId);
+				break;
+			case SGD_AUTHORITIES:
+				stochasticTrainer.trainAuthorities(threadId);
+				break;
+			case SGD_PLATFORM_PREFERENCES:
+				stochasticTrainer.trainPreferences(threadId);
+				break;
+			case BUILD_LOG_TOPIC_WORD_TABLE:
+				logTableToBuild.build(threadStartIndex, threadEndIndex);
+				break;
+			case BUILD_TOPIC_ALIAS_TABLES:
+				aliasSampler.buildWordTables(threadStartIndex, threadEndIndex, new int[nTopics], new int[nTopics]);
+				break;
+			case COUNT_TOPIC_WORDS:
+				topicWordCounter.count(threadId, dataset, batch, threadStartIndex, threadEndIndex);
+				break;
+			case MERGE_TOPIC_WORD_COUNTS:
+				topicWordCounter.merge(threadStartIndex, threadEndIndex);
+				break;
+			case NORMALIZE_TOPICS:
+				topicWordCounter.scatter(threadStartIndex, threadEndIndex, n_zw);
+				normalizeTopics(threadStartIndex, threadEndIndex);
+				break;
 			}
+			scheduler.recordBusyTime(System.nanoTime() - startTime);
 		}
 
 		private void getLogLikelihood(int startIndex, int endIndex) {
 			threadLikelihood[threadId] = 0;
 			for (int u = startIndex; u < endIndex; u++) {
-				threadLikelihood[threadId] += getLikelihood(u);
+				if (userLikelihoods == null) {
+					threadLikelihood[threadId] += getLikelihood(u);
+					continue;
+				}
+				if (isLikelihoodDirty[u]) {
+					userLikelihoods[u] = getLikelihood(u);
+					isLikelihoodDirty[u] = false;
+				}
+				threadLikelihood[threadId] += userLikelihoods[u];
+			}
+		}
+
+		private void markLikelihoodNeighbors(int startIndex, int endIndex) {
+			for (int u = startIndex; u < endIndex; u++) {
+				if (isNeighborLikelihoodDirty[u]) {
+					markNeighbors(dataset.followings, u);
+					markNeighbors(dataset.followers, u);
+					markNeighbors(dataset.nonFollowings, u);
+					markNeighbors(dataset.nonFollowers, u);
+					isNeighborLikelihoodDirty[u] = false;
+				}
+			}
+		}
+
+		private void markNeighbors(RelationGraph relations, int u) {
+			for (int i = relations.offsets[u]; i < relations.offsets[u + 1]; i++) {
+				isLikelihoodDirty[relations.neighbors[i]] = true;
+			}
+		}
+
+		private void refreshEdgeScores(int startIndex, int endIndex) {
+			for (int u = startIndex; u < endIndex; u++) {
+				edgeScoreCache.refreshDirtyOutEdges(dataset, parameters, u, lamda);
 			}
 		}
 
-		private void initUserPostTopic(int startIndex, int endIndex) {
+		private void initUserPostTopic(OptimizerContext ctx, int startIndex, int endIndex) {
 			for (int u = startIndex; u < endIndex; u++) {
-				initPostTopic(u);
+				if (warmStart == null
+						|| !warmStart.initPostTopics(ctx.rand, ctx.topicProbs, dataset.users[u], u, batch)) {
+					initPostTopic(ctx.rand, u);
+				}
 			}
 		}
 
-		private void optTopicalInterests(int startIndex, int endIndex) {
+		private void optTopicalInterests(OptimizerContext ctx, int startIndex, int endIndex) {
 			for (int u = startIndex; u < endIndex; u++)
-				altOptimize_topicalInterest(u);
+				altOptimize_topicalInterest(ctx, u);
 		}
 
-		private void optAuthorities(int startIndex, int endIndex) {
+		private void optAuthorities(OptimizerContext ctx, int startIndex, int endIndex) {
 			for (int u = startIndex; u < endIndex; u++)
-				altOptimize_Authorities(u);
+				altOptimize_Authorities(ctx, u);
 		}
 
-		private void optHubs(int startIndex, int endIndex) {
+		private void optHubs(OptimizerContext ctx, int startIndex, int endIndex) {
 			for (int u = startIndex; u < endIndex; u++)
-				altOptimize_Hubs(u);
+				altOptimize_Hubs(ctx, u);
+		}
+
+		private void optUsersAsynchronously(OptimizerContext ctx) {
+			// the range of the task is ignored: every task keeps taking users
+			// from the shared queue until it is empty
+			while (!asyncStop) {
+				long t = asyncNextUpdate.getAndIncrement();
+				if (t >= asyncUserOrder.length) {
+					break;
+				}
+				optUserAsynchronously(ctx, asyncUserOrder[(int) t]);
+			}
 		}
 
-		private void optPlatformPreferences(int startIndex, int endIndex) {
+		private void optPlatformPreferences(OptimizerContext ctx, int startIndex, int endIndex) {
 			for (int u = startIndex; u < endIndex; u++)
 				for (int k = 0; k < nTopics; k++) {
-					altOptimize_PlatformPreference(u, k);
+					altOptimize_PlatformPreference(ctx, u, k);
 				}
 		}
 
-		private void topicSample(int startIndex, int endIndex) {
+		private void topicSample(OptimizerContext ctx, int startIndex, int endIndex) {
+			// the user proposals are of the previous parameters
+			ctx.topicTable.u = -1;
 			for (int u = startIndex; u < endIndex; u++) {
-				for (int n = 0; n < dataset.users[u].nPosts; n++) {
+				User currUser = dataset.users[u];
+				for (int n = 0; n < currUser.nPosts; n++) {
 					// only consider posts in batch
-					if (dataset.users[u].postBatches[n] == batch) {
-						samplePostTopic_EMGibbs(u, n);
+					if (currUser.postBatches[n] != batch) {
+						continue;
+					}
+					ctx.rand.reset(OptimizerContext.seed, StreamRandom.TOPIC_SAMPLE, topicSampleIteration, u, n);
+					if (aliasSampler != null) {
+						currUser.posts[n].topic = aliasSampler.sampleEMGibbs(ctx.rand, ctx.topicTable, parameters,
+								currUser, u, n);
+					} else {
+						samplePostTopic_EMGibbs(ctx, u, n);
 					}
 				}
 			}
 		}
 
 		private void updateOptimalParams(int startIndex, int endIndex) {
-			for (int u = startIndex; u < endIndex; u++) {
-				User currUser = dataset.users[u];
-				for (int z = 0; z < nTopics; z++) {
-					currUser.optTopicalInterests[z] = currUser.topicalInterests[z];
-					currUser.optAuthorities[z] = currUser.authorities[z];
-					currUser.optHubs[z] = currUser.hubs[z];
-					for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-						currUser.optTopicalPlatformPreference[z][p] = currUser.topicalPlatformPreference[z][p];
-					}
-
-				}
-			}
+			parameters.saveOpt(startIndex, endIndex);
 		}
 
-		private void randomInitAuthorityHubPlatformPreference(int startIndex, int endIndex) {
+		private void randomInitAuthorityHubPlatformPreference(OptimizerContext ctx, int startIndex, int endIndex) {
 			// NormalDistribution g;
+			StreamRandom r = ctx.rand;
 			for (int u = startIndex; u < endIndex; u++) {
 				User currUser = dataset.users[u];
+				r.reset(OptimizerContext.seed, StreamRandom.INIT_USER, 0, u, 0);
 				for (int k = 0; k < nTopics; k++) {
 					// interest
-					GammaDistribution g = new GammaDistribution(kappa, theta);
-					currUser.topicalInterests[k] = g.sample();
+					GammaDistribution g = new GammaDistribution(r, kappa, theta);
+					parameters.setTopicalInterest(u, k, g.sample());
 					// preference
 					for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
 						if (currUser.platforms[p] == 1) {
-							g = new GammaDistribution(alpha, theta);
-							currUser.topicalPlatformPreference[k][p] = g.sample();
+							g = new GammaDistribution(r, alpha, theta);
+							parameters.setPlatformPreference(u, k, p, g.sample());
 						} else {
-							currUser.topicalPlatformPreference[k][p] = Double.NEGATIVE_INFINITY;
+							parameters.setPlatformPreference(u, k, p, Double.NEGATIVE_INFINITY);
 						}
 					}
 					// authority
-					g = new GammaDistribution(sigma, currUser.topicalInterests[k] / sigma);
-					currUser.authorities[k] = g.sample();
+					g = new GammaDistribution(r, sigma, parameters.getTopicalInterest(u, k) / sigma);
+					parameters.setAuthority(u, k, g.sample());
 					// hub
-					g = new GammaDistribution(delta, currUser.topicalInterests[k] / delta);
-					currUser.hubs[k] = g.sample();
+					g = new GammaDistribution(r, delta, parameters.getTopicalInterest(u, k) / delta);
+					parameters.setHub(u, k, g.sample());
 
 					//
-					currUser.topicalRelativePlatformPreference[k] = MathTool
-							.softmax(currUser.topicalPlatformPreference[k]);
+					parameters.updateRelativePlatformPreference(u, k);
 				}
 			}
 		}
@@ -259,8 +519,8 @@ public class MultiThreadMPHAT {
 				} else {
 					double min = Double.POSITIVE_INFINITY;
 					for (int k = 0; k < nTopics; k++) {
-						if (min > currUser.topicalInterests[k]) {
-							min = currUser.topicalInterests[k];
+						if (min > parameters.getTopicalInterest(u, k)) {
+							min = parameters.getTopicalInterest(u, k);
 						}
 					}
 
@@ -268,25 +528,25 @@ public class MultiThreadMPHAT {
 				}
 
 				for (int k = 0; k < nTopics; k++) {
-					currUser.topicalInterests[k] = Math.log(currUser.topicalInterests[k] * norm);
+					parameters.setTopicalInterest(u, k, Math.log(parameters.getTopicalInterest(u, k) * norm));
 				}
 
 				if (InitPlatformPreferenceByTopicModeling) {
 					for (int k = 0; k < nTopics; k++) {
 						double min = Double.POSITIVE_INFINITY;
 						for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-							if (min > currUser.topicalPlatformPreference[k][p]) {
-								min = currUser.topicalPlatformPreference[k][p];
+							if (min > parameters.getPlatformPreference(u, k, p)) {
+								min = parameters.getPlatformPreference(u, k, p);
 							}
 						}
 						norm = 1 / min + 0.1;
 
 						for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
 							if (currUser.platforms[p] == 1) {
-								currUser.topicalPlatformPreference[k][p] = Math
-										.log(currUser.topicalPlatformPreference[k][p] * norm);
+								parameters.setPlatformPreference(u, k, p,
+										Math.log(parameters.getPlatformPreference(u, k, p) * norm));
 							} else {
-								currUser.topicalPlatformPreference[k][p] = Double.NEGATIVE_INFINITY;
+								parameters.setPlatformPreference(u, k, p, Double.NEGATIVE_INFINITY);
 							}
 							// System.out.println(u + "," + k + "," + p + "," +
 							// currUser.topicalPlatformPreference[k][p]);
@@ -301,9 +561,9 @@ public class MultiThreadMPHAT {
 							if (currUser.platforms[p] == 1) {
 								g = new GammaDistribution(alpha, theta);
 								//currUser.topicalPlatformPreference[k][p] = g.sample();
-								currUser.topicalPlatformPreference[k][p] = 0.5;
+								parameters.setPlatformPreference(u, k, p, 0.5);
 							} else {
-								currUser.topicalPlatformPreference[k][p] = Double.NEGATIVE_INFINITY;
+								parameters.setPlatformPreference(u, k, p, Double.NEGATIVE_INFINITY);
 							}
 						}
 					}
@@ -316,33 +576,155 @@ public class MultiThreadMPHAT {
 					// currUser.topicalInterests[k] / sigma);
 					// currUser.authorities[k] = g.sample();
 
-					currUser.authorities[k] = currUser.topicalInterests[k];
+					parameters.setAuthority(u, k, parameters.getTopicalInterest(u, k));
 					// hub
 					// g = new GammaDistribution(delta,
 					// currUser.topicalInterests[k] / delta);
 					// currUser.hubs[k] = g.sample();
-					currUser.hubs[k] = currUser.topicalInterests[k];
+					parameters.setHub(u, k, parameters.getTopicalInterest(u, k));
 
-					currUser.topicalRelativePlatformPreference[k] = MathTool
-							.softmax(currUser.topicalPlatformPreference[k]);
+					parameters.updateRelativePlatformPreference(u, k);
 				}
 			}
 		}
 	}
 
 	public void getThreadIndexes() {
-		threadStartIndexes = new int[nParallelThreads];
-		threadEndIndexes = new int[nParallelThreads];
-		threadLikelihood = new double[nParallelThreads];
-		int chunkLength = Math.floorDiv(dataset.nUsers, nParallelThreads);
-		for (int i = 0; i < nParallelThreads; i++) {
-			threadStartIndexes[i] = i * chunkLength;
-			threadEndIndexes[i] = threadStartIndexes[i] + chunkLength;
+		UserPartitioner partitioner = new UserPartitioner();
+		if (balanceUserPartitions) {
+			partitioner.partitionByCost(dataset, nTopics, nParallelThreads * nChunksPerThread);
+		} else {
+			partitioner.partitionByCount(dataset.nUsers, nParallelThreads);
+		}
+		threadStartIndexes = partitioner.startIndexes;
+		threadEndIndexes = partitioner.endIndexes;
+		threadLikelihood = new double[partitioner.nChunks];
+		for (int i = 0; i < partitioner.nChunks; i++) {
+			System.out.printf("chunk[%d]: start = %d end = %d cost = %.0f\n", i, threadStartIndexes[i],
+					threadEndIndexes[i], partitioner.chunkCosts[i]);
+		}
+		if (scheduler == null || scheduler.getNThreads() != nParallelThreads) {
+			if (scheduler != null) {
+				scheduler.shutdown();
+			}
+			scheduler = new PhaseScheduler(nParallelThreads);
+		}
+	}
+
+	/***
+	 * get the optimizer context of the calling thread
+	 * 
+	 * @return
+	 */
+	static OptimizerContext getOptimizerContext() {
+		OptimizerContext ctx = optimizerContexts.get();
+		ctx.ensureCapacity(nTopics, Configure.NUM_OF_PLATFORM);
+		return ctx;
+	}
+
+	/***
+	 * run a phase on all the user ranges and block until it is done
+	 * 
+	 * @param phase
+	 */
+	private static void runPhase(Phase phase) {
+		scheduler.run(phase, threadStartIndexes, threadEndIndexes);
+	}
+
+	/***
+	 * create the block optimizer of the given type from the line search
+	 * settings
+	 * 
+	 * @param type
+	 * @return
+	 */
+	private static BlockOptimizer createBlockOptimizer(Configure.OptimizerType type) {
+		switch (type) {
+		case LBFGS:
+			return new LBFGSBOptimizer(lbfgs_Memory, lineSearch_alpha, 0.5, lbfgs_InitialStepLength,
+					lineSearch_beta, lineSearch_MaxIterations, lbfgs_Tolerance);
+		default:
+			return new GradientDescentOptimizer(lineSearch_alpha, lineSearch_beta, lineSearch_MaxIterations);
+		}
+	}
+
+	/***
+	 * create the optimizers of all the families of parameters
+	 */
+	public static void initBlockOptimizers() {
+		interestOptimizer = createBlockOptimizer(optimizer_topicalInterest);
+		authorityOptimizer = createBlockOptimizer(optimizer_Authorities);
+		hubOptimizer = createBlockOptimizer(optimizer_Hubs);
+		platformPreferenceOptimizer = createBlockOptimizer(optimizer_platformPreference);
+	}
+
+	/***
+	 * likelihood after a run of the phase, which is recorded by the monitor
+	 * 
+	 * @param monitor
+	 * @param phase
+	 * @param iter
+	 * @param before
+	 *            likelihood before the run
+	 * @return
+	 */
+	private static double getPhaseLikelihood(ConvergenceMonitor monitor, String phase, int iter, double before) {
+		double likelihood = getLikelihood_parallel();
+		monitor.recordPhase(phase, iter, before, likelihood);
+		return likelihood;
+	}
+
+	/***
+	 * the mini-batch SGD epochs of an EM iteration, each running a phase per
+	 * family of parameters, see StochasticTrainer
+	 * 
+	 * @param learnPreference
+	 * @param usePrior
+	 */
+	private static void trainStochastically(boolean learnPreference, boolean usePrior) {
+		stochasticTrainer.startIteration(learnPreference, usePrior);
+		for (int epoch = 0; epoch < StochasticTrainer.nEpochsPerIteration; epoch++) {
+			stochasticTrainer.startEpoch();
+			if (learnUserHub) {
+				runPhase(Phase.SGD_HUBS);
+			}
+			if (learnUserAuthority) {
+				runPhase(Phase.SGD_AUTHORITIES);
+			}
+			if (learnPreference) {
+				runPhase(Phase.SGD_PLATFORM_PREFERENCES);
+			}
+			stochasticTrainer.endEpoch();
 		}
-		threadEndIndexes[nParallelThreads - 1] = dataset.nUsers;
-		for (int i = 0; i < nParallelThreads; i++) {
-			System.out.printf("thread[%d]: start = %d end = %d\n", i, threadStartIndexes[i], threadEndIndexes[i]);
+	}
+
+	/***
+	 * throw if the mini-batch SGD epochs of iter lowered both the likelihood
+	 * and the held-out likelihood
+	 */
+	private static void verifyStochasticTraining(int iter, double before, double after, double heldOutBefore,
+			double heldOutAfter) {
+		System.out.printf("[iter-%d] mini-batch SGD: likelihood %f -> %f, held-out likelihood %f -> %f\n", iter,
+				before, after, heldOutBefore, heldOutAfter);
+		if (after < before && heldOutAfter < heldOutBefore) {
+			throw new IllegalStateException(String.format(
+					"mini-batch SGD lowered the likelihood from %f to %f and the held-out likelihood from %f to %f",
+					before, after, heldOutBefore, heldOutAfter));
+		}
+	}
+
+	/***
+	 * print and reset the counters of the optimizer of one family
+	 * 
+	 * @param stats
+	 * @param iter
+	 * @param name
+	 */
+	private static void outputOptimizerStats(OptimizerStats stats, int iter, String name) {
+		if (opt_stats_verbose) {
+			stats.print(String.format("iter-%d %s", iter, name));
 		}
+		stats.reset();
 	}
 
 	/***
@@ -359,13 +741,13 @@ public class MultiThreadMPHAT {
 
 		n_zu = new int[nTopics][dataset.nUsers];
 		sum_nzu = new int[dataset.nUsers];
-		n_zw = new int[nTopics][dataset.vocabulary.length];
-		sum_nzw = new int[nTopics];
-		topicWordDist = new double[nTopics][dataset.vocabulary.length];
 	}
 
 	/***
-	 * get likelihood of the whole dataset
+	 * get likelihood of the whole dataset. Every link and non-link is counted
+	 * once, with the user it goes out of, and the priors of the authorities
+	 * and hubs are weighted by phi and omega, so that each alternating step
+	 * maximizes this likelihood as a function of its block of parameters
 	 * 
 	 * @return
 	 */
@@ -392,105 +774,55 @@ public class MultiThreadMPHAT {
 		for (int u = 0; u < dataset.nUsers; u++) {
 			User currUser = dataset.users[u];
 			// relationship
-			if (currUser.followings != null) {
-				for (int i = 0; i < currUser.followings.length; i++) {
-					int v = currUser.followings[i].followingIndex;
-					User following = dataset.users[v];
-					int p = currUser.followings[i].platform;
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						HupAvp += currUser.hubs[z] * currUser.topicalRelativePlatformPreference[z][p]
-								* following.authorities[z] * following.topicalRelativePlatformPreference[z][p];
-					}
-					HupAvp = HupAvp * lamda;
-
-					// linkRelationshipLikelihood += Math.log(1 -
-					// Math.exp(-HupAvp)) - Math.log(Math.exp(-HupAvp) + 1);
-
-					temp = Math.exp(-HupAvp);
-					relationshipLikelihood += Math.log(1 - temp) - Math.log(temp + 1);
-				}
-			}
-			if (currUser.followers != null) {
-				for (int i = 0; i < currUser.followers.length; i++) {
-					int v = currUser.followers[i].followerIndex;
-					User follower = dataset.users[v];
-					int p = currUser.followers[i].platform;
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						HupAvp += follower.hubs[z] * follower.topicalRelativePlatformPreference[z][p]
-								* currUser.authorities[z] * currUser.topicalRelativePlatformPreference[z][p];
-
-					}
-					HupAvp = HupAvp * lamda;
-
-					// linkRelationshipLikelihood += Math.log(1 -
-					// Math.exp(-HupAvp)) - Math.log(Math.exp(-HupAvp) + 1);
-
-					temp = Math.exp(-HupAvp);
-					relationshipLikelihood += Math.log(1 - temp) - Math.log(temp + 1);
-				}
-
-			}
-			if (currUser.nonFollowings != null) {
-				for (int i = 0; i < currUser.nonFollowings.length; i++) {
-					int v = currUser.nonFollowings[i].followingIndex;
-					User nonFollowing = dataset.users[v];
-					int p = currUser.nonFollowings[i].platform;
-
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						HupAvp += currUser.hubs[z] * currUser.topicalRelativePlatformPreference[z][p]
-								* nonFollowing.authorities[z] * nonFollowing.topicalRelativePlatformPreference[z][p];
+			for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+				int v = dataset.followings.neighbors[i];
+				int p = dataset.followings.platforms[i];
+				// Compute H_u^p * A_v^p
+				double HupAvp = VectorKernels.dotProduct(nTopics, parameters.hubs, parameters.topicIndex(u, 0),
+						parameters.topicalRelativePlatformPreference, parameters.preferenceIndex(u, 0, p),
+						parameters.authorities, parameters.topicIndex(v, 0),
+						parameters.topicalRelativePlatformPreference, parameters.preferenceIndex(v, 0, p),
+						Configure.NUM_OF_PLATFORM);
+				HupAvp = HupAvp * lamda;
 
-					}
-					HupAvp = HupAvp * lamda;
-					// linkRelationshipLikelihood += Math.log(2) - HupAvp -
-					// Math.log(Math.exp(-HupAvp) + 1);
-					relationshipLikelihood += log2 - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
+				// linkRelationshipLikelihood += Math.log(1 -
+				// Math.exp(-HupAvp)) - Math.log(Math.exp(-HupAvp) + 1);
 
-				}
+				temp = Math.exp(-HupAvp);
+				relationshipLikelihood += Math.log(1 - temp) - Math.log(temp + 1);
 			}
-			if (currUser.nonFollowers != null) {
-				for (int i = 0; i < currUser.nonFollowers.length; i++) {
-
-					int v = currUser.nonFollowers[i].followerIndex;
-					User nonFollower = dataset.users[v];
-					int p = currUser.nonFollowers[i].platform;
-
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						HupAvp += nonFollower.hubs[z] * nonFollower.topicalRelativePlatformPreference[z][p]
-								* currUser.authorities[z] * currUser.topicalRelativePlatformPreference[z][p];
+			for (int i = dataset.nonFollowings.offsets[u]; i < dataset.nonFollowings.offsets[u + 1]; i++) {
+				int v = dataset.nonFollowings.neighbors[i];
+				int p = dataset.nonFollowings.platforms[i];
 
-					}
-					HupAvp = HupAvp * lamda;
-					// linkRelationshipLikelihood += Math.log(2) - HupAvp -
-					// Math.log(Math.exp(-HupAvp) + 1);
+				// Compute H_u^p * A_v^p
+				double HupAvp = VectorKernels.dotProduct(nTopics, parameters.hubs, parameters.topicIndex(u, 0),
+						parameters.topicalRelativePlatformPreference, parameters.preferenceIndex(u, 0, p),
+						parameters.authorities, parameters.topicIndex(v, 0),
+						parameters.topicalRelativePlatformPreference, parameters.preferenceIndex(v, 0, p),
+						Configure.NUM_OF_PLATFORM);
+				HupAvp = HupAvp * lamda;
+				// linkRelationshipLikelihood += Math.log(2) - HupAvp -
+				// Math.log(Math.exp(-HupAvp) + 1);
+				relationshipLikelihood += log2 - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
 
-					relationshipLikelihood += log2 - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
-				}
 			}
 
 			for (int k = 0; k < nTopics; k++) {
 				// authority likelihood given x
-				authorityLikelihood += ((sigma - 1) * Math.log(currUser.authorities[k]))
-						- ((currUser.authorities[k] * sigma) / currUser.topicalInterests[k])
-						- (sigma * Math.log(currUser.topicalInterests[k]));
+				authorityLikelihood += phi * (((sigma - 1) * Math.log(parameters.getAuthority(u, k)))
+						- ((parameters.getAuthority(u, k) * sigma) / parameters.getTopicalInterest(u, k))
+						- (sigma * Math.log(parameters.getTopicalInterest(u, k))));
 				if (Double.isInfinite(authorityLikelihood) || Double.isNaN(authorityLikelihood)) {
-					System.out.printf("[authority] A[%d] = %.12f\n", k, currUser.authorities[k]);
+					System.out.printf("[authority] A[%d] = %.12f\n", k, parameters.getAuthority(u, k));
 					System.exit(0);
 				}
 				// hub likelihood given x
-				hubLikelihood += ((delta - 1) * Math.log(currUser.hubs[k]))
-						- ((currUser.hubs[k] * delta) / currUser.topicalInterests[k])
-						- (delta * Math.log(currUser.topicalInterests[k]));
+				hubLikelihood += omega * (((delta - 1) * Math.log(parameters.getHub(u, k)))
+						- ((parameters.getHub(u, k) * delta) / parameters.getTopicalInterest(u, k))
+						- (delta * Math.log(parameters.getTopicalInterest(u, k))));
 				if (Double.isInfinite(hubLikelihood) || Double.isNaN(hubLikelihood)) {
-					System.out.printf("[hub] H[%d] = %.12f\n", k, currUser.hubs[k]);
+					System.out.printf("[hub] H[%d] = %.12f\n", k, parameters.getHub(u, k));
 					System.exit(0);
 				}
 			}
@@ -499,13 +831,13 @@ public class MultiThreadMPHAT {
 			double topicDenominator = 0;
 			double[] platformDenominators = new double[nTopics];
 			for (int k = 0; k < nTopics; k++) {
-				topicDenominator += Math.exp(currUser.topicalInterests[k]);
+				topicDenominator += Math.exp(parameters.getTopicalInterest(u, k));
 				platformDenominators[k] = 0;
 				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
 					if (currUser.platforms[p] == 0) {
 						continue;
 					}
-					platformDenominators[k] += Math.exp(currUser.topicalPlatformPreference[k][p]);
+					platformDenominators[k] += Math.exp(parameters.getPlatformPreference(u, k, p));
 				}
 				platformDenominators[k] = Math.log(platformDenominators[k]);
 			}
@@ -517,7 +849,7 @@ public class MultiThreadMPHAT {
 					// words
 					for (int w = 0; w < currPost.words.length; w++) {
 						int word = currPost.words[w];
-						postWordLikelihood += Math.log(topicWordDist[currPost.topic][word]);
+						postWordLikelihood += logTopicWordDist.get(currPost.topic, word);
 					}
 
 					// platform
@@ -531,12 +863,12 @@ public class MultiThreadMPHAT {
 					// postPlatformLikelihood += Math
 					// .log(Math.exp(currUser.topicalPlatformPreference[currPost.topic][currPost.platform])
 					// / denominator);
-					postPlatformLikelihood += currUser.topicalPlatformPreference[currPost.topic][currPost.platform]
+					postPlatformLikelihood += parameters.getPlatformPreference(u, currPost.topic, currPost.platform)
 							- platformDenominators[currPost.topic];
 
 					if (Double.isInfinite(postPlatformLikelihood) || Double.isNaN(postPlatformLikelihood)) {
 						System.out.printf("[Post] platform[%d] = %.12f\n", currPost.platform,
-								currUser.topicalPlatformPreference[currPost.topic][currPost.platform]);
+								parameters.getPlatformPreference(u, currPost.topic, currPost.platform));
 						System.exit(0);
 					}
 
@@ -551,10 +883,10 @@ public class MultiThreadMPHAT {
 					// Math.log(Math.exp(currUser.topicalInterests[currPost.topic])
 					// / denominator);
 
-					postTopicLikelihood += currUser.topicalInterests[currPost.topic] - topicDenominator;
+					postTopicLikelihood += parameters.getTopicalInterest(u, currPost.topic) - topicDenominator;
 					if (Double.isInfinite(postTopicLikelihood) || Double.isNaN(postTopicLikelihood)) {
 						System.out.printf("[Post] topic[%d] = %.12f\n", currPost.topic,
-								currUser.topicalInterests[currPost.topic]);
+								parameters.getTopicalInterest(u, currPost.topic));
 						System.exit(0);
 					}
 				}
@@ -563,18 +895,18 @@ public class MultiThreadMPHAT {
 			if (usePrior) {
 				for (int k = 0; k < nTopics; k++) {
 					// users' topical interest prior
-					latentFactorPrior += ((kappa - 1) * Math.log(currUser.topicalInterests[k]))
-							- (currUser.topicalInterests[k] / theta);
+					latentFactorPrior += ((kappa - 1) * Math.log(parameters.getTopicalInterest(u, k)))
+							- (parameters.getTopicalInterest(u, k) / theta);
 					// platform preference prior
 					for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
 						if (currUser.platforms[p] == 0) {
 							continue;
 						}
-						platformPreferencePrior += (alpha - 1) * Math.log(currUser.topicalPlatformPreference[k][p])
-								- (currUser.topicalPlatformPreference[k][p] / theta);
+						platformPreferencePrior += (alpha - 1) * Math.log(parameters.getPlatformPreference(u, k, p))
+								- (parameters.getPlatformPreference(u, k, p) / theta);
 						if (Double.isInfinite(platformPreferencePrior) || Double.isNaN(platformPreferencePrior)) {
 							System.out.printf("[platform] P[%d] = %.12f\n", k,
-									currUser.topicalPlatformPreference[k][p]);
+									parameters.getPlatformPreference(u, k, p));
 							System.exit(0);
 						}
 					}
@@ -585,7 +917,7 @@ public class MultiThreadMPHAT {
 		if (usePrior) {// topics' prior
 			for (int k = 0; k < nTopics; k++) {
 				for (int w = 0; w < dataset.vocabulary.length; w++) {
-					topicPrior += (gamma - 1) * Math.log(topicWordDist[k][w]);
+					topicPrior += (gamma - 1) * logTopicWordDist.get(k, w);
 				}
 			}
 		}
@@ -605,27 +937,119 @@ public class MultiThreadMPHAT {
 	}
 
 	public static double getLikelihood_parallel() {
-		double loglikelihood = 0;
-		ExecutorService executor = Executors.newFixedThreadPool(nParallelThreads);
-		for (int i = 0; i < nParallelThreads; i++) {
-			Runnable worker = new ChildThread(i, threadStartIndexes[i], threadEndIndexes[i]);
-			executor.execute(worker);
+		if (!useIncrementalLikelihood) {
+			userLikelihoods = null;
+			return getFullLikelihood_parallel();
+		}
+		if (userLikelihoods == null) {
+			userLikelihoods = new double[dataset.nUsers];
+			isLikelihoodDirty = new boolean[dataset.nUsers];
+			isNeighborLikelihoodDirty = new boolean[dataset.nUsers];
+			invalidateLikelihoods();
 		}
-		executor.shutdown();
-		while (!executor.isTerminated()) {
-			// do nothing, just wait for the threads to finish
+		if (hasDirtyLikelihood) {
+			hasDirtyLikelihood = false;
+			runPhase(Phase.MARK_LIKELIHOOD_NEIGHBORS);
+			runPhase(Phase.GET_LOGLIKELIHOOD);
+			cachedUserLikelihood = 0;
+			for (int i = 0; i < threadLikelihood.length; i++) {
+				cachedUserLikelihood += threadLikelihood[i];
+			}
+		}
+		if (isTopicPriorDirty) {
+			topicPriorLikelihood = getTopicPriorLikelihood();
+			isTopicPriorDirty = false;
 		}
-		for (int i = 0; i < nParallelThreads; i++) {
+		double loglikelihood = cachedUserLikelihood + topicPriorLikelihood;
+		if (verifyIncrementalLikelihood) {
+			double[] temp = userLikelihoods;
+			userLikelihoods = null;
+			double fullLikelihood = getFullLikelihood_parallel();
+			userLikelihoods = temp;
+			System.out.printf("[likelihood] incremental = %f, full = %f, relative difference = %e\n", loglikelihood,
+					fullLikelihood, Math.abs(loglikelihood - fullLikelihood) / Math.abs(fullLikelihood));
+		}
+		return loglikelihood;
+	}
+
+	/***
+	 * likelihood of the whole dataset, computed from scratch
+	 * 
+	 * @return
+	 */
+	private static double getFullLikelihood_parallel() {
+		double loglikelihood = 0;
+		runPhase(Phase.GET_LOGLIKELIHOOD);
+		for (int i = 0; i < threadLikelihood.length; i++) {
 			loglikelihood += threadLikelihood[i];
 		}
+		return loglikelihood + getTopicPriorLikelihood();
+	}
+
+	private static double getTopicPriorLikelihood() {
+		double likelihood = 0;
 		if (usePrior) {// topics' prior
 			for (int k = 0; k < nTopics; k++) {
 				for (int w = 0; w < dataset.vocabulary.length; w++) {
-					loglikelihood += (gamma - 1) * Math.log(topicWordDist[k][w]);
+					likelihood += (gamma - 1) * logTopicWordDist.get(k, w);
 				}
 			}
 		}
-		return loglikelihood;
+		return likelihood;
+	}
+
+	/***
+	 * mark the likelihood contribution of u for recomputation, and those of
+	 * its neighbors if the hubs, authorities or platform preferences of u
+	 * changed
+	 * 
+	 * @param u
+	 * @param withNeighbors
+	 */
+	private static void markLikelihoodDirty(int u, boolean withNeighbors) {
+		if (userLikelihoods == null) {
+			return;
+		}
+		isLikelihoodDirty[u] = true;
+		if (withNeighbors) {
+			isNeighborLikelihoodDirty[u] = true;
+		}
+		hasDirtyLikelihood = true;
+	}
+
+	/***
+	 * mark all the likelihood contributions, and the topics' prior, for
+	 * recomputation
+	 */
+	private static void invalidateLikelihoods() {
+		isTopicPriorDirty = true;
+		hasDirtyLikelihood = true;
+		if (userLikelihoods == null) {
+			return;
+		}
+		for (int u = 0; u < dataset.nUsers; u++) {
+			isLikelihoodDirty[u] = true;
+		}
+	}
+
+	/***
+	 * likelihood of the links and non-links going out of u from the cached
+	 * edge scores
+	 * 
+	 * @param u
+	 * @return
+	 */
+	private static double getCachedRelationshipLikelihood(int u) {
+		double[] scores = edgeScoreCache.scores;
+		double[] expScores = edgeScoreCache.expScores;
+		// the links and non-links of u take the ids of their positions
+		double likelihood = VectorKernels.linkLikelihood(expScores,
+				edgeScoreCache.getFollowingEdge(dataset.followings.offsets[u]),
+				edgeScoreCache.getFollowingEdge(dataset.followings.offsets[u + 1]));
+		likelihood += VectorKernels.nonLinkLikelihood(scores, expScores,
+				edgeScoreCache.getNonFollowingEdge(dataset.nonFollowings.offsets[u]),
+				edgeScoreCache.getNonFollowingEdge(dataset.nonFollowings.offsets[u + 1]));
+		return likelihood;
 	}
 
 	public static double getLikelihood(int u) {
@@ -646,38 +1070,14 @@ public class MultiThreadMPHAT {
 		User currUser = dataset.users[u];
 
 		// relationship
-		if (currUser.followings != null) {
-			for (int i = 0; i < currUser.followings.length; i++) {
-				int v = currUser.followings[i].followingIndex;
-				User following = dataset.users[v];
-				int p = currUser.followings[i].platform;
-				// Compute H_u^p * A_v^p
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					HupAvp += currUser.hubs[z] * currUser.topicalRelativePlatformPreference[z][p]
-							* following.authorities[z] * following.topicalRelativePlatformPreference[z][p];
-				}
-				HupAvp = HupAvp * lamda;
-
-				// linkRelationshipLikelihood += Math.log(1 -
-				// Math.exp(-HupAvp)) - Math.log(Math.exp(-HupAvp) + 1);
-
-				temp = Math.exp(-HupAvp);
-				linkRelationshipLikelihood += Math.log(1 - temp) - Math.log(temp + 1);
-			}
-		}
-		if (currUser.followers != null) {
-			for (int i = 0; i < currUser.followers.length; i++) {
-				int v = currUser.followers[i].followerIndex;
-				User follower = dataset.users[v];
-				int p = currUser.followers[i].platform;
+		if (edgeScoreCache != null) {
+			linkRelationshipLikelihood = getCachedRelationshipLikelihood(u);
+		} else {
+			for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+				int v = dataset.followings.neighbors[i];
+				int p = dataset.followings.platforms[i];
 				// Compute H_u^p * A_v^p
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					HupAvp += follower.hubs[z] * follower.topicalRelativePlatformPreference[z][p]
-							* currUser.authorities[z] * currUser.topicalRelativePlatformPreference[z][p];
-
-				}
+				double HupAvp = parameters.getPlatformScore(u, v, p);
 				HupAvp = HupAvp * lamda;
 
 				// linkRelationshipLikelihood += Math.log(1 -
@@ -686,21 +1086,12 @@ public class MultiThreadMPHAT {
 				temp = Math.exp(-HupAvp);
 				linkRelationshipLikelihood += Math.log(1 - temp) - Math.log(temp + 1);
 			}
-
-		}
-		if (currUser.nonFollowings != null) {
-			for (int i = 0; i < currUser.nonFollowings.length; i++) {
-				int v = currUser.nonFollowings[i].followingIndex;
-				User nonFollowing = dataset.users[v];
-				int p = currUser.nonFollowings[i].platform;
+			for (int i = dataset.nonFollowings.offsets[u]; i < dataset.nonFollowings.offsets[u + 1]; i++) {
+				int v = dataset.nonFollowings.neighbors[i];
+				int p = dataset.nonFollowings.platforms[i];
 
 				// Compute H_u^p * A_v^p
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					HupAvp += currUser.hubs[z] * currUser.topicalRelativePlatformPreference[z][p]
-							* nonFollowing.authorities[z] * nonFollowing.topicalRelativePlatformPreference[z][p];
-
-				}
+				double HupAvp = parameters.getPlatformScore(u, v, p);
 				HupAvp = HupAvp * lamda;
 				// linkRelationshipLikelihood += Math.log(2) - HupAvp -
 				// Math.log(Math.exp(-HupAvp) + 1);
@@ -708,43 +1099,22 @@ public class MultiThreadMPHAT {
 
 			}
 		}
-		if (currUser.nonFollowers != null) {
-			for (int i = 0; i < currUser.nonFollowers.length; i++) {
-
-				int v = currUser.nonFollowers[i].followerIndex;
-				User nonFollower = dataset.users[v];
-				int p = currUser.nonFollowers[i].platform;
-
-				// Compute H_u^p * A_v^p
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					HupAvp += nonFollower.hubs[z] * nonFollower.topicalRelativePlatformPreference[z][p]
-							* currUser.authorities[z] * currUser.topicalRelativePlatformPreference[z][p];
-
-				}
-				HupAvp = HupAvp * lamda;
-				// linkRelationshipLikelihood += Math.log(2) - HupAvp -
-				// Math.log(Math.exp(-HupAvp) + 1);
-
-				linkRelationshipLikelihood += log2 - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
-			}
-		}
 
 		for (int k = 0; k < nTopics; k++) {
 			// authority prior
-			authorityLikelihood += ((sigma - 1) * Math.log(currUser.authorities[k]))
-					- ((currUser.authorities[k] * sigma) / currUser.topicalInterests[k])
-					- (sigma * Math.log(currUser.topicalInterests[k]));
+			authorityLikelihood += phi * (((sigma - 1) * Math.log(parameters.getAuthority(u, k)))
+					- ((parameters.getAuthority(u, k) * sigma) / parameters.getTopicalInterest(u, k))
+					- (sigma * Math.log(parameters.getTopicalInterest(u, k))));
 			if (Double.isInfinite(authorityLikelihood) || Double.isNaN(authorityLikelihood)) {
-				System.out.printf("[authority] A[%d] = %.12f\n", k, currUser.authorities[k]);
+				System.out.printf("[authority] A[%d] = %.12f\n", k, parameters.getAuthority(u, k));
 				System.exit(0);
 			}
 			// hub prior
-			hubLikelihood += ((delta - 1) * Math.log(currUser.hubs[k]))
-					- ((currUser.hubs[k] * delta) / currUser.topicalInterests[k])
-					- (delta * Math.log(currUser.topicalInterests[k]));
+			hubLikelihood += omega * (((delta - 1) * Math.log(parameters.getHub(u, k)))
+					- ((parameters.getHub(u, k) * delta) / parameters.getTopicalInterest(u, k))
+					- (delta * Math.log(parameters.getTopicalInterest(u, k))));
 			if (Double.isInfinite(hubLikelihood) || Double.isNaN(hubLikelihood)) {
-				System.out.printf("[hub] H[%d] = %.12f\n", k, currUser.hubs[k]);
+				System.out.printf("[hub] H[%d] = %.12f\n", k, parameters.getHub(u, k));
 				System.exit(0);
 			}
 		}
@@ -753,13 +1123,13 @@ public class MultiThreadMPHAT {
 		double topicDenominator = 0;
 		double[] platformDenominators = new double[nTopics];
 		for (int k = 0; k < nTopics; k++) {
-			topicDenominator += Math.exp(currUser.topicalInterests[k]);
+			topicDenominator += Math.exp(parameters.getTopicalInterest(u, k));
 			platformDenominators[k] = 0;
 			for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
 				if (currUser.platforms[p] == 0) {
 					continue;
 				}
-				platformDenominators[k] += Math.exp(currUser.topicalPlatformPreference[k][p]);
+				platformDenominators[k] += Math.exp(parameters.getPlatformPreference(u, k, p));
 			}
 			platformDenominators[k] = Math.log(platformDenominators[k]);
 		}
@@ -771,7 +1141,7 @@ public class MultiThreadMPHAT {
 				// words
 				for (int w = 0; w < currPost.words.length; w++) {
 					int word = currPost.words[w];
-					postWordLikelihood += Math.log(topicWordDist[currPost.topic][word]);
+					postWordLikelihood += logTopicWordDist.get(currPost.topic, word);
 				}
 
 				// platform
@@ -785,12 +1155,12 @@ public class MultiThreadMPHAT {
 				// postPlatformLikelihood += Math
 				// .log(Math.exp(currUser.topicalPlatformPreference[currPost.topic][currPost.platform])
 				// / denominator);
-				postPlatformLikelihood += currUser.topicalPlatformPreference[currPost.topic][currPost.platform]
+				postPlatformLikelihood += parameters.getPlatformPreference(u, currPost.topic, currPost.platform)
 						- platformDenominators[currPost.topic];
 
 				if (Double.isInfinite(postPlatformLikelihood) || Double.isNaN(postPlatformLikelihood)) {
 					System.out.printf("[Post] platform[%d] = %.12f\n", currPost.platform,
-							currUser.topicalPlatformPreference[currPost.topic][currPost.platform]);
+							parameters.getPlatformPreference(u, currPost.topic, currPost.platform));
 					System.exit(0);
 				}
 
@@ -805,10 +1175,10 @@ public class MultiThreadMPHAT {
 				// Math.log(Math.exp(currUser.topicalInterests[currPost.topic])
 				// / denominator);
 
-				postTopicLikelihood += currUser.topicalInterests[currPost.topic] - topicDenominator;
+				postTopicLikelihood += parameters.getTopicalInterest(u, currPost.topic) - topicDenominator;
 				if (Double.isInfinite(postTopicLikelihood) || Double.isNaN(postTopicLikelihood)) {
 					System.out.printf("[Post] topic[%d] = %.12f\n", currPost.topic,
-							currUser.topicalInterests[currPost.topic]);
+							parameters.getTopicalInterest(u, currPost.topic));
 					System.exit(0);
 				}
 			}
@@ -817,17 +1187,17 @@ public class MultiThreadMPHAT {
 		if (usePrior) {
 			for (int k = 0; k < nTopics; k++) {
 				// latent factor prior
-				latentFactorPrior += ((kappa - 1) * Math.log(currUser.topicalInterests[k]))
-						- (currUser.topicalInterests[k] / theta);
+				latentFactorPrior += ((kappa - 1) * Math.log(parameters.getTopicalInterest(u, k)))
+						- (parameters.getTopicalInterest(u, k) / theta);
 				// platform prior
 				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
 					if (currUser.platforms[p] == 0) {
 						continue;
 					}
-					platformPreferencePrior += (alpha - 1) * Math.log(currUser.topicalPlatformPreference[k][p])
-							- (currUser.topicalPlatformPreference[k][p] / theta);
+					platformPreferencePrior += (alpha - 1) * Math.log(parameters.getPlatformPreference(u, k, p))
+							- (parameters.getPlatformPreference(u, k, p) / theta);
 					if (Double.isInfinite(platformPreferencePrior) || Double.isNaN(platformPreferencePrior)) {
-						System.out.printf("[platform] P[%d] = %.12f\n", k, currUser.topicalPlatformPreference[k][p]);
+						System.out.printf("[platform] P[%d] = %.12f\n", k, parameters.getPlatformPreference(u, k, p));
 						System.exit(0);
 					}
 				}
@@ -873,12 +1243,12 @@ public class MultiThreadMPHAT {
 			// First term in eqn 16
 			// hubLikelihood += -((currUser.hubs[k] * delta) / x[k]) - (delta *
 			// Math.log(x[k]));
-			hubLikelihood += -((currUser.hubs[k] * delta) / x[k]) - (delta * temp);
+			hubLikelihood += omega * (-((parameters.getHub(u, k) * delta) / x[k]) - (delta * temp));
 
 			// Second term in eqn 16
 			// authorityLikelihood += -((currUser.authorities[k] * sigma) /
 			// x[k]) - (sigma * Math.log(x[k]));
-			authorityLikelihood += -((currUser.authorities[k] * sigma) / x[k]) - (sigma * temp);
+			authorityLikelihood += phi * (-((parameters.getAuthority(u, k) * sigma) / x[k]) - (sigma * temp));
 
 			if (usePrior) {
 				// Fourth term in eqn 16
@@ -932,10 +1302,10 @@ public class MultiThreadMPHAT {
 		User currUser = dataset.users[u];
 
 		// First term in eqn 18
-		hubLikelihood = ((currUser.hubs[k] * delta) / Math.pow(x, 2)) - (delta / x);
+		hubLikelihood = omega * (((parameters.getHub(u, k) * delta) / Math.pow(x, 2)) - (delta / x));
 
 		// Second term in eqn 18
-		authorityLikelihood = ((currUser.authorities[k] * sigma) / Math.pow(x, 2)) - (sigma / x);
+		authorityLikelihood = phi * (((parameters.getAuthority(u, k) * sigma) / Math.pow(x, 2)) - (sigma / x));
 
 		// Third term in eqn 18
 		double first_sub_term = 0;
@@ -947,7 +1317,7 @@ public class MultiThreadMPHAT {
 				// denominator += Math.exp(x);
 				denominator += temp;
 			} else {
-				denominator += Math.exp(currUser.topicalInterests[z]);
+				denominator += Math.exp(parameters.getTopicalInterest(u, z));
 			}
 		}
 		for (int i = 0; i < currUser.nPosts; i++) {
@@ -979,151 +1349,203 @@ public class MultiThreadMPHAT {
 	}
 
 	/***
-	 * alternating step to optimize topical interest of u
+	 * compute gradient of likelihood of data with respect to all the topical
+	 * interests of u when the interests are x, i.e., grad[k] = df/dX_uk. Same
+	 * as calling gradLikelihood_topicalInterest for every k, but the softmax
+	 * denominator and the post counts are computed once
 	 * 
 	 * @param u
+	 * @param x
+	 * @param grad
 	 */
-	private static void altOptimize_topicalInterest(int u) {
-		double[] grad = new double[nTopics];
-		double[] currentX = dataset.users[u].topicalInterests;
-		double[] x = new double[nTopics];
-
-		double currentF = 0 - getLikelihood_topicalInterest(u, currentX);
+	private static void gradLikelihood_topicalInterests(int u, double[] x, double[] grad) {
+		// Refer to Eqn 18 in Learning paper
+		User currUser = dataset.users[u];
 
-		boolean flag = true;
-		double diff = 0;
-		double f = Double.MAX_VALUE;
+		// grad[k] first holds the number of posts in batch with topic k
+		for (int k = 0; k < nTopics; k++) {
+			grad[k] = 0;
+		}
+		int nBatchPosts = 0;
+		for (int i = 0; i < currUser.nPosts; i++) {
+			if (currUser.postBatches[i] == batch) {
+				grad[currUser.posts[i].topic]++;
+				nBatchPosts++;
+			}
+		}
+		double denominator = 0;
+		for (int z = 0; z < nTopics; z++) {
+			denominator += Math.exp(x[z]);
+		}
 
-		for (int iter = 0; iter < maxIteration_topicalInterest; iter++) {
-			// compute gradient
-			for (int k = 0; k < nTopics; k++) {
-				grad[k] = 0 - gradLikelihood_topicalInterest(u, k, currentX[k]);
+		for (int k = 0; k < nTopics; k++) {
+			// First and second terms in eqn 18
+			double hubLikelihood = omega * (((parameters.getHub(u, k) * delta) / (x[k] * x[k])) - (delta / x[k]));
+			double authorityLikelihood = phi
+					* (((parameters.getAuthority(u, k) * sigma) / (x[k] * x[k])) - (sigma / x[k]));
+			// Third term in eqn 18
+			double postLikelihood = grad[k] - nBatchPosts * (Math.exp(x[k]) / denominator);
+			// Fourth term in eqn 18
+			double prior = 0;
+			if (usePrior) {
+				prior = ((kappa - 1) / x[k]) - (1 / theta);
 			}
-			// start line search
-			lineSearch_lambda = lineSearch_beta;
-			flag = false;
+			grad[k] = authorityLikelihood + hubLikelihood + postLikelihood + prior;
+		}
+	}
 
-			for (int lineSearchIter = 0; lineSearchIter < lineSearch_MaxIterations; lineSearchIter++) {
-				// find new x
-				for (int k = 0; k < nTopics; k++) {
-					x[k] = currentX[k] - lineSearch_lambda * grad[k];
-				}
+	/***
+	 * negative likelihood as a function of the topical interests of u
+	 */
+	private static class TopicalInterestObjective implements BlockObjective {
+		private int u;
 
-				// x = tool.MathTool.softmax(x);
-				// x = simplexProjection(x, 1);
+		public TopicalInterestObjective(int _u) {
+			u = _u;
+		}
 
-				// this step to make sure that we compute f at the new x
-				f = 0 - getLikelihood_topicalInterest(u, x);
+		@Override
+		public int getDimension() {
+			return nTopics;
+		}
 
-				// compute ||currentX - x||^2
-				diff = 0;
-				for (int k = 0; k < nTopics; k++) {
-					diff += Math.pow(currentX[k] - x[k], 2);
-				}
-				// check the condition to stop line search
-				if (f - currentF <= (-lineSearch_alpha / lineSearch_lambda) * diff) {
-					flag = true;
-					break;
-				} else {
-					lineSearch_lambda *= lineSearch_beta;
-				}
-			}
-			if (flag) {// line search successful
-				currentF = f;
+		@Override
+		public double getValue(OptimizerContext ctx, double[] x) {
+			return 0 - getLikelihood_topicalInterest(u, x);
+		}
+
+		@Override
+		public void getGradient(OptimizerContext ctx, double[] x, double[] grad) {
+			if (useFusedGradients) {
+				gradLikelihood_topicalInterests(u, x, grad);
 				for (int k = 0; k < nTopics; k++) {
-					currentX[k] = x[k];
-				}
-				// to see if F actually reduce after every iteration
-				if (opt_interest_verbose) {
-					System.out.printf("alt_topic: u = %d iter = %d f = %f\n", u, iter, f);
+					grad[k] = 0 - grad[k];
 				}
 			} else {
-				// to see if F actually reduce after every iteration
-				if (opt_interest_verbose) {
-					System.out.printf("alt_topic: u = %d iter = %d f = %f\n", u, iter, f);
+				for (int k = 0; k < nTopics; k++) {
+					grad[k] = 0 - gradLikelihood_topicalInterest(u, k, x[k]);
 				}
-				break;// cannot improve further
 			}
 		}
-	}
 
-	/***
-	 * compute likelihood of data as a function of authority of u when the
-	 * authority is x, i.e., if L(data|parameters) = f(A_u) + const-of-A_u then
-	 * this function returns f(x)
-	 * 
-	 * @param v
-	 * @param x[]
-	 * @return
-	 */
+		@Override
+		public void prepareLineSearch(OptimizerContext ctx, double[] x0, double[] direction) {
+		}
+
+		@Override
+		public double getLineSearchValue(OptimizerContext ctx, double[] x0, double[] direction, double[] x) {
+			return getValue(ctx, x);
+		}
+
+		@Override
+		public void project(OptimizerContext ctx, double[] x) {
+			// the topical interests are unconstrained
+			ctx.nClampedTopics = 0;
+		}
+
+		@Override
+		public double getLowerBound(int i) {
+			return Double.NEGATIVE_INFINITY;
+		}
+
+		@Override
+		public boolean isFixed(int i) {
+			return false;
+		}
+
+		@Override
+		public void accept(OptimizerContext ctx, double[] x) {
+			parameters.setTopicVector(parameters.topicalInterests, u, x);
+			markLikelihoodDirty(u, false);
+		}
+
+		@Override
+		public void reportIteration(int iter, double f) {
+			// to see if F actually reduce after every iteration
+			if (opt_interest_verbose) {
+				System.out.printf("alt_topic: u = %d iter = %d f = %f\n", u, iter, f);
+			}
+		}
+
+		@Override
+		public OptimizerStats getStats() {
+			return interestStats;
+		}
+	}
+
+	/***
+	 * alternating step to optimize topical interest of u
+	 * 
+	 * @param u
+	 */
+	private static void altOptimize_topicalInterest(OptimizerContext ctx, int u) {
+		double[] currentX = ctx.currentX;
+		parameters.getTopicVector(parameters.topicalInterests, u, currentX);
+		interestOptimizer.minimize(ctx, new TopicalInterestObjective(u), currentX, maxIteration_topicalInterest);
+	}
+
+	/***
+	 * compute likelihood of data as a function of authority of u when the
+	 * authority is x, i.e., if L(data|parameters) = f(A_u) + const-of-A_u then
+	 * this function returns f(x)
+	 * 
+	 * @param v
+	 * @param x[]
+	 * @return
+	 */
 	private static double getLikelihood_authority(int v, double[] x) {
 		// Refer to Eqn 24 in Learning paper
+		double[] hubBuffer = (parameters.isSinglePrecision()) ? getOptimizerContext().hubRow : null;
 		double followerLikelihood = 0;
 		double nonFollowerLikelihood = 0;
 		double authorityLikelihood = 0;
 		double likelihood = 0;
 
 		// Set the current user to be v
-		User currUser = dataset.users[v];
 		double log2 = Math.log(2);
 		double temp;
 		// First term in eqn 24. Compute follower likelihood.
-		if (currUser.followers != null) {
-			for (int i = 0; i < currUser.followers.length; i++) {
-				int u = currUser.followers[i].followerIndex;
-				User follower = dataset.users[u];
-				int p = currUser.followers[i].platform;
-
-				// Compute H_u^p * A_v^p
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					HupAvp += follower.hubs[z] * follower.topicalRelativePlatformPreference[z][p] * x[z]
-							* currUser.topicalRelativePlatformPreference[z][p];// now
-					// A_v
-					// is
-					// x4
-				}
-				HupAvp = HupAvp * lamda;
-				// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
-				// followerLikelihood += Math.log(fHupAvp);
-
-				// followerLikelihood += Math.log(1 - Math.exp(-HupAvp)) -
-				// Math.log(Math.exp(-HupAvp) + 1);
-
-				temp = Math.exp(-HupAvp);
-				followerLikelihood += Math.log(1 - temp) - Math.log(temp + 1);
-			}
+		for (int i = dataset.followers.offsets[v]; i < dataset.followers.offsets[v + 1]; i++) {
+			int u = dataset.followers.neighbors[i];
+			int p = dataset.followers.platforms[i];
+
+			// Compute H_u^p * A_v^p
+			double HupAvp = VectorKernels.dotProduct(nTopics, parameters.getPlatformHubRow(u, p, hubBuffer),
+					parameters.getPlatformRowIndex(u, p), x, 0, parameters.topicalRelativePlatformPreference,
+					parameters.preferenceIndex(v, 0, p), Configure.NUM_OF_PLATFORM);// now A_v is x
+			HupAvp = HupAvp * lamda;
+			// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
+			// followerLikelihood += Math.log(fHupAvp);
+
+			// followerLikelihood += Math.log(1 - Math.exp(-HupAvp)) -
+			// Math.log(Math.exp(-HupAvp) + 1);
+
+			temp = Math.exp(-HupAvp);
+			followerLikelihood += Math.log(1 - temp) - Math.log(temp + 1);
 		}
 		// Second term in eqn 24. Compute non follower likelihood.
-		if (currUser.nonFollowers != null) {
-			for (int i = 0; i < currUser.nonFollowers.length; i++) {
-				int u = currUser.nonFollowers[i].followerIndex;
-				User nonFollower = dataset.users[u];
-				int p = currUser.nonFollowers[i].platform;
-
-				// Compute H_u * A_v
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					HupAvp += nonFollower.hubs[z] * nonFollower.topicalRelativePlatformPreference[z][p] * x[z]
-							* currUser.topicalRelativePlatformPreference[z][p];// now
-					// A_v
-					// is
-					// x
-				}
-				HupAvp = HupAvp * lamda;
-				// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
-				// nonFollowerLikelihood += Math.log(1 - fHupAvp);
-				// nonFollowerLikelihood += Math.log(2) - HupAvp -
-				// Math.log(Math.exp(-HupAvp) + 1);
-
-				nonFollowerLikelihood += log2 - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
+		for (int i = dataset.nonFollowers.offsets[v]; i < dataset.nonFollowers.offsets[v + 1]; i++) {
+			int u = dataset.nonFollowers.neighbors[i];
+			int p = dataset.nonFollowers.platforms[i];
+
+			// Compute H_u * A_v
+			double HupAvp = VectorKernels.dotProduct(nTopics, parameters.getPlatformHubRow(u, p, hubBuffer),
+					parameters.getPlatformRowIndex(u, p), x, 0, parameters.topicalRelativePlatformPreference,
+					parameters.preferenceIndex(v, 0, p), Configure.NUM_OF_PLATFORM);// now A_v is x
+			HupAvp = HupAvp * lamda;
+			// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
+			// nonFollowerLikelihood += Math.log(1 - fHupAvp);
+			// nonFollowerLikelihood += Math.log(2) - HupAvp -
+			// Math.log(Math.exp(-HupAvp) + 1);
+
+			nonFollowerLikelihood += log2 - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
 
-			}
 		}
 
 		// Third term in eqn 24. Compute post likelihood.
 		for (int k = 0; k < nTopics; k++) {
-			authorityLikelihood += ((sigma - 1) * Math.log(x[k])) - ((x[k] * sigma) / currUser.topicalInterests[k]);// now
+			authorityLikelihood += ((sigma - 1) * Math.log(x[k]))
+					- ((x[k] * sigma) / parameters.getTopicalInterest(v, k));// now
 			// A_v
 			// is
 			// x
@@ -1152,156 +1574,376 @@ public class MultiThreadMPHAT {
 		double gradLikelihood = 0;
 
 		// Set the current user to be v
-		User currUser = dataset.users[v];
 		double temp;
 		// First term in eqn 26. Compute follower likelihood
-		if (currUser.followers != null) {
-			for (int i = 0; i < currUser.followers.length; i++) {
-				int u = currUser.followers[i].followerIndex;
-				User follower = dataset.users[u];
-				int p = currUser.followers[i].platform;
+		for (int i = dataset.followers.offsets[v]; i < dataset.followers.offsets[v + 1]; i++) {
+			int u = dataset.followers.neighbors[i];
+			int p = dataset.followers.platforms[i];
+
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				if (z == k) {
+					HupAvp += parameters.getHub(u, z) * parameters.getRelativePlatformPreference(u, z, p) * x
+							* parameters.getRelativePlatformPreference(v, z, p);
+				} else {
+					HupAvp += parameters.getHub(u, z) * parameters.getRelativePlatformPreference(u, z, p)
+							* parameters.getAuthority(v, z) * parameters.getRelativePlatformPreference(v, z, p);
+				}
+			}
+			HupAvp = HupAvp * lamda;
+
+			// followerLikelihood += (1 / (1 - Math.exp(-HupAvp)) *
+			// -Math.exp(-HupAvp) * -lamda
+			// * follower.topicalPlatformPreference[k][p] * follower.hubs[k]
+			// * currUser.topicalPlatformPreference[k][p])
+			// - (1 / (Math.exp(-HupAvp) + 1) * Math.exp(-HupAvp) * -lamda
+			// * follower.topicalPlatformPreference[k][p] * follower.hubs[k]
+			// * currUser.topicalPlatformPreference[k][p]);
+			temp = Math.exp(-HupAvp);
+			followerLikelihood += (1 / (1 - temp) * -temp * -lamda * parameters.getRelativePlatformPreference(u, k, p)
+					* parameters.getHub(u, k) * parameters.getRelativePlatformPreference(v, k, p))
+					- (1 / (temp + 1) * temp * -lamda * parameters.getRelativePlatformPreference(u, k, p)
+							* parameters.getHub(u, k) * parameters.getRelativePlatformPreference(v, k, p));
+		}
+
+		// Second term in eqn 26. Compute non follower likelihood
+		for (int i = dataset.nonFollowers.offsets[v]; i < dataset.nonFollowers.offsets[v + 1]; i++) {
+			int u = dataset.nonFollowers.neighbors[i];
+			int p = dataset.nonFollowers.platforms[i];
+
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				if (z == k) {
+					HupAvp += parameters.getHub(u, z) * parameters.getRelativePlatformPreference(u, z, p) * x
+							* parameters.getRelativePlatformPreference(v, z, p);
+				} else {
+					HupAvp += parameters.getHub(u, z) * parameters.getRelativePlatformPreference(u, z, p)
+							* parameters.getAuthority(v, z) * parameters.getRelativePlatformPreference(v, z, p);
+				}
+			}
+			HupAvp = HupAvp * lamda;
+
+			// nonFollowerLikelihood += (-lamda *
+			// currUser.topicalPlatformPreference[k][p] *
+			// nonFollower.hubs[k]
+			// * nonFollower.topicalPlatformPreference[k][p])
+			// - ((1 / (Math.exp(-HupAvp) + 1)) * (Math.exp(-HupAvp))
+			// * (-lamda * nonFollower.hubs[k] *
+			// nonFollower.topicalPlatformPreference[k][p]
+			// * currUser.topicalPlatformPreference[k][p]));
+
+			temp = Math.exp(-HupAvp);
+			nonFollowerLikelihood += (-lamda * parameters.getRelativePlatformPreference(v, k, p)
+					* parameters.getHub(u, k) * parameters.getRelativePlatformPreference(u, k, p))
+					- ((1 / (temp + 1)) * temp
+							* (-lamda * parameters.getHub(u, k) * parameters.getRelativePlatformPreference(u, k, p)
+							* parameters.getRelativePlatformPreference(v, k, p)));
+		}
+
+		// Third term in eqn 26. Compute post likelihood
+		authorityLikelihood = ((sigma - 1) / x) - (sigma / parameters.getTopicalInterest(v, k));
+
+		gradLikelihood = nonFollowerLikelihood + followerLikelihood + (phi * authorityLikelihood);
+
+		return gradLikelihood;
+	}
 
+	/***
+	 * compute gradient of likelihood of data with respect to all the
+	 * authorities of v when the authorities are x, i.e., grad[k] = df/dA_vk.
+	 * Same as calling gradLikelihood_authority for every k, but each follower
+	 * and non-follower is visited once. When the edge score cache is on, the
+	 * scores are read from it, so x must be the current authorities of v
+	 * 
+	 * @param v
+	 * @param x
+	 * @param grad
+	 */
+	private static void gradLikelihood_authorities(int v, double[] x, double[] grad) {
+		// Refer to Eqn 26 in Learning paper
+		double[] hubBuffer = (parameters.isSinglePrecision()) ? getOptimizerContext().hubRow : null;
+		double[] relativePreferences = parameters.topicalRelativePlatformPreference;
+		int interestIndex = parameters.topicIndex(v, 0);
+		for (int k = 0; k < nTopics; k++) {
+			grad[k] = 0;
+		}
+		double temp;
+		// First term in eqn 26. Compute follower likelihood
+		for (int i = dataset.followers.offsets[v]; i < dataset.followers.offsets[v + 1]; i++) {
+			int p = dataset.followers.platforms[i];
+			double[] platformHubs = parameters.getPlatformHubRow(dataset.followers.neighbors[i], p, hubBuffer);
+			int hubIndex = parameters.getPlatformRowIndex(dataset.followers.neighbors[i], p);
+			int preferenceIndex = parameters.preferenceIndex(v, 0, p);
+
+			if (edgeScoreCache != null) {
+				temp = edgeScoreCache.expScores[edgeScoreCache.followerEdges[i]];
+			} else {
 				double HupAvp = 0;
 				for (int z = 0; z < nTopics; z++) {
-					if (z == k) {
-						HupAvp += follower.hubs[z] * follower.topicalRelativePlatformPreference[z][p] * x
-								* currUser.topicalRelativePlatformPreference[z][p];
-					} else {
-						HupAvp += follower.hubs[z] * follower.topicalRelativePlatformPreference[z][p]
-								* currUser.authorities[z] * currUser.topicalRelativePlatformPreference[z][p];
-					}
+					HupAvp += platformHubs[hubIndex + z] * x[z]
+							* relativePreferences[preferenceIndex + z * Configure.NUM_OF_PLATFORM];
 				}
 				HupAvp = HupAvp * lamda;
-
-				// followerLikelihood += (1 / (1 - Math.exp(-HupAvp)) *
-				// -Math.exp(-HupAvp) * -lamda
-				// * follower.topicalPlatformPreference[k][p] * follower.hubs[k]
-				// * currUser.topicalPlatformPreference[k][p])
-				// - (1 / (Math.exp(-HupAvp) + 1) * Math.exp(-HupAvp) * -lamda
-				// * follower.topicalPlatformPreference[k][p] * follower.hubs[k]
-				// * currUser.topicalPlatformPreference[k][p]);
 				temp = Math.exp(-HupAvp);
-				followerLikelihood += (1 / (1 - temp) * -temp * -lamda
-						* follower.topicalRelativePlatformPreference[k][p] * follower.hubs[k]
-						* currUser.topicalRelativePlatformPreference[k][p])
-						- (1 / (temp + 1) * temp * -lamda * follower.topicalRelativePlatformPreference[k][p]
-								* follower.hubs[k] * currUser.topicalRelativePlatformPreference[k][p]);
+			}
+			// d/dA_vk = lamda * H_uk^p * eta_vk^p * (t/(1-t) + t/(1+t))
+			double coef = lamda * (temp / (1 - temp) + temp / (temp + 1));
+			for (int z = 0; z < nTopics; z++) {
+				grad[z] += coef * platformHubs[hubIndex + z]
+						* relativePreferences[preferenceIndex + z * Configure.NUM_OF_PLATFORM];
 			}
 		}
 
 		// Second term in eqn 26. Compute non follower likelihood
-		if (currUser.nonFollowers != null) {
-			for (int i = 0; i < currUser.nonFollowers.length; i++) {
-				int u = currUser.nonFollowers[i].followerIndex;
-				User nonFollower = dataset.users[u];
-				int p = currUser.nonFollowers[i].platform;
-
+		for (int i = dataset.nonFollowers.offsets[v]; i < dataset.nonFollowers.offsets[v + 1]; i++) {
+			int p = dataset.nonFollowers.platforms[i];
+			double[] platformHubs = parameters.getPlatformHubRow(dataset.nonFollowers.neighbors[i], p, hubBuffer);
+			int hubIndex = parameters.getPlatformRowIndex(dataset.nonFollowers.neighbors[i], p);
+			int preferenceIndex = parameters.preferenceIndex(v, 0, p);
+
+			if (edgeScoreCache != null) {
+				temp = edgeScoreCache.expScores[edgeScoreCache.nonFollowerEdges[i]];
+			} else {
 				double HupAvp = 0;
 				for (int z = 0; z < nTopics; z++) {
-					if (z == k) {
-						HupAvp += nonFollower.hubs[z] * nonFollower.topicalRelativePlatformPreference[z][p] * x
-								* currUser.topicalRelativePlatformPreference[z][p];
-					} else {
-						HupAvp += nonFollower.hubs[z] * nonFollower.topicalRelativePlatformPreference[z][p]
-								* currUser.authorities[z] * currUser.topicalRelativePlatformPreference[z][p];
-					}
+					HupAvp += platformHubs[hubIndex + z] * x[z]
+							* relativePreferences[preferenceIndex + z * Configure.NUM_OF_PLATFORM];
 				}
 				HupAvp = HupAvp * lamda;
-
-				// nonFollowerLikelihood += (-lamda *
-				// currUser.topicalPlatformPreference[k][p] *
-				// nonFollower.hubs[k]
-				// * nonFollower.topicalPlatformPreference[k][p])
-				// - ((1 / (Math.exp(-HupAvp) + 1)) * (Math.exp(-HupAvp))
-				// * (-lamda * nonFollower.hubs[k] *
-				// nonFollower.topicalPlatformPreference[k][p]
-				// * currUser.topicalPlatformPreference[k][p]));
-
 				temp = Math.exp(-HupAvp);
-				nonFollowerLikelihood += (-lamda * currUser.topicalRelativePlatformPreference[k][p]
-						* nonFollower.hubs[k] * nonFollower.topicalRelativePlatformPreference[k][p])
-						- ((1 / (temp + 1)) * temp
-								* (-lamda * nonFollower.hubs[k] * nonFollower.topicalRelativePlatformPreference[k][p]
-										* currUser.topicalRelativePlatformPreference[k][p]));
+			}
+			// d/dA_vk = lamda * H_uk^p * eta_vk^p * (t/(1+t) - 1)
+			double coef = lamda * (temp / (temp + 1) - 1);
+			for (int z = 0; z < nTopics; z++) {
+				grad[z] += coef * platformHubs[hubIndex + z]
+						* relativePreferences[preferenceIndex + z * Configure.NUM_OF_PLATFORM];
 			}
 		}
 
 		// Third term in eqn 26. Compute post likelihood
-		authorityLikelihood = ((sigma - 1) / x) - (sigma / currUser.topicalInterests[k]);
-
-		gradLikelihood = nonFollowerLikelihood + followerLikelihood + (phi * authorityLikelihood);
+		for (int k = 0; k < nTopics; k++) {
+			grad[k] += phi * (((sigma - 1) / x[k]) - (sigma / parameters.topicalInterests[interestIndex + k]));
+		}
+	}
 
-		return gradLikelihood;
+	/***
+	 * cache, for every follower and non-follower e of v, the edge score at x,
+	 * lamda * <x, b_e>, and its slope along direction, lamda * <direction,
+	 * b_e>, where b_e[z] = H_uz * eta_uz^p * eta_vz^p. The score at x - t *
+	 * direction is then affine in t
+	 * 
+	 * @param ctx
+	 * @param v
+	 * @param x
+	 * @param direction
+	 */
+	private static void prepareLineSearch_authority(OptimizerContext ctx, int v, double[] x, double[] direction) {
+		double[] hubBuffer = ctx.hubRow;
+		double[] relativePreferences = parameters.topicalRelativePlatformPreference;
+		RelationGraph followers = dataset.followers;
+		RelationGraph nonFollowers = dataset.nonFollowers;
+		int nFollowers = followers.getDegree(v);
+		int nNonFollowers = nonFollowers.getDegree(v);
+		ctx.ensureEdgeCapacity(nFollowers + nNonFollowers);
+		for (int i = 0; i < nFollowers + nNonFollowers; i++) {
+			RelationGraph edges = (i < nFollowers) ? followers : nonFollowers;
+			int e = edges.offsets[v] + ((i < nFollowers) ? i : i - nFollowers);
+			int p = edges.platforms[e];
+			double[] platformHubs = parameters.getPlatformHubRow(edges.neighbors[e], p, hubBuffer);
+			int hubIndex = parameters.getPlatformRowIndex(edges.neighbors[e], p);
+			int preferenceIndex = parameters.preferenceIndex(v, 0, p);
+			double score = 0;
+			double slope = 0;
+			for (int z = 0; z < nTopics; z++) {
+				double b = platformHubs[hubIndex + z]
+						* relativePreferences[preferenceIndex + z * Configure.NUM_OF_PLATFORM];
+				score += x[z] * b;
+				slope += direction[z] * b;
+			}
+			ctx.edgeScores[i] = score * lamda;
+			ctx.edgeSlopes[i] = slope * lamda;
+		}
 	}
 
 	/***
-	 * alternating step to optimize authorities of user u
+	 * same as getLikelihood_authority(v, x) for a trial point x = x0 -
+	 * ctx.lineSearch_lambda * direction whose clamped topics are listed in
+	 * ctx.clampedTopics, using the dot products cached by
+	 * prepareLineSearch_authority(ctx, v, x0, direction)
 	 * 
-	 * @param u
+	 * @param ctx
+	 * @param v
+	 * @param x0
+	 * @param direction
+	 * @param x
+	 * @return
 	 */
-	private static void altOptimize_Authorities(int u) {
-		double[] grad = new double[nTopics];
-		double[] currentX = dataset.users[u].authorities;
-		double[] x = new double[nTopics];
+	private static double getLikelihood_authority(OptimizerContext ctx, int v, double[] x0, double[] direction,
+			double[] x) {
+		double[] hubBuffer = ctx.hubRow;
+		double[] relativePreferences = parameters.topicalRelativePlatformPreference;
+		int interestIndex = parameters.topicIndex(v, 0);
+		RelationGraph followers = dataset.followers;
+		RelationGraph nonFollowers = dataset.nonFollowers;
+		int nFollowers = followers.getDegree(v);
+		int nNonFollowers = nonFollowers.getDegree(v);
+		double step = ctx.lineSearch_lambda;
+		for (int i = 0; i < nFollowers + nNonFollowers; i++) {
+			double HupAvp = ctx.edgeScores[i] - step * ctx.edgeSlopes[i];
+			if (ctx.nClampedTopics > 0) {
+				RelationGraph edges = (i < nFollowers) ? followers : nonFollowers;
+				int e = edges.offsets[v] + ((i < nFollowers) ? i : i - nFollowers);
+				int p = edges.platforms[e];
+				double[] platformHubs = parameters.getPlatformHubRow(edges.neighbors[e], p, hubBuffer);
+				int hubIndex = parameters.getPlatformRowIndex(edges.neighbors[e], p);
+				int preferenceIndex = parameters.preferenceIndex(v, 0, p);
+				for (int c = 0; c < ctx.nClampedTopics; c++) {
+					int z = ctx.clampedTopics[c];
+					HupAvp += lamda * (x[z] - (x0[z] - step * direction[z])) * platformHubs[hubIndex + z]
+							* relativePreferences[preferenceIndex + z * Configure.NUM_OF_PLATFORM];
+				}
+			}
+			ctx.trialScores[i] = HupAvp;
+			ctx.trialExpScores[i] = Math.exp(-HupAvp);
+		}
+		double followerLikelihood = VectorKernels.linkLikelihood(ctx.trialExpScores, 0, nFollowers);
+		double nonFollowerLikelihood = VectorKernels.nonLinkLikelihood(ctx.trialScores, ctx.trialExpScores, nFollowers,
+				nFollowers + nNonFollowers);
+		double authorityLikelihood = 0;
+		for (int k = 0; k < nTopics; k++) {
+			authorityLikelihood += ((sigma - 1) * Math.log(x[k]))
+					- ((x[k] * sigma) / parameters.topicalInterests[interestIndex + k]);
+		}
+		return nonFollowerLikelihood + followerLikelihood + (phi * authorityLikelihood);
+	}
 
-		double currentF = 0 - getLikelihood_authority(u, currentX);
+	/***
+	 * write the scores of the followers' and non-followers' edges of v to the
+	 * cache after its authorities are updated, from the last trial point of
+	 * the directional line search if it was used
+	 * 
+	 * @param ctx
+	 * @param v
+	 */
+	private static void updateEdgeScores_authority(OptimizerContext ctx, int v) {
+		if (!useDirectionalLineSearch) {
+			edgeScoreCache.refreshInEdges(dataset, parameters, v, lamda);
+			return;
+		}
+		int j = 0;
+		for (int i = dataset.followers.offsets[v]; i < dataset.followers.offsets[v + 1]; i++, j++) {
+			edgeScoreCache.set(edgeScoreCache.followerEdges[i], ctx.trialScores[j], ctx.trialExpScores[j]);
+		}
+		for (int i = dataset.nonFollowers.offsets[v]; i < dataset.nonFollowers.offsets[v + 1]; i++, j++) {
+			edgeScoreCache.set(edgeScoreCache.nonFollowerEdges[i], ctx.trialScores[j], ctx.trialExpScores[j]);
+		}
+	}
 
-		boolean flag = true;
-		double diff = 0;
-		double f = Double.MAX_VALUE;
+	/***
+	 * negative likelihood as a function of the authorities of u, which are
+	 * bounded below by epsilon
+	 */
+	private static class AuthorityObjective implements BlockObjective {
+		private int u;
 
-		for (int iter = 0; iter < maxIteration_Authorities; iter++) {
-			// compute gradient
-			for (int k = 0; k < nTopics; k++) {
-				grad[k] = 0 - gradLikelihood_authority(u, k, currentX[k]);
-			}
-			// start line search
-			lineSearch_lambda = lineSearch_beta;
-			flag = false;
+		public AuthorityObjective(int _u) {
+			u = _u;
+		}
 
-			for (int lineSearchIter = 0; lineSearchIter < lineSearch_MaxIterations; lineSearchIter++) {
-				// find new x
-				for (int k = 0; k < nTopics; k++) {
-					x[k] = currentX[k] - lineSearch_lambda * grad[k];
-					if (x[k] < epsilon) {
-						x[k] = epsilon;
-					}
-				}
+		@Override
+		public int getDimension() {
+			return nTopics;
+		}
 
-				// compute f at the new x
-				f = 0 - getLikelihood_authority(u, x);
+		@Override
+		public double getValue(OptimizerContext ctx, double[] x) {
+			return 0 - getLikelihood_authority(u, x);
+		}
 
-				// compute ||currentX - x||^2
-				diff = 0;
+		@Override
+		public void getGradient(OptimizerContext ctx, double[] x, double[] grad) {
+			if (useFusedGradients) {
+				gradLikelihood_authorities(u, x, grad);
 				for (int k = 0; k < nTopics; k++) {
-					diff += Math.pow(currentX[k] - x[k], 2);
-				}
-				// check the condition to stop line search
-				if (f - currentF <= (-lineSearch_alpha / lineSearch_lambda) * diff) {
-					flag = true;
-					break;
-				} else {
-					lineSearch_lambda *= lineSearch_beta;
+					grad[k] = 0 - grad[k];
 				}
-			}
-			if (flag) {// line search successful
-				currentF = f;
+			} else {
 				for (int k = 0; k < nTopics; k++) {
-					currentX[k] = x[k];
-				}
-				// to see if F actually reduce after every iteration
-				if (opt_authority_verbose) {
-					System.out.printf("alt_authority: u = %d iter = %d f = %f\n", u, iter, f);
+					grad[k] = 0 - gradLikelihood_authority(u, k, x[k]);
 				}
+			}
+		}
+
+		@Override
+		public void prepareLineSearch(OptimizerContext ctx, double[] x0, double[] direction) {
+			if (useDirectionalLineSearch) {
+				prepareLineSearch_authority(ctx, u, x0, direction);
+			}
+		}
+
+		@Override
+		public double getLineSearchValue(OptimizerContext ctx, double[] x0, double[] direction, double[] x) {
+			if (useDirectionalLineSearch) {
+				return 0 - getLikelihood_authority(ctx, u, x0, direction, x);
 			} else {
-				// to see if F actually reduce after every iteration
-				if (opt_authority_verbose) {
-					System.out.printf("alt_authority: u = %d iter = %d f = %f\n", u, iter, f);
+				return 0 - getLikelihood_authority(u, x);
+			}
+		}
+
+		@Override
+		public void project(OptimizerContext ctx, double[] x) {
+			ctx.nClampedTopics = 0;
+			for (int k = 0; k < nTopics; k++) {
+				if (x[k] < epsilon) {
+					x[k] = epsilon;
+					ctx.clampedTopics[ctx.nClampedTopics++] = k;
 				}
-				break;// cannot improve further
 			}
 		}
 
+		@Override
+		public double getLowerBound(int i) {
+			return epsilon;
+		}
+
+		@Override
+		public boolean isFixed(int i) {
+			return false;
+		}
+
+		@Override
+		public void accept(OptimizerContext ctx, double[] x) {
+			parameters.setTopicVector(parameters.authorities, u, x);
+			parameters.updatePlatformAuthorities(u);
+			if (edgeScoreCache != null) {
+				updateEdgeScores_authority(ctx, u);
+			}
+			markLikelihoodDirty(u, true);
+		}
+
+		@Override
+		public void reportIteration(int iter, double f) {
+			// to see if F actually reduce after every iteration
+			if (opt_authority_verbose) {
+				System.out.printf("alt_authority: u = %d iter = %d f = %f\n", u, iter, f);
+			}
+		}
+
+		@Override
+		public OptimizerStats getStats() {
+			return authorityStats;
+		}
+	}
+
+	/***
+	 * alternating step to optimize authorities of user u
+	 * 
+	 * @param u
+	 */
+	private static void altOptimize_Authorities(OptimizerContext ctx, int u) {
+		double[] currentX = ctx.currentX;
+		parameters.getTopicVector(parameters.authorities, u, currentX);
+		authorityOptimizer.minimize(ctx, new AuthorityObjective(u), currentX, maxIteration_Authorities);
 	}
 
 	/***
@@ -1315,74 +1957,61 @@ public class MultiThreadMPHAT {
 	 */
 	private static double getLikelihood_hub(int u, double[] x) {
 		// Refer to Eqn 20 in learning paper
+		double[] authorityBuffer = (parameters.isSinglePrecision()) ? getOptimizerContext().authorityRow : null;
 		double followingLikelihood = 0;
 		double nonFollowingLikelihood = 0;
 		double hubLikelihood = 0;
 		double likelihood = 0;
 
 		// Set the current user to be v
-		User currUser = dataset.users[u];
 		double temp;
 		double log2 = Math.log(2);
 
 		// First term in eqn 20. Compute following likelihood.
-		if (currUser.followings != null) {
-			for (int i = 0; i < currUser.followings.length; i++) {
-				int v = currUser.followings[i].followingIndex;
-				User following = dataset.users[v];
-				int p = currUser.followings[i].platform;
+		for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+			int v = dataset.followings.neighbors[i];
+			int p = dataset.followings.platforms[i];
 
-				// Compute H_u^p * A_v^p
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					HupAvp += x[z] * currUser.topicalRelativePlatformPreference[z][p] * following.authorities[z]
-							* following.topicalRelativePlatformPreference[z][p];// now
-					// H_u
-					// is
-					// x
-				}
-				HupAvp = HupAvp * lamda;
-				// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
-				// followingLikelihood += Math.log(fHupAvp);
+			// Compute H_u^p * A_v^p
+			double HupAvp = VectorKernels.dotProduct(nTopics, x, 0,
+					parameters.getPlatformAuthorityRow(v, p, authorityBuffer), parameters.getPlatformRowIndex(v, p),
+					parameters.topicalRelativePlatformPreference, parameters.preferenceIndex(u, 0, p),
+					Configure.NUM_OF_PLATFORM);// now H_u is x
+			HupAvp = HupAvp * lamda;
+			// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
+			// followingLikelihood += Math.log(fHupAvp);
 
-				// followingLikelihood += Math.log(1 - Math.exp(-HupAvp)) -
-				// Math.log(Math.exp(-HupAvp) + 1);
+			// followingLikelihood += Math.log(1 - Math.exp(-HupAvp)) -
+			// Math.log(Math.exp(-HupAvp) + 1);
 
-				temp = Math.exp(-HupAvp);
-				followingLikelihood += Math.log(1 - temp) - Math.log(temp + 1);
+			temp = Math.exp(-HupAvp);
+			followingLikelihood += Math.log(1 - temp) - Math.log(temp + 1);
 
-			}
 		}
 		// Second term in eqn 20. Compute non following likelihood.
-		if (currUser.nonFollowings != null) {
-			for (int i = 0; i < currUser.nonFollowings.length; i++) {
-				int v = currUser.nonFollowings[i].followingIndex;
-				User nonFollowing = dataset.users[v];
-				int p = currUser.nonFollowings[i].platform;
-				// Compute H_u * A_v
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					HupAvp += x[z] * currUser.topicalRelativePlatformPreference[z][p] * nonFollowing.authorities[z]
-							* nonFollowing.topicalRelativePlatformPreference[z][p];// now
-					// H_u
-					// is
-					// x
-				}
-				HupAvp = HupAvp * lamda;
-				// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
-				// nonFollowingLikelihood += Math.log(1 - fHupAvp);
+		for (int i = dataset.nonFollowings.offsets[u]; i < dataset.nonFollowings.offsets[u + 1]; i++) {
+			int v = dataset.nonFollowings.neighbors[i];
+			int p = dataset.nonFollowings.platforms[i];
+			// Compute H_u * A_v
+			double HupAvp = VectorKernels.dotProduct(nTopics, x, 0,
+					parameters.getPlatformAuthorityRow(v, p, authorityBuffer), parameters.getPlatformRowIndex(v, p),
+					parameters.topicalRelativePlatformPreference, parameters.preferenceIndex(u, 0, p),
+					Configure.NUM_OF_PLATFORM);// now H_u is x
+			HupAvp = HupAvp * lamda;
+			// double fHupAvp = 2 * ((1 / (Math.exp(-HupAvp) + 1)) - 0.5);
+			// nonFollowingLikelihood += Math.log(1 - fHupAvp);
+
+			// nonFollowingLikelihood += Math.log(2) - HupAvp -
+			// Math.log(Math.exp(-HupAvp) + 1);
+
+			nonFollowingLikelihood += log2 - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
 
-				// nonFollowingLikelihood += Math.log(2) - HupAvp -
-				// Math.log(Math.exp(-HupAvp) + 1);
-
-				nonFollowingLikelihood += log2 - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
-
-			}
 		}
 
 		// Third term in eqn 20. Compute post likelihood.
 		for (int k = 0; k < nTopics; k++) {
-			hubLikelihood += ((delta - 1) * Math.log(x[k])) - ((x[k] * delta) / currUser.topicalInterests[k]);// now
+			hubLikelihood += ((delta - 1) * Math.log(x[k]))
+					- ((x[k] * delta) / parameters.getTopicalInterest(u, k));// now
 			// H_u
 			// is
 			// x
@@ -1412,88 +2041,82 @@ public class MultiThreadMPHAT {
 		double gradLikelihood = 0;
 
 		// Set the current user to be u
-		User currUser = dataset.users[u];
 		double temp;
 		// First term in eqn 22. Compute following likelihood
-		if (currUser.followings != null) {
-			for (int i = 0; i < currUser.followings.length; i++) {
-				int v = currUser.followings[i].followingIndex;
-				User following = dataset.users[v];
-				int p = currUser.followings[i].platform;
+		for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+			int v = dataset.followings.neighbors[i];
+			int p = dataset.followings.platforms[i];
 
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					if (z == k) {
-						HupAvp += x * currUser.topicalRelativePlatformPreference[z][p] * following.authorities[z]
-								* following.topicalRelativePlatformPreference[z][p];
-					} else {
-						HupAvp += currUser.hubs[z] * currUser.topicalRelativePlatformPreference[z][p]
-								* following.authorities[z] * following.topicalRelativePlatformPreference[z][p];
-					}
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				if (z == k) {
+					HupAvp += x * parameters.getRelativePlatformPreference(u, z, p) * parameters.getAuthority(v, z)
+							* parameters.getRelativePlatformPreference(v, z, p);
+				} else {
+					HupAvp += parameters.getHub(u, z) * parameters.getRelativePlatformPreference(u, z, p)
+							* parameters.getAuthority(v, z) * parameters.getRelativePlatformPreference(v, z, p);
 				}
-				HupAvp = HupAvp * lamda;
-
-				// followingLikelihood += (1 / (1 - Math.exp(-HupAvp)) *
-				// -Math.exp(-HupAvp)
-				// * (-lamda * following.authorities[k] *
-				// following.topicalPlatformPreference[k][p]
-				// * currUser.topicalPlatformPreference[k][p]))
-				// - (1 / (Math.exp(-HupAvp) + 1) * Math.exp(-HupAvp)
-				// * (-lamda * following.authorities[k] *
-				// following.topicalPlatformPreference[k][p]
-				// * currUser.topicalPlatformPreference[k][p]));
-
-				temp = Math.exp(-HupAvp);
-				followingLikelihood += (1 / (1 - temp) * -temp
-						* (-lamda * following.authorities[k] * following.topicalRelativePlatformPreference[k][p]
-								* currUser.topicalRelativePlatformPreference[k][p]))
-						- (1 / (temp + 1) * temp
-								* (-lamda * following.authorities[k] * following.topicalRelativePlatformPreference[k][p]
-										* currUser.topicalRelativePlatformPreference[k][p]));
 			}
+			HupAvp = HupAvp * lamda;
+
+			// followingLikelihood += (1 / (1 - Math.exp(-HupAvp)) *
+			// -Math.exp(-HupAvp)
+			// * (-lamda * following.authorities[k] *
+			// following.topicalPlatformPreference[k][p]
+			// * currUser.topicalPlatformPreference[k][p]))
+			// - (1 / (Math.exp(-HupAvp) + 1) * Math.exp(-HupAvp)
+			// * (-lamda * following.authorities[k] *
+			// following.topicalPlatformPreference[k][p]
+			// * currUser.topicalPlatformPreference[k][p]));
+
+			temp = Math.exp(-HupAvp);
+			followingLikelihood += (1 / (1 - temp) * -temp
+					* (-lamda * parameters.getAuthority(v, k) * parameters.getRelativePlatformPreference(v, k, p)
+					* parameters.getRelativePlatformPreference(u, k, p)))
+					- (1 / (temp + 1) * temp
+							* (-lamda * parameters.getAuthority(v, k)
+							* parameters.getRelativePlatformPreference(v, k, p)
+							* parameters.getRelativePlatformPreference(u, k, p)));
 		}
 
 		// Second term in eqn 22. Compute non following likelihood
-		if (currUser.nonFollowings != null) {
-			for (int i = 0; i < currUser.nonFollowings.length; i++) {
-				int v = currUser.nonFollowings[i].followingIndex;
-				User nonFollowing = dataset.users[v];
-				int p = currUser.nonFollowings[i].platform;
+		for (int i = dataset.nonFollowings.offsets[u]; i < dataset.nonFollowings.offsets[u + 1]; i++) {
+			int v = dataset.nonFollowings.neighbors[i];
+			int p = dataset.nonFollowings.platforms[i];
 
-				double HupAvp = 0;
-				for (int z = 0; z < nTopics; z++) {
-					if (z == k) {
-						HupAvp += x * currUser.topicalRelativePlatformPreference[z][p] * nonFollowing.authorities[z]
-								* nonFollowing.topicalRelativePlatformPreference[z][p];
-					} else {
-						HupAvp += currUser.hubs[z] * currUser.topicalRelativePlatformPreference[z][p]
-								* nonFollowing.authorities[z] * nonFollowing.topicalRelativePlatformPreference[z][p];
-					}
+			double HupAvp = 0;
+			for (int z = 0; z < nTopics; z++) {
+				if (z == k) {
+					HupAvp += x * parameters.getRelativePlatformPreference(u, z, p) * parameters.getAuthority(v, z)
+							* parameters.getRelativePlatformPreference(v, z, p);
+				} else {
+					HupAvp += parameters.getHub(u, z) * parameters.getRelativePlatformPreference(u, z, p)
+							* parameters.getAuthority(v, z) * parameters.getRelativePlatformPreference(v, z, p);
 				}
-				HupAvp = HupAvp * lamda;
-
-				// nonFollowingLikelihood += (-lamda *
-				// currUser.topicalPlatformPreference[k][p]
-				// * nonFollowing.authorities[k] *
-				// nonFollowing.topicalPlatformPreference[k][p])
-				// - ((1 / (Math.exp(-HupAvp) + 1)) * (Math.exp(-HupAvp))
-				// * (-lamda * nonFollowing.authorities[k] *
-				// nonFollowing.topicalPlatformPreference[k][p]
-				// * currUser.topicalPlatformPreference[k][p]));
-
-				temp = Math.exp(-HupAvp);
-				nonFollowingLikelihood += (-lamda * currUser.topicalRelativePlatformPreference[k][p]
-						* nonFollowing.authorities[k] * nonFollowing.topicalRelativePlatformPreference[k][p])
-						- ((1 / (temp + 1)) * temp
-								* (-lamda * nonFollowing.authorities[k]
-										* nonFollowing.topicalRelativePlatformPreference[k][p]
-										* currUser.topicalRelativePlatformPreference[k][p]));
-
 			}
+			HupAvp = HupAvp * lamda;
+
+			// nonFollowingLikelihood += (-lamda *
+			// currUser.topicalPlatformPreference[k][p]
+			// * nonFollowing.authorities[k] *
+			// nonFollowing.topicalPlatformPreference[k][p])
+			// - ((1 / (Math.exp(-HupAvp) + 1)) * (Math.exp(-HupAvp))
+			// * (-lamda * nonFollowing.authorities[k] *
+			// nonFollowing.topicalPlatformPreference[k][p]
+			// * currUser.topicalPlatformPreference[k][p]));
+
+			temp = Math.exp(-HupAvp);
+			nonFollowingLikelihood += (-lamda * parameters.getRelativePlatformPreference(u, k, p)
+					* parameters.getAuthority(v, k) * parameters.getRelativePlatformPreference(v, k, p))
+					- ((1 / (temp + 1)) * temp
+							* (-lamda * parameters.getAuthority(v, k)
+							* parameters.getRelativePlatformPreference(v, k, p)
+							* parameters.getRelativePlatformPreference(u, k, p)));
+
 		}
 
 		// Third term in eqn 22. Compute post likelihood
-		hubLikelihood = ((delta - 1) / x) - (delta / currUser.topicalInterests[k]);
+		hubLikelihood = ((delta - 1) / x) - (delta / parameters.getTopicalInterest(u, k));
 
 		gradLikelihood = nonFollowingLikelihood + followingLikelihood + (omega * hubLikelihood);
 		// gradLikelihood = followingLikelihood;
@@ -1502,72 +2125,302 @@ public class MultiThreadMPHAT {
 	}
 
 	/***
-	 * alternating step to optimize hubs of user u
+	 * compute gradient of likelihood of data with respect to all the hubs of u
+	 * when the hubs are x, i.e., grad[k] = df/dH_uk. Same as calling
+	 * gradLikelihood_hub for every k, but each following and non-following is
+	 * visited once. When the edge score cache is on, the scores are read from
+	 * it, so x must be the current hubs of u
 	 * 
 	 * @param u
+	 * @param x
+	 * @param grad
 	 */
-	private static void altOptimize_Hubs(int u) {
-		double[] grad = new double[nTopics];
-		double[] currentX = dataset.users[u].hubs;
-		double[] x = new double[nTopics];
-
-		double currentF = 0 - getLikelihood_hub(u, currentX);
-
-		boolean flag = true;
-		double diff = 0;
-		double f = Double.MAX_VALUE;
-
-		for (int iter = 0; iter < maxIteration_Hubs; iter++) {
-			// compute gradient
-			for (int k = 0; k < nTopics; k++) {
-				grad[k] = 0 - gradLikelihood_hub(u, k, currentX[k]);
-			}
-			// start line search
-			lineSearch_lambda = lineSearch_beta;
-			flag = false;
-
-			for (int lineSearchIter = 0; lineSearchIter < lineSearch_MaxIterations; lineSearchIter++) {
-				// find new x
-				for (int k = 0; k < nTopics; k++) {
-					x[k] = currentX[k] - lineSearch_lambda * grad[k];
-					if (x[k] < epsilon) {
-						x[k] = epsilon;
-					}
-				}
-
-				// compute f at the new x
-				f = 0 - getLikelihood_hub(u, x);
-
-				// compute ||currentX - x||^2
-				diff = 0;
-				for (int k = 0; k < nTopics; k++) {
-					diff += Math.pow(currentX[k] - x[k], 2);
+	private static void gradLikelihood_hubs(int u, double[] x, double[] grad) {
+		// Refer to Eqn 22 in learning paper
+		double[] authorityBuffer = (parameters.isSinglePrecision()) ? getOptimizerContext().authorityRow : null;
+		double[] relativePreferences = parameters.topicalRelativePlatformPreference;
+		int interestIndex = parameters.topicIndex(u, 0);
+		for (int k = 0; k < nTopics; k++) {
+			grad[k] = 0;
+		}
+		double temp;
+		// First term in eqn 22. Compute following likelihood
+		for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+			int p = dataset.followings.platforms[i];
+			double[] platformAuthorities = parameters.getPlatformAuthorityRow(dataset.followings.neighbors[i], p,
+					authorityBuffer);
+			int authorityIndex = parameters.getPlatformRowIndex(dataset.followings.neighbors[i], p);
+			int preferenceIndex = parameters.preferenceIndex(u, 0, p);
+
+			if (edgeScoreCache != null) {
+				temp = edgeScoreCache.expScores[edgeScoreCache.getFollowingEdge(i)];
+			} else {
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					HupAvp += x[z] * relativePreferences[preferenceIndex + z * Configure.NUM_OF_PLATFORM]
+							* platformAuthorities[authorityIndex + z];
 				}
-				// check the condition to stop line search
-				if (f - currentF <= (-lineSearch_alpha / lineSearch_lambda) * diff) {
-					flag = true;
-					break;
-				} else {
-					lineSearch_lambda *= lineSearch_beta;
+				HupAvp = HupAvp * lamda;
+				temp = Math.exp(-HupAvp);
+			}
+			double coef = lamda * (temp / (1 - temp) + temp / (temp + 1));
+			for (int z = 0; z < nTopics; z++) {
+				grad[z] += coef * relativePreferences[preferenceIndex + z * Configure.NUM_OF_PLATFORM]
+						* platformAuthorities[authorityIndex + z];
+			}
+		}
+
+		// Second term in eqn 22. Compute non following likelihood
+		for (int i = dataset.nonFollowings.offsets[u]; i < dataset.nonFollowings.offsets[u + 1]; i++) {
+			int p = dataset.nonFollowings.platforms[i];
+			double[] platformAuthorities = parameters.getPlatformAuthorityRow(dataset.nonFollowings.neighbors[i], p,
+					authorityBuffer);
+			int authorityIndex = parameters.getPlatformRowIndex(dataset.nonFollowings.neighbors[i], p);
+			int preferenceIndex = parameters.preferenceIndex(u, 0, p);
+
+			if (edgeScoreCache != null) {
+				temp = edgeScoreCache.expScores[edgeScoreCache.getNonFollowingEdge(i)];
+			} else {
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					HupAvp += x[z] * relativePreferences[preferenceIndex + z * Configure.NUM_OF_PLATFORM]
+							* platformAuthorities[authorityIndex + z];
+				}
+				HupAvp = HupAvp * lamda;
+				temp = Math.exp(-HupAvp);
+			}
+			double coef = lamda * (temp / (temp + 1) - 1);
+			for (int z = 0; z < nTopics; z++) {
+				grad[z] += coef * relativePreferences[preferenceIndex + z * Configure.NUM_OF_PLATFORM]
+						* platformAuthorities[authorityIndex + z];
+			}
+		}
+
+		// Third term in eqn 22. Compute post likelihood
+		for (int k = 0; k < nTopics; k++) {
+			grad[k] += omega * (((delta - 1) / x[k]) - (delta / parameters.topicalInterests[interestIndex + k]));
+		}
+	}
+
+	/***
+	 * cache, for every following and non-following e of u, the edge score at
+	 * x, lamda * <x, b_e>, and its slope along direction, lamda * <direction,
+	 * b_e>, where b_e[z] = eta_uz^p * A_vz * eta_vz^p
+	 * 
+	 * @param ctx
+	 * @param u
+	 * @param x
+	 * @param direction
+	 */
+	private static void prepareLineSearch_hub(OptimizerContext ctx, int u, double[] x, double[] direction) {
+		double[] authorityBuffer = ctx.authorityRow;
+		double[] relativePreferences = parameters.topicalRelativePlatformPreference;
+		RelationGraph followings = dataset.followings;
+		RelationGraph nonFollowings = dataset.nonFollowings;
+		int nFollowings = followings.getDegree(u);
+		int nNonFollowings = nonFollowings.getDegree(u);
+		ctx.ensureEdgeCapacity(nFollowings + nNonFollowings);
+		for (int i = 0; i < nFollowings + nNonFollowings; i++) {
+			RelationGraph edges = (i < nFollowings) ? followings : nonFollowings;
+			int e = edges.offsets[u] + ((i < nFollowings) ? i : i - nFollowings);
+			int p = edges.platforms[e];
+			double[] platformAuthorities = parameters.getPlatformAuthorityRow(edges.neighbors[e], p, authorityBuffer);
+			int authorityIndex = parameters.getPlatformRowIndex(edges.neighbors[e], p);
+			int preferenceIndex = parameters.preferenceIndex(u, 0, p);
+			double score = 0;
+			double slope = 0;
+			for (int z = 0; z < nTopics; z++) {
+				double b = relativePreferences[preferenceIndex + z * Configure.NUM_OF_PLATFORM]
+						* platformAuthorities[authorityIndex + z];
+				score += x[z] * b;
+				slope += direction[z] * b;
+			}
+			ctx.edgeScores[i] = score * lamda;
+			ctx.edgeSlopes[i] = slope * lamda;
+		}
+	}
+
+	/***
+	 * same as getLikelihood_hub(u, x) for a trial point x = x0 -
+	 * ctx.lineSearch_lambda * direction whose clamped topics are listed in
+	 * ctx.clampedTopics, using the dot products cached by
+	 * prepareLineSearch_hub(ctx, u, x0, direction)
+	 * 
+	 * @param ctx
+	 * @param u
+	 * @param x0
+	 * @param direction
+	 * @param x
+	 * @return
+	 */
+	private static double getLikelihood_hub(OptimizerContext ctx, int u, double[] x0, double[] direction,
+			double[] x) {
+		double[] authorityBuffer = ctx.authorityRow;
+		double[] relativePreferences = parameters.topicalRelativePlatformPreference;
+		int interestIndex = parameters.topicIndex(u, 0);
+		RelationGraph followings = dataset.followings;
+		RelationGraph nonFollowings = dataset.nonFollowings;
+		int nFollowings = followings.getDegree(u);
+		int nNonFollowings = nonFollowings.getDegree(u);
+		double step = ctx.lineSearch_lambda;
+		for (int i = 0; i < nFollowings + nNonFollowings; i++) {
+			double HupAvp = ctx.edgeScores[i] - step * ctx.edgeSlopes[i];
+			if (ctx.nClampedTopics > 0) {
+				RelationGraph edges = (i < nFollowings) ? followings : nonFollowings;
+				int e = edges.offsets[u] + ((i < nFollowings) ? i : i - nFollowings);
+				int p = edges.platforms[e];
+				double[] platformAuthorities = parameters.getPlatformAuthorityRow(edges.neighbors[e], p,
+						authorityBuffer);
+				int authorityIndex = parameters.getPlatformRowIndex(edges.neighbors[e], p);
+				int preferenceIndex = parameters.preferenceIndex(u, 0, p);
+				for (int c = 0; c < ctx.nClampedTopics; c++) {
+					int z = ctx.clampedTopics[c];
+					HupAvp += lamda * (x[z] - (x0[z] - step * direction[z]))
+							* relativePreferences[preferenceIndex + z * Configure.NUM_OF_PLATFORM]
+									* platformAuthorities[authorityIndex + z];
 				}
 			}
-			if (flag) {// line search successful
-				currentF = f;
+			ctx.trialScores[i] = HupAvp;
+			ctx.trialExpScores[i] = Math.exp(-HupAvp);
+		}
+		double followingLikelihood = VectorKernels.linkLikelihood(ctx.trialExpScores, 0, nFollowings);
+		double nonFollowingLikelihood = VectorKernels.nonLinkLikelihood(ctx.trialScores, ctx.trialExpScores,
+				nFollowings, nFollowings + nNonFollowings);
+		double hubLikelihood = 0;
+		for (int k = 0; k < nTopics; k++) {
+			hubLikelihood += ((delta - 1) * Math.log(x[k]))
+					- ((x[k] * delta) / parameters.topicalInterests[interestIndex + k]);
+		}
+		return nonFollowingLikelihood + followingLikelihood + (omega * hubLikelihood);
+	}
+
+	/***
+	 * write the scores of the followings' and non-followings' edges of u to
+	 * the cache after its hubs are updated, from the last trial point of the
+	 * directional line search if it was used
+	 * 
+	 * @param ctx
+	 * @param u
+	 */
+	private static void updateEdgeScores_hub(OptimizerContext ctx, int u) {
+		if (!useDirectionalLineSearch) {
+			edgeScoreCache.refreshOutEdges(dataset, parameters, u, lamda);
+			return;
+		}
+		int j = 0;
+		for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++, j++) {
+			edgeScoreCache.set(edgeScoreCache.getFollowingEdge(i), ctx.trialScores[j], ctx.trialExpScores[j]);
+		}
+		for (int i = dataset.nonFollowings.offsets[u]; i < dataset.nonFollowings.offsets[u + 1]; i++, j++) {
+			edgeScoreCache.set(edgeScoreCache.getNonFollowingEdge(i), ctx.trialScores[j], ctx.trialExpScores[j]);
+		}
+	}
+
+	/***
+	 * negative likelihood as a function of the hubs of u, which are
+	 * bounded below by epsilon
+	 */
+	private static class HubObjective implements BlockObjective {
+		private int u;
+
+		public HubObjective(int _u) {
+			u = _u;
+		}
+
+		@Override
+		public int getDimension() {
+			return nTopics;
+		}
+
+		@Override
+		public double getValue(OptimizerContext ctx, double[] x) {
+			return 0 - getLikelihood_hub(u, x);
+		}
+
+		@Override
+		public void getGradient(OptimizerContext ctx, double[] x, double[] grad) {
+			if (useFusedGradients) {
+				gradLikelihood_hubs(u, x, grad);
 				for (int k = 0; k < nTopics; k++) {
-					currentX[k] = x[k];
+					grad[k] = 0 - grad[k];
 				}
-				// to see if F actually reduce after every iteration
-				if (opt_hub_verbose) {
-					System.out.printf("alt_hub: u = %d iter = %d f = %f\n", u, iter, f);
+			} else {
+				for (int k = 0; k < nTopics; k++) {
+					grad[k] = 0 - gradLikelihood_hub(u, k, x[k]);
 				}
+			}
+		}
+
+		@Override
+		public void prepareLineSearch(OptimizerContext ctx, double[] x0, double[] direction) {
+			if (useDirectionalLineSearch) {
+				prepareLineSearch_hub(ctx, u, x0, direction);
+			}
+		}
+
+		@Override
+		public double getLineSearchValue(OptimizerContext ctx, double[] x0, double[] direction, double[] x) {
+			if (useDirectionalLineSearch) {
+				return 0 - getLikelihood_hub(ctx, u, x0, direction, x);
 			} else {
-				// to see if F actually reduce after every iteration
-				if (opt_hub_verbose) {
-					System.out.printf("alt_hub: u = %d iter = %d f = %f\n", u, iter, f);
+				return 0 - getLikelihood_hub(u, x);
+			}
+		}
+
+		@Override
+		public void project(OptimizerContext ctx, double[] x) {
+			ctx.nClampedTopics = 0;
+			for (int k = 0; k < nTopics; k++) {
+				if (x[k] < epsilon) {
+					x[k] = epsilon;
+					ctx.clampedTopics[ctx.nClampedTopics++] = k;
 				}
-				break;// cannot improve further
 			}
 		}
+
+		@Override
+		public double getLowerBound(int i) {
+			return epsilon;
+		}
+
+		@Override
+		public boolean isFixed(int i) {
+			return false;
+		}
+
+		@Override
+		public void accept(OptimizerContext ctx, double[] x) {
+			parameters.setTopicVector(parameters.hubs, u, x);
+			parameters.updatePlatformHubs(u);
+			if (edgeScoreCache != null) {
+				updateEdgeScores_hub(ctx, u);
+			}
+			markLikelihoodDirty(u, true);
+		}
+
+		@Override
+		public void reportIteration(int iter, double f) {
+			// to see if F actually reduce after every iteration
+			if (opt_hub_verbose) {
+				System.out.printf("alt_hub: u = %d iter = %d f = %f\n", u, iter, f);
+			}
+		}
+
+		@Override
+		public OptimizerStats getStats() {
+			return hubStats;
+		}
+	}
+
+	/***
+	 * alternating step to optimize hubs of user u
+	 * 
+	 * @param u
+	 */
+	private static void altOptimize_Hubs(OptimizerContext ctx, int u) {
+		double[] currentX = ctx.currentX;
+		parameters.getTopicVector(parameters.hubs, u, currentX);
+		hubOptimizer.minimize(ctx, new HubObjective(u), currentX, maxIteration_Hubs);
 	}
 
 	/***
@@ -1594,100 +2447,89 @@ public class MultiThreadMPHAT {
 			double temp;
 			double log2 = Math.log(2);
 			// First term in eqn 28. Compute link likelihood.
-			if (currUser.followings != null) {
-				for (int i = 0; i < currUser.followings.length; i++) {
-					int v = currUser.followings[i].followingIndex;
-					User following = dataset.users[v];
-					int p = currUser.followings[i].platform;
-
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						if (z == k) {
-							HupAvp += currUser.hubs[z] * topicalRelativePlatformPreference[p] * following.authorities[z]
-									* following.topicalRelativePlatformPreference[z][p];
-						} else {
-							HupAvp += currUser.hubs[z] * currUser.topicalRelativePlatformPreference[z][p]
-									* following.authorities[z] * following.topicalRelativePlatformPreference[z][p];
-						}
+			for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+				int v = dataset.followings.neighbors[i];
+				int p = dataset.followings.platforms[i];
 
+				// Compute H_u^p * A_v^p
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					if (z == k) {
+						HupAvp += parameters.getHub(u, z) * topicalRelativePlatformPreference[p]
+								* parameters.getAuthority(v, z)
+								* parameters.getRelativePlatformPreference(v, z, p);
+					} else {
+						HupAvp += parameters.getHub(u, z) * parameters.getRelativePlatformPreference(u, z, p)
+								* parameters.getAuthority(v, z) * parameters.getRelativePlatformPreference(v, z, p);
 					}
-					HupAvp = HupAvp * lamda;
-					temp = Math.exp(-HupAvp);
 
-					linkLikelihood += Math.log(1 - temp) - Math.log(temp + 1);
 				}
+				HupAvp = HupAvp * lamda;
+				temp = Math.exp(-HupAvp);
+
+				linkLikelihood += Math.log(1 - temp) - Math.log(temp + 1);
 			}
-			if (currUser.followers != null) {
-				for (int i = 0; i < currUser.followers.length; i++) {
-					int v = currUser.followers[i].followerIndex;
-					User follower = dataset.users[v];
-					int p = currUser.followers[i].platform;
+			for (int i = dataset.followers.offsets[u]; i < dataset.followers.offsets[u + 1]; i++) {
+				int v = dataset.followers.neighbors[i];
+				int p = dataset.followers.platforms[i];
 
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						if (z == k) {
-							HupAvp += follower.hubs[z] * follower.topicalRelativePlatformPreference[z][p]
-									* currUser.authorities[z] * topicalRelativePlatformPreference[p];
-						} else {
-							HupAvp += follower.hubs[z] * follower.topicalRelativePlatformPreference[z][p]
-									* currUser.authorities[z] * currUser.topicalRelativePlatformPreference[z][p];
-						}
+				// Compute H_u^p * A_v^p
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					if (z == k) {
+						HupAvp += parameters.getHub(v, z) * parameters.getRelativePlatformPreference(v, z, p)
+								* parameters.getAuthority(u, z) * topicalRelativePlatformPreference[p];
+					} else {
+						HupAvp += parameters.getHub(v, z) * parameters.getRelativePlatformPreference(v, z, p)
+								* parameters.getAuthority(u, z) * parameters.getRelativePlatformPreference(u, z, p);
 					}
-					HupAvp = HupAvp * lamda;
-					temp = Math.exp(-HupAvp);
-
-					linkLikelihood += Math.log(1 - temp) - Math.log(temp + 1);
 				}
+				HupAvp = HupAvp * lamda;
+				temp = Math.exp(-HupAvp);
+
+				linkLikelihood += Math.log(1 - temp) - Math.log(temp + 1);
 			}
 
 			// Second term in eqn 28. Compute non link likelihood.
-			if (currUser.nonFollowings != null) {
-				for (int i = 0; i < currUser.nonFollowings.length; i++) {
-					int v = currUser.nonFollowings[i].followingIndex;
-					User nonFollowing = dataset.users[v];
-					int p = currUser.nonFollowings[i].platform;
-
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						if (z == k) {
-							HupAvp += currUser.hubs[z] * topicalRelativePlatformPreference[p]
-									* nonFollowing.authorities[z]
-									* nonFollowing.topicalRelativePlatformPreference[z][p];
-						} else {
-							HupAvp += currUser.hubs[z] * currUser.topicalRelativePlatformPreference[z][p]
-									* nonFollowing.authorities[z]
-									* nonFollowing.topicalRelativePlatformPreference[z][p];
-						}
-					}
-					HupAvp = HupAvp * lamda;
+			for (int i = dataset.nonFollowings.offsets[u]; i < dataset.nonFollowings.offsets[u + 1]; i++) {
+				int v = dataset.nonFollowings.neighbors[i];
+				int p = dataset.nonFollowings.platforms[i];
 
-					nonLinkLikelihood += log2 - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
+				// Compute H_u^p * A_v^p
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					if (z == k) {
+						HupAvp += parameters.getHub(u, z) * topicalRelativePlatformPreference[p]
+								* parameters.getAuthority(v, z)
+								* parameters.getRelativePlatformPreference(v, z, p);
+					} else {
+						HupAvp += parameters.getHub(u, z) * parameters.getRelativePlatformPreference(u, z, p)
+								* parameters.getAuthority(v, z)
+								* parameters.getRelativePlatformPreference(v, z, p);
+					}
 				}
+				HupAvp = HupAvp * lamda;
+
+				nonLinkLikelihood += log2 - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
 			}
-			if (currUser.nonFollowers != null) {
-				for (int i = 0; i < currUser.nonFollowers.length; i++) {
-					int v = currUser.nonFollowers[i].followerIndex;
-					User nonFollower = dataset.users[v];
-					int p = currUser.nonFollowers[i].platform;
+			for (int i = dataset.nonFollowers.offsets[u]; i < dataset.nonFollowers.offsets[u + 1]; i++) {
+				int v = dataset.nonFollowers.neighbors[i];
+				int p = dataset.nonFollowers.platforms[i];
 
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						if (z == k) {
-							HupAvp += nonFollower.hubs[z] * nonFollower.topicalRelativePlatformPreference[z][p]
-									* currUser.authorities[z] * topicalRelativePlatformPreference[p];
-						} else {
-							HupAvp += nonFollower.hubs[z] * nonFollower.topicalRelativePlatformPreference[z][p]
-									* currUser.authorities[z] * currUser.topicalRelativePlatformPreference[z][p];
-						}
+				// Compute H_u^p * A_v^p
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					if (z == k) {
+						HupAvp += parameters.getHub(v, z) * parameters.getRelativePlatformPreference(v, z, p)
+								* parameters.getAuthority(u, z) * topicalRelativePlatformPreference[p];
+					} else {
+						HupAvp += parameters.getHub(v, z) * parameters.getRelativePlatformPreference(v, z, p)
+								* parameters.getAuthority(u, z) * parameters.getRelativePlatformPreference(u, z, p);
 					}
-					HupAvp = HupAvp * lamda;
-
-					nonLinkLikelihood += log2 - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
 				}
+				HupAvp = HupAvp * lamda;
+
+				nonLinkLikelihood += log2 - HupAvp - Math.log(Math.exp(-HupAvp) + 1);
 			}
 		}
 		// ******post part**********
@@ -1712,40 +2554,252 @@ public class MultiThreadMPHAT {
 				}
 			}
 		}
-
+
+		if (usePrior) {
+			// Fourth term in eqn 28. Compute platform likelihood.
+			for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
+				platformPreferencePrior += ((alpha - 1) * Math.log(x[p])) - (x[p] / theta);
+			}
+		}
+		likelihood = linkLikelihood + nonLinkLikelihood + postLikelihood + platformPreferencePrior;
+		// likelihood = postLikelihood + platformLikelihood;
+		// likelihood = linkLikelihood + nonLinkLikelihood;
+
+		return likelihood;
+	}
+
+	/***
+	 * compute gradient of likelihood of data with respect to platform
+	 * preference of u in topic k when the preference is x, i.e., if if
+	 * L(data|parameters) = f(Eta_uk) + const-of-Eta_uk then this function
+	 * return df/dEta_ukp at Eta_ukp = x
+	 * 
+	 * @param u
+	 * @param k
+	 * @param x
+	 * @return
+	 */
+	private static double gradLikelihood_platformPreference(int u, int k, int j, double x) {
+		// Refer to Eqn 31 in Learning paper
+		double linkLikelihood = 0;
+		double nonLinkLikelihood = 0;
+		double postLikelihood = 0;
+		double platformPreferencePrior = 0;
+		double likelihood = 0;
+
+		// Set the current user to be
+		User currUser = dataset.users[u];
+
+		double[] tempExps = new double[Configure.NUM_OF_PLATFORM];
+		double sumExp = 0;
+		for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
+			if (currUser.platforms[p] == 0) {
+				continue;
+			}
+			if (p == j) {
+				tempExps[p] += Math.exp(x);
+			} else {
+				tempExps[p] = Math.exp(parameters.getPlatformPreference(u, k, p));
+			}
+			sumExp += tempExps[p];
+		}
+		double sumExpSqr = sumExp * sumExp;
+		double[] topicalRelativePlatformPreference = new double[Configure.NUM_OF_PLATFORM];
+		for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
+			if (currUser.platforms[p] == 0) {
+				topicalRelativePlatformPreference[p] = 0;
+			} else {
+				topicalRelativePlatformPreference[p] = tempExps[p] / sumExp;
+			}
+		}
+
+		// ****** link part ********
+		if (useLinkInLearningPlatformPreference) {
+			double tempExpHA;
+			double tempGrad;
+			// First term in eqn 31. Compute link likelihood.
+			for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+				int v = dataset.followings.neighbors[i];
+				int p = dataset.followings.platforms[i];
+
+				// Compute H_u^p * A_v^p
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					if (z == k) {
+						HupAvp += parameters.getHub(u, z) * topicalRelativePlatformPreference[p]
+								* parameters.getAuthority(v, z)
+								* parameters.getRelativePlatformPreference(v, z, p);
+					} else {
+						HupAvp += parameters.getHub(u, z) * parameters.getRelativePlatformPreference(u, z, p)
+								* parameters.getAuthority(v, z) * parameters.getRelativePlatformPreference(v, z, p);
+					}
+				}
+				HupAvp = HupAvp * lamda;
+				tempExpHA = Math.exp(-HupAvp);
+
+				if (p == j) {
+					tempGrad = tempExps[p] * sumExp - tempExps[p] * tempExps[j];
+				} else {
+					tempGrad = -tempExps[p] * tempExps[j];
+				}
+				tempGrad /= sumExpSqr;
+				linkLikelihood += ((1 / (1 - tempExpHA)) * (-tempExpHA)
+						* (-lamda * parameters.getHub(u, k) * parameters.getAuthority(v, k)
+						* parameters.getRelativePlatformPreference(v, k, p) * tempGrad))
+						- ((1 / (tempExpHA + 1)) * tempExpHA
+								* (-lamda * parameters.getHub(u, k) * parameters.getAuthority(v, k)
+								* parameters.getRelativePlatformPreference(v, k, p) * tempGrad));
+
+			}
+			for (int i = dataset.followers.offsets[u]; i < dataset.followers.offsets[u + 1]; i++) {
+				int v = dataset.followers.neighbors[i];
+				int p = dataset.followers.platforms[i];
+
+				// Compute H_u^p * A_v^p
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					if (z == k) {
+						HupAvp += parameters.getHub(v, z) * parameters.getRelativePlatformPreference(v, z, p)
+								* parameters.getAuthority(u, z) * topicalRelativePlatformPreference[p];
+					} else {
+						HupAvp += parameters.getHub(v, z) * parameters.getRelativePlatformPreference(v, z, p)
+								* parameters.getAuthority(u, z) * parameters.getRelativePlatformPreference(u, z, p);
+					}
+				}
+				HupAvp = HupAvp * lamda;
+				tempExpHA = Math.exp(-HupAvp);
+
+				if (p == j) {
+					tempGrad = tempExps[p] * sumExp - tempExps[p] * tempExps[j];
+				} else {
+					tempGrad = -tempExps[p] * tempExps[j];
+				}
+				tempGrad /= sumExpSqr;
+
+				linkLikelihood += ((1 / (1 - tempExpHA)) * (-tempExpHA)
+						* (-lamda * parameters.getHub(v, k) * parameters.getRelativePlatformPreference(v, k, p)
+						* parameters.getAuthority(u, k) * tempGrad))
+						- (1 / (tempExpHA + 1) * tempExpHA
+								* (-lamda * parameters.getHub(v, k) * parameters.getRelativePlatformPreference(v, k, p)
+								* parameters.getAuthority(u, k) * tempGrad));
+
+			}
+
+			// Second term in eqn 31. Compute non link likelihood.
+			for (int i = dataset.nonFollowings.offsets[u]; i < dataset.nonFollowings.offsets[u + 1]; i++) {
+				int v = dataset.nonFollowings.neighbors[i];
+				int p = dataset.nonFollowings.platforms[i];
+
+				// Compute H_u^p * A_v^p
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					if (z == k) {
+						HupAvp += parameters.getHub(u, z) * topicalRelativePlatformPreference[p]
+								* parameters.getAuthority(v, z)
+								* parameters.getRelativePlatformPreference(v, z, p);
+					} else {
+						HupAvp += parameters.getHub(u, z) * parameters.getRelativePlatformPreference(u, z, p)
+								* parameters.getAuthority(v, z)
+								* parameters.getRelativePlatformPreference(v, z, p);
+					}
+
+				}
+				HupAvp = HupAvp * lamda;
+				tempExpHA = Math.exp(-HupAvp);
+
+				if (p == j) {
+					tempGrad = tempExps[p] * sumExp - tempExps[p] * tempExps[j];
+				} else {
+					tempGrad = -tempExps[p] * tempExps[j];
+				}
+				tempGrad /= sumExpSqr;
+
+				nonLinkLikelihood += (-lamda * parameters.getHub(u, k) * parameters.getAuthority(v, k)
+						* parameters.getRelativePlatformPreference(v, k, p) * tempGrad)
+						- ((1 / (tempExpHA + 1)) * tempExpHA
+								* (-lamda * parameters.getHub(u, k) * parameters.getAuthority(v, k)
+								* parameters.getRelativePlatformPreference(v, k, p) * tempGrad));
+
+			}
+			for (int i = dataset.nonFollowers.offsets[u]; i < dataset.nonFollowers.offsets[u + 1]; i++) {
+				int v = dataset.nonFollowers.neighbors[i];
+				int p = dataset.nonFollowers.platforms[i];
+				// Compute H_u^p * A_v^p
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					if (z == k) {
+						HupAvp += parameters.getHub(v, z) * parameters.getRelativePlatformPreference(v, z, p)
+								* parameters.getAuthority(u, z) * topicalRelativePlatformPreference[p];
+					} else {
+						HupAvp += parameters.getHub(v, z) * parameters.getRelativePlatformPreference(v, z, p)
+								* parameters.getAuthority(u, z) * parameters.getRelativePlatformPreference(u, z, p);
+					}
+
+				}
+				HupAvp = HupAvp * lamda;
+				tempExpHA = Math.exp(-HupAvp);
+				if (p == j) {
+					tempGrad = tempExps[p] * sumExp - tempExps[p] * tempExps[j];
+				} else {
+					tempGrad = -tempExps[p] * tempExps[j];
+				}
+				tempGrad /= sumExpSqr;
+
+				nonLinkLikelihood += (-lamda * parameters.getHub(v, k)
+						* parameters.getRelativePlatformPreference(v, k, p) * parameters.getAuthority(u, k) * tempGrad)
+						- ((1 / (tempExpHA + 1)) * tempExpHA
+								* (-lamda * parameters.getHub(v, k) * parameters.getRelativePlatformPreference(v, k, p)
+								* parameters.getAuthority(u, k) * tempGrad));
+			}
+		}
+		// ***** post part ******
+		if (usePostInLearningPlatformPreference) {
+			// Third term in eqn 31. Compute post likelihood.
+			double firstSubTerm = 0;
+			double secondSubTerm = 0;
+
+			for (int s = 0; s < currUser.nPosts; s++) {
+				int z = currUser.posts[s].topic;
+				int p = currUser.posts[s].platform;
+				if (currUser.postBatches[s] == batch) {
+					if (z == k && j == p) {
+						firstSubTerm += 1;
+					}
+					if (z == k) {
+						secondSubTerm += tempExps[j] / sumExp;
+					}
+				}
+			}
+			postLikelihood += firstSubTerm - secondSubTerm;
+		}
 		if (usePrior) {
 			// Fourth term in eqn 28. Compute platform likelihood.
-			for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-				platformPreferencePrior += ((alpha - 1) * Math.log(x[p])) - (x[p] / theta);
-			}
+			platformPreferencePrior += ((alpha - 1) / x) - (1 / theta);
 		}
+
 		likelihood = linkLikelihood + nonLinkLikelihood + postLikelihood + platformPreferencePrior;
 		// likelihood = postLikelihood + platformLikelihood;
 		// likelihood = linkLikelihood + nonLinkLikelihood;
 
 		return likelihood;
+
 	}
 
 	/***
-	 * compute gradient of likelihood of data with respect to platform
-	 * preference of u in topic k when the preference is x, i.e., if if
-	 * L(data|parameters) = f(Eta_uk) + const-of-Eta_uk then this function
-	 * return df/dEta_ukp at Eta_ukp = x
+	 * compute gradient of likelihood of data with respect to all the platform
+	 * preferences of u in topic k when the preferences are x, i.e., grad[j] =
+	 * df/dEta_ukj, and grad[j] = 0 for the platforms that u does not use. Same
+	 * as calling gradLikelihood_platformPreference for every j, but each link
+	 * and post is visited once: the link terms are first summed per platform
+	 * and then multiplied by the softmax jacobian
 	 * 
 	 * @param u
 	 * @param k
 	 * @param x
-	 * @return
+	 * @param grad
 	 */
-	private static double gradLikelihood_platformPreference(int u, int k, int j, double x) {
+	private static void gradLikelihood_platformPreferences(int u, int k, double[] x, double[] grad) {
 		// Refer to Eqn 31 in Learning paper
-		double linkLikelihood = 0;
-		double nonLinkLikelihood = 0;
-		double postLikelihood = 0;
-		double platformPreferencePrior = 0;
-		double likelihood = 0;
-
-		// Set the current user to be
 		User currUser = dataset.users[u];
 
 		double[] tempExps = new double[Configure.NUM_OF_PLATFORM];
@@ -1754,288 +2808,251 @@ public class MultiThreadMPHAT {
 			if (currUser.platforms[p] == 0) {
 				continue;
 			}
-			if (p == j) {
-				tempExps[p] += Math.exp(x);
-			} else {
-				tempExps[p] = Math.exp(currUser.topicalPlatformPreference[k][p]);
-			}
+			tempExps[p] = Math.exp(x[p]);
 			sumExp += tempExps[p];
 		}
 		double sumExpSqr = sumExp * sumExp;
-		double[] topicalRelativePlatformPreference = new double[Configure.NUM_OF_PLATFORM];
 		for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-			if (currUser.platforms[p] == 0) {
-				topicalRelativePlatformPreference[p] = 0;
-			} else {
-				topicalRelativePlatformPreference[p] = tempExps[p] / sumExp;
-			}
+			grad[p] = 0;
 		}
 
 		// ****** link part ********
 		if (useLinkInLearningPlatformPreference) {
+			// platformLinkGrad[p]: derivative of link and non-link likelihood
+			// of the edges on platform p w.r.t. eta_uk^p (the relative
+			// preference)
+			double[] platformLinkGrad = new double[Configure.NUM_OF_PLATFORM];
 			double tempExpHA;
-			double tempGrad;
 			// First term in eqn 31. Compute link likelihood.
-			if (currUser.followings != null) {
-				for (int i = 0; i < currUser.followings.length; i++) {
-					int v = currUser.followings[i].followingIndex;
-					User following = dataset.users[v];
-					int p = currUser.followings[i].platform;
-
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						if (z == k) {
-							HupAvp += currUser.hubs[z] * topicalRelativePlatformPreference[p] * following.authorities[z]
-									* following.topicalRelativePlatformPreference[z][p];
-						} else {
-							HupAvp += currUser.hubs[z] * currUser.topicalRelativePlatformPreference[z][p]
-									* following.authorities[z] * following.topicalRelativePlatformPreference[z][p];
-						}
-					}
-					HupAvp = HupAvp * lamda;
-					tempExpHA = Math.exp(-HupAvp);
-
-					if (p == j) {
-						tempGrad = tempExps[p] * sumExp - tempExps[p] * tempExps[j];
-					} else {
-						tempGrad = -tempExps[p] * tempExps[j];
-					}
-					tempGrad /= sumExpSqr;
-					linkLikelihood += ((1 / (1 - tempExpHA)) * (-tempExpHA)
-							* (-lamda * currUser.hubs[k] * following.authorities[k]
-									* following.topicalRelativePlatformPreference[k][p] * tempGrad))
-							- ((1 / (tempExpHA + 1)) * tempExpHA * (-lamda * currUser.hubs[k] * following.authorities[k]
-									* following.topicalRelativePlatformPreference[k][p] * tempGrad));
-
-				}
-			}
-			if (currUser.followers != null) {
-				for (int i = 0; i < currUser.followers.length; i++) {
-					int v = currUser.followers[i].followerIndex;
-					User follower = dataset.users[v];
-					int p = currUser.followers[i].platform;
-
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						if (z == k) {
-							HupAvp += follower.hubs[z] * follower.topicalRelativePlatformPreference[z][p]
-									* currUser.authorities[z] * topicalRelativePlatformPreference[p];
-						} else {
-							HupAvp += follower.hubs[z] * follower.topicalRelativePlatformPreference[z][p]
-									* currUser.authorities[z] * currUser.topicalRelativePlatformPreference[z][p];
-						}
-					}
-					HupAvp = HupAvp * lamda;
-					tempExpHA = Math.exp(-HupAvp);
-
-					if (p == j) {
-						tempGrad = tempExps[p] * sumExp - tempExps[p] * tempExps[j];
-					} else {
-						tempGrad = -tempExps[p] * tempExps[j];
-					}
-					tempGrad /= sumExpSqr;
-
-					linkLikelihood += ((1 / (1 - tempExpHA)) * (-tempExpHA)
-							* (-lamda * follower.hubs[k] * follower.topicalRelativePlatformPreference[k][p]
-									* currUser.authorities[k] * tempGrad))
-							- (1 / (tempExpHA + 1) * tempExpHA
-									* (-lamda * follower.hubs[k] * follower.topicalRelativePlatformPreference[k][p]
-											* currUser.authorities[k] * tempGrad));
-
+			for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+				int v = dataset.followings.neighbors[i];
+				int p = dataset.followings.platforms[i];
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					double relPreference = (z == k) ? tempExps[p] / sumExp
+							: parameters.getRelativePlatformPreference(u, z, p);
+					HupAvp += parameters.getHub(u, z) * relPreference
+							* parameters.getAuthority(v, z)
+							* parameters.getRelativePlatformPreference(v, z, p);
+				}
+				HupAvp = HupAvp * lamda;
+				tempExpHA = Math.exp(-HupAvp);
+				platformLinkGrad[p] += lamda * parameters.getHub(u, k)
+						* parameters.getAuthority(v, k)
+						* parameters.getRelativePlatformPreference(v, k, p)
+						* (tempExpHA / (1 - tempExpHA) + tempExpHA / (tempExpHA + 1));
+			}
+			for (int i = dataset.followers.offsets[u]; i < dataset.followers.offsets[u + 1]; i++) {
+				int v = dataset.followers.neighbors[i];
+				int p = dataset.followers.platforms[i];
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					double relPreference = (z == k) ? tempExps[p] / sumExp
+							: parameters.getRelativePlatformPreference(u, z, p);
+					HupAvp += parameters.getHub(v, z)
+							* parameters.getRelativePlatformPreference(v, z, p)
+							* parameters.getAuthority(u, z) * relPreference;
 				}
+				HupAvp = HupAvp * lamda;
+				tempExpHA = Math.exp(-HupAvp);
+				platformLinkGrad[p] += lamda * parameters.getHub(v, k)
+						* parameters.getRelativePlatformPreference(v, k, p)
+						* parameters.getAuthority(u, k)
+								* (tempExpHA / (1 - tempExpHA) + tempExpHA / (tempExpHA + 1));
 			}
-
 			// Second term in eqn 31. Compute non link likelihood.
-			if (currUser.nonFollowings != null) {
-				for (int i = 0; i < currUser.nonFollowings.length; i++) {
-					int v = currUser.nonFollowings[i].followingIndex;
-					User nonFollowing = dataset.users[v];
-					int p = currUser.nonFollowings[i].platform;
-
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						if (z == k) {
-							HupAvp += currUser.hubs[z] * topicalRelativePlatformPreference[p]
-									* nonFollowing.authorities[z]
-									* nonFollowing.topicalRelativePlatformPreference[z][p];
-						} else {
-							HupAvp += currUser.hubs[z] * currUser.topicalRelativePlatformPreference[z][p]
-									* nonFollowing.authorities[z]
-									* nonFollowing.topicalRelativePlatformPreference[z][p];
-						}
-
-					}
-					HupAvp = HupAvp * lamda;
-					tempExpHA = Math.exp(-HupAvp);
-
-					if (p == j) {
-						tempGrad = tempExps[p] * sumExp - tempExps[p] * tempExps[j];
-					} else {
-						tempGrad = -tempExps[p] * tempExps[j];
-					}
-					tempGrad /= sumExpSqr;
-
-					nonLinkLikelihood += (-lamda * currUser.hubs[k] * nonFollowing.authorities[k]
-							* nonFollowing.topicalRelativePlatformPreference[k][p] * tempGrad)
-							- ((1 / (tempExpHA + 1)) * tempExpHA
-									* (-lamda * currUser.hubs[k] * nonFollowing.authorities[k]
-											* nonFollowing.topicalRelativePlatformPreference[k][p] * tempGrad));
-
-				}
-			}
-			if (currUser.nonFollowers != null) {
-				for (int i = 0; i < currUser.nonFollowers.length; i++) {
-					int v = currUser.nonFollowers[i].followerIndex;
-					User nonFollower = dataset.users[v];
-					int p = currUser.nonFollowers[i].platform;
-					// Compute H_u^p * A_v^p
-					double HupAvp = 0;
-					for (int z = 0; z < nTopics; z++) {
-						if (z == k) {
-							HupAvp += nonFollower.hubs[z] * nonFollower.topicalRelativePlatformPreference[z][p]
-									* currUser.authorities[z] * topicalRelativePlatformPreference[p];
-						} else {
-							HupAvp += nonFollower.hubs[z] * nonFollower.topicalRelativePlatformPreference[z][p]
-									* currUser.authorities[z] * currUser.topicalRelativePlatformPreference[z][p];
-						}
-
-					}
-					HupAvp = HupAvp * lamda;
-					tempExpHA = Math.exp(-HupAvp);
+			for (int i = dataset.nonFollowings.offsets[u]; i < dataset.nonFollowings.offsets[u + 1]; i++) {
+				int v = dataset.nonFollowings.neighbors[i];
+				int p = dataset.nonFollowings.platforms[i];
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					double relPreference = (z == k) ? tempExps[p] / sumExp
+							: parameters.getRelativePlatformPreference(u, z, p);
+					HupAvp += parameters.getHub(u, z) * relPreference
+							* parameters.getAuthority(v, z)
+							* parameters.getRelativePlatformPreference(v, z, p);
+				}
+				HupAvp = HupAvp * lamda;
+				tempExpHA = Math.exp(-HupAvp);
+				platformLinkGrad[p] += lamda * parameters.getHub(u, k)
+						* parameters.getAuthority(v, k)
+						* parameters.getRelativePlatformPreference(v, k, p)
+						* (tempExpHA / (tempExpHA + 1) - 1);
+			}
+			for (int i = dataset.nonFollowers.offsets[u]; i < dataset.nonFollowers.offsets[u + 1]; i++) {
+				int v = dataset.nonFollowers.neighbors[i];
+				int p = dataset.nonFollowers.platforms[i];
+				double HupAvp = 0;
+				for (int z = 0; z < nTopics; z++) {
+					double relPreference = (z == k) ? tempExps[p] / sumExp
+							: parameters.getRelativePlatformPreference(u, z, p);
+					HupAvp += parameters.getHub(v, z)
+							* parameters.getRelativePlatformPreference(v, z, p)
+							* parameters.getAuthority(u, z) * relPreference;
+				}
+				HupAvp = HupAvp * lamda;
+				tempExpHA = Math.exp(-HupAvp);
+				platformLinkGrad[p] += lamda * parameters.getHub(v, k)
+						* parameters.getRelativePlatformPreference(v, k, p)
+								* parameters.getAuthority(u, k)
+						* (tempExpHA / (tempExpHA + 1) - 1);
+			}
+			// chain rule through the softmax
+			for (int j = 0; j < Configure.NUM_OF_PLATFORM; j++) {
+				if (currUser.platforms[j] == 0) {
+					continue;
+				}
+				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
+					double tempGrad;
 					if (p == j) {
 						tempGrad = tempExps[p] * sumExp - tempExps[p] * tempExps[j];
 					} else {
 						tempGrad = -tempExps[p] * tempExps[j];
 					}
-					tempGrad /= sumExpSqr;
-
-					nonLinkLikelihood += (-lamda * nonFollower.hubs[k]
-							* nonFollower.topicalRelativePlatformPreference[k][p] * currUser.authorities[k] * tempGrad)
-							- ((1 / (tempExpHA + 1)) * tempExpHA
-									* (-lamda * nonFollower.hubs[k]
-											* nonFollower.topicalRelativePlatformPreference[k][p]
-											* currUser.authorities[k] * tempGrad));
+					grad[j] += platformLinkGrad[p] * tempGrad / sumExpSqr;
 				}
-
 			}
 		}
 		// ***** post part ******
 		if (usePostInLearningPlatformPreference) {
 			// Third term in eqn 31. Compute post likelihood.
-			double firstSubTerm = 0;
-			double secondSubTerm = 0;
-
+			int nTopicPosts = 0;
 			for (int s = 0; s < currUser.nPosts; s++) {
-				int z = currUser.posts[s].topic;
-				int p = currUser.posts[s].platform;
-				if (currUser.postBatches[s] == batch) {
-					if (z == k && j == p) {
-						firstSubTerm += 1;
-					}
-					if (z == k) {
-						secondSubTerm += tempExps[j] / sumExp;
-					}
+				if (currUser.postBatches[s] == batch && currUser.posts[s].topic == k) {
+					grad[currUser.posts[s].platform]++;
+					nTopicPosts++;
 				}
 			}
-			postLikelihood += firstSubTerm - secondSubTerm;
+			for (int j = 0; j < Configure.NUM_OF_PLATFORM; j++) {
+				if (currUser.platforms[j] == 0) {
+					continue;
+				}
+				grad[j] -= nTopicPosts * (tempExps[j] / sumExp);
+			}
 		}
-		if (usePrior) {
-			// Fourth term in eqn 28. Compute platform likelihood.
-			platformPreferencePrior += ((alpha - 1) / x) - (1 / theta);
+		for (int j = 0; j < Configure.NUM_OF_PLATFORM; j++) {
+			if (currUser.platforms[j] == 0) {
+				grad[j] = 0;
+			} else if (usePrior) {
+				// Fourth term in eqn 28. Compute platform likelihood.
+				grad[j] += ((alpha - 1) / x[j]) - (1 / theta);
+			}
 		}
-
-		likelihood = linkLikelihood + nonLinkLikelihood + postLikelihood + platformPreferencePrior;
-		// likelihood = postLikelihood + platformLikelihood;
-		// likelihood = linkLikelihood + nonLinkLikelihood;
-
-		return likelihood;
-
 	}
 
 	/***
-	 * alternating step to optimize platform preference of user u
-	 * 
-	 * @param u
+	 * negative likelihood as a function of the platform preferences for topic
+	 * k of u. The preferences for the platforms that u is not in stay at
+	 * negative infinity, the others are bounded below by epsilon
 	 */
-	private static void altOptimize_PlatformPreference(int u, int k) {
-		// the topical platform preferences is a 2D array
-
-		double[] grad = new double[Configure.NUM_OF_PLATFORM];
-		double[] currentX = dataset.users[u].topicalPlatformPreference[k];
-		double[] x = new double[Configure.NUM_OF_PLATFORM];
+	private static class PlatformPreferenceObjective implements BlockObjective {
+		private int u;
+		private int k;
+		private boolean isChanged = false;
+
+		public PlatformPreferenceObjective(int _u, int _k) {
+			u = _u;
+			k = _k;
+		}
 
-		double currentF = 0 - getLikelihood_platformPreference(u, k, currentX);
+		@Override
+		public int getDimension() {
+			return Configure.NUM_OF_PLATFORM;
+		}
 
-		boolean flag = true;
-		double diff = 0;
-		double f = Double.MAX_VALUE;
-		boolean isChanged = false;
+		@Override
+		public double getValue(OptimizerContext ctx, double[] x) {
+			return 0 - getLikelihood_platformPreference(u, k, x);
+		}
 
-		for (int iter = 0; iter < maxIteration_platformPreference; iter++) {
-			// compute gradient
-			for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-				if (dataset.users[u].platforms[p] == 0) {
-					grad[p] = 0;
-				} else {
-					grad[p] = 0 - gradLikelihood_platformPreference(u, k, p, currentX[p]);
+		@Override
+		public void getGradient(OptimizerContext ctx, double[] x, double[] grad) {
+			if (useFusedGradients) {
+				gradLikelihood_platformPreferences(u, k, x, grad);
+				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
+					grad[p] = 0 - grad[p];
 				}
-			}
-
-			// start line search
-			lineSearch_lambda = lineSearch_beta;
-			flag = false;
-			for (int lineSearchIter = 0; lineSearchIter < lineSearch_MaxIterations; lineSearchIter++) {
-				// find new x
+			} else {
 				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
 					if (dataset.users[u].platforms[p] == 0) {
-						x[p] = Double.NEGATIVE_INFINITY;
+						grad[p] = 0;
 					} else {
-						x[p] = currentX[p] - lineSearch_lambda * grad[p];
-						if (x[p] < epsilon) {
-							x[p] = epsilon;
-						}
+						grad[p] = 0 - gradLikelihood_platformPreference(u, k, p, x[p]);
 					}
 				}
-				// compute f at the new x
-				f = 0 - getLikelihood_platformPreference(u, k, x);
+			}
+		}
 
-				// compute ||currentX - x||^2
-				diff = 0;
-				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-					diff += Math.pow(currentX[p] - x[p], 2);
-				}
-				// check the condition to stop line search
-				if (f - currentF <= (-lineSearch_alpha / lineSearch_lambda) * diff) {
-					flag = true;
-					break;
-				} else {
-					lineSearch_lambda *= lineSearch_beta;
+		@Override
+		public void prepareLineSearch(OptimizerContext ctx, double[] x0, double[] direction) {
+		}
+
+		@Override
+		public double getLineSearchValue(OptimizerContext ctx, double[] x0, double[] direction, double[] x) {
+			return getValue(ctx, x);
+		}
+
+		@Override
+		public void project(OptimizerContext ctx, double[] x) {
+			for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
+				if (dataset.users[u].platforms[p] == 0) {
+					x[p] = Double.NEGATIVE_INFINITY;
+				} else if (x[p] < epsilon) {
+					x[p] = epsilon;
 				}
 			}
-			if (flag) {// line search successful
-				currentF = f;
-				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-					currentX[p] = x[p];
-				}
-				isChanged = true;
-				// to see if F actually reduce after every iteration
-				if (opt_platform_verbose) {
-					System.out.printf("alt_hub: u = %d iter = %d f = %f\n", u, iter, f);
-				}
-			} else {
-				// to see if F actually reduce after every iteration
-				if (opt_platform_verbose) {
-					System.out.printf("alt_hub: u = %d iter = %d f = %f\n", u, iter, f);
-				}
-				break;// cannot improve further
+		}
+
+		@Override
+		public double getLowerBound(int i) {
+			return epsilon;
+		}
+
+		@Override
+		public boolean isFixed(int i) {
+			return dataset.users[u].platforms[i] == 0;
+		}
+
+		@Override
+		public void accept(OptimizerContext ctx, double[] x) {
+			// the relative preferences are updated once, in
+			// altOptimize_PlatformPreference(), as the likelihood of the
+			// preferences for topic k does not read them
+			parameters.setPlatformPreferences(u, k, x);
+			isChanged = true;
+			markLikelihoodDirty(u, true);
+		}
+
+		@Override
+		public void reportIteration(int iter, double f) {
+			// to see if F actually reduce after every iteration
+			if (opt_platform_verbose) {
+				System.out.printf("alt_hub: u = %d iter = %d f = %f\n", u, iter, f);
 			}
 		}
-		if (isChanged) {
-			dataset.users[u].topicalRelativePlatformPreference[k] = MathTool
-					.softmax(dataset.users[u].topicalPlatformPreference[k]);
+
+		@Override
+		public OptimizerStats getStats() {
+			return platformPreferenceStats;
+		}
+	}
+
+	/***
+	 * alternating step to optimize platform preference of user u
+	 * 
+	 * @param u
+	 */
+	private static void altOptimize_PlatformPreference(OptimizerContext ctx, int u, int k) {
+		// the topical platform preferences is a 2D array
+		double[] currentX = ctx.platformCurrentX;
+		parameters.getPlatformPreferences(u, k, currentX);
+		PlatformPreferenceObjective objective = new PlatformPreferenceObjective(u, k);
+		platformPreferenceOptimizer.minimize(ctx, objective, currentX, maxIteration_platformPreference);
+		if (objective.isChanged) {
+			parameters.updateRelativePlatformPreference(u, k);
+			if (edgeScoreCache != null) {
+				edgeScoreCache.markDirty(u);
+			}
 		}
 	}
 
@@ -2045,7 +3062,7 @@ public class MultiThreadMPHAT {
 	 * @param u
 	 * @param n
 	 */
-	private static void samplePostTopic_EMGibbs(int u, int n) {
+	private static void samplePostTopic_EMGibbs(OptimizerContext ctx, int u, int n) {
 		// Refer to Eqn 32 in Learning paper
 
 		// Set the current user to be u
@@ -2054,21 +3071,20 @@ public class MultiThreadMPHAT {
 		double sump = 0;
 		// p: p(z_u,s = z| rest)
 
-		double[] p = new double[nTopics];
+		double[] p = ctx.topicProbs;
+		Post currPost = currUser.posts[n];
+		// User-topic
+		for (int z = 0; z < nTopics; z++) {
+			p[z] = parameters.getTopicalInterest(u, z);
+		}
+		// topic-word, word by word along the rows of the log table
+		for (int w = 0; w < currPost.words.length; w++) {
+			logTopicWordDist.addTo(currPost.words[w], p);
+		}
 		double max = -Double.MAX_VALUE;
 		for (int z = 0; z < nTopics; z++) {
-			// User-topic
-			p[z] = currUser.topicalInterests[z];
-
-			// topic-word
-			Post currPost = currUser.posts[n];
-			for (int w = 0; w < currPost.words.length; w++) {
-				int word = currPost.words[w];
-				p[z] += Math.log(topicWordDist[z][word]);
-			}
-
 			// preference
-			p[z] += currUser.topicalPlatformPreference[z][currPost.platform];
+			p[z] += parameters.getPlatformPreference(u, z, currPost.platform);
 
 			// update min
 			if (max < p[z]) {
@@ -2076,10 +3092,6 @@ public class MultiThreadMPHAT {
 			}
 
 		}
-		double[] plog = new double[nTopics];
-		for (int z = 0; z < nTopics; z++) {
-			plog[z] = p[z];
-		}
 		// convert log(sump) to probability
 		for (int z = 0; z < nTopics; z++) {
 			p[z] = p[z] - max;
@@ -2090,7 +3102,7 @@ public class MultiThreadMPHAT {
 			sump = p[z];
 		}
 
-		sump = rand.nextDouble() * sump;
+		sump = ctx.rand.nextDouble() * sump;
 		for (int z = 0; z < nTopics; z++) {
 			if (sump > p[z]) {
 				continue;
@@ -2111,7 +3123,8 @@ public class MultiThreadMPHAT {
 		}
 		System.err.println("Something wrong!!! ");
 		for (int k = 0; k < nTopics; k++) {
-			System.out.printf("theta[%d] = %.12f \t p[%d] = %.12f sump = %.12f\n", k, currUser.topicalInterests[k], k,
+			System.out.printf("theta[%d] = %.12f \t p[%d] = %.12f sump = %.12f\n", k,
+					parameters.getTopicalInterest(u, k), k,
 					p[k], sump);
 		}
 		System.exit(-1);
@@ -2121,13 +3134,87 @@ public class MultiThreadMPHAT {
 	 * alternating step to optimize topics' word distribution
 	 */
 	private void altOptimize_topics() {
-		// initialize the count variables
-		for (int k = 0; k < nTopics; k++) {
-			sum_nzw[k] = 0;
+		// the current distributions are also the optimized ones, write the
+		// new ones into the other buffer
+		if (topicWordDist == optTopicWordDist) {
+			topicWordDist = spareTopicWordDist;
+		}
+		if (useParallelTopicCounts) {
+			countTopicWordsInParallel();
+			if (verifyParallelTopicCounts) {
+				verifyTopicWordCounts();
+			}
+		} else {
+			countTopicWords();
+			normalizeTopics(0, nTopics);
+		}
+		updateLogTopicWordTable();
+		invalidateLikelihoods();
+	}
+
+	/***
+	 * count the words of the topics into n_zw and copy them to topicWordDist
+	 * on all the threads: every range of users is counted into
+	 * sparse counts, which are merged by a reduction tree and scattered over
+	 * ranges of topics
+	 */
+	private static void countTopicWordsInParallel() {
+		if (topicWordCounter == null || topicWordCounter.getNRanges() != threadStartIndexes.length) {
+			topicWordCounter = new TopicWordCounter(nTopics, dataset.vocabulary.length, threadStartIndexes.length,
+					nParallelThreads);
+		}
+		scheduler.run(Phase.COUNT_TOPIC_WORDS, threadStartIndexes, threadEndIndexes);
+		for (int stride = 1;; stride *= 2) {
+			int[] firsts = topicWordCounter.getMergeFirsts(stride);
+			if (firsts == null) {
+				break;
+			}
+			int[] seconds = new int[firsts.length];
+			for (int i = 0; i < firsts.length; i++) {
+				seconds[i] = firsts[i] + stride;
+			}
+			scheduler.run(Phase.MERGE_TOPIC_WORD_COUNTS, firsts, seconds);
+		}
+		scheduler.run(Phase.NORMALIZE_TOPICS, topicWordCounter.startTopics, topicWordCounter.endTopics);
+	}
+
+	/***
+	 * check that n_zw, as counted by countTopicWordsInParallel(), is the same
+	 * as counted by countTopicWords(), count by count and topic by topic
+	 *
+	 * @throws IllegalStateException
+	 *             at the first count that differs
+	 */
+	private static void verifyTopicWordCounts() {
+		TopicWordStore parallelCounts = new TopicWordStore(nTopics, dataset.vocabulary.length, topicWordHeadSlots,
+				gamma);
+		parallelCounts.copyFrom(n_zw);
+		countTopicWords();
+		for (int z = 0; z < nTopics; z++) {
 			for (int w = 0; w < dataset.vocabulary.length; w++) {
-				n_zw[k][w] = 0;
+				if (parallelCounts.get(z, w) != n_zw.get(z, w)) {
+					throw new IllegalStateException(String.format(
+							"n_zw[%d][%d]: parallel count %d, single-threaded count %d (%d ranges)", z, w,
+							parallelCounts.get(z, w), n_zw.get(z, w), threadStartIndexes.length));
+				}
+			}
+			if (parallelCounts.getSum(z) != n_zw.getSum(z)) {
+				throw new IllegalStateException(String.format(
+						"sum_nzw[%d]: parallel count %d, single-threaded count %d (%d ranges)", z,
+						parallelCounts.getSum(z), n_zw.getSum(z), threadStartIndexes.length));
 			}
 		}
+		System.out.printf("[topic counts] parallel counts (%d ranges) are the same as the single-threaded ones\n",
+				threadStartIndexes.length);
+	}
+
+	/***
+	 * count the words of the topics into n_zw on a single thread, the
+	 * reference of countTopicWordsInParallel()
+	 */
+	private static void countTopicWords() {
+		// initialize the count variables
+		n_zw.clear();
 
 		// update count variable base on the post topic assigned
 		for (int u = 0; u < dataset.nUsers; u++) {
@@ -2139,19 +3226,22 @@ public class MultiThreadMPHAT {
 					int z = currPost.topic;
 					for (int i = 0; i < currPost.nWords; i++) {
 						int wordIndex = currPost.words[i];
-						sum_nzw[z] += 1;
-						n_zw[z][wordIndex] += 1;
+						n_zw.add(z, wordIndex, 1);
 					}
 				}
 			}
 		}
+	}
 
-		// compute topic word distribution
-		for (int k = 0; k < nTopics; k++) {
-			for (int w = 0; w < dataset.vocabulary.length; w++) {
-				topicWordDist[k][w] = (n_zw[k][w] + gamma) / (sum_nzw[k] + gamma * dataset.vocabulary.length);
-			}
-		}
+	/***
+	 * set the word distributions of topics [startTopic, endTopic) from the
+	 * counts, which the store smooths by gamma
+	 *
+	 * @param startTopic
+	 * @param endTopic
+	 */
+	private static void normalizeTopics(int startTopic, int endTopic) {
+		topicWordDist.copyFrom(n_zw, startTopic, endTopic);
 	}
 
 	/***
@@ -2164,7 +3254,8 @@ public class MultiThreadMPHAT {
 	public void gradCheck_TopicalInterest(int u, int k) {
 		double DELTA = 1;
 
-		double[] x = dataset.users[u].topicalInterests;
+		double[] x = new double[nTopics];
+		parameters.getTopicVector(parameters.topicalInterests, u, x);
 
 		double f = getLikelihood_topicalInterest(u, x);
 		double g = gradLikelihood_topicalInterest(u, k, x[k]);
@@ -2193,7 +3284,8 @@ public class MultiThreadMPHAT {
 	public void gradCheck_Authority(int v, int k) {
 		double DELTA = 1;
 
-		double[] x = dataset.users[v].authorities;
+		double[] x = new double[nTopics];
+		parameters.getTopicVector(parameters.authorities, v, x);
 		double f = getLikelihood_authority(v, x);
 		double g = gradLikelihood_authority(v, k, x[k]);
 
@@ -2221,7 +3313,8 @@ public class MultiThreadMPHAT {
 	public void gradCheck_Hub(int u, int k) {
 		double DELTA = 1;
 
-		double[] x = dataset.users[u].hubs;
+		double[] x = new double[nTopics];
+		parameters.getTopicVector(parameters.hubs, u, x);
 
 		double f = getLikelihood_hub(u, x);
 		double g = gradLikelihood_hub(u, k, x[k]);
@@ -2258,7 +3351,7 @@ public class MultiThreadMPHAT {
 
 		double[] x = new double[Configure.NUM_OF_PLATFORM];
 		for (int i = 0; i < Configure.NUM_OF_PLATFORM; i++) {
-			x[i] = dataset.users[u].topicalPlatformPreference[k][i];
+			x[i] = parameters.getPlatformPreference(u, k, i);
 		}
 
 		double f = getLikelihood_platformPreference(u, k, x);
@@ -2279,7 +3372,18 @@ public class MultiThreadMPHAT {
 		}
 	}
 
-	private void samplePostTopic_Gibbs(int u, int n) {
+	/***
+	 * sample the topic of post n of user u against the given counts of topic
+	 * words
+	 *
+	 * @param r
+	 * @param local_n_zw
+	 * @param p
+	 *            buffer of nTopics probabilities
+	 * @param u
+	 * @param n
+	 */
+	private static void samplePostTopic_Gibbs(Random r, TopicWordStore local_n_zw, double[] p, int u, int n) {
 		Post currPost = dataset.users[u].posts[n];
 		// reduce current counts
 		int currZ = currPost.topic;
@@ -2288,16 +3392,14 @@ public class MultiThreadMPHAT {
 			System.out.printf("u = %d z = %d n_zu = %d\n", u, currZ, n_zu[currZ][u]);
 			System.exit(-1);
 		}
-		sum_nzw[currZ] -= currPost.nWords;
 		for (int w = 0; w < currPost.nWords; w++) {
 			int word = currPost.words[w];
-			n_zw[currZ][word]--;
+			local_n_zw.add(currZ, word, -1);
 		}
 
 		double sump = 0;
 		// p: p(z_u,s = z| rest)
 
-		double[] p = new double[nTopics];
 		double max = -Double.MAX_VALUE;
 		for (int z = 0; z < nTopics; z++) {
 			// User-topic
@@ -2305,7 +3407,7 @@ public class MultiThreadMPHAT {
 			// topic-word
 			for (int w = 0; w < currPost.nWords; w++) {
 				int word = currPost.words[w];
-				p[z] += Math.log((n_zw[z][word] + gamma) / (sum_nzw[z] + gamma * dataset.vocabulary.length));
+				p[z] += Math.log(local_n_zw.getProb(z, word));
 			}
 			// update min
 			if (max < p[z]) {
@@ -2322,7 +3424,7 @@ public class MultiThreadMPHAT {
 			sump = p[z];
 		}
 
-		sump = rand.nextDouble() * sump;
+		sump = r.nextDouble() * sump;
 		for (int z = 0; z < nTopics; z++) {
 			if (sump > p[z]) {
 				continue;
@@ -2331,52 +3433,175 @@ public class MultiThreadMPHAT {
 				currPost.topic = z;
 				// increase the counts
 				n_zu[z][u]++;
-				sum_nzw[z] += currPost.nWords;
 				for (int w = 0; w < currPost.nWords; w++) {
 					int word = currPost.words[w];
-					n_zw[z][word]++;
+					local_n_zw.add(z, word, 1);
+				}
+				return;
+			}
+		}
+		System.err.println("Something wrong!!! ");
+		for (int k = 0; k < nTopics; k++) {
+			System.out.printf("theta[%d] = %.12f \t p[%d] = %.12f sump = %.12f\n", k,
+					parameters.getTopicalInterest(u, k), k, p[k], sump);
+		}
+		System.exit(-1);
+	}
+
+	/***
+	 * split the users and topics for the parallel Gibbs initialization and
+	 * allocate the copies of the counts of every range of users
+	 */
+	private void initGibbsPartitions() {
+		UserPartitioner partitioner = new UserPartitioner();
+		if (balanceUserPartitions) {
+			partitioner.partitionByCost(dataset, nTopics, gibbs_Ranges);
+		} else {
+			partitioner.partitionByCount(dataset.nUsers, gibbs_Ranges);
+		}
+		gibbsStartIndexes = partitioner.startIndexes;
+		gibbsEndIndexes = partitioner.endIndexes;
+		int nRanges = partitioner.nChunks;
+		gibbsLocal_n_zw = new TopicWordStore[nRanges];
+		gibbsRands = new StreamRandom[nRanges];
+		gibbsTopicProbs = new double[nRanges][nTopics];
+		for (int t = 0; t < nRanges; t++) {
+			gibbsRands[t] = new StreamRandom();
+			if (nRanges == 1) {
+				// a single range samples the global counts directly
+				gibbsLocal_n_zw[t] = n_zw;
+			} else {
+				gibbsLocal_n_zw[t] = new TopicWordStore(nTopics, dataset.vocabulary.length, topicWordHeadSlots, gamma);
+			}
+		}
+		int nTopicRanges = Math.min(nTopics, nParallelThreads);
+		gibbsTopicStartIndexes = new int[nTopicRanges];
+		gibbsTopicEndIndexes = new int[nTopicRanges];
+		for (int i = 0; i < nTopicRanges; i++) {
+			gibbsTopicStartIndexes[i] = i * nTopics / nTopicRanges;
+			gibbsTopicEndIndexes[i] = (i + 1) * nTopics / nTopicRanges;
+		}
+	}
+
+	/***
+	 * one Gibbs sweep over the posts of users [startIndex, endIndex) against
+	 * the copy of the counts of range t
+	 *
+	 * @param t
+	 * @param startIndex
+	 * @param endIndex
+	 */
+	private static void gibbsSweep(int t, int startIndex, int endIndex) {
+		TopicWordStore local_n_zw = gibbsLocal_n_zw[t];
+		if (local_n_zw != n_zw) {
+			local_n_zw.copyFrom(n_zw);
+		}
+		for (int u = startIndex; u < endIndex; u++) {
+			User currUser = dataset.users[u];
+			int nBatchPosts = 0;
+			if (aliasSampler != null) {
+				for (int n = 0; n < currUser.nPosts; n++) {
+					if (currUser.postBatches[n] == batch) {
+						nBatchPosts++;
+					}
+				}
+			}
+			for (int n = 0; n < currUser.nPosts; n++) {
+				if (currUser.postBatches[n] != batch) {
+					continue;
+				}
+				StreamRandom r = gibbsRands[t].reset(OptimizerContext.seed, StreamRandom.GIBBS_INIT, gibbsSweep, u, n);
+				if (aliasSampler != null) {
+					samplePostTopic_AliasGibbs(r, local_n_zw, u, n, nBatchPosts - 1);
+				} else {
+					samplePostTopic_Gibbs(r, local_n_zw, gibbsTopicProbs[t], u, n);
 				}
-				return;
 			}
 		}
-		System.err.println("Something wrong!!! ");
-		for (int k = 0; k < nTopics; k++) {
-			System.out.printf("theta[%d] = %.12f \t p[%d] = %.12f sump = %.12f\n", k,
-					dataset.users[u].topicalInterests[k], k, p[k], sump);
+	}
+
+	/***
+	 * sample the topic of post n of user u against the given counts of topic
+	 * words by the alias sampler
+	 *
+	 * @param r
+	 * @param local_n_zw
+	 * @param u
+	 * @param n
+	 * @param nOtherPosts
+	 *            number of the user's other posts in the batch
+	 */
+	private static void samplePostTopic_AliasGibbs(Random r, TopicWordStore local_n_zw, int u, int n,
+			int nOtherPosts) {
+		User currUser = dataset.users[u];
+		Post currPost = currUser.posts[n];
+		// reduce current counts
+		int z = currPost.topic;
+		n_zu[z][u]--;
+		for (int w = 0; w < currPost.nWords; w++) {
+			local_n_zw.add(z, currPost.words[w], -1);
 		}
-		System.exit(-1);
+		z = aliasSampler.sampleGibbs(r, currUser, n, u, nOtherPosts, n_zu, local_n_zw, alpha, batch);
+		currPost.topic = z;
+		// increase the counts
+		n_zu[z][u]++;
+		for (int w = 0; w < currPost.nWords; w++) {
+			local_n_zw.add(z, currPost.words[w], 1);
+		}
+	}
+
+	/***
+	 * build the alias tables of the topic sampler from its current source
+	 */
+	private static void buildTopicAliasTables() {
+		scheduler.run(Phase.BUILD_TOPIC_ALIAS_TABLES, aliasSampler.startWords, aliasSampler.endWords);
+	}
+
+	/***
+	 * add the changes of the counts of all the ranges to the global counts of
+	 * topics [startIndex, endIndex)
+	 *
+	 * @param startIndex
+	 * @param endIndex
+	 */
+	private static void mergeGibbsCounts(int startIndex, int endIndex) {
+		n_zw.mergeChanges(gibbsLocal_n_zw, startIndex, endIndex);
 	}
 
 	/****
 	 * initialize topic assignment for posts of user u
 	 * 
+	 * @param r
 	 * @param u
 	 */
-	private static void initPostTopic(int u) {
+	private static void initPostTopic(StreamRandom r, int u) {
 		// System.out.printf("initializing for user %d\n", u);
 		User currUser = dataset.users[u];
 		for (int n = 0; n < currUser.posts.length; n++) {
 			// only consider posts in batch
 			if (currUser.postBatches[n] == batch) {
-				int randTopic = rand.nextInt(nTopics);
+				int randTopic = r.reset(OptimizerContext.seed, StreamRandom.INIT_POST_TOPIC, 0, u, n).nextInt(nTopics);
 				currUser.posts[n].topic = randTopic;
 			}
 		}
 	}
 
-	private void gibbsInit() {
+	/***
+	 * topic modeling of the posts by collapsed Gibbs sampling from their
+	 * current topics, and users' topical interests from the samples
+	 * 
+	 * @param burningPeriods
+	 *            sweeps before the first sample
+	 * @param nIterations
+	 *            sweeps after, sampled every gibbs_Sampling_Gap sweeps
+	 */
+	private void gibbsInit(int burningPeriods, int nIterations) {
 		// initialize the count variables
-		int[][] final_n_zw = new int[nTopics][dataset.vocabulary.length];
-		int[] final_sum_nzw = new int[nTopics];
+		TopicWordStore final_n_zw = new TopicWordStore(nTopics, dataset.vocabulary.length, topicWordHeadSlots, gamma);
 		int[][] final_n_zu = new int[nTopics][dataset.nUsers];
 
+		n_zw.clear();
 		for (int z = 0; z < nTopics; z++) {
-			sum_nzw[z] = 0;
-			final_sum_nzw[z] = 0;
-			for (int w = 0; w < dataset.vocabulary.length; w++) {
-				n_zw[z][w] = 0;
-				final_n_zw[z][w] = 0;
-			}
 			for (int u = 0; u < dataset.nUsers; u++) {
 				n_zu[z][u] = 0;
 				final_n_zu[z][u] = 0;
@@ -2391,55 +3616,59 @@ public class MultiThreadMPHAT {
 				if (currUser.postBatches[n] == batch) {
 					int z = currPost.topic;
 					n_zu[z][u]++;
-					sum_nzw[z] += currPost.nWords;
 					for (int w = 0; w < currPost.nWords; w++) {
 						int wordIndex = currPost.words[w];
-						n_zw[z][wordIndex]++;
+						n_zw.add(z, wordIndex, 1);
 					}
 
 				}
 			}
 		}
 		// gibss sampling
-		for (int iter = 0; iter < gibbs_BurningPeriods + max_Gibbs_Iterations; iter++) {
+		initGibbsPartitions();
+		int nSweeps = burningPeriods + nIterations;
+		long startTime = System.currentTimeMillis();
+		for (int iter = 0; iter < nSweeps; iter++) {
 			System.out.println("Gibb Iteration:" + iter);
-			for (int u = 0; u < dataset.nUsers; u++) {
-				for (int n = 0; n < dataset.users[u].nPosts; n++) {
-					if (dataset.users[u].postBatches[n] == batch) {
-						samplePostTopic_Gibbs(u, n);
-					}
-				}
+			gibbsSweep = iter;
+			if (aliasSampler != null) {
+				aliasSampler.setSource(n_zw);
+				buildTopicAliasTables();
+			}
+			scheduler.run(Phase.GIBBS_INIT_SWEEP, gibbsStartIndexes, gibbsEndIndexes);
+			if (gibbsLocal_n_zw[0] != n_zw) {
+				scheduler.run(Phase.GIBBS_INIT_MERGE, gibbsTopicStartIndexes, gibbsTopicEndIndexes);
 			}
 
-			if (iter < gibbs_BurningPeriods) {
+			if (iter < burningPeriods) {
 				continue;
 			}
 			if (iter % gibbs_Sampling_Gap != 0) {
 				continue;
 			}
 
+			final_n_zw.addAll(n_zw);
 			for (int z = 0; z < nTopics; z++) {
-				final_sum_nzw[z] += sum_nzw[z];
-				for (int w = 0; w < dataset.vocabulary.length; w++) {
-					final_n_zw[z][w] += n_zw[z][w];
-				}
 				for (int u = 0; u < dataset.nUsers; u++) {
 					final_n_zu[z][u] += n_zu[z][u];
 				}
 			}
 		}
 
+		double elapsed = (System.currentTimeMillis() - startTime) / 1000.0;
+		System.out.printf("[gibbs] %d sweeps over %d ranges of users in %.1f s, %.2f sweeps/s\n", nSweeps,
+				gibbsStartIndexes.length, elapsed, nSweeps / Math.max(elapsed, 1e-3));
+		gibbsLocal_n_zw = null;
+		gibbsRands = null;
+
 		int[] final_sum_nzu = new int[dataset.nUsers];
 		for (int u = 0; u < dataset.nUsers; u++) {
 			final_sum_nzu[u] = 0;
 		}
 
 		// topics
+		topicWordDist.copyFrom(final_n_zw);
 		for (int z = 0; z < nTopics; z++) {
-			for (int w = 0; w < dataset.vocabulary.length; w++) {
-				topicWordDist[z][w] = (final_n_zw[z][w] + gamma)
-						/ (final_sum_nzw[z] + gamma * dataset.vocabulary.length);
-			}
 			for (int u = 0; u < dataset.nUsers; u++) {
 				final_sum_nzu[u] += final_n_zu[z][u];
 			}
@@ -2447,11 +3676,10 @@ public class MultiThreadMPHAT {
 		// users' topical interests
 		for (int u = 0; u < dataset.nUsers; u++) {
 			for (int z = 0; z < nTopics; z++) {
-				dataset.users[u].topicalInterests[z] = (final_n_zu[z][u] + alpha)
-						/ (final_sum_nzu[u] + nTopics * alpha);
+				parameters.setTopicalInterest(u, z, (final_n_zu[z][u] + alpha) / (final_sum_nzu[u] + nTopics * alpha));
 
-				if (dataset.users[u].topicalInterests[z] < 0) {
-					System.out.printf("u = %d z = %d theta = %f\n", u, z, dataset.users[u].topicalInterests[z]);
+				if (parameters.getTopicalInterest(u, z) < 0) {
+					System.out.printf("u = %d z = %d theta = %f\n", u, z, parameters.getTopicalInterest(u, z));
 					System.exit(-1);
 				}
 			}
@@ -2465,14 +3693,14 @@ public class MultiThreadMPHAT {
 				dataset.users[u].posts[i].topic = dataset.users[u].posts[i].groundTruthTopic;
 			}
 			for (int z = 0; z < nTopics; z++) {
-				dataset.users[u].topicalInterests[z] = dataset.users[u].groundtruth_TopicalInterests[z];
-				dataset.users[u].authorities[z] = dataset.users[u].groundtruth_Authorities[z];
-				dataset.users[u].hubs[z] = dataset.users[u].groundtruth_Hubs[z];
+				parameters.setTopicalInterest(u, z, dataset.users[u].groundtruth_TopicalInterests[z]);
+				parameters.setAuthority(u, z, dataset.users[u].groundtruth_Authorities[z]);
+				parameters.setHub(u, z, dataset.users[u].groundtruth_Hubs[z]);
 				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-					dataset.users[u].topicalPlatformPreference[z][p] = dataset.users[u].groundtruth_TopicalPlatformPreference[z][p];
+					parameters.setPlatformPreference(u, z, p,
+							dataset.users[u].groundtruth_TopicalPlatformPreference[z][p]);
 				}
-				dataset.users[u].topicalRelativePlatformPreference[z] = MathTool
-						.softmax(dataset.users[u].topicalPlatformPreference[z]);
+				parameters.updateRelativePlatformPreference(u, z);
 			}
 		}
 		altOptimize_topics();
@@ -2482,11 +3710,10 @@ public class MultiThreadMPHAT {
 		// init counts for the topical platform preferences
 		int[][] userTopicPostCounts = new int[dataset.nUsers][nTopics];
 		for (int u = 0; u < dataset.nUsers; u++) {
-			User currUser = dataset.users[u];
 			for (int k = 0; k < nTopics; k++) {
 				userTopicPostCounts[u][k] = 0;
 				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-					currUser.topicalPlatformPreference[k][p] = 0;
+					parameters.setPlatformPreference(u, k, p, 0);
 				}
 			}
 		}
@@ -2498,7 +3725,7 @@ public class MultiThreadMPHAT {
 				Post currPost = currUser.posts[n];
 				int z = currPost.topic;
 				int p = currPost.platform;
-				currUser.topicalPlatformPreference[z][p] += 1;
+				parameters.setPlatformPreference(u, z, p, parameters.getPlatformPreference(u, z, p) + 1);
 				userTopicPostCounts[u][z] += 1;
 			}
 		}
@@ -2511,16 +3738,16 @@ public class MultiThreadMPHAT {
 				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
 					if (currUser.platforms[p] == 1) {
 						if (userTopicPostCounts[u][k] == 0) {
-							currUser.topicalPlatformPreference[k][p] = epsilon;
+							parameters.setPlatformPreference(u, k, p, epsilon);
 						} else {
-							currUser.topicalPlatformPreference[k][p] = currUser.topicalPlatformPreference[k][p]
-									/ userTopicPostCounts[u][k];
-							if (currUser.topicalPlatformPreference[k][p] <= 0) {
-								currUser.topicalPlatformPreference[k][p] = epsilon;
+							parameters.setPlatformPreference(u, k, p, parameters.getPlatformPreference(u, k, p)
+									/ userTopicPostCounts[u][k]);
+							if (parameters.getPlatformPreference(u, k, p) <= 0) {
+								parameters.setPlatformPreference(u, k, p, epsilon);
 							}
 						}
 					} else {
-						currUser.topicalPlatformPreference[k][p] = Double.NEGATIVE_INFINITY;
+						parameters.setPlatformPreference(u, k, p, Double.NEGATIVE_INFINITY);
 					}
 				}
 			}
@@ -2540,9 +3767,9 @@ public class MultiThreadMPHAT {
 	}
 
 	/***
-	 * initialize the data before training
+	 * set the hyperparameters and allocate the counts and parameters
 	 */
-	private void init() {
+	private void initParameters() {
 		// alpha = (double) (20) / (double) (nTopics);// prior for users'
 		// interest
 		gamma = 0.001;// prior for word distribution
@@ -2553,30 +3780,29 @@ public class MultiThreadMPHAT {
 		theta = 0.5;// scale parameter of user interests/platform preference
 		// vectors
 		rand = new Random(1);
+		OptimizerContext.reset(1);
 
 		// allocate memory for counts
 		n_zu = new int[nTopics][dataset.nUsers];
-		n_zw = new int[nTopics][dataset.vocabulary.length];
-		sum_nzw = new int[nTopics];
-
-		// allocate memory for the users
-		for (int u = 0; u < dataset.nUsers; u++) {
-			User currUser = dataset.users[u];
-			currUser.authorities = new double[nTopics];
-			currUser.hubs = new double[nTopics];
-			currUser.topicalInterests = new double[nTopics];
-			currUser.topicalPlatformPreference = new double[nTopics][Configure.NUM_OF_PLATFORM];
-			currUser.optAuthorities = new double[nTopics];
-			currUser.optHubs = new double[nTopics];
-			currUser.optTopicalInterests = new double[nTopics];
-			currUser.optTopicalPlatformPreference = new double[nTopics][Configure.NUM_OF_PLATFORM];
-			currUser.topicalRelativePlatformPreference = new double[nTopics][];
+		topicWordHeadSlots = TopicWordStore.getHeadSlots(dataset, nTopics);
+		n_zw = new TopicWordStore(nTopics, dataset.vocabulary.length, topicWordHeadSlots, gamma);
 
-		}
+		// allocate memory for the users' parameters
+		parameters = new ParameterStore(dataset.nUsers, nTopics, Configure.NUM_OF_PLATFORM, storagePrecision);
 
 		// allocate memory for topics
-		topicWordDist = new double[nTopics][dataset.vocabulary.length];
-		optTopicWordDist = new double[nTopics][dataset.vocabulary.length];
+		topicWordDist = new TopicWordStore(nTopics, dataset.vocabulary.length, topicWordHeadSlots, gamma);
+		optTopicWordDist = new TopicWordStore(nTopics, dataset.vocabulary.length, topicWordHeadSlots, gamma);
+		spareTopicWordDist = null;
+		logTopicWordDist = null;
+		topicWordCounter = null;
+		if (topicSamplerType == Configure.TopicSamplerType.ALIAS_MH
+				|| (topicSamplerType == Configure.TopicSamplerType.AUTO && nTopics >= aliasSampler_MinTopics)) {
+			aliasSampler = new TopicAliasSampler(nTopics, dataset.vocabulary.length,
+					nParallelThreads * nChunksPerThread);
+		} else {
+			aliasSampler = null;
+		}
 
 		// initialize the count variables
 		for (int u = 0; u < dataset.nUsers; u++) {
@@ -2585,6 +3811,13 @@ public class MultiThreadMPHAT {
 				n_zu[k][u] = 0;
 			}
 		}
+	}
+
+	/***
+	 * initialize the data before training
+	 */
+	private void init() {
+		initParameters();
 
 		if (initByGroundTruth) {
 			initByGroundTruth(datapath);
@@ -2592,19 +3825,15 @@ public class MultiThreadMPHAT {
 		}
 
 		// init topic assignment for posts
-		ExecutorService executor = Executors.newFixedThreadPool(nParallelThreads);
-		for (int i = 0; i < nParallelThreads; i++) {
-			Runnable worker = new ChildThread(threadStartIndexes[i], threadEndIndexes[i], "initPostTopic");
-			executor.execute(worker);
-		}
-		executor.shutdown();
-		while (!executor.isTerminated()) {
-			// do nothing, just wait for the threads to finish
-		}
+		runPhase(Phase.INIT_POST_TOPIC);
 
 		if (initByTopicModeling) {
 			// initialize by topic modeling
-			gibbsInit();
+			if (warmStart != null) {
+				gibbsInit(warmStart_GibbsBurningPeriods, warmStart_GibbsIterations);
+			} else {
+				gibbsInit(gibbs_BurningPeriods, max_Gibbs_Iterations);
+			}
 
 			if (InitPlatformPreferenceByTopicModeling) {
 				initPlatformPreferenceByTopicModeling();
@@ -2616,46 +3845,274 @@ public class MultiThreadMPHAT {
 			}
 
 			// init users' interest, platform preference, authority, and hub
-			executor = Executors.newFixedThreadPool(nParallelThreads);
-			for (int i = 0; i < nParallelThreads; i++) {
-				Runnable worker = new ChildThread(threadStartIndexes[i], threadEndIndexes[i], "gibbsInitUser");
-				executor.execute(worker);
-			}
-			executor.shutdown();
-			while (!executor.isTerminated()) {
-				// do nothing, just wait for the threads to finish
-			}
+			runPhase(Phase.GIBBS_INIT_USER);
 		} else {
 			// initialize by alternating optimizing
 			altOptimize_topics();
 			// init users' interest, platform preference, authority, and hub
-			executor = Executors.newFixedThreadPool(nParallelThreads);
-			for (int i = 0; i < nParallelThreads; i++) {
-				Runnable worker = new ChildThread(threadStartIndexes[i], threadEndIndexes[i], "randomInitUser");
-				executor.execute(worker);
+			runPhase(Phase.RANDOM_INIT_USER);
+		}
+
+		if (warmStart != null) {
+			// the previous users continue from their previous parameters
+			int[] match = warmStart.getTopicMatch(dataset, batch);
+			warmStart.apply(dataset, parameters, match);
+			System.out.printf("[warm start] %d of %d users start from the previous model\n",
+					warmStart.getNWarmUsers(), dataset.nUsers);
+		}
+	}
+
+	/***
+	 * compute the per-platform authorities and hubs of all the users
+	 */
+	private static void initPlatformVectors() {
+		for (int u = 0; u < dataset.nUsers; u++) {
+			parameters.updatePlatformAuthorities(u);
+			parameters.updatePlatformHubs(u);
+		}
+	}
+
+	/***
+	 * build the edge score cache for the current parameters
+	 */
+	private static void initEdgeScores() {
+		if (!useEdgeScoreCache) {
+			edgeScoreCache = null;
+			return;
+		}
+		edgeScoreCache = new EdgeScoreCache(dataset);
+		edgeScoreCache.markAllDirty();
+		refreshEdgeScores();
+	}
+
+	/***
+	 * recompute the cached scores of the edges that have an endpoint whose
+	 * platform preferences changed
+	 */
+	private static void refreshEdgeScores() {
+		if (edgeScoreCache == null) {
+			return;
+		}
+		runPhase(Phase.REFRESH_EDGE_SCORES);
+		edgeScoreCache.clearDirty();
+	}
+
+	/***
+	 * update all the parameters of user u in place, for the asynchronous
+	 * training. The cached scores of the edges of u are recomputed right away
+	 * when its platform preferences change, as no later phase refreshes them
+	 * 
+	 * @param ctx
+	 * @param u
+	 */
+	private static void optUserAsynchronously(OptimizerContext ctx, int u) {
+		if (learnUserInterest) {
+			altOptimize_topicalInterest(ctx, u);
+		}
+		if (learnUserAuthority) {
+			altOptimize_Authorities(ctx, u);
+		}
+		if (learnUserHub) {
+			altOptimize_Hubs(ctx, u);
+		}
+		if (learnUserPlatformPreference) {
+			for (int k = 0; k < nTopics; k++) {
+				altOptimize_PlatformPreference(ctx, u, k);
+			}
+			if (edgeScoreCache != null) {
+				edgeScoreCache.refreshInEdges(dataset, parameters, u, lamda);
+				edgeScoreCache.refreshOutEdges(dataset, parameters, u, lamda);
+			}
+		}
+	}
+
+	/***
+	 * background thread of the asynchronous training that estimates the
+	 * likelihood every async_LikelihoodInterval ms from a fixed sample of
+	 * users, and stops the workers when its relative improvement stays below
+	 * async_Tolerance for async_Patience samples in a row
+	 */
+	static class LikelihoodSampler extends Thread {
+		private int[] sampledUsers;
+		private volatile boolean running = true;
+
+		public LikelihoodSampler(int[] _sampledUsers) {
+			sampledUsers = _sampledUsers;
+			setDaemon(true);
+		}
+
+		public void finish() {
+			running = false;
+			interrupt();
+		}
+
+		@Override
+		public void run() {
+			double lastLikelihood = Double.NaN;
+			int nSmallImprovements = 0;
+			while (running) {
+				try {
+					Thread.sleep(async_LikelihoodInterval);
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (!running) {
+					return;
+				}
+				// parameters may change while they are read, which only makes
+				// the estimate slightly stale
+				double likelihood = 0;
+				for (int u : sampledUsers) {
+					likelihood += getLikelihood(u);
+				}
+				likelihood *= (double) dataset.nUsers / sampledUsers.length;
+				long nUpdates = Math.min(asyncFinishedUpdates + Math.min(asyncNextUpdate.get(), dataset.nUsers),
+						(long) async_EpochsPerIteration * dataset.nUsers);
+				System.out.printf("[async] updates = %d (%.2f sweeps), sampled likelihood = %f\n", nUpdates,
+						(double) nUpdates / dataset.nUsers, likelihood);
+				if (!Double.isNaN(lastLikelihood)
+						&& (likelihood - lastLikelihood) / Math.abs(lastLikelihood) < async_Tolerance) {
+					nSmallImprovements++;
+					if (nSmallImprovements >= async_Patience) {
+						System.out.println("[async] sampled likelihood converged");
+						asyncConverged = true;
+						asyncStop = true;
+						return;
+					}
+				} else {
+					nSmallImprovements = 0;
+				}
+				lastLikelihood = likelihood;
+			}
+		}
+	}
+
+	/***
+	 * run async_EpochsPerIteration sweeps of asynchronous updates over the
+	 * users, each a phase in a new random order: the end of a phase is the
+	 * barrier that keeps a user from being updated by two workers at once
+	 */
+	private static void runAsynchronousRound() {
+		int nUsers = dataset.nUsers;
+		if (asyncUserOrder == null) {
+			asyncUserOrder = new int[nUsers];
+			for (int u = 0; u < nUsers; u++) {
+				asyncUserOrder[u] = u;
 			}
-			executor.shutdown();
-			while (!executor.isTerminated()) {
-				// do nothing, just wait for the threads to finish
+		}
+		asyncFinishedUpdates = 0;
+		for (int epoch = 0; epoch < async_EpochsPerIteration && !asyncStop; epoch++) {
+			for (int i = nUsers - 1; i > 0; i--) {
+				int j = rand.nextInt(i + 1);
+				int temp = asyncUserOrder[i];
+				asyncUserOrder[i] = asyncUserOrder[j];
+				asyncUserOrder[j] = temp;
 			}
+			asyncNextUpdate.set(0);
+			runPhase(Phase.ASYNC_OPT_USERS);
+			asyncFinishedUpdates += nUsers;
 		}
+		// an edge score written by one endpoint may have been computed from
+		// the preferences of the other endpoint before they changed
+		refreshEdgeScores();
+	}
 
+	/***
+	 * start the likelihood sampler of the asynchronous training on a fixed
+	 * random sample of users
+	 * 
+	 * @return
+	 */
+	private static LikelihoodSampler startLikelihoodSampler() {
+		int nSamples = Math.min(async_LikelihoodSampleSize, dataset.nUsers);
+		int[] users = new int[dataset.nUsers];
+		for (int u = 0; u < users.length; u++) {
+			users[u] = u;
+		}
+		int[] sampledUsers = new int[nSamples];
+		for (int i = 0; i < nSamples; i++) {
+			int j = i + rand.nextInt(users.length - i);
+			int temp = users[i];
+			users[i] = users[j];
+			users[j] = temp;
+			sampledUsers[i] = users[i];
+		}
+		asyncStop = false;
+		asyncConverged = false;
+		LikelihoodSampler sampler = new LikelihoodSampler(sampledUsers);
+		sampler.start();
+		return sampler;
 	}
 
 	public void altCheck_TopicalInterest(int u) {
-		altOptimize_topicalInterest(u);
+		altOptimize_topicalInterest(getOptimizerContext(), u);
 	}
 
 	public void altCheck_Authority(int u) {
-		altOptimize_Authorities(u);
+		altOptimize_Authorities(getOptimizerContext(), u);
 	}
 
 	public void altCheck_Hub(int u) {
-		altOptimize_Hubs(u);
+		altOptimize_Hubs(getOptimizerContext(), u);
 	}
 
 	public void altCheck_PlatformPreference(int u, int k) {
-		altOptimize_PlatformPreference(u, k);
+		altOptimize_PlatformPreference(getOptimizerContext(), u, k);
+	}
+
+	/***
+	 * save the current topics' word distributions and users' parameters as
+	 * the optimized ones. With useLazyOptSnapshot, optTopicWordDist becomes
+	 * topicWordDist until altOptimize_topics() computes the next
+	 * distributions into the spare buffer, and the users' parameters are
+	 * shared until they change, see ParameterStore.shareOpt()
+	 */
+	private void saveOptimalSolution() {
+		if (useLazyOptSnapshot) {
+			if (optTopicWordDist != topicWordDist) {
+				spareTopicWordDist = optTopicWordDist;
+				optTopicWordDist = topicWordDist;
+			}
+			parameters.shareOpt();
+			return;
+		}
+		if (optTopicWordDist == topicWordDist) {
+			optTopicWordDist = spareTopicWordDist;
+		}
+		// TopicWordsDist
+		optTopicWordDist.copyFrom(topicWordDist);
+		// set optimized user topical interest, authority and hub
+		runPhase(Phase.UPDATE_OPT);
+	}
+
+	/***
+	 * continue the training from a checkpoint written by CheckpointManager
+	 *
+	 * @param path
+	 */
+	public void resume(String path) {
+		resumePath = path;
+		train();
+	}
+
+	/***
+	 * train starting from a previous model, see warmStartPath
+	 * 
+	 * @param path
+	 *            output directory of the previous model, or a checkpoint
+	 */
+	public void warmStart(String path) {
+		warmStartPath = path;
+		train();
+	}
+
+	/***
+	 * likelihood of the solution that the last train() kept and output
+	 * 
+	 * @return
+	 */
+	public static double getTrainedLikelihood() {
+		return trainedLikelihood;
 	}
 
 	/***
@@ -2663,28 +4120,42 @@ public class MultiThreadMPHAT {
 	 */
 	public void train() {
 		getThreadIndexes();
-		init();
-
-		// save initial solution
-		// TopicWordsDist
-		for (int z = 0; z < nTopics; z++) {
-			for (int w = 0; w < dataset.vocabulary.length; w++)
-				optTopicWordDist[z][w] = topicWordDist[z][w];
+		initBlockOptimizers();
+		CheckpointManager.Snapshot resumed = null;
+		if (resumePath != null) {
+			System.out.printf("resuming from %s\n", resumePath);
+			resumed = CheckpointManager.load(resumePath);
+			resumePath = null;
+			initParameters();
+			resumed.restore();
+		} else {
+			if (warmStartPath != null) {
+				System.out.printf("warm-starting from %s\n", warmStartPath);
+				warmStart = WarmStart.load(warmStartPath, dataset, nTopics, Configure.NUM_OF_PLATFORM);
+				warmStartPath = null;
+			}
+			init();
+			warmStart = null;
 		}
-		ExecutorService executor = null;
-		// set optimized user topical interest, authority and hub
-		executor = Executors.newFixedThreadPool(nParallelThreads);
-		for (int i = 0; i < nParallelThreads; i++) {
-			Runnable worker = new ChildThread(threadStartIndexes[i], threadEndIndexes[i], "updateOpt");
-			executor.execute(worker);
+		updateLogTopicWordTable();
+		initPlatformVectors();
+		initEdgeScores();
+		// the cached likelihood contributions are of the previous model, if
+		// any
+		userLikelihoods = null;
+		if (useStochasticTraining) {
+			stochasticTrainer = new StochasticTrainer(dataset, parameters, batch, threadStartIndexes,
+					threadEndIndexes);
 		}
-		executor.shutdown();
-		while (!executor.isTerminated()) {
-			// do nothing, just wait for the threads to finish
+
+		// save initial solution, unless resumed with the saved one
+		if (resumed == null) {
+			saveOptimalSolution();
 		}
 
 		// start learning
 		if (onlyLearnGibbs) {
+			parameters.materializeOpt();
 			// output_topicWord();
 			output_topicInterest();
 			outputPostTopicTopWords(20);
@@ -2692,141 +4163,236 @@ public class MultiThreadMPHAT {
 			getLastLikelihoodPerplexity();
 			output_OptLikelihoodPerplexity();
 			output_LastLikelihoodPerplexity();
+			scheduler.shutdown();
+			scheduler = null;
 			return;
 		}
 
-		double maxLikelihood = Double.NEGATIVE_INFINITY;
+		double maxLikelihood = (resumed == null) ? Double.NEGATIVE_INFINITY : resumed.maxLikelihood;
+		int firstIteration = (resumed == null) ? 0 : resumed.nextIteration;
 		double currentLikelihood = 0;
 		System.out.println("Datapath:" + datapath);
 		System.out.println("Alpha:" + alpha);
 		System.out.println("Line Search Alpha:" + lineSearch_alpha);
 		System.out.println("Line Search Beta:" + lineSearch_beta);
 		System.out.println("Line Search Max Iterations:" + lineSearch_MaxIterations);
+		System.out.println("Optimizers:" + optimizer_topicalInterest + " " + optimizer_Authorities + " "
+				+ optimizer_Hubs + " " + optimizer_platformPreference);
+		System.out.println("Topic sampler:" + ((aliasSampler != null) ? "alias MH" : "exact"));
+		System.out.println("Gibbs init ranges:" + gibbs_Ranges);
+		System.out.println("Storage precision:" + storagePrecision);
+		System.out.printf("Topic-word store:%d dense words of %d, %.1f MB of counts\n", n_zw.getNHeadWords(),
+				dataset.vocabulary.length, n_zw.getMemoryBytes() / 1048576.0);
 		System.out.println("#Topics:" + nTopics);
 		System.out.println("#platforms:" + Configure.NUM_OF_PLATFORM);
 
-		for (int iter = 0; iter < max_GibbsEM_Iterations; iter++) {
-			// EM part that employs alternating optimization
-			// topical interest
-			if (learnUserInterest) {
-				System.out.printf("[iter-%d] optimizing users' topical interest\n", iter);
-				executor = Executors.newFixedThreadPool(nParallelThreads);
-				for (int i = 0; i < nParallelThreads; i++) {
-					Runnable worker = new ChildThread(threadStartIndexes[i], threadEndIndexes[i], "optTopicInterests");
-					executor.execute(worker);
+		LikelihoodSampler likelihoodSampler = null;
+		if (asynchronousTraining) {
+			likelihoodSampler = startLikelihoodSampler();
+		}
+		ConvergenceMonitor monitor = new ConvergenceMonitor();
+		if (resumed != null) {
+			resumed.restoreMonitor(monitor);
+			resumed = null;
+		}
+		double lastLikelihood = getLikelihood_parallel();
+
+		final CheckpointManager checkpoints = new CheckpointManager(
+				(checkpoint_Path != null) ? checkpoint_Path : String.format("%s/checkpoint.bin", outputPath), monitor);
+		checkpoints.setProgress(firstIteration, maxLikelihood);
+		Thread checkpointHook = null;
+		if (checkpoint_Interval > 0) {
+			checkpointHook = new Thread() {
+				@Override
+				public void run() {
+					System.out.println("[checkpoint] shutting down, stopping at the end of the current phase");
+					checkpoints.requestStop(checkpoint_StopTimeout);
 				}
-				executor.shutdown();
-				while (!executor.isTerminated()) {
-					// do nothing, just wait for the threads to finish
+			};
+			Runtime.getRuntime().addShutdownHook(checkpointHook);
+		}
+
+		try {
+			for (int iter = firstIteration; iter < max_GibbsEM_Iterations; iter++) {
+				if (checkpoints.isStopRequested()) {
+					break;
 				}
-				System.out.printf("[iter-%d] after learning interest likelihood = %f\n", iter,
-						getLikelihood_parallel());
-			}
-			// authority
-			if (learnUserAuthority) {
-				System.out.printf("[iter-%d] optimizing users' authorities\n", iter);
-				executor = Executors.newFixedThreadPool(nParallelThreads);
-				for (int i = 0; i < nParallelThreads; i++) {
-					Runnable worker = new ChildThread(threadStartIndexes[i], threadEndIndexes[i], "optAuthorities");
-					executor.execute(worker);
+				if (asynchronousTraining && monitor.shouldRunPhase("async", iter)) {
+					System.out.printf("[iter-%d] optimizing users' parameters asynchronously\n", iter);
+					runAsynchronousRound();
+					outputOptimizerStats(interestStats, iter, "interest");
+					outputOptimizerStats(authorityStats, iter, "authority");
+					outputOptimizerStats(hubStats, iter, "hub");
+					outputOptimizerStats(platformPreferenceStats, iter, "platform preference");
+					lastLikelihood = getPhaseLikelihood(monitor, "async", iter, lastLikelihood);
 				}
-				executor.shutdown();
-				while (!executor.isTerminated()) {
-					// do nothing, just wait for the threads to finish
+				if (checkpoints.isStopRequested()) {
+					break;
 				}
-				System.out.printf("[iter-%d] after learning authority likelihood = %f\n", iter,
-						getLikelihood_parallel());
-			}
-			// hub
-			if (learnUserHub) {
-				System.out.printf("[iter-%d] optimizing users' hubs\n", iter);
-				executor = Executors.newFixedThreadPool(nParallelThreads);
-				for (int i = 0; i < nParallelThreads; i++) {
-					Runnable worker = new ChildThread(threadStartIndexes[i], threadEndIndexes[i], "optHubs");
-					executor.execute(worker);
-				}
-				executor.shutdown();
-				while (!executor.isTerminated()) {
-					// do nothing, just wait for the threads to finish
-				}
-				System.out.printf("[iter-%d] after learning hub likelihood = %f\n", iter, getLikelihood_parallel());
-			}
-			// platform preference
-			if (learnUserPlatformPreference) {
-				System.out.printf("[iter-%d] optimizing users' platform preference\n", iter);
-				if (asynchronousParallelUserPlatformPreference) {
-					// TODO: check for convergence
-					executor = Executors.newFixedThreadPool(nParallelThreads);
-					for (int i = 0; i < nParallelThreads; i++) {
-						Runnable worker = new ChildThread(threadStartIndexes[i], threadEndIndexes[i],
-								"optPlatformPreferences");
-						executor.execute(worker);
+				// EM part that employs alternating optimization
+				// topical interest
+				if (learnUserInterest && !asynchronousTraining && monitor.shouldRunPhase("interest", iter)) {
+					System.out.printf("[iter-%d] optimizing users' topical interest\n", iter);
+					runPhase(Phase.OPT_TOPIC_INTERESTS);
+					outputOptimizerStats(interestStats, iter, "interest");
+					lastLikelihood = getPhaseLikelihood(monitor, "interest", iter, lastLikelihood);
+					System.out.printf("[iter-%d] after learning interest likelihood = %f\n", iter, lastLikelihood);
+				}
+				if (checkpoints.isStopRequested()) {
+					break;
+				}
+				if (useStochasticTraining && !asynchronousTraining && (learnUserAuthority || learnUserHub)
+						&& monitor.shouldRunPhase("mini-batch SGD", iter)) {
+					System.out.printf("[iter-%d] optimizing users' authorities and hubs by mini-batch SGD\n", iter);
+					boolean learnPreference = learnUserPlatformPreference && useLinkInLearningPlatformPreference;
+					double heldOutLikelihood = stochasticTrainer.getHeldOutLikelihood();
+					trainStochastically(learnPreference, usePrior);
+					invalidateLikelihoods();
+					if (edgeScoreCache != null) {
+						edgeScoreCache.markAllDirty();
+						refreshEdgeScores();
 					}
-					executor.shutdown();
-					while (!executor.isTerminated()) {
-						// do nothing, just wait for the threads to finish
+					double likelihood = getPhaseLikelihood(monitor, "mini-batch SGD", iter, lastLikelihood);
+					if (verifyStochasticTraining) {
+						verifyStochasticTraining(iter, lastLikelihood, likelihood, heldOutLikelihood,
+								stochasticTrainer.getHeldOutLikelihood());
 					}
-				} else {
-					for (int u = 0; u < dataset.nUsers; u++) {
-						for (int k = 0; k < nTopics; k++) {
-							altOptimize_PlatformPreference(u, k);
+					lastLikelihood = likelihood;
+					System.out.printf("[iter-%d] after mini-batch SGD likelihood = %f\n", iter, lastLikelihood);
+				}
+				if (checkpoints.isStopRequested()) {
+					break;
+				}
+				// authority
+				if (learnUserAuthority && !useStochasticTraining && !asynchronousTraining
+						&& monitor.shouldRunPhase("authority", iter)) {
+					System.out.printf("[iter-%d] optimizing users' authorities\n", iter);
+					runPhase(Phase.OPT_AUTHORITIES);
+					outputOptimizerStats(authorityStats, iter, "authority");
+					lastLikelihood = getPhaseLikelihood(monitor, "authority", iter, lastLikelihood);
+					System.out.printf("[iter-%d] after learning authority likelihood = %f\n", iter, lastLikelihood);
+				}
+				if (checkpoints.isStopRequested()) {
+					break;
+				}
+				// hub
+				if (learnUserHub && !useStochasticTraining && !asynchronousTraining
+						&& monitor.shouldRunPhase("hub", iter)) {
+					System.out.printf("[iter-%d] optimizing users' hubs\n", iter);
+					runPhase(Phase.OPT_HUBS);
+					outputOptimizerStats(hubStats, iter, "hub");
+					lastLikelihood = getPhaseLikelihood(monitor, "hub", iter, lastLikelihood);
+					System.out.printf("[iter-%d] after learning hub likelihood = %f\n", iter, lastLikelihood);
+				}
+				if (checkpoints.isStopRequested()) {
+					break;
+				}
+				// platform preference, learned by the SGD above if it uses links
+				if (learnUserPlatformPreference && !asynchronousTraining
+						&& !(useStochasticTraining && useLinkInLearningPlatformPreference)
+						&& monitor.shouldRunPhase("platform preference", iter)) {
+					System.out.printf("[iter-%d] optimizing users' platform preference\n", iter);
+					if (asynchronousParallelUserPlatformPreference) {
+						// TODO: check for convergence
+						runPhase(Phase.OPT_PLATFORM_PREFERENCES);
+					} else {
+						for (int u = 0; u < dataset.nUsers; u++) {
+							for (int k = 0; k < nTopics; k++) {
+								altOptimize_PlatformPreference(getOptimizerContext(), u, k);
+							}
 						}
 					}
+					outputOptimizerStats(platformPreferenceStats, iter, "platform preference");
+					refreshEdgeScores();
+					lastLikelihood = getPhaseLikelihood(monitor, "platform preference", iter, lastLikelihood);
+					System.out.printf("[iter-%d] after learning platform preference likelihood = %f\n", iter,
+							lastLikelihood);
 				}
-				System.out.printf("[iter-%d] after learning platform preference likelihood = %f\n", iter,
-						getLikelihood_parallel());
-			}
 
-			// Gibbs part that employ topic sampling
-			if (learnTopic) {
-				System.out.printf("[iter-%d] optimizing topics' word distribution\n", iter);
-				altOptimize_topics();
-				// Gibbs part that employ topic sampling
-				System.out.printf("[iter-%d] sampling topic for users' posts\n", iter);
-				executor = Executors.newFixedThreadPool(nParallelThreads);
-				for (int i = 0; i < nParallelThreads; i++) {
-					Runnable worker = new ChildThread(threadStartIndexes[i], threadEndIndexes[i], "topicSample");
-					executor.execute(worker);
+				if (checkpoints.isStopRequested()) {
+					break;
 				}
-				executor.shutdown();
-				while (!executor.isTerminated()) {
-					// do nothing, just wait for the threads to finish
+				// Gibbs part that employ topic sampling
+				boolean sampledTopics = false;
+				if (learnTopic && monitor.shouldRunPhase("topic", iter)) {
+					sampledTopics = true;
+					System.out.printf("[iter-%d] optimizing topics' word distribution\n", iter);
+					altOptimize_topics();
+					// Gibbs part that employ topic sampling
+					System.out.printf("[iter-%d] sampling topic for users' posts\n", iter);
+					topicSampleIteration = iter;
+					if (aliasSampler != null) {
+						aliasSampler.setSource(topicWordDist);
+						buildTopicAliasTables();
+					}
+					runPhase(Phase.TOPIC_SAMPLE);
+					invalidateLikelihoods();
 				}
-			}
 
-			// set first Likelihood as the maxLikelihood
-			System.out.printf("[iter-%d] computing new likelihood\n", iter);
-			currentLikelihood = getLikelihood_parallel();
+				// set first Likelihood as the maxLikelihood
+				System.out.printf("[iter-%d] computing new likelihood\n", iter);
+				currentLikelihood = getLikelihood_parallel();
+				if (sampledTopics) {
+					monitor.recordPhase("topic", iter, lastLikelihood, currentLikelihood);
+				}
+				lastLikelihood = currentLikelihood;
 
-			if (maxLikelihood < currentLikelihood) {
-				System.out.printf("[iter-%d] saving solution\n", iter);
-				maxLikelihood = currentLikelihood;
-				// set optimized topicWordDist to be the current
-				// TopicWordsDist
-				for (int z = 0; z < nTopics; z++) {
-					for (int w = 0; w < dataset.vocabulary.length; w++)
-						optTopicWordDist[z][w] = topicWordDist[z][w];
+				if (maxLikelihood < currentLikelihood) {
+					System.out.printf("[iter-%d] saving solution\n", iter);
+					maxLikelihood = currentLikelihood;
+					saveOptimalSolution();
+				}
+				System.out.printf("likelihood after %d steps: %f, max %f\n", iter, currentLikelihood, maxLikelihood);
+				System.out.println();
+				// recorded before the checkpoint, which saves the monitor
+				boolean converged = monitor.recordIteration(iter, currentLikelihood);
+				checkpoints.setProgress(iter + 1, maxLikelihood);
+				if (checkpoint_Interval > 0 && (iter + 1) % checkpoint_Interval == 0) {
+					checkpoints.save();
+				}
+				if (asyncConverged) {
+					break;
 				}
-				// set optimized user topical interest, authority and hub
-				executor = Executors.newFixedThreadPool(nParallelThreads);
-				for (int i = 0; i < nParallelThreads; i++) {
-					Runnable worker = new ChildThread(threadStartIndexes[i], threadEndIndexes[i], "updateOpt");
-					executor.execute(worker);
+				if (converged) {
+					System.out.printf("stopping after %d steps: %s, keeping the solution with likelihood %f\n", iter,
+							monitor.getStopReason(), maxLikelihood);
+					break;
 				}
-				executor.shutdown();
-				while (!executor.isTerminated()) {
-					// do nothing, just wait for the threads to finish
+			}
+			if (likelihoodSampler != null) {
+				likelihoodSampler.finish();
+			}
+			if (checkpoints.isStopRequested()) {
+				// at a phase boundary: an interrupted iteration is run again from
+				// its first phase on resume
+				checkpoints.saveNow();
+				checkpoints.close();
+				scheduler.shutdown();
+				scheduler = null;
+				return;
+			}
+			checkpoints.close();
+		} finally {
+			// also on an exception, so that the shutdown hook does not wait
+			checkpoints.stopped();
+			if (checkpointHook != null) {
+				try {
+					Runtime.getRuntime().removeShutdownHook(checkpointHook);
+				} catch (IllegalStateException e) {
+					// already shutting down, the hook has the last checkpoint
 				}
 			}
-			System.out.printf("likelihood after %d steps: %f, max %f\n", iter, currentLikelihood, maxLikelihood);
-			System.out.println();
 		}
+		trainedLikelihood = maxLikelihood;
+		parameters.materializeOpt();
 		// print out the learned parameters
 		//output_topicWord();
 		output_topicInterest();
 		output_platformPreference();
 		output_authority();
 		output_hub();
+		output_platformAuthority();
+		output_platformHub();
 		outputPostTopicTopWords(20);
 		getOptLikelihoodPerplexity();
 		getLastLikelihoodPerplexity();
@@ -2834,16 +4400,20 @@ public class MultiThreadMPHAT {
 		output_LastLikelihoodPerplexity();
 		inferPostPlatform();
 		outputInferedPlatform();
+		scheduler.shutdown();
+		scheduler = null;
 	}
 
 	public void output_topicWord() {
 		try {
 			File f = new File(outputPath + "/" + nTopics + "/omega_" + omega + "_phi_" + phi + "/l_topicalWordDistributions.csv");
 			FileWriter fo = new FileWriter(f);
+			double[] probs = new double[dataset.vocabulary.length];
 			for (int k = 0; k < nTopics; k++) {
 				String text = Integer.toString(k);
+				optTopicWordDist.getProbs(k, probs);
 				for (int w = 0; w < dataset.vocabulary.length; w++) {
-					text = text + "," + Double.toString(optTopicWordDist[k][w]);
+					text = text + "," + Double.toString(probs[w]);
 				}
 				fo.write(text + "\n");
 			}
@@ -2861,9 +4431,11 @@ public class MultiThreadMPHAT {
 			BufferedWriter bw = new BufferedWriter(new FileWriter(f.getAbsoluteFile()));
 			RankingTool rankTool = new RankingTool();
 			WeightedElement[] topWords = null;
+			double[] probs = new double[dataset.vocabulary.length];
 			for (int z = 0; z < nTopics; z++) {
 				bw.write(z + "\n");
-				topWords = rankTool.getTopKbyWeight(dataset.vocabulary, optTopicWordDist[z], k);
+				optTopicWordDist.getProbs(z, probs);
+				topWords = rankTool.getTopKbyWeight(dataset.vocabulary, probs, k);
 				for (int j = 0; j < k; j++)
 					bw.write("," + topWords[j].name + "," + topWords[j].weight + "\n");
 			}
@@ -2884,7 +4456,7 @@ public class MultiThreadMPHAT {
 				User currUser = dataset.users[u];
 				String text = currUser.userId;
 				for (int k = 0; k < nTopics; k++) {
-					text = text + "," + Double.toString(currUser.optTopicalInterests[k]);
+					text = text + "," + Double.toString(parameters.getOptTopicalInterest(u, k));
 				}
 				fo.write(text + "\n");
 			}
@@ -2906,7 +4478,7 @@ public class MultiThreadMPHAT {
 				for (int k = 0; k < nTopics; k++) {
 					String text = currUser.userId + "," + k;
 					for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
-						text = text + "," + Double.toString(currUser.optTopicalPlatformPreference[k][p]);
+						text = text + "," + Double.toString(parameters.getOptPlatformPreference(u, k, p));
 					}
 					fo.write(text + "\n");
 				}
@@ -2927,7 +4499,7 @@ public class MultiThreadMPHAT {
 				User currUser = dataset.users[u];
 				String text = currUser.userId;
 				for (int k = 0; k < nTopics; k++) {
-					text = text + "," + Double.toString(currUser.optAuthorities[k]);
+					text = text + "," + Double.toString(parameters.getOptAuthority(u, k));
 				}
 				fo.write(text + "\n");
 			}
@@ -2947,7 +4519,7 @@ public class MultiThreadMPHAT {
 				User currUser = dataset.users[u];
 				String text = currUser.userId;
 				for (int k = 0; k < nTopics; k++) {
-					text = text + "," + Double.toString(currUser.optHubs[k]);
+					text = text + "," + Double.toString(parameters.getOptHub(u, k));
 				}
 				fo.write(text + "\n");
 			}
@@ -2961,49 +4533,76 @@ public class MultiThreadMPHAT {
 
 	public void getGlobalTopicInterestMin() {
 		for (int u = 0; u < dataset.nUsers; u++) {
-			User currUser = dataset.users[u];
 			for (int k = 0; k < nTopics; k++) {
-				if (globalTopicInterestsMin > currUser.topicalInterests[k]) {
-					globalTopicInterestsMin = currUser.topicalInterests[k];
+				if (globalTopicInterestsMin > parameters.getTopicalInterest(u, k)) {
+					globalTopicInterestsMin = parameters.getTopicalInterest(u, k);
 				}
 			}
 		}
 		System.out.println("globalTopicInterestsMin:" + globalTopicInterestsMin);
 	}
 
-	private double getOptPostLikelihood(int u, int n) {
+	private double getOptPostLikelihood(LogTopicWordTable log10TopicWordDist, int u, int n) {
 		// Compute likelihood of post number n of user number u
 		double[] p = new double[nTopics];
 		for (int z = 0; z < nTopics; z++) {
-			p[z] = Math.log10(dataset.users[u].optTopicalInterests[z]);
+			p[z] = Math.log10(parameters.getOptTopicalInterest(u, z));
 			for (int i = 0; i < dataset.users[u].posts[n].nWords; i++) {
 				int w = dataset.users[u].posts[n].words[i];
-				p[z] += Math.log10(optTopicWordDist[z][w]);
+				p[z] += log10TopicWordDist.get(z, w);
 			}
 		}
 		return MathTool.log10Sum(p);
 	}
 
-	private double getLastPostLikelihood(int u, int j) {
+	private double getLastPostLikelihood(LogTopicWordTable log10TopicWordDist, int u, int j) {
 		// Compute likelihood of post number j of user number u
 		double[] p = new double[nTopics];
 		for (int z = 0; z < nTopics; z++) {
-			p[z] = Math.log10(dataset.users[u].topicalInterests[z]);
+			p[z] = Math.log10(parameters.getTopicalInterest(u, z));
 			for (int i = 0; i < dataset.users[u].posts[j].nWords; i++) {
 				int w = dataset.users[u].posts[j].words[i];
-				p[z] += Math.log10(topicWordDist[z][w]);
+				p[z] += log10TopicWordDist.get(z, w);
 			}
 		}
 		return MathTool.log10Sum(p);
 	}
 
+	/***
+	 * build a log table of the given topics' word distributions on all the
+	 * threads
+	 *
+	 * @param table
+	 * @param dist
+	 */
+	private static void buildLogTopicWordTable(LogTopicWordTable table, TopicWordStore dist) {
+		table.setSource(dist);
+		logTableToBuild = table;
+		scheduler.run(Phase.BUILD_LOG_TOPIC_WORD_TABLE, table.startSlots, table.endSlots);
+		logTableToBuild = null;
+	}
+
+	/***
+	 * rebuild log(topicWordDist) after topicWordDist changed
+	 */
+	private static void updateLogTopicWordTable() {
+		if (logTopicWordDist == null) {
+			logTopicWordDist = new LogTopicWordTable(dataset, nTopics, false, nParallelThreads * nChunksPerThread,
+					storagePrecision == Configure.StoragePrecision.FLOAT);
+		}
+		buildLogTopicWordTable(logTopicWordDist, topicWordDist);
+	}
+
 	private void getOptLikelihoodPerplexity() {
 		postOptLogLikelidhood = 0;
 		postOptLogPerplexity = 0;
 		int nTestPost = 0;
+		LogTopicWordTable log10TopicWordDist = new LogTopicWordTable(dataset, nTopics, true,
+				nParallelThreads * nChunksPerThread);
+		buildLogTopicWordTable(log10TopicWordDist, optTopicWordDist);
 		for (int u = 0; u < dataset.nUsers; u++) {
 			for (int t = 0; t < dataset.users[u].nPosts; t++) {
-				double logLikelihood = getOptPostLikelihood(u, t);
+				double logLikelihood = getOptPostLikelihood(log10TopicWordDist, u, t);
 				if (dataset.users[u].postBatches[t] == batch)
 					postOptLogLikelidhood += logLikelihood;
 				else {
@@ -3019,9 +4618,12 @@ public class MultiThreadMPHAT {
 		postLastLogLikelidhood = 0;
 		postLastLogPerplexity = 0;
 		int nTestPost = 0;
+		LogTopicWordTable log10TopicWordDist = new LogTopicWordTable(dataset, nTopics, true,
+				nParallelThreads * nChunksPerThread);
+		buildLogTopicWordTable(log10TopicWordDist, topicWordDist);
 		for (int u = 0; u < dataset.nUsers; u++) {
 			for (int t = 0; t < dataset.users[u].nPosts; t++) {
-				double logLikelihood = getLastPostLikelihood(u, t);
+				double logLikelihood = getLastPostLikelihood(log10TopicWordDist, u, t);
 				if (dataset.users[u].postBatches[t] == batch)
 					postLastLogLikelidhood += logLikelihood;
 				else {
@@ -3033,6 +4635,52 @@ public class MultiThreadMPHAT {
 		postLastLogPerplexity /= nTestPost;
 	}
 
+	public void output_platformAuthority() {
+		try {
+			File f = new File(outputPath + "/" + nTopics + "/omega_" + omega + "_phi_" + phi
+					+ "/l_userPlatformAuthorityDistributions.csv");
+			FileWriter fo = new FileWriter(f);
+			for (int u = 0; u < dataset.nUsers; u++) {
+				User currUser = dataset.users[u];
+				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
+					String text = currUser.userId + "," + p;
+					for (int k = 0; k < nTopics; k++) {
+						text = text + "," + Double.toString(parameters.getOptPlatformAuthority(u, p, k));
+					}
+					fo.write(text + "\n");
+				}
+			}
+			fo.close();
+		} catch (Exception e) {
+			System.out.println("Error in writing to platform authority file!");
+			e.printStackTrace();
+			System.exit(0);
+		}
+	}
+
+	public void output_platformHub() {
+		try {
+			File f = new File(outputPath + "/" + nTopics + "/omega_" + omega + "_phi_" + phi
+					+ "/l_userPlatformHubDistributions.csv");
+			FileWriter fo = new FileWriter(f);
+			for (int u = 0; u < dataset.nUsers; u++) {
+				User currUser = dataset.users[u];
+				for (int p = 0; p < Configure.NUM_OF_PLATFORM; p++) {
+					String text = currUser.userId + "," + p;
+					for (int k = 0; k < nTopics; k++) {
+						text = text + "," + Double.toString(parameters.getOptPlatformHub(u, p, k));
+					}
+					fo.write(text + "\n");
+				}
+			}
+			fo.close();
+		} catch (Exception e) {
+			System.out.println("Error in writing to platform hub file!");
+			e.printStackTrace();
+			System.exit(0);
+		}
+	}
+
 	public void output_OptLikelihoodPerplexity() {
 		try {
 			File f = new File(outputPath + "/" + nTopics + "/omega_" + omega + "_phi_" + phi + "/l_OptLikelihoodPerplexity.csv");
@@ -3067,8 +4715,9 @@ public class MultiThreadMPHAT {
 				if (dataset.users[u].postBatches[j] == batch)
 					continue;
 				int z = dataset.users[u].posts[j].topic;
-				double[] prp = MathTool
-						.softmax(dataset.users[u].optTopicalPlatformPreference[z]);
+				double[] prp = new double[Configure.NUM_OF_PLATFORM];
+				MathTool.softmax(parameters.optTopicalPlatformPreference, parameters.preferenceIndex(u, z, 0),
+						Configure.NUM_OF_PLATFORM, prp, 0);
 				
 				if (prp[0] > prp[1]){
 					dataset.users[u].posts[j].inferedPlatform = 0;
@@ -0,0 +1,95 @@
+package model;
+
+import java.util.Random;
+
+/***
+ * draws the non-links of a user from one of the non-link lists of Dataset
+ * with probability proportional to (degree of the other user in the platform
+ * of the non-link + 1)^power, e.g., the in-degrees of the targets of the
+ * non-followings, so that the popular users, whose non-links dominate the
+ * gradient, are drawn more often than by a uniform draw. A draw is a binary
+ * search over the cumulative weights of the list of the user.
+ * getImportanceWeight() is the number of non-links that a drawn one stands
+ * for, so that the weighted draws estimate the sum over the whole list
+ * without bias. The excluded non-links, e.g., the held-out ones, have weight 0
+ * and are never drawn.
+ */
+public class NegativeSampler {
+	private RelationGraph relations;
+	private double[] cumulativeWeights;// cumulativeWeights[i]: sum of the
+										// weights of the non-links of the user
+										// up to position i
+	private int[] counts;// number of non-links of the users that can be drawn
+
+	/***
+	 *
+	 * @param _relations
+	 *            non-followings or non-followers
+	 * @param degrees
+	 *            degrees[p][v]: degree of v in platform p
+	 * @param power
+	 * @param isExcluded
+	 *            isExcluded[i]: the non-link at position i of relations is
+	 *            never drawn
+	 */
+	public NegativeSampler(RelationGraph _relations, int[][] degrees, double power, boolean[] isExcluded) {
+		relations = _relations;
+		cumulativeWeights = new double[relations.nRelations];
+		counts = new int[relations.nUsers];
+		for (int u = 0; u < relations.nUsers; u++) {
+			double sum = 0;
+			for (int i = relations.offsets[u]; i < relations.offsets[u + 1]; i++) {
+				if (!isExcluded[i]) {
+					sum += Math.pow(degrees[relations.platforms[i]][relations.neighbors[i]] + 1, power);
+					counts[u]++;
+				}
+				cumulativeWeights[i] = sum;
+			}
+		}
+	}
+
+	/***
+	 * number of non-links of u that can be drawn
+	 *
+	 * @param u
+	 * @return
+	 */
+	public int getCount(int u) {
+		return counts[u];
+	}
+
+	/***
+	 * draw a non-link of u, which must have getCount(u) > 0
+	 *
+	 * @param rand
+	 * @param u
+	 * @return its position in the relations
+	 */
+	public int sample(Random rand, int u) {
+		int low = relations.offsets[u];
+		int high = relations.offsets[u + 1] - 1;
+		double r = rand.nextDouble() * cumulativeWeights[high];
+		// first position whose cumulative weight is above r
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (cumulativeWeights[middle] > r) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
+
+	/***
+	 * total weight of the non-links of u / weight of the drawn non-link i
+	 *
+	 * @param u
+	 * @param i
+	 * @return
+	 */
+	public double getImportanceWeight(int u, int i) {
+		double weight = cumulativeWeights[i] - ((i > relations.offsets[u]) ? cumulativeWeights[i - 1] : 0);
+		return cumulativeWeights[relations.offsets[u + 1] - 1] / weight;
+	}
+}
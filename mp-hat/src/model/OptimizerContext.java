@@ -0,0 +1,152 @@
+package model;
+
+/***
+ * per-worker state of the alternating optimizers: the line search step size,
+ * scratch buffers for gradients and trial points, and a random generator that
+ * is reset to the stream of every item it draws for (see StreamRandom).
+ * Each worker thread owns one context so that the optimizers never share
+ * mutable state across threads.
+ */
+public class OptimizerContext {
+	public static long seed = 1;
+
+	public double lineSearch_lambda;
+
+	// buffers of K-topics dimension
+	public double[] grad;
+	public double[] x;
+	public double[] currentX;
+	// buffers of P-platforms dimension
+	public double[] platformGrad;
+	public double[] platformX;
+	public double[] platformCurrentX;
+	// buffer for topic sampling
+	public double[] topicProbs;
+	public TopicAliasSampler.UserTable topicTable;
+	// topics whose trial value was clamped at epsilon in the line search
+	public int[] clampedTopics;
+	public int nClampedTopics;
+	// per-platform hubs and authorities of a neighbor converted to 64 bits
+	// when they are stored in 32 bits (see ParameterStore)
+	public double[] hubRow;
+	public double[] authorityRow;
+
+	// per-edge dot products of the directional line search: the edge score
+	// at the start point and its slope along the search direction
+	public double[] edgeScores;
+	public double[] edgeSlopes;
+	// edge scores and exp(-score) at the last trial point
+	public double[] trialScores;
+	public double[] trialExpScores;
+
+	public StreamRandom rand;
+
+	/***
+	 * buffers of the block optimizers for blocks of one dimension
+	 */
+	public static class BlockBuffers {
+		public double[] grad;
+		public double[] x;
+		public double[] direction;
+		public double[] previousGrad;
+		// L-BFGS history: steps s, gradient changes y, and 1 / <s, y>
+		public double[][] s;
+		public double[][] y;
+		public double[] rho;
+		public double[] historyAlpha;
+
+		public BlockBuffers(int nDim) {
+			grad = new double[nDim];
+			x = new double[nDim];
+			direction = new double[nDim];
+			previousGrad = new double[nDim];
+		}
+
+		/***
+		 * make sure the L-BFGS history can hold the given number of pairs
+		 *
+		 * @param memory
+		 */
+		public void ensureHistory(int memory) {
+			if (s == null || s.length < memory) {
+				s = new double[memory][grad.length];
+				y = new double[memory][grad.length];
+				rho = new double[memory];
+				historyAlpha = new double[memory];
+			}
+		}
+	}
+
+	// blockBuffers[n]: buffers for blocks of dimension n
+	private BlockBuffers[] blockBuffers = new BlockBuffers[0];
+
+	public OptimizerContext() {
+		rand = new StreamRandom();
+	}
+
+	/***
+	 * make sure the buffers are large enough for the current model
+	 *
+	 * @param nTopics
+	 * @param nPlatforms
+	 */
+	public void ensureCapacity(int nTopics, int nPlatforms) {
+		if (grad == null || grad.length != nTopics) {
+			grad = new double[nTopics];
+			x = new double[nTopics];
+			currentX = new double[nTopics];
+			topicProbs = new double[nTopics];
+			topicTable = new TopicAliasSampler.UserTable(nTopics);
+			clampedTopics = new int[nTopics];
+			hubRow = new double[nTopics];
+			authorityRow = new double[nTopics];
+		}
+		if (platformGrad == null || platformGrad.length != nPlatforms) {
+			platformGrad = new double[nPlatforms];
+			platformX = new double[nPlatforms];
+			platformCurrentX = new double[nPlatforms];
+		}
+	}
+
+	/***
+	 * make sure the per-edge buffers can hold nEdges edges
+	 *
+	 * @param nEdges
+	 */
+	public void ensureEdgeCapacity(int nEdges) {
+		if (edgeScores == null || edgeScores.length < nEdges) {
+			int capacity = Math.max(nEdges, edgeScores == null ? 16 : 2 * edgeScores.length);
+			edgeScores = new double[capacity];
+			edgeSlopes = new double[capacity];
+			trialScores = new double[capacity];
+			trialExpScores = new double[capacity];
+		}
+	}
+
+	/***
+	 * get the block optimizer buffers for blocks of dimension nDim
+	 *
+	 * @param nDim
+	 * @return
+	 */
+	public BlockBuffers getBlockBuffers(int nDim) {
+		if (blockBuffers.length <= nDim) {
+			BlockBuffers[] temp = new BlockBuffers[nDim + 1];
+			System.arraycopy(blockBuffers, 0, temp, 0, blockBuffers.length);
+			blockBuffers = temp;
+		}
+		if (blockBuffers[nDim] == null) {
+			blockBuffers[nDim] = new BlockBuffers(nDim);
+		}
+		return blockBuffers[nDim];
+	}
+
+	/***
+	 * set the seed of all the random streams
+	 *
+	 * @param _seed
+	 */
+	public static void reset(long _seed) {
+		seed = _seed;
+	}
+}
@@ -0,0 +1,55 @@
+package model;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ * counters of the work done by the block optimizers on one family of
+ * parameters, shared by all the worker threads
+ */
+public class OptimizerStats {
+	private LongAdder nBlocks = new LongAdder();
+	private LongAdder nIterations = new LongAdder();
+	private LongAdder nValueEvaluations = new LongAdder();
+	private LongAdder nGradientEvaluations = new LongAdder();
+	private DoubleAdder improvement = new DoubleAdder();// decrease of f
+
+	/***
+	 * add the work of one call to BlockOptimizer.minimize()
+	 *
+	 * @param iterations
+	 *            accepted iterations
+	 * @param valueEvaluations
+	 * @param gradientEvaluations
+	 * @param decrease
+	 *            f at the start point minus f at the end point, ignored
+	 *            if it is not finite
+	 */
+	public void add(int iterations, int valueEvaluations, int gradientEvaluations, double decrease) {
+		nBlocks.increment();
+		nIterations.add(iterations);
+		nValueEvaluations.add(valueEvaluations);
+		nGradientEvaluations.add(gradientEvaluations);
+		if (!Double.isNaN(decrease) && !Double.isInfinite(decrease)) {
+			improvement.add(decrease);
+		}
+	}
+
+	public void reset() {
+		nBlocks.reset();
+		nIterations.reset();
+		nValueEvaluations.reset();
+		nGradientEvaluations.reset();
+		improvement.reset();
+	}
+
+	public void print(String name) {
+		long iterations = nIterations.sum();
+		long values = nValueEvaluations.sum();
+		long gradients = nGradientEvaluations.sum();
+		System.out.printf("[%s] blocks = %d, iterations = %d, f evals = %d (%.2f per iteration), "
+				+ "grad evals = %d (%.2f per iteration), f decrease = %f\n", name, nBlocks.sum(), iterations,
+				values, iterations > 0 ? (double) values / iterations : 0, gradients,
+				iterations > 0 ? (double) gradients / iterations : 0, improvement.sum());
+	}
+}
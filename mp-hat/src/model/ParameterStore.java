@@ -0,0 +1,476 @@
+package model;
+
+import java.util.Arrays;
+
+import tool.MathTool;
+import tool.VectorKernels;
+
+/***
+ * users' parameters stored as one contiguous primitive array per parameter
+ * family, instead of small arrays in every User. Per-topic parameters are
+ * indexed [u * nTopics + k], platform preferences [(u * nTopics + k) *
+ * nPlatforms + p], and per-platform authorities/hubs [(u * nPlatforms + p) *
+ * nTopics + k], so the K values of one user (or one user-platform pair) are
+ * adjacent in memory.
+ *
+ * The optimized values can be saved lazily by shareOpt(): the users' opt*
+ * values are then the current ones, and are only copied from them when the
+ * user's current values are about to change. Every write of the current
+ * values goes through the setters and update methods below, or is preceded
+ * by beforeUpdate(u). materializeOpt() completes the opt* arrays before they
+ * are read directly.
+ *
+ * With FLOAT precision, the per-platform authorities and hubs, which the
+ * link terms read from every neighbor, are stored in 32 bits in the *Float
+ * arrays instead (the double arrays are null), which halves the bytes that
+ * the scans over the neighbors read. They are derived from the other
+ * parameters, which stay in 64 bits for the optimizers, and the sums over
+ * them are still taken in 64 bits. Read them by getPlatformScore(), the
+ * get*Row() methods, or the getters.
+ */
+public class ParameterStore {
+	public int nUsers;
+	public int nTopics;
+	public int nPlatforms;
+	public Configure.StoragePrecision precision;
+
+	public double[] topicalInterests;// theta
+	public double[] authorities;// A
+	public double[] hubs;// H
+	public double[] topicalPlatformPreference;// eta
+	public double[] topicalRelativePlatformPreference;// softmax(eta)
+	public double[] platformAuthorities;// A * softmax(eta)
+	public double[] platformHubs;// H * softmax(eta)
+
+	// optimized values
+	public double[] optTopicalInterests;
+	public double[] optAuthorities;
+	public double[] optHubs;
+	public double[] optTopicalPlatformPreference;
+	public double[] optPlatformAuthorities;
+	public double[] optPlatformHubs;
+	// the per-platform authorities and hubs with FLOAT precision
+	public float[] platformAuthoritiesFloat;
+	public float[] platformHubsFloat;
+	public float[] optPlatformAuthoritiesFloat;
+	public float[] optPlatformHubsFloat;
+	// isOptShared[u]: the opt* values of u are the current ones and not yet
+	// copied into the opt* arrays
+	private boolean[] isOptShared;
+	private boolean hasSharedOpt;
+
+	public ParameterStore(int _nUsers, int _nTopics, int _nPlatforms) {
+		this(_nUsers, _nTopics, _nPlatforms, Configure.StoragePrecision.DOUBLE);
+	}
+
+	public ParameterStore(int _nUsers, int _nTopics, int _nPlatforms, Configure.StoragePrecision _precision) {
+		nUsers = _nUsers;
+		nTopics = _nTopics;
+		nPlatforms = _nPlatforms;
+		precision = _precision;
+		boolean isFloat = (precision == Configure.StoragePrecision.FLOAT);
+
+		topicalInterests = new double[nUsers * nTopics];
+		authorities = new double[nUsers * nTopics];
+		hubs = new double[nUsers * nTopics];
+		topicalPlatformPreference = new double[nUsers * nTopics * nPlatforms];
+		topicalRelativePlatformPreference = new double[nUsers * nTopics * nPlatforms];
+		if (isFloat) {
+			platformAuthoritiesFloat = new float[nUsers * nPlatforms * nTopics];
+			platformHubsFloat = new float[nUsers * nPlatforms * nTopics];
+		} else {
+			platformAuthorities = new double[nUsers * nPlatforms * nTopics];
+			platformHubs = new double[nUsers * nPlatforms * nTopics];
+		}
+
+		optTopicalInterests = new double[nUsers * nTopics];
+		optAuthorities = new double[nUsers * nTopics];
+		optHubs = new double[nUsers * nTopics];
+		optTopicalPlatformPreference = new double[nUsers * nTopics * nPlatforms];
+		if (isFloat) {
+			optPlatformAuthoritiesFloat = new float[nUsers * nPlatforms * nTopics];
+			optPlatformHubsFloat = new float[nUsers * nPlatforms * nTopics];
+		} else {
+			optPlatformAuthorities = new double[nUsers * nPlatforms * nTopics];
+			optPlatformHubs = new double[nUsers * nPlatforms * nTopics];
+		}
+		isOptShared = new boolean[nUsers];
+		hasSharedOpt = false;
+	}
+
+	/***
+	 * index of topic k of user u in the per-topic arrays
+	 */
+	public int topicIndex(int u, int k) {
+		return u * nTopics + k;
+	}
+
+	/***
+	 * index of (topic k, platform p) of user u in the platform preference
+	 * arrays
+	 */
+	public int preferenceIndex(int u, int k, int p) {
+		return (u * nTopics + k) * nPlatforms + p;
+	}
+
+	/***
+	 * index of the first topic of (user u, platform p) in the per-platform
+	 * authority and hub arrays
+	 */
+	public int platformIndex(int u, int p) {
+		return (u * nPlatforms + p) * nTopics;
+	}
+
+	public double getTopicalInterest(int u, int k) {
+		return topicalInterests[u * nTopics + k];
+	}
+
+	public void setTopicalInterest(int u, int k, double value) {
+		beforeUpdate(u);
+		topicalInterests[u * nTopics + k] = value;
+	}
+
+	public double getAuthority(int u, int k) {
+		return authorities[u * nTopics + k];
+	}
+
+	public void setAuthority(int u, int k, double value) {
+		beforeUpdate(u);
+		authorities[u * nTopics + k] = value;
+	}
+
+	public double getHub(int u, int k) {
+		return hubs[u * nTopics + k];
+	}
+
+	public void setHub(int u, int k, double value) {
+		beforeUpdate(u);
+		hubs[u * nTopics + k] = value;
+	}
+
+	public double getPlatformPreference(int u, int k, int p) {
+		return topicalPlatformPreference[(u * nTopics + k) * nPlatforms + p];
+	}
+
+	public void setPlatformPreference(int u, int k, int p, double value) {
+		beforeUpdate(u);
+		topicalPlatformPreference[(u * nTopics + k) * nPlatforms + p] = value;
+	}
+
+	public double getRelativePlatformPreference(int u, int k, int p) {
+		return topicalRelativePlatformPreference[(u * nTopics + k) * nPlatforms + p];
+	}
+
+	public double getPlatformAuthority(int u, int p, int k) {
+		if (platformAuthorities == null) {
+			return platformAuthoritiesFloat[(u * nPlatforms + p) * nTopics + k];
+		}
+		return platformAuthorities[(u * nPlatforms + p) * nTopics + k];
+	}
+
+	public double getPlatformHub(int u, int p, int k) {
+		if (platformHubs == null) {
+			return platformHubsFloat[(u * nPlatforms + p) * nTopics + k];
+		}
+		return platformHubs[(u * nPlatforms + p) * nTopics + k];
+	}
+
+	public boolean isSinglePrecision() {
+		return precision == Configure.StoragePrecision.FLOAT;
+	}
+
+	/***
+	 * lamda-free link score of u following v on platform p, the dot product
+	 * of the per-platform hubs of u and authorities of v
+	 *
+	 * @param u
+	 * @param v
+	 * @param p
+	 * @return
+	 */
+	public double getPlatformScore(int u, int v, int p) {
+		if (platformHubs == null) {
+			return VectorKernels.dotProduct(nTopics, platformHubsFloat, (u * nPlatforms + p) * nTopics,
+					platformAuthoritiesFloat, (v * nPlatforms + p) * nTopics);
+		}
+		return MathTool.dotProduct(nTopics, platformHubs, (u * nPlatforms + p) * nTopics, platformAuthorities,
+				(v * nPlatforms + p) * nTopics);
+	}
+
+	/***
+	 * the per-platform hubs of (u, p) in 64 bits: platformHubs, or else the
+	 * buffer into which they are converted. They start at
+	 * getPlatformRowIndex(u, p) of the returned array
+	 *
+	 * @param u
+	 * @param p
+	 * @param buffer
+	 *            buffer of nTopics values
+	 * @return
+	 */
+	public double[] getPlatformHubRow(int u, int p, double[] buffer) {
+		if (platformHubs != null) {
+			return platformHubs;
+		}
+		int index = (u * nPlatforms + p) * nTopics;
+		for (int k = 0; k < nTopics; k++) {
+			buffer[k] = platformHubsFloat[index + k];
+		}
+		return buffer;
+	}
+
+	/***
+	 * the per-platform authorities of (u, p) in 64 bits, see
+	 * getPlatformHubRow()
+	 *
+	 * @param u
+	 * @param p
+	 * @param buffer
+	 * @return
+	 */
+	public double[] getPlatformAuthorityRow(int u, int p, double[] buffer) {
+		if (platformAuthorities != null) {
+			return platformAuthorities;
+		}
+		int index = (u * nPlatforms + p) * nTopics;
+		for (int k = 0; k < nTopics; k++) {
+			buffer[k] = platformAuthoritiesFloat[index + k];
+		}
+		return buffer;
+	}
+
+	/***
+	 * index of the first topic of (u, p) in the arrays returned by
+	 * getPlatformHubRow() and getPlatformAuthorityRow()
+	 */
+	public int getPlatformRowIndex(int u, int p) {
+		return (platformHubs != null) ? (u * nPlatforms + p) * nTopics : 0;
+	}
+
+	public double getOptTopicalInterest(int u, int k) {
+		return optTopicalInterests[u * nTopics + k];
+	}
+
+	public double getOptAuthority(int u, int k) {
+		return optAuthorities[u * nTopics + k];
+	}
+
+	public double getOptHub(int u, int k) {
+		return optHubs[u * nTopics + k];
+	}
+
+	public double getOptPlatformPreference(int u, int k, int p) {
+		return optTopicalPlatformPreference[(u * nTopics + k) * nPlatforms + p];
+	}
+
+	public double getOptPlatformAuthority(int u, int p, int k) {
+		if (optPlatformAuthorities == null) {
+			return optPlatformAuthoritiesFloat[(u * nPlatforms + p) * nTopics + k];
+		}
+		return optPlatformAuthorities[(u * nPlatforms + p) * nTopics + k];
+	}
+
+	public double getOptPlatformHub(int u, int p, int k) {
+		if (optPlatformHubs == null) {
+			return optPlatformHubsFloat[(u * nPlatforms + p) * nTopics + k];
+		}
+		return optPlatformHubs[(u * nPlatforms + p) * nTopics + k];
+	}
+
+	/***
+	 * copy the K values of user u from a per-topic array into x
+	 *
+	 * @param values
+	 * @param u
+	 * @param x
+	 */
+	public void getTopicVector(double[] values, int u, double[] x) {
+		System.arraycopy(values, u * nTopics, x, 0, nTopics);
+	}
+
+	/***
+	 * copy x into the K values of user u in a per-topic array
+	 *
+	 * @param values
+	 * @param u
+	 * @param x
+	 */
+	public void setTopicVector(double[] values, int u, double[] x) {
+		beforeUpdate(u);
+		System.arraycopy(x, 0, values, u * nTopics, nTopics);
+	}
+
+	/***
+	 * copy the P platform preferences of user u in topic k into x
+	 *
+	 * @param u
+	 * @param k
+	 * @param x
+	 */
+	public void getPlatformPreferences(int u, int k, double[] x) {
+		System.arraycopy(topicalPlatformPreference, (u * nTopics + k) * nPlatforms, x, 0, nPlatforms);
+	}
+
+	/***
+	 * copy x into the P platform preferences of user u in topic k. The
+	 * relative preferences are not updated, call
+	 * updateRelativePlatformPreference() when done
+	 *
+	 * @param u
+	 * @param k
+	 * @param x
+	 */
+	public void setPlatformPreferences(int u, int k, double[] x) {
+		beforeUpdate(u);
+		System.arraycopy(x, 0, topicalPlatformPreference, (u * nTopics + k) * nPlatforms, nPlatforms);
+	}
+
+	/***
+	 * softmax of the platform preferences of user u in topic k, followed by the
+	 * per-platform authorities and hubs of topic k
+	 *
+	 * @param u
+	 * @param k
+	 */
+	public void updateRelativePlatformPreference(int u, int k) {
+		beforeUpdate(u);
+		int index = (u * nTopics + k) * nPlatforms;
+		MathTool.softmax(topicalPlatformPreference, index, nPlatforms, topicalRelativePlatformPreference, index);
+		updatePlatformVectors(u, k);
+	}
+
+	/***
+	 * recompute the per-platform authorities of user u
+	 *
+	 * @param u
+	 */
+	public void updatePlatformAuthorities(int u) {
+		beforeUpdate(u);
+		for (int p = 0; p < nPlatforms; p++) {
+			int index = (u * nPlatforms + p) * nTopics;
+			for (int k = 0; k < nTopics; k++) {
+				double value = authorities[u * nTopics + k]
+						* topicalRelativePlatformPreference[(u * nTopics + k) * nPlatforms + p];
+				if (platformAuthorities != null) {
+					platformAuthorities[index + k] = value;
+				} else {
+					platformAuthoritiesFloat[index + k] = (float) value;
+				}
+			}
+		}
+	}
+
+	/***
+	 * recompute the per-platform hubs of user u
+	 *
+	 * @param u
+	 */
+	public void updatePlatformHubs(int u) {
+		beforeUpdate(u);
+		for (int p = 0; p < nPlatforms; p++) {
+			int index = (u * nPlatforms + p) * nTopics;
+			for (int k = 0; k < nTopics; k++) {
+				double value = hubs[u * nTopics + k]
+						* topicalRelativePlatformPreference[(u * nTopics + k) * nPlatforms + p];
+				if (platformHubs != null) {
+					platformHubs[index + k] = value;
+				} else {
+					platformHubsFloat[index + k] = (float) value;
+				}
+			}
+		}
+	}
+
+	/***
+	 * recompute the per-platform authorities and hubs of user u in topic k
+	 *
+	 * @param u
+	 * @param k
+	 */
+	public void updatePlatformVectors(int u, int k) {
+		beforeUpdate(u);
+		for (int p = 0; p < nPlatforms; p++) {
+			double preference = topicalRelativePlatformPreference[(u * nTopics + k) * nPlatforms + p];
+			int index = (u * nPlatforms + p) * nTopics + k;
+			if (platformAuthorities != null) {
+				platformAuthorities[index] = authorities[u * nTopics + k] * preference;
+				platformHubs[index] = hubs[u * nTopics + k] * preference;
+			} else {
+				platformAuthoritiesFloat[index] = (float) (authorities[u * nTopics + k] * preference);
+				platformHubsFloat[index] = (float) (hubs[u * nTopics + k] * preference);
+			}
+		}
+	}
+
+	/***
+	 * save the current parameters of users [startIndex, endIndex) as the
+	 * optimized ones
+	 *
+	 * @param startIndex
+	 * @param endIndex
+	 */
+	public void saveOpt(int startIndex, int endIndex) {
+		if (hasSharedOpt) {
+			Arrays.fill(isOptShared, startIndex, endIndex, false);
+		}
+		copyOpt(startIndex, endIndex);
+	}
+
+	private void copyOpt(int startIndex, int endIndex) {
+		int from = startIndex * nTopics;
+		int length = (endIndex - startIndex) * nTopics;
+		System.arraycopy(topicalInterests, from, optTopicalInterests, from, length);
+		System.arraycopy(authorities, from, optAuthorities, from, length);
+		System.arraycopy(hubs, from, optHubs, from, length);
+		System.arraycopy(topicalPlatformPreference, from * nPlatforms, optTopicalPlatformPreference,
+				from * nPlatforms, length * nPlatforms);
+		if (platformAuthorities != null) {
+			System.arraycopy(platformAuthorities, from * nPlatforms, optPlatformAuthorities, from * nPlatforms,
+					length * nPlatforms);
+			System.arraycopy(platformHubs, from * nPlatforms, optPlatformHubs, from * nPlatforms,
+					length * nPlatforms);
+		} else {
+			System.arraycopy(platformAuthoritiesFloat, from * nPlatforms, optPlatformAuthoritiesFloat,
+					from * nPlatforms, length * nPlatforms);
+			System.arraycopy(platformHubsFloat, from * nPlatforms, optPlatformHubsFloat, from * nPlatforms,
+					length * nPlatforms);
+		}
+	}
+
+	/***
+	 * save the current parameters of all the users as the optimized ones
+	 * without copying them, see beforeUpdate()
+	 */
+	public void shareOpt() {
+		Arrays.fill(isOptShared, true);
+		hasSharedOpt = true;
+	}
+
+	/***
+	 * copy the optimized values of user u into the opt* arrays if they are
+	 * still shared with the current ones. Must be called before the current
+	 * values of u change, by the thread that owns u
+	 *
+	 * @param u
+	 */
+	public void beforeUpdate(int u) {
+		if (hasSharedOpt && isOptShared[u]) {
+			copyOpt(u, u + 1);
+			isOptShared[u] = false;
+		}
+	}
+
+	/***
+	 * copy the optimized values of all the users that still share them with
+	 * the current ones, so that the opt* arrays can be read directly
+	 */
+	public void materializeOpt() {
+		if (!hasSharedOpt) {
+			return;
+		}
+		for (int u = 0; u < nUsers; u++) {
+			beforeUpdate(u);
+		}
+		hasSharedOpt = false;
+	}
+}
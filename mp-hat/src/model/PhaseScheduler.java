@@ -0,0 +1,144 @@
+package model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/***
+ * long-lived scheduler that runs the parallel phases of MultiThreadMPHAT. A
+ * single ForkJoinPool is created once per training run, and every phase is
+ * dispatched to it as a set of typed tasks. The caller blocks on the join of
+ * the phase instead of spinning on the executor state.
+ */
+public class PhaseScheduler {
+
+	/***
+	 * the work that a worker task does on its range of users
+	 */
+	public static enum Phase {
+		OPT_TOPIC_INTERESTS, // alternating step for users' topical interests
+		OPT_AUTHORITIES, // alternating step for users' authorities
+		OPT_HUBS, // alternating step for users' hubs
+		OPT_PLATFORM_PREFERENCES, // alternating step for users' platform
+									// preferences
+		TOPIC_SAMPLE, // EM-Gibbs topic sampling for users' posts
+		UPDATE_OPT, // save current parameters as the optimal ones
+		INIT_POST_TOPIC, // random topic assignment for users' posts
+		GET_LOGLIKELIHOOD, // per-range likelihood
+		MARK_LIKELIHOOD_NEIGHBORS, // mark the neighbors of changed users for
+									// likelihood recomputation
+		RANDOM_INIT_USER, // random initialization of users' parameters
+		GIBBS_INIT_USER, // initialization of users' parameters from Gibbs
+		REFRESH_EDGE_SCORES, // recompute cached scores of edges whose
+								// endpoints changed
+		ASYNC_OPT_USERS, // lock-free updates of all parameters of users
+							// taken from a shared queue
+		GIBBS_INIT_SWEEP, // Gibbs sweep of a range of users against its
+							// own copy of the topic-word counts
+		GIBBS_INIT_MERGE, // merge of the changes of the copies into the
+							// topic-word counts, over ranges of topics
+		BUILD_TOPIC_ALIAS_TABLES, // alias tables of the topic sampler, over
+									// ranges of words
+		BUILD_LOG_TOPIC_WORD_TABLE, // logarithms of the topics' word
+									// distributions, over ranges of words
+		COUNT_TOPIC_WORDS, // sparse topic-word counts of ranges of users
+		MERGE_TOPIC_WORD_COUNTS, // merge of pairs of sparse counts, one
+									// round of the reduction tree
+		NORMALIZE_TOPICS, // dense counts and word distributions, over
+							// ranges of topics
+		SGD_HUBS, // mini-batch SGD epoch over the links going out of
+					// ranges of users
+		SGD_AUTHORITIES, // mini-batch SGD epoch over the links coming in to
+							// ranges of users
+		SGD_PLATFORM_PREFERENCES, // mini-batch SGD epoch over the platform
+									// preferences of ranges of users
+	}
+
+	// option to print out the busy time of the workers after every phase
+	public static boolean phase_timing_verbose = false;
+
+	private ForkJoinPool pool;
+	private int nThreads;
+	private AtomicLongArray busyTimes;// busyTimes[i]: nanoseconds that worker i
+										// spent on chunks of the current phase
+
+	public PhaseScheduler(int _nThreads) {
+		nThreads = _nThreads;
+		pool = new ForkJoinPool(nThreads);
+		busyTimes = new AtomicLongArray(nThreads);
+	}
+
+	public int getNThreads() {
+		return nThreads;
+	}
+
+	/***
+	 * add time spent on a chunk to the worker thread that is running it
+	 *
+	 * @param nanos
+	 */
+	public void recordBusyTime(long nanos) {
+		Thread thread = Thread.currentThread();
+		int worker = 0;
+		if (thread instanceof ForkJoinWorkerThread) {
+			worker = ((ForkJoinWorkerThread) thread).getPoolIndex() % nThreads;
+		}
+		busyTimes.addAndGet(worker, nanos);
+	}
+
+	/***
+	 * run a phase over the given user ranges and wait until all the ranges are
+	 * done
+	 *
+	 * @param phase
+	 * @param startIndexes
+	 * @param endIndexes
+	 */
+	public void run(Phase phase, int[] startIndexes, int[] endIndexes) {
+		final MultiThreadMPHAT.ChildThread[] workers = new MultiThreadMPHAT.ChildThread[startIndexes.length];
+		for (int i = 0; i < startIndexes.length; i++) {
+			workers[i] = new MultiThreadMPHAT.ChildThread(i, startIndexes[i], endIndexes[i], phase);
+		}
+		for (int i = 0; i < nThreads; i++) {
+			busyTimes.set(i, 0);
+		}
+		long startTime = System.nanoTime();
+		// the chunks are forked into one queue, idle workers steal from it
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(workers);
+			}
+		});
+		if (phase_timing_verbose) {
+			printBusyTimes(phase, System.nanoTime() - startTime);
+		}
+	}
+
+	private void printBusyTimes(Phase phase, long wallTime) {
+		long max = 0;
+		long sum = 0;
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < nThreads; i++) {
+			long busy = busyTimes.get(i);
+			sum += busy;
+			if (max < busy) {
+				max = busy;
+			}
+			text.append(String.format(" %.1f", busy / 1e6));
+		}
+		double mean = (double) sum / nThreads;
+		System.out.printf("[%s] wall = %.1f ms, busy max = %.1f ms, mean = %.1f ms, imbalance = %.2f, busy(ms):%s\n",
+				phase, wallTime / 1e6, max / 1e6, mean / 1e6, mean > 0 ? max / mean : 1, text.toString());
+	}
+
+	/***
+	 * release the worker threads
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,70 @@
+package model;
+
+/***
+ * one kind of relation (followings, followers, non-followings, or
+ * non-followers) of all users in compressed sparse row form: the relations of
+ * user u are at positions [offsets[u], offsets[u + 1]) of the neighbors,
+ * platforms, and batches arrays, in the order they were added.
+ */
+public class RelationGraph {
+	public int nUsers;
+	public int nRelations;
+	public int[] offsets;// offsets[u]: position of the first relation of u
+	public int[] neighbors;// index of the other user of the relation
+	public byte[] platforms;// platform of the relation
+	public byte[] batches;// batch index of the relation, to be used for K-fold
+							// cross validation
+
+	private int[] cursors;// next free position of every user while filling
+
+	/***
+	 * allocate the graph for the given number of relations of every user. The
+	 * relations are then added with add()
+	 *
+	 * @param degrees
+	 */
+	public RelationGraph(int[] degrees) {
+		nUsers = degrees.length;
+		offsets = new int[nUsers + 1];
+		for (int u = 0; u < nUsers; u++) {
+			offsets[u + 1] = offsets[u] + degrees[u];
+		}
+		nRelations = offsets[nUsers];
+		neighbors = new int[nRelations];
+		platforms = new byte[nRelations];
+		batches = new byte[nRelations];
+		cursors = new int[nUsers];
+		System.arraycopy(offsets, 0, cursors, 0, nUsers);
+	}
+
+	/***
+	 * append a relation of user u
+	 *
+	 * @param u
+	 * @param v
+	 * @param platform
+	 * @param batch
+	 */
+	public void add(int u, int v, int platform, int batch) {
+		int e = cursors[u]++;
+		neighbors[e] = v;
+		platforms[e] = (byte) platform;
+		batches[e] = (byte) batch;
+	}
+
+	public int getDegree(int u) {
+		return offsets[u + 1] - offsets[u];
+	}
+
+	public int getNeighbor(int u, int i) {
+		return neighbors[offsets[u] + i];
+	}
+
+	public int getPlatform(int u, int i) {
+		return platforms[offsets[u] + i];
+	}
+
+	public int getBatch(int u, int i) {
+		return batches[offsets[u] + i];
+	}
+}
@@ -0,0 +1,714 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import tool.VectorKernels;
+
+/***
+ * mini-batch stochastic training of users' hubs, authorities and, optionally,
+ * platform preferences. The users are split into the ranges of the
+ * PhaseScheduler, and every family is trained in a phase of its own in which
+ * each range only updates the parameters of its users: the hubs by the links
+ * going out of its users, the authorities by the links coming in, so that the
+ * ranges never write the same parameters and the other family is fixed.
+ *
+ * Every epoch shuffles the training links of a range and visits them in
+ * mini-batches. For every link of a mini-batch, nNegatives non-links of the
+ * same user are drawn by a NegativeSampler from the non-links of the user in
+ * Dataset, the ones that the likelihood is computed on, and weighted by their
+ * importance weights, so that the non-link terms of a user are estimated
+ * without bias over the epoch. The prior of a user is split evenly over its
+ * training links. The users without training links get their non-link and
+ * prior terms in the mini-batches too, spread evenly over them. The gradient
+ * of a mini-batch is scaled by the number of mini-batches of the range, so
+ * that it estimates the gradient of the likelihood of the range, and it is
+ * applied by an AdaptiveUpdater per family of parameters.
+ *
+ * The platform preferences get, in mini-batches of users, the gradients of
+ * all the training links of the users, of nNegatives drawn non-links per link
+ * in each direction, and of the posts and the prior. As in the alternating
+ * step, the preferences of the neighbors are read while other ranges update
+ * them.
+ *
+ * A fraction of the links and non-links is held out from training, chosen by
+ * a hash of their endpoints and platform, and their average log-likelihood is
+ * reported after every epoch.
+ */
+public class StochasticTrainer {
+	public static int batchSize = 512;
+	public static int nNegatives = 5;
+	public static double negativePower = 0.75;// of the degree in the platform
+	public static int nEpochsPerIteration = 1;
+	public static double learningRate = 0.2;
+	public static Configure.LearningRateSchedule schedule = Configure.LearningRateSchedule.INVERSE_TIME;
+	public static double learningRateDecay = 0.1;
+	public static Configure.StochasticUpdateRule updateRule = Configure.StochasticUpdateRule.ADAGRAD;
+	public static double adam_Beta1 = 0.9;
+	public static double adam_Beta2 = 0.999;
+	public static double adaptive_Epsilon = 1e-8;
+	public static double heldOutFraction = 0.01;
+	public static long seed = 1;
+	public static boolean verbose = true;
+
+	private Dataset dataset;
+	private ParameterStore parameters;
+	private int nTopics;
+	private int nPlatforms;
+	private int batch;
+	private NegativeSampler nonFollowingSampler;// non-links of the sources
+	private NegativeSampler nonFollowerSampler;// non-links of the targets
+
+	private int[] followingSources;// followingSources[i]: source of the link
+									// at position i of dataset.followings
+	private int[] followerTargets;// followerTargets[i]: target of the link
+									// at position i of dataset.followers
+	private boolean[] isHeldOutFollowing;
+	private boolean[] isHeldOutFollower;
+	private int[] trainOutDegrees;// number of training links from u
+	private int[] trainInDegrees;// number of training links to u
+	private int[] heldOutLinks;// positions in dataset.followings
+	private int[] heldOutNonLinks;// positions in dataset.nonFollowings
+	private int[] heldOutNonLinkSources;
+
+	private Partition[] partitions;
+	private AdaptiveUpdater hubUpdater;
+	private AdaptiveUpdater authorityUpdater;
+	private AdaptiveUpdater preferenceUpdater;
+	private int nEpochs;// epochs so far, for the learning rate schedule
+	private double rate;// learning rate of the current epoch
+	private boolean usePrior;// of the platform preferences
+	private long epochStartTime;
+
+	// gradient of the current mini-batches, each range writes its own users'
+	private double[] hubGrad;
+	private double[] authorityGrad;
+	private double[] relativePreferenceGrad;// w.r.t. softmax(eta)
+	private double[] preferenceGrad;// w.r.t. eta
+	private boolean[] isTouched;
+
+	private int[] postCounts;// postCounts[(u * K + k) * P + p]: number of
+								// posts of u in batch with topic k in p
+
+	/***
+	 * the users of one range and the state of their training, which is only
+	 * used by the task of the range
+	 */
+	private class Partition {
+		private int start;
+		private int end;
+		private Random rand;
+		private int[] outLinks;// training positions in dataset.followings
+		private int[] inLinks;// training positions in dataset.followers
+		private int[] nonSources;// users without training links out
+		private int[] nonTargets;// users without training links in
+		private int[] users;// in a shuffled order for the preferences
+		private int[] touched;
+		private int nTouched;
+		private int nHubSteps;
+		private int nAuthoritySteps;
+		private int nPreferenceSteps;
+		// buffers of per-platform hubs and authorities stored in 32 bits
+		private double[] hubRow;
+		private double[] authorityRow;
+
+		private Partition(int _start, int _end, int index) {
+			start = _start;
+			end = _end;
+			rand = new Random(seed * 1000003 + index);
+			int nOutLinks = 0;
+			int nInLinks = 0;
+			int nNonSources = 0;
+			int nNonTargets = 0;
+			for (int u = start; u < end; u++) {
+				nOutLinks += trainOutDegrees[u];
+				nInLinks += trainInDegrees[u];
+				nNonSources += (trainOutDegrees[u] == 0) ? 1 : 0;
+				nNonTargets += (trainInDegrees[u] == 0) ? 1 : 0;
+			}
+			outLinks = new int[nOutLinks];
+			inLinks = new int[nInLinks];
+			nonSources = new int[nNonSources];
+			nonTargets = new int[nNonTargets];
+			users = new int[end - start];
+			nOutLinks = 0;
+			nInLinks = 0;
+			nNonSources = 0;
+			nNonTargets = 0;
+			for (int u = start; u < end; u++) {
+				for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+					if (!isHeldOutFollowing[i]) {
+						outLinks[nOutLinks++] = i;
+					}
+				}
+				for (int i = dataset.followers.offsets[u]; i < dataset.followers.offsets[u + 1]; i++) {
+					if (!isHeldOutFollower[i]) {
+						inLinks[nInLinks++] = i;
+					}
+				}
+				if (trainOutDegrees[u] == 0) {
+					nonSources[nNonSources++] = u;
+				}
+				if (trainInDegrees[u] == 0) {
+					nonTargets[nNonTargets++] = u;
+				}
+				users[u - start] = u;
+			}
+			touched = new int[end - start];
+			hubRow = new double[nTopics];
+			authorityRow = new double[nTopics];
+		}
+
+		private void touch(int u) {
+			if (!isTouched[u]) {
+				isTouched[u] = true;
+				touched[nTouched++] = u;
+			}
+		}
+	}
+
+	public StochasticTrainer(Dataset _dataset, ParameterStore _parameters, int _batch, int[] startIndexes,
+			int[] endIndexes) {
+		dataset = _dataset;
+		parameters = _parameters;
+		nTopics = parameters.nTopics;
+		nPlatforms = parameters.nPlatforms;
+		batch = _batch;
+
+		int nUsers = dataset.nUsers;
+		RelationGraph followings = dataset.followings;
+		RelationGraph followers = dataset.followers;
+		RelationGraph nonFollowings = dataset.nonFollowings;
+		followingSources = new int[followings.nRelations];
+		followerTargets = new int[followers.nRelations];
+		isHeldOutFollowing = new boolean[followings.nRelations];
+		isHeldOutFollower = new boolean[followers.nRelations];
+		trainOutDegrees = new int[nUsers];
+		trainInDegrees = new int[nUsers];
+		int[][] outDegrees = new int[nPlatforms][nUsers];// of all the links
+		int[][] inDegrees = new int[nPlatforms][nUsers];
+		int nHeldOutLinks = 0;
+		for (int u = 0; u < nUsers; u++) {
+			for (int i = followings.offsets[u]; i < followings.offsets[u + 1]; i++) {
+				int v = followings.neighbors[i];
+				followingSources[i] = u;
+				isHeldOutFollowing[i] = isHeldOut(u, v, followings.platforms[i]);
+				outDegrees[followings.platforms[i]][u]++;
+				inDegrees[followings.platforms[i]][v]++;
+				if (isHeldOutFollowing[i]) {
+					nHeldOutLinks++;
+				} else {
+					trainOutDegrees[u]++;
+					trainInDegrees[v]++;
+				}
+			}
+			for (int i = followers.offsets[u]; i < followers.offsets[u + 1]; i++) {
+				followerTargets[i] = u;
+				isHeldOutFollower[i] = isHeldOut(followers.neighbors[i], u, followers.platforms[i]);
+			}
+		}
+		heldOutLinks = new int[nHeldOutLinks];
+		nHeldOutLinks = 0;
+		for (int i = 0; i < followings.nRelations; i++) {
+			if (isHeldOutFollowing[i]) {
+				heldOutLinks[nHeldOutLinks++] = i;
+			}
+		}
+
+		boolean[] isHeldOutNonFollowing = getHeldOutNonLinks(nonFollowings, true);
+		boolean[] isHeldOutNonFollower = getHeldOutNonLinks(dataset.nonFollowers, false);
+		int nHeldOutNonLinks = 0;
+		for (int i = 0; i < nonFollowings.nRelations; i++) {
+			nHeldOutNonLinks += isHeldOutNonFollowing[i] ? 1 : 0;
+		}
+		heldOutNonLinks = new int[nHeldOutNonLinks];
+		heldOutNonLinkSources = new int[nHeldOutNonLinks];
+		nHeldOutNonLinks = 0;
+		for (int u = 0; u < nUsers; u++) {
+			for (int i = nonFollowings.offsets[u]; i < nonFollowings.offsets[u + 1]; i++) {
+				if (isHeldOutNonFollowing[i]) {
+					heldOutNonLinks[nHeldOutNonLinks] = i;
+					heldOutNonLinkSources[nHeldOutNonLinks++] = u;
+				}
+			}
+		}
+		nonFollowingSampler = new NegativeSampler(nonFollowings, inDegrees, negativePower, isHeldOutNonFollowing);
+		nonFollowerSampler = new NegativeSampler(dataset.nonFollowers, outDegrees, negativePower,
+				isHeldOutNonFollower);
+
+		partitions = new Partition[startIndexes.length];
+		for (int i = 0; i < partitions.length; i++) {
+			partitions[i] = new Partition(startIndexes[i], endIndexes[i], i);
+		}
+		hubUpdater = new AdaptiveUpdater(nUsers * nTopics, updateRule, adam_Beta1, adam_Beta2, adaptive_Epsilon);
+		authorityUpdater = new AdaptiveUpdater(nUsers * nTopics, updateRule, adam_Beta1, adam_Beta2,
+				adaptive_Epsilon);
+		hubGrad = new double[nUsers * nTopics];
+		authorityGrad = new double[nUsers * nTopics];
+		isTouched = new boolean[nUsers];
+		nEpochs = 0;
+
+		System.out.printf("[SGD] #training links = %d, #held-out links = %d, #held-out non-links = %d, "
+				+ "batch size = %d, #negatives = %d, #ranges = %d\n", followings.nRelations - heldOutLinks.length,
+				heldOutLinks.length, heldOutNonLinks.length, batchSize, nNegatives, partitions.length);
+	}
+
+	/***
+	 * true if the link or non-link (u, v, p) is held out from training, by a
+	 * hash of (u, v, p) so that its positions in the graphs of both users
+	 * agree
+	 */
+	private boolean isHeldOut(int u, int v, int p) {
+		long key = ((long) u * dataset.nUsers + v) * nPlatforms + p + seed * 0x9E3779B97F4A7C15L;
+		key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+		key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+		key = key ^ (key >>> 31);
+		return (key >>> 11) * 0x1.0p-53 < heldOutFraction;
+	}
+
+	private boolean[] getHeldOutNonLinks(RelationGraph nonLinks, boolean isOut) {
+		boolean[] isHeldOutNonLink = new boolean[nonLinks.nRelations];
+		for (int u = 0; u < dataset.nUsers; u++) {
+			for (int i = nonLinks.offsets[u]; i < nonLinks.offsets[u + 1]; i++) {
+				int v = nonLinks.neighbors[i];
+				isHeldOutNonLink[i] = isOut ? isHeldOut(u, v, nonLinks.platforms[i])
+						: isHeldOut(v, u, nonLinks.platforms[i]);
+			}
+		}
+		return isHeldOutNonLink;
+	}
+
+	/***
+	 * allocate the buffers of the platform preferences, which are only
+	 * trained when links are used in learning them
+	 */
+	private void initPreferenceBuffers() {
+		if (preferenceUpdater != null) {
+			return;
+		}
+		int nUsers = dataset.nUsers;
+		preferenceUpdater = new AdaptiveUpdater(nUsers * nTopics * nPlatforms, updateRule, adam_Beta1, adam_Beta2,
+				adaptive_Epsilon);
+		relativePreferenceGrad = new double[nUsers * nTopics * nPlatforms];
+		preferenceGrad = new double[nUsers * nTopics * nPlatforms];
+		postCounts = new int[nUsers * nTopics * nPlatforms];
+	}
+
+	/***
+	 * learning rate of the current epoch
+	 *
+	 * @return
+	 */
+	public double getLearningRate() {
+		switch (schedule) {
+		case INVERSE_TIME:
+			return learningRate / (1 + learningRateDecay * nEpochs);
+		case EXPONENTIAL:
+			return learningRate * Math.pow(learningRateDecay, nEpochs);
+		default:
+			return learningRate;
+		}
+	}
+
+	/***
+	 * prepare the epochs of an EM iteration
+	 *
+	 * @param learnPreference
+	 * @param _usePrior
+	 *            use the prior of the platform preferences
+	 */
+	public void startIteration(boolean learnPreference, boolean _usePrior) {
+		usePrior = _usePrior;
+		if (learnPreference) {
+			initPreferenceBuffers();
+			countPosts();
+		}
+	}
+
+	/***
+	 * start an epoch, whose phases then call trainHubs(), trainAuthorities()
+	 * and trainPreferences() on every range
+	 */
+	public void startEpoch() {
+		rate = getLearningRate();
+		epochStartTime = System.currentTimeMillis();
+	}
+
+	public void endEpoch() {
+		if (verbose) {
+			System.out.printf("[SGD] epoch = %d learning rate = %f time = %d ms held-out likelihood = %f\n",
+					nEpochs, rate, System.currentTimeMillis() - epochStartTime, getHeldOutLikelihood());
+		}
+		nEpochs++;
+	}
+
+	/***
+	 * count the posts in batch of every user by topic and platform
+	 */
+	private void countPosts() {
+		Arrays.fill(postCounts, 0);
+		for (int u = 0; u < dataset.nUsers; u++) {
+			User currUser = dataset.users[u];
+			for (int s = 0; s < currUser.nPosts; s++) {
+				if (currUser.postBatches[s] == batch) {
+					Post post = currUser.posts[s];
+					postCounts[parameters.preferenceIndex(u, post.topic, post.platform)]++;
+				}
+			}
+		}
+	}
+
+	/***
+	 * one epoch over the training links going out of the users of range
+	 * partition, updating their hubs
+	 *
+	 * @param partition
+	 */
+	public void trainHubs(int partition) {
+		Partition part = partitions[partition];
+		shuffle(part.rand, part.outLinks);
+		int nBatches = getNBatches(part.outLinks.length);
+		for (int b = 0; b < nBatches; b++) {
+			int from = (int) ((long) part.outLinks.length * b / nBatches);
+			int to = (int) ((long) part.outLinks.length * (b + 1) / nBatches);
+			for (int j = from; j < to; j++) {
+				int i = part.outLinks[j];
+				int u = followingSources[i];
+				double share = (double) nBatches / trainOutDegrees[u];
+				addEdgeGradient(part, true, u, dataset.followings.neighbors[i], dataset.followings.platforms[i], true,
+						nBatches);
+				addNonLinkGradients(part, true, u, nNegatives, share / nNegatives);
+				addPriorGradient(part, true, u, share);
+			}
+			from = (int) ((long) part.nonSources.length * b / nBatches);
+			to = (int) ((long) part.nonSources.length * (b + 1) / nBatches);
+			for (int j = from; j < to; j++) {
+				int u = part.nonSources[j];
+				addNonLinkGradients(part, true, u, nNegatives, (double) nBatches / nNegatives);
+				addPriorGradient(part, true, u, nBatches);
+			}
+			part.nHubSteps++;
+			for (int t = 0; t < part.nTouched; t++) {
+				int u = part.touched[t];
+				applyStep(parameters.hubs, hubGrad, hubUpdater, u, part.nHubSteps);
+				parameters.updatePlatformHubs(u);
+				isTouched[u] = false;
+			}
+			part.nTouched = 0;
+		}
+	}
+
+	/***
+	 * one epoch over the training links coming in to the users of range
+	 * partition, updating their authorities
+	 *
+	 * @param partition
+	 */
+	public void trainAuthorities(int partition) {
+		Partition part = partitions[partition];
+		shuffle(part.rand, part.inLinks);
+		int nBatches = getNBatches(part.inLinks.length);
+		for (int b = 0; b < nBatches; b++) {
+			int from = (int) ((long) part.inLinks.length * b / nBatches);
+			int to = (int) ((long) part.inLinks.length * (b + 1) / nBatches);
+			for (int j = from; j < to; j++) {
+				int i = part.inLinks[j];
+				int v = followerTargets[i];
+				double share = (double) nBatches / trainInDegrees[v];
+				addEdgeGradient(part, false, v, dataset.followers.neighbors[i], dataset.followers.platforms[i], true,
+						nBatches);
+				addNonLinkGradients(part, false, v, nNegatives, share / nNegatives);
+				addPriorGradient(part, false, v, share);
+			}
+			from = (int) ((long) part.nonTargets.length * b / nBatches);
+			to = (int) ((long) part.nonTargets.length * (b + 1) / nBatches);
+			for (int j = from; j < to; j++) {
+				int v = part.nonTargets[j];
+				addNonLinkGradients(part, false, v, nNegatives, (double) nBatches / nNegatives);
+				addPriorGradient(part, false, v, nBatches);
+			}
+			part.nAuthoritySteps++;
+			for (int t = 0; t < part.nTouched; t++) {
+				int v = part.touched[t];
+				applyStep(parameters.authorities, authorityGrad, authorityUpdater, v, part.nAuthoritySteps);
+				parameters.updatePlatformAuthorities(v);
+				isTouched[v] = false;
+			}
+			part.nTouched = 0;
+		}
+	}
+
+	/***
+	 * one epoch over the users of range partition, in mini-batches of users
+	 * with about batchSize training links, updating their platform
+	 * preferences
+	 *
+	 * @param partition
+	 */
+	public void trainPreferences(int partition) {
+		Partition part = partitions[partition];
+		shuffle(part.rand, part.users);
+		int nLinks = 0;
+		for (int j = 0; j < part.users.length; j++) {
+			int u = part.users[j];
+			for (int i = dataset.followings.offsets[u]; i < dataset.followings.offsets[u + 1]; i++) {
+				if (!isHeldOutFollowing[i]) {
+					addPreferenceEdgeGradient(part, true, u, dataset.followings.neighbors[i],
+							dataset.followings.platforms[i], true, 1);
+				}
+			}
+			for (int i = dataset.followers.offsets[u]; i < dataset.followers.offsets[u + 1]; i++) {
+				if (!isHeldOutFollower[i]) {
+					addPreferenceEdgeGradient(part, false, u, dataset.followers.neighbors[i],
+							dataset.followers.platforms[i], true, 1);
+				}
+			}
+			int nDraws = nNegatives * Math.max(trainOutDegrees[u], 1);
+			for (int m = 0; m < nDraws && nonFollowingSampler.getCount(u) > 0; m++) {
+				int i = nonFollowingSampler.sample(part.rand, u);
+				addPreferenceEdgeGradient(part, true, u, dataset.nonFollowings.neighbors[i],
+						dataset.nonFollowings.platforms[i], false, nonFollowingSampler.getImportanceWeight(u, i) / nDraws);
+			}
+			nDraws = nNegatives * Math.max(trainInDegrees[u], 1);
+			for (int m = 0; m < nDraws && nonFollowerSampler.getCount(u) > 0; m++) {
+				int i = nonFollowerSampler.sample(part.rand, u);
+				addPreferenceEdgeGradient(part, false, u, dataset.nonFollowers.neighbors[i],
+						dataset.nonFollowers.platforms[i], false, nonFollowerSampler.getImportanceWeight(u, i) / nDraws);
+			}
+			addPostGradient(u);
+			nLinks += trainOutDegrees[u] + trainInDegrees[u];
+			if (nLinks >= batchSize || j == part.users.length - 1) {
+				part.nPreferenceSteps++;
+				for (int t = 0; t < part.nTouched; t++) {
+					applyPreferenceStep(part.touched[t], part.nPreferenceSteps);
+					isTouched[part.touched[t]] = false;
+				}
+				part.nTouched = 0;
+				nLinks = 0;
+			}
+		}
+	}
+
+	private int getNBatches(int nLinks) {
+		return Math.max(1, (nLinks + batchSize - 1) / batchSize);
+	}
+
+	private static void shuffle(Random rand, int[] values) {
+		for (int i = values.length - 1; i > 0; i--) {
+			int j = rand.nextInt(i + 1);
+			int temp = values[i];
+			values[i] = values[j];
+			values[j] = temp;
+		}
+	}
+
+	/***
+	 * derivative of weight * the log-likelihood of the link or non-link (u, v,
+	 * p) w.r.t. its score, lamda * <platform hubs of u, platform authorities
+	 * of v>
+	 */
+	private double getEdgeCoefficient(double[] platformHubs, int hubIndex, double[] platformAuthorities,
+			int authorityIndex, boolean isLink, double weight) {
+		double lamda = MultiThreadMPHAT.lamda;
+		double score = lamda * VectorKernels.dotProduct(nTopics, platformHubs, hubIndex, platformAuthorities,
+				authorityIndex);
+		double temp = Math.exp(-score);
+		double coef = isLink ? (temp / (1 - temp) + temp / (temp + 1)) : (temp / (temp + 1) - 1);
+		return coef * weight * lamda;
+	}
+
+	/***
+	 * add the gradient of weight * the log-likelihood of the link or non-link
+	 * between u and v in p w.r.t. the hubs of u, if isOut (u is the source),
+	 * or else the authorities of u
+	 */
+	private void addEdgeGradient(Partition part, boolean isOut, int u, int v, int p, boolean isLink,
+			double weight) {
+		int source = isOut ? u : v;
+		int target = isOut ? v : u;
+		double[] platformHubs = parameters.getPlatformHubRow(source, p, part.hubRow);
+		double[] platformAuthorities = parameters.getPlatformAuthorityRow(target, p, part.authorityRow);
+		int hubIndex = parameters.getPlatformRowIndex(source, p);
+		int authorityIndex = parameters.getPlatformRowIndex(target, p);
+		double coef = getEdgeCoefficient(platformHubs, hubIndex, platformAuthorities, authorityIndex, isLink,
+				weight);
+
+		double[] relativePreferences = parameters.topicalRelativePlatformPreference;
+		double[] grad = isOut ? hubGrad : authorityGrad;
+		double[] other = isOut ? platformAuthorities : platformHubs;
+		int otherIndex = isOut ? authorityIndex : hubIndex;
+		int index = parameters.topicIndex(u, 0);
+		int preferenceIndex = parameters.preferenceIndex(u, 0, p);
+		part.touch(u);
+		for (int z = 0; z < nTopics; z++) {
+			grad[index + z] += coef * relativePreferences[preferenceIndex + z * nPlatforms] * other[otherIndex + z];
+		}
+	}
+
+	/***
+	 * add the gradients of nDraws non-links of u drawn from its
+	 * non-followings, if isOut, or else its non-followers, each weighted by
+	 * weight * its importance weight
+	 */
+	private void addNonLinkGradients(Partition part, boolean isOut, int u, int nDraws, double weight) {
+		NegativeSampler sampler = isOut ? nonFollowingSampler : nonFollowerSampler;
+		RelationGraph nonLinks = isOut ? dataset.nonFollowings : dataset.nonFollowers;
+		if (sampler.getCount(u) == 0) {
+			return;
+		}
+		for (int m = 0; m < nDraws; m++) {
+			int i = sampler.sample(part.rand, u);
+			addEdgeGradient(part, isOut, u, nonLinks.neighbors[i], nonLinks.platforms[i], false,
+					weight * sampler.getImportanceWeight(u, i));
+		}
+	}
+
+	/***
+	 * add weight * the gradient of the prior of the hubs of u, if isHub, or
+	 * else of its authorities
+	 */
+	private void addPriorGradient(Partition part, boolean isHub, int u, double weight) {
+		int index = parameters.topicIndex(u, 0);
+		double[] grad = isHub ? hubGrad : authorityGrad;
+		double[] values = isHub ? parameters.hubs : parameters.authorities;
+		double regularization = isHub ? MultiThreadMPHAT.omega : MultiThreadMPHAT.phi;
+		double shape = isHub ? MultiThreadMPHAT.delta : MultiThreadMPHAT.sigma;
+		part.touch(u);
+		for (int k = 0; k < nTopics; k++) {
+			grad[index + k] += weight * regularization
+					* (((shape - 1) / values[index + k]) - (shape / parameters.topicalInterests[index + k]));
+		}
+	}
+
+	/***
+	 * add the gradient of weight * the log-likelihood of the link or non-link
+	 * between u and v in p w.r.t. the relative platform preferences of u,
+	 * where u is the source if isOut, or else the target
+	 */
+	private void addPreferenceEdgeGradient(Partition part, boolean isOut, int u, int v, int p, boolean isLink,
+			double weight) {
+		int source = isOut ? u : v;
+		int target = isOut ? v : u;
+		double[] platformHubs = parameters.getPlatformHubRow(source, p, part.hubRow);
+		double[] platformAuthorities = parameters.getPlatformAuthorityRow(target, p, part.authorityRow);
+		int hubIndex = parameters.getPlatformRowIndex(source, p);
+		int authorityIndex = parameters.getPlatformRowIndex(target, p);
+		double coef = getEdgeCoefficient(platformHubs, hubIndex, platformAuthorities, authorityIndex, isLink,
+				weight);
+
+		double[] values = isOut ? parameters.hubs : parameters.authorities;
+		double[] other = isOut ? platformAuthorities : platformHubs;
+		int otherIndex = isOut ? authorityIndex : hubIndex;
+		int index = parameters.topicIndex(u, 0);
+		int preferenceIndex = parameters.preferenceIndex(u, 0, p);
+		part.touch(u);
+		for (int z = 0; z < nTopics; z++) {
+			relativePreferenceGrad[preferenceIndex + z * nPlatforms] += coef * values[index + z]
+					* other[otherIndex + z];
+		}
+	}
+
+	/***
+	 * add the gradient of the posts' platform likelihood and the prior of the
+	 * platform preferences of u
+	 */
+	private void addPostGradient(int u) {
+		User currUser = dataset.users[u];
+		double[] preferences = parameters.topicalPlatformPreference;
+		for (int k = 0; k < nTopics; k++) {
+			int index = parameters.preferenceIndex(u, k, 0);
+			int nTopicPosts = 0;
+			double denominator = 0;
+			for (int p = 0; p < nPlatforms; p++) {
+				if (currUser.platforms[p] != 0) {
+					nTopicPosts += postCounts[index + p];
+					denominator += Math.exp(preferences[index + p]);
+				}
+			}
+			for (int p = 0; p < nPlatforms; p++) {
+				if (currUser.platforms[p] == 0) {
+					continue;
+				}
+				double grad = postCounts[index + p] - nTopicPosts * Math.exp(preferences[index + p]) / denominator;
+				if (usePrior) {
+					grad += ((MultiThreadMPHAT.alpha - 1) / preferences[index + p]) - (1 / MultiThreadMPHAT.theta);
+				}
+				preferenceGrad[index + p] += grad;
+			}
+		}
+	}
+
+	/***
+	 * apply and clear the gradient of the topic vector of u in values, keeping
+	 * the values at least epsilon
+	 */
+	private void applyStep(double[] values, double[] grad, AdaptiveUpdater updater, int u, int nSteps) {
+		parameters.beforeUpdate(u);
+		int index = parameters.topicIndex(u, 0);
+		for (int k = 0; k < nTopics; k++) {
+			double x = values[index + k] + updater.getStep(index + k, grad[index + k], rate, nSteps);
+			values[index + k] = Math.max(x, MultiThreadMPHAT.epsilon);
+			grad[index + k] = 0;
+		}
+	}
+
+	/***
+	 * apply and clear the gradient of the platform preferences of u. The
+	 * gradient w.r.t. the relative preferences is taken through the softmax:
+	 * d/d eta_j = rel_j * (g_j - sum_q g_q * rel_q)
+	 */
+	private void applyPreferenceStep(int u, int nSteps) {
+		User currUser = dataset.users[u];
+		double[] relativePreferences = parameters.topicalRelativePlatformPreference;
+		double[] preferences = parameters.topicalPlatformPreference;
+		parameters.beforeUpdate(u);
+		for (int k = 0; k < nTopics; k++) {
+			int index = parameters.preferenceIndex(u, k, 0);
+			double mean = 0;
+			for (int q = 0; q < nPlatforms; q++) {
+				mean += relativePreferenceGrad[index + q] * relativePreferences[index + q];
+			}
+			for (int p = 0; p < nPlatforms; p++) {
+				if (currUser.platforms[p] != 0) {
+					double grad = preferenceGrad[index + p]
+							+ relativePreferences[index + p] * (relativePreferenceGrad[index + p] - mean);
+					double x = preferences[index + p] + preferenceUpdater.getStep(index + p, grad, rate, nSteps);
+					preferences[index + p] = Math.max(x, MultiThreadMPHAT.epsilon);
+				}
+				preferenceGrad[index + p] = 0;
+				relativePreferenceGrad[index + p] = 0;
+			}
+			parameters.updateRelativePlatformPreference(u, k);
+		}
+	}
+
+	/***
+	 * average log-likelihood of the held-out links and non-links
+	 *
+	 * @return
+	 */
+	public double getHeldOutLikelihood() {
+		if (heldOutLinks.length + heldOutNonLinks.length == 0) {
+			return 0;
+		}
+		RelationGraph followings = dataset.followings;
+		RelationGraph nonFollowings = dataset.nonFollowings;
+		double lamda = MultiThreadMPHAT.lamda;
+		double log2 = Math.log(2);
+		double likelihood = 0;
+		for (int j = 0; j < heldOutLinks.length; j++) {
+			int i = heldOutLinks[j];
+			double score = lamda
+					* parameters.getPlatformScore(followingSources[i], followings.neighbors[i], followings.platforms[i]);
+			double temp = Math.exp(-score);
+			likelihood += Math.log(1 - temp) - Math.log(temp + 1);
+		}
+		for (int j = 0; j < heldOutNonLinks.length; j++) {
+			int i = heldOutNonLinks[j];
+			double score = lamda * parameters.getPlatformScore(heldOutNonLinkSources[j], nonFollowings.neighbors[i],
+					nonFollowings.platforms[i]);
+			likelihood += log2 - score - Math.log(Math.exp(-score) + 1);
+		}
+		return likelihood / (heldOutLinks.length + heldOutNonLinks.length);
+	}
+}
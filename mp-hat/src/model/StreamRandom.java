@@ -0,0 +1,95 @@
+package model;
+
+import java.util.Random;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/***
+ * counter-based random streams: reset() positions the generator at the start
+ * of the stream of a key (seed, kind, iteration, user, post), and the draws
+ * are the SplitMix64 sequence from there. The draws for a post or a user then
+ * do not depend on which worker makes them or in which order, so that runs
+ * are reproducible whatever the number of threads. Each worker keeps its own
+ * instance, which is never shared, so there is no contention on the state.
+ *
+ * It is also a commons-math RandomGenerator for the distributions that are
+ * sampled from.
+ */
+public class StreamRandom extends Random implements RandomGenerator {
+	private static final long serialVersionUID = 1L;
+
+	// kinds of streams
+	public static final long INIT_POST_TOPIC = 1;// initial topics of posts
+	public static final long GIBBS_INIT = 2;// Gibbs initialization sweeps
+	public static final long TOPIC_SAMPLE = 3;// EM-Gibbs sampling
+	public static final long INIT_USER = 4;// random users' parameters
+	public static final long WARM_START_TOPIC = 5;// initial topics of warm-started users' posts
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long state;
+
+	public StreamRandom() {
+		super(0);
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/***
+	 * start the stream of the given key
+	 *
+	 * @param seed
+	 * @param kind
+	 * @param iteration
+	 * @param u
+	 * @param n
+	 * @return this generator
+	 */
+	public StreamRandom reset(long seed, long kind, long iteration, long u, long n) {
+		long key = mix64(seed + GOLDEN_GAMMA);
+		key = mix64(key ^ (kind * GOLDEN_GAMMA));
+		key = mix64(key + iteration * GOLDEN_GAMMA);
+		key = mix64(key ^ (u * GOLDEN_GAMMA));
+		state = mix64(key + n * GOLDEN_GAMMA);
+		return this;
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		state = seed;
+	}
+
+	@Override
+	public void setSeed(int seed) {
+		setSeed((long) seed);
+	}
+
+	@Override
+	public void setSeed(int[] seed) {
+		long value = 0;
+		for (int i = 0; i < seed.length; i++) {
+			value = mix64(value + seed[i]);
+		}
+		setSeed(value);
+	}
+
+	@Override
+	public long nextLong() {
+		state += GOLDEN_GAMMA;
+		return mix64(state);
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+}
@@ -0,0 +1,297 @@
+package model;
+
+import java.util.Random;
+
+/***
+ * Metropolis-Hastings sampler of the topics of posts (as in LightLDA) for
+ * large numbers of topics. A post's topic is resampled by a few steps that
+ * alternate two proposals:
+ *
+ * - the user proposal, drawn in O(1) from the user's other posts (Gibbs
+ * initialization) or from an alias table of the user's topical interests and
+ * platform preferences (EM-Gibbs)
+ *
+ * - the word proposal, drawn in O(1) from the alias table of a random word of
+ * the post over the topics. The tables are built once per sweep from the
+ * topic-word counts or distributions and may be stale during the sweep
+ *
+ * Every proposal is accepted with the Metropolis-Hastings ratio of the same
+ * conditional as the exact samplers in MultiThreadMPHAT, which costs one
+ * product over the words of the post. The cost per post is then O(steps *
+ * words) instead of O(K * words).
+ */
+public class TopicAliasSampler {
+	public static int mh_Steps = 4;// proposals per post
+
+	private int nTopics;
+	private int nWords;
+	// alias tables of the words over the topics, [w * nTopics + z]
+	private double[] wordWeights;// the unnormalized proposal of the word
+	private double[] wordProbs;
+	private int[] wordAliases;
+
+	// the source of the word tables: the topics' word distributions, or the
+	// counts with their smoothing prior
+	private TopicWordStore topicWordDist;
+
+	// ranges of words to build the tables in parallel
+	public int[] startWords;
+	public int[] endWords;
+
+	/***
+	 * per-worker alias table of the user proposal of EM-Gibbs, for one
+	 * user-platform pair at a time
+	 */
+	public static class UserTable {
+		public int u = -1;
+		public int p = -1;
+		public double[] logWeights;// log of the unnormalized proposal
+		public double[] weights;
+		public double[] probs;
+		public int[] aliases;
+		public int[] small;
+		public int[] large;
+
+		public UserTable(int nTopics) {
+			logWeights = new double[nTopics];
+			weights = new double[nTopics];
+			probs = new double[nTopics];
+			aliases = new int[nTopics];
+			small = new int[nTopics];
+			large = new int[nTopics];
+		}
+	}
+
+	public TopicAliasSampler(int _nTopics, int _nWords, int nRanges) {
+		nTopics = _nTopics;
+		nWords = _nWords;
+		wordWeights = new double[nWords * nTopics];
+		wordProbs = new double[nWords * nTopics];
+		wordAliases = new int[nWords * nTopics];
+		nRanges = Math.max(1, Math.min(nRanges, nWords));
+		startWords = new int[nRanges];
+		endWords = new int[nRanges];
+		for (int i = 0; i < nRanges; i++) {
+			startWords[i] = (int) ((long) i * nWords / nRanges);
+			endWords[i] = (int) ((long) (i + 1) * nWords / nRanges);
+		}
+	}
+
+	/***
+	 * build the next word tables from the topics' word distributions, or from
+	 * the smoothed topic-word counts
+	 *
+	 * @param _topicWordDist
+	 */
+	public void setSource(TopicWordStore _topicWordDist) {
+		topicWordDist = _topicWordDist;
+	}
+
+	/***
+	 * build the alias tables of words [startWord, endWord) from the source
+	 *
+	 * @param startWord
+	 * @param endWord
+	 * @param small
+	 *            buffer of nTopics
+	 * @param large
+	 *            buffer of nTopics
+	 */
+	public void buildWordTables(int startWord, int endWord, int[] small, int[] large) {
+		for (int w = startWord; w < endWord; w++) {
+			int offset = w * nTopics;
+			for (int z = 0; z < nTopics; z++) {
+				wordWeights[offset + z] = topicWordDist.getProb(z, w);
+			}
+			buildAliasTable(wordWeights, offset, nTopics, wordProbs, wordAliases, small, large);
+		}
+	}
+
+	/***
+	 * Vose's alias method over weights[offset, offset + n)
+	 *
+	 * @param weights
+	 * @param offset
+	 * @param n
+	 * @param probs
+	 * @param aliases
+	 * @param small
+	 * @param large
+	 */
+	public static void buildAliasTable(double[] weights, int offset, int n, double[] probs, int[] aliases,
+			int[] small, int[] large) {
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += weights[offset + i];
+		}
+		int nSmall = 0;
+		int nLarge = 0;
+		for (int i = 0; i < n; i++) {
+			probs[offset + i] = weights[offset + i] * n / sum;
+			aliases[offset + i] = i;
+			if (probs[offset + i] < 1) {
+				small[nSmall++] = i;
+			} else {
+				large[nLarge++] = i;
+			}
+		}
+		while (nSmall > 0 && nLarge > 0) {
+			int s = small[--nSmall];
+			int l = large[--nLarge];
+			aliases[offset + s] = l;
+			probs[offset + l] = probs[offset + l] + probs[offset + s] - 1;
+			if (probs[offset + l] < 1) {
+				small[nSmall++] = l;
+			} else {
+				large[nLarge++] = l;
+			}
+		}
+		// the rest are 1 up to rounding errors
+		while (nLarge > 0) {
+			probs[offset + large[--nLarge]] = 1;
+		}
+		while (nSmall > 0) {
+			probs[offset + small[--nSmall]] = 1;
+		}
+	}
+
+	private static int sampleAlias(Random r, double[] probs, int[] aliases, int offset, int n) {
+		int i = r.nextInt(n);
+		if (r.nextDouble() < probs[offset + i]) {
+			return i;
+		}
+		return aliases[offset + i];
+	}
+
+	/***
+	 * resample the topic of a post of user u in the collapsed Gibbs sampler,
+	 * whose counts already exclude the post. The target is (n_zu[z][u] +
+	 * alpha) * prod_w (n_zw[z][w] + gamma) / (sum_nzw[z] + gamma * nWords)
+	 *
+	 * @param r
+	 * @param currUser
+	 * @param n
+	 *            index of the post
+	 * @param u
+	 * @param nOtherPosts
+	 *            number of the user's other posts in the batch
+	 * @param n_zu
+	 * @param local_n_zw
+	 * @param alpha
+	 * @param batch
+	 * @return the new topic
+	 */
+	public int sampleGibbs(Random r, User currUser, int n, int u, int nOtherPosts, int[][] n_zu,
+			TopicWordStore local_n_zw, double alpha, int batch) {
+		Post currPost = currUser.posts[n];
+		int z = currPost.topic;
+		double gamma = local_n_zw.getGamma();
+		double smoothing = gamma * nWords;
+		for (int step = 0; step < mh_Steps; step++) {
+			int proposal;
+			double ratio = 1;
+			if (step % 2 == 0) {
+				// user proposal: the topic of another post of the user, or
+				// else a uniform topic, i.e., q(z) = n_zu[z][u] + alpha
+				if (r.nextDouble() * (nOtherPosts + nTopics * alpha) < nOtherPosts) {
+					int m;
+					do {
+						m = r.nextInt(currUser.nPosts);
+					} while (m == n || currUser.postBatches[m] != batch);
+					proposal = currUser.posts[m].topic;
+				} else {
+					proposal = r.nextInt(nTopics);
+				}
+				if (proposal == z) {
+					continue;
+				}
+			} else {
+				if (currPost.nWords == 0) {
+					continue;
+				}
+				// word proposal: q(z) = the stale table of a word of the post
+				int word = currPost.words[r.nextInt(currPost.nWords)];
+				proposal = sampleAlias(r, wordProbs, wordAliases, word * nTopics, nTopics);
+				if (proposal == z) {
+					continue;
+				}
+				ratio = (n_zu[proposal][u] + alpha) / (n_zu[z][u] + alpha) * wordWeights[word * nTopics + z]
+						/ wordWeights[word * nTopics + proposal];
+			}
+			for (int i = 0; i < currPost.nWords; i++) {
+				int word = currPost.words[i];
+				ratio *= (local_n_zw.get(proposal, word) + gamma) / (local_n_zw.getSum(proposal) + smoothing)
+						* (local_n_zw.getSum(z) + smoothing) / (local_n_zw.get(z, word) + gamma);
+			}
+			if (ratio >= 1 || r.nextDouble() < ratio) {
+				z = proposal;
+			}
+		}
+		return z;
+	}
+
+	/***
+	 * resample the topic of post n of user u in EM-Gibbs. The target is
+	 * exp(topicalInterest[u][z] + platformPreference[u][z][p]) * prod_w
+	 * topicWordDist.getProb(z, w)
+	 *
+	 * @param r
+	 * @param table
+	 *            the worker's user table, rebuilt if it is of another user or
+	 *            platform
+	 * @param parameters
+	 * @param currUser
+	 * @param u
+	 * @param n
+	 * @return the new topic
+	 */
+	public int sampleEMGibbs(Random r, UserTable table, ParameterStore parameters, User currUser, int u, int n) {
+		Post currPost = currUser.posts[n];
+		int p = currPost.platform;
+		if (table.u != u || table.p != p) {
+			double max = -Double.MAX_VALUE;
+			for (int k = 0; k < nTopics; k++) {
+				table.logWeights[k] = parameters.getTopicalInterest(u, k) + parameters.getPlatformPreference(u, k, p);
+				if (max < table.logWeights[k]) {
+					max = table.logWeights[k];
+				}
+			}
+			for (int k = 0; k < nTopics; k++) {
+				table.weights[k] = Math.exp(table.logWeights[k] - max);
+			}
+			buildAliasTable(table.weights, 0, nTopics, table.probs, table.aliases, table.small, table.large);
+			table.u = u;
+			table.p = p;
+		}
+		int z = currPost.topic;
+		for (int step = 0; step < mh_Steps; step++) {
+			int proposal;
+			double ratio = 1;
+			if (step % 2 == 0) {
+				proposal = sampleAlias(r, table.probs, table.aliases, 0, nTopics);
+				if (proposal == z) {
+					continue;
+				}
+			} else {
+				if (currPost.words.length == 0) {
+					continue;
+				}
+				int word = currPost.words[r.nextInt(currPost.words.length)];
+				proposal = sampleAlias(r, wordProbs, wordAliases, word * nTopics, nTopics);
+				if (proposal == z) {
+					continue;
+				}
+				ratio = Math.exp(table.logWeights[proposal] - table.logWeights[z]) * wordWeights[word * nTopics + z]
+						/ wordWeights[word * nTopics + proposal];
+			}
+			for (int i = 0; i < currPost.words.length; i++) {
+				int word = currPost.words[i];
+				ratio *= topicWordDist.getProb(proposal, word) / topicWordDist.getProb(z, word);
+			}
+			if (ratio >= 1 || r.nextDouble() < ratio) {
+				z = proposal;
+			}
+		}
+		return z;
+	}
+}
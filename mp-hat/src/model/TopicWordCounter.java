@@ -0,0 +1,200 @@
+package model;
+
+import java.util.Arrays;
+
+/***
+ * parallel counting of the words of every topic over the posts of a batch.
+ * Every range of users counts its posts into a sparse list of (topic, word)
+ * pairs, sorted by key z * nWords + w, so that a range costs memory in the
+ * number of its distinct pairs rather than nTopics * nWords. The lists are
+ * merged pairwise in a tree, log2(nRanges) rounds of independent merges, and
+ * the merged list is scattered into the counts over ranges of topics.
+ * The counts are integers, so the result is the same as counting on a single
+ * thread whatever the ranges.
+ */
+public class TopicWordCounter {
+	private int nTopics;
+	private int nWords;
+	private int nRanges;
+	// sparse counts of every range, keys sorted in increasing order
+	private long[][] keys;
+	private int[][] counts;
+	private int[] sizes;
+
+	// ranges of topics to scatter the counts in parallel
+	public int[] startTopics;
+	public int[] endTopics;
+
+	/***
+	 * @param _nTopics
+	 * @param _nWords
+	 * @param _nRanges
+	 *            number of ranges of users that are counted
+	 * @param nTopicRanges
+	 *            number of ranges of topics to scatter the counts
+	 */
+	public TopicWordCounter(int _nTopics, int _nWords, int _nRanges, int nTopicRanges) {
+		nTopics = _nTopics;
+		nWords = _nWords;
+		nRanges = _nRanges;
+		keys = new long[nRanges][0];
+		counts = new int[nRanges][0];
+		sizes = new int[nRanges];
+		nTopicRanges = Math.max(1, Math.min(nTopicRanges, nTopics));
+		startTopics = new int[nTopicRanges];
+		endTopics = new int[nTopicRanges];
+		for (int i = 0; i < nTopicRanges; i++) {
+			startTopics[i] = i * nTopics / nTopicRanges;
+			endTopics[i] = (i + 1) * nTopics / nTopicRanges;
+		}
+	}
+
+	public int getNRanges() {
+		return nRanges;
+	}
+
+	/***
+	 * count the words of the posts in the batch of users [startUser, endUser)
+	 * into the list of range t
+	 *
+	 * @param t
+	 * @param dataset
+	 * @param batch
+	 * @param startUser
+	 * @param endUser
+	 */
+	public void count(int t, Dataset dataset, int batch, int startUser, int endUser) {
+		int nTokens = 0;
+		for (int u = startUser; u < endUser; u++) {
+			User currUser = dataset.users[u];
+			for (int n = 0; n < currUser.posts.length; n++) {
+				if (currUser.postBatches[n] == batch) {
+					nTokens += currUser.posts[n].nWords;
+				}
+			}
+		}
+		if (keys[t].length < nTokens) {
+			keys[t] = new long[nTokens];
+			counts[t] = new int[nTokens];
+		}
+		long[] rangeKeys = keys[t];
+		int[] rangeCounts = counts[t];
+		int m = 0;
+		for (int u = startUser; u < endUser; u++) {
+			User currUser = dataset.users[u];
+			for (int n = 0; n < currUser.posts.length; n++) {
+				if (currUser.postBatches[n] != batch) {
+					continue;
+				}
+				Post currPost = currUser.posts[n];
+				long offset = (long) currPost.topic * nWords;
+				for (int i = 0; i < currPost.nWords; i++) {
+					rangeKeys[m++] = offset + currPost.words[i];
+				}
+			}
+		}
+		Arrays.sort(rangeKeys, 0, m);
+		// run-length encode the sorted keys in place
+		int size = 0;
+		for (int i = 0; i < m; i++) {
+			if (size > 0 && rangeKeys[size - 1] == rangeKeys[i]) {
+				rangeCounts[size - 1]++;
+			} else {
+				rangeKeys[size] = rangeKeys[i];
+				rangeCounts[size] = 1;
+				size++;
+			}
+		}
+		sizes[t] = size;
+	}
+
+	/***
+	 * merge the list of range b into the list of range a, and empty the list
+	 * of range b
+	 *
+	 * @param a
+	 * @param b
+	 */
+	public void merge(int a, int b) {
+		long[] keysA = keys[a];
+		long[] keysB = keys[b];
+		int[] countsA = counts[a];
+		int[] countsB = counts[b];
+		int sizeA = sizes[a];
+		int sizeB = sizes[b];
+		long[] mergedKeys = new long[sizeA + sizeB];
+		int[] mergedCounts = new int[sizeA + sizeB];
+		int i = 0;
+		int j = 0;
+		int size = 0;
+		while (i < sizeA && j < sizeB) {
+			if (keysA[i] < keysB[j]) {
+				mergedKeys[size] = keysA[i];
+				mergedCounts[size++] = countsA[i++];
+			} else if (keysA[i] > keysB[j]) {
+				mergedKeys[size] = keysB[j];
+				mergedCounts[size++] = countsB[j++];
+			} else {
+				mergedKeys[size] = keysA[i];
+				mergedCounts[size++] = countsA[i++] + countsB[j++];
+			}
+		}
+		while (i < sizeA) {
+			mergedKeys[size] = keysA[i];
+			mergedCounts[size++] = countsA[i++];
+		}
+		while (j < sizeB) {
+			mergedKeys[size] = keysB[j];
+			mergedCounts[size++] = countsB[j++];
+		}
+		keys[a] = mergedKeys;
+		counts[a] = mergedCounts;
+		sizes[a] = size;
+		sizes[b] = 0;
+	}
+
+	/***
+	 * starting ranges of the pairs to merge in the round of the tree whose
+	 * pairs are stride ranges apart, or null if the tree is complete
+	 *
+	 * @param stride
+	 * @return
+	 */
+	public int[] getMergeFirsts(int stride) {
+		if (stride >= nRanges) {
+			return null;
+		}
+		int[] firsts = new int[(nRanges - stride + 2 * stride - 1) / (2 * stride)];
+		for (int i = 0; i < firsts.length; i++) {
+			firsts[i] = i * 2 * stride;
+		}
+		return firsts;
+	}
+
+	/***
+	 * write the counts of topics [startTopic, endTopic) from the merged list,
+	 * i.e., the list of range 0 once the tree is complete
+	 *
+	 * @param startTopic
+	 * @param endTopic
+	 * @param n_zw
+	 */
+	public void scatter(int startTopic, int endTopic, TopicWordStore n_zw) {
+		int from = lowerBound(keys[0], sizes[0], (long) startTopic * nWords);
+		n_zw.setFromSorted(startTopic, endTopic, keys[0], counts[0], from, sizes[0]);
+	}
+
+	private static int lowerBound(long[] values, int size, long value) {
+		int lo = 0;
+		int hi = size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (values[mid] < value) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+}
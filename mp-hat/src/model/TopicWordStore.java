@@ -0,0 +1,506 @@
+package model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/***
+ * hybrid storage of topic-word counts, for vocabularies whose dense K x V
+ * matrices do not fit in memory. The head words, frequent enough to be in
+ * most topics, keep their counts of all the topics in a dense array
+ * [slot(w) * nTopics + z]; the counts of the other words are kept in one
+ * open-addressing hash table per topic. Memory then grows with the number of
+ * distinct (topic, word) pairs rather than with nTopics * nWords.
+ *
+ * The word distributions of the topics are not stored: the probability of
+ * word w in topic z is (n_zw + gamma) / (sum_nzw + gamma * nWords), computed
+ * from the counts when asked for.
+ *
+ * Different topics can be written by different threads at the same time.
+ */
+public class TopicWordStore {
+	// a word is a head word if it occurs at least head_MinFrequency * nTopics
+	// times in the posts
+	public static double head_MinFrequency = 0.5;
+
+	private static final int EMPTY = -1;
+
+	private int nTopics;
+	private int nWords;
+	private double gamma;
+	private int[] headSlots;// slot of word w in headCounts, -1 if in the tail
+	private int nHeadWords;
+	private int[] headCounts;// [slot * nTopics + z]
+	private int[][] tailWords;// per topic hash table of words, EMPTY if free
+	private int[][] tailCounts;
+	private int[] tailSizes;// used entries, including zero counts
+	private int[] sums;// sum_nzw[z]
+
+	/***
+	 * slots of the head words of the dataset in the dense part, -1 for the
+	 * other words
+	 *
+	 * @param dataset
+	 * @param nTopics
+	 * @return
+	 */
+	public static int[] getHeadSlots(Dataset dataset, int nTopics) {
+		int[] frequencies = new int[dataset.vocabulary.length];
+		for (int u = 0; u < dataset.nUsers; u++) {
+			User currUser = dataset.users[u];
+			for (int n = 0; n < currUser.nPosts; n++) {
+				int[] words = currUser.posts[n].words;
+				for (int i = 0; i < words.length; i++) {
+					frequencies[words[i]]++;
+				}
+			}
+		}
+		int[] slots = new int[frequencies.length];
+		int nSlots = 0;
+		for (int w = 0; w < frequencies.length; w++) {
+			slots[w] = (frequencies[w] >= head_MinFrequency * nTopics) ? nSlots++ : -1;
+		}
+		return slots;
+	}
+
+	/***
+	 * @param _nTopics
+	 * @param _nWords
+	 * @param _headSlots
+	 *            see getHeadSlots(), shared by the stores of a model
+	 * @param _gamma
+	 *            prior of the word distributions
+	 */
+	public TopicWordStore(int _nTopics, int _nWords, int[] _headSlots, double _gamma) {
+		nTopics = _nTopics;
+		nWords = _nWords;
+		headSlots = _headSlots;
+		gamma = _gamma;
+		nHeadWords = 0;
+		for (int w = 0; w < nWords; w++) {
+			if (headSlots[w] >= 0) {
+				nHeadWords++;
+			}
+		}
+		headCounts = new int[nHeadWords * nTopics];
+		tailWords = new int[nTopics][];
+		tailCounts = new int[nTopics][];
+		tailSizes = new int[nTopics];
+		sums = new int[nTopics];
+		for (int z = 0; z < nTopics; z++) {
+			allocateTail(z, 16);
+		}
+	}
+
+	private void allocateTail(int z, int capacity) {
+		tailWords[z] = new int[capacity];
+		Arrays.fill(tailWords[z], EMPTY);
+		tailCounts[z] = new int[capacity];
+		tailSizes[z] = 0;
+	}
+
+	public int getNTopics() {
+		return nTopics;
+	}
+
+	public int getNWords() {
+		return nWords;
+	}
+
+	public double getGamma() {
+		return gamma;
+	}
+
+	public int getNHeadWords() {
+		return nHeadWords;
+	}
+
+	private static int hash(int w, int mask) {
+		int h = w * 0x9e3779b9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/***
+	 * position of word w in the hash table of topic z, or of the free entry
+	 * where it would be inserted
+	 */
+	private int findTail(int z, int w) {
+		int[] words = tailWords[z];
+		int mask = words.length - 1;
+		int i = hash(w, mask);
+		while (words[i] != EMPTY && words[i] != w) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/***
+	 * count of word w in topic z
+	 *
+	 * @param z
+	 * @param w
+	 * @return
+	 */
+	public int get(int z, int w) {
+		int slot = headSlots[w];
+		if (slot >= 0) {
+			return headCounts[slot * nTopics + z];
+		}
+		int i = findTail(z, w);
+		return (tailWords[z][i] == EMPTY) ? 0 : tailCounts[z][i];
+	}
+
+	/***
+	 * total count of topic z
+	 *
+	 * @param z
+	 * @return
+	 */
+	public int getSum(int z) {
+		return sums[z];
+	}
+
+	/***
+	 * smoothed probability of word w in topic z
+	 *
+	 * @param z
+	 * @param w
+	 * @return
+	 */
+	public double getProb(int z, int w) {
+		return (get(z, w) + gamma) / (sums[z] + gamma * nWords);
+	}
+
+	/***
+	 * write the word distribution of topic z
+	 *
+	 * @param z
+	 * @param probs
+	 *            buffer of nWords
+	 */
+	public void getProbs(int z, double[] probs) {
+		double denominator = sums[z] + gamma * nWords;
+		for (int w = 0; w < nWords; w++) {
+			int slot = headSlots[w];
+			probs[w] = ((slot >= 0 ? headCounts[slot * nTopics + z] : 0) + gamma) / denominator;
+		}
+		int[] words = tailWords[z];
+		for (int i = 0; i < words.length; i++) {
+			if (words[i] != EMPTY) {
+				probs[words[i]] = (tailCounts[z][i] + gamma) / denominator;
+			}
+		}
+	}
+
+	/***
+	 * add delta to the count of word w in topic z, but not to the total count
+	 * of the topic
+	 */
+	private void addCount(int z, int w, int delta) {
+		int slot = headSlots[w];
+		if (slot >= 0) {
+			headCounts[slot * nTopics + z] += delta;
+			return;
+		}
+		int i = findTail(z, w);
+		if (tailWords[z][i] == EMPTY) {
+			if (delta == 0) {
+				return;
+			}
+			if (2 * (tailSizes[z] + 1) > tailWords[z].length) {
+				rehashTail(z, tailSizes[z] + 1);
+				i = findTail(z, w);
+			}
+			tailWords[z][i] = w;
+			tailSizes[z]++;
+		}
+		tailCounts[z][i] += delta;
+	}
+
+	/***
+	 * rebuild the hash table of topic z for at least nEntries words, dropping
+	 * the words whose counts went back to zero
+	 */
+	private void rehashTail(int z, int nEntries) {
+		int[] words = tailWords[z];
+		int[] counts = tailCounts[z];
+		int nNonZeros = 0;
+		for (int i = 0; i < words.length; i++) {
+			if (words[i] != EMPTY && counts[i] != 0) {
+				nNonZeros++;
+			}
+		}
+		int capacity = 16;
+		while (capacity < 2 * Math.max(nEntries, nNonZeros + 1)) {
+			capacity *= 2;
+		}
+		allocateTail(z, capacity);
+		for (int i = 0; i < words.length; i++) {
+			if (words[i] != EMPTY && counts[i] != 0) {
+				int j = findTail(z, words[i]);
+				tailWords[z][j] = words[i];
+				tailCounts[z][j] = counts[i];
+				tailSizes[z]++;
+			}
+		}
+	}
+
+	/***
+	 * add delta to the count of word w in topic z and to the total count of
+	 * topic z
+	 *
+	 * @param z
+	 * @param w
+	 * @param delta
+	 */
+	public void add(int z, int w, int delta) {
+		addCount(z, w, delta);
+		sums[z] += delta;
+	}
+
+	/***
+	 * set all the counts to zero
+	 */
+	public void clear() {
+		clear(0, nTopics);
+	}
+
+	/***
+	 * set the counts of topics [startTopic, endTopic) to zero
+	 *
+	 * @param startTopic
+	 * @param endTopic
+	 */
+	public void clear(int startTopic, int endTopic) {
+		for (int z = startTopic; z < endTopic; z++) {
+			for (int slot = 0; slot < nHeadWords; slot++) {
+				headCounts[slot * nTopics + z] = 0;
+			}
+			if (tailSizes[z] > 0) {
+				allocateTail(z, 16);
+			}
+			sums[z] = 0;
+		}
+	}
+
+	/***
+	 * copy the counts of topics [startTopic, endTopic) of another store with
+	 * the same head words
+	 *
+	 * @param other
+	 * @param startTopic
+	 * @param endTopic
+	 */
+	public void copyFrom(TopicWordStore other, int startTopic, int endTopic) {
+		if (startTopic == 0 && endTopic == nTopics) {
+			System.arraycopy(other.headCounts, 0, headCounts, 0, headCounts.length);
+		} else {
+			for (int slot = 0; slot < nHeadWords; slot++) {
+				for (int z = startTopic; z < endTopic; z++) {
+					headCounts[slot * nTopics + z] = other.headCounts[slot * nTopics + z];
+				}
+			}
+		}
+		for (int z = startTopic; z < endTopic; z++) {
+			if (tailWords[z].length == other.tailWords[z].length) {
+				System.arraycopy(other.tailWords[z], 0, tailWords[z], 0, tailWords[z].length);
+				System.arraycopy(other.tailCounts[z], 0, tailCounts[z], 0, tailCounts[z].length);
+			} else {
+				tailWords[z] = other.tailWords[z].clone();
+				tailCounts[z] = other.tailCounts[z].clone();
+			}
+			tailSizes[z] = other.tailSizes[z];
+			sums[z] = other.sums[z];
+		}
+	}
+
+	public void copyFrom(TopicWordStore other) {
+		copyFrom(other, 0, nTopics);
+	}
+
+	/***
+	 * add the counts of another store with the same head words
+	 *
+	 * @param other
+	 */
+	public void addAll(TopicWordStore other) {
+		for (int i = 0; i < headCounts.length; i++) {
+			headCounts[i] += other.headCounts[i];
+		}
+		for (int z = 0; z < nTopics; z++) {
+			int[] words = other.tailWords[z];
+			for (int i = 0; i < words.length; i++) {
+				if (words[i] != EMPTY) {
+					addCount(z, words[i], other.tailCounts[z][i]);
+				}
+			}
+			sums[z] += other.sums[z];
+		}
+	}
+
+	/***
+	 * add the changes that the copies made to their counts of topics
+	 * [startTopic, endTopic), where every copy started from the counts of
+	 * this store
+	 *
+	 * @param copies
+	 * @param startTopic
+	 * @param endTopic
+	 */
+	public void mergeChanges(TopicWordStore[] copies, int startTopic, int endTopic) {
+		for (int z = startTopic; z < endTopic; z++) {
+			for (int slot = 0; slot < nHeadWords; slot++) {
+				int index = slot * nTopics + z;
+				int count = headCounts[index];
+				int merged = count;
+				for (int t = 0; t < copies.length; t++) {
+					merged += copies[t].headCounts[index] - count;
+				}
+				headCounts[index] = merged;
+			}
+			// the changes of the tail are taken against a snapshot of the
+			// topic, since this store is written while they are added
+			int[] words = tailWords[z].clone();
+			int[] counts = tailCounts[z].clone();
+			int mask = words.length - 1;
+			for (int t = 0; t < copies.length; t++) {
+				int[] copyWords = copies[t].tailWords[z];
+				int[] copyCounts = copies[t].tailCounts[z];
+				for (int i = 0; i < copyWords.length; i++) {
+					int w = copyWords[i];
+					if (w == EMPTY) {
+						continue;
+					}
+					int j = hash(w, mask);
+					while (words[j] != EMPTY && words[j] != w) {
+						j = (j + 1) & mask;
+					}
+					int count = (words[j] == EMPTY) ? 0 : counts[j];
+					addCount(z, w, copyCounts[i] - count);
+				}
+				// words that the copy dropped when it rehashed went to zero
+				for (int i = 0; i < words.length; i++) {
+					if (words[i] != EMPTY && counts[i] != 0
+							&& copyWords[copies[t].findTail(z, words[i])] == EMPTY) {
+						addCount(z, words[i], -counts[i]);
+					}
+				}
+			}
+			int sum = sums[z];
+			int merged = sum;
+			for (int t = 0; t < copies.length; t++) {
+				merged += copies[t].sums[z] - sum;
+			}
+			sums[z] = merged;
+		}
+	}
+
+	/***
+	 * set the counts of topics [startTopic, endTopic) from a list of keys z *
+	 * nWords + w sorted in increasing order and their counts
+	 *
+	 * @param startTopic
+	 * @param endTopic
+	 * @param keys
+	 * @param counts
+	 * @param from
+	 *            first entry of the list that may be of topic startTopic
+	 * @param size
+	 *            size of the list
+	 */
+	public void setFromSorted(int startTopic, int endTopic, long[] keys, int[] counts, int from, int size) {
+		clear(startTopic, endTopic);
+		int i = from;
+		for (int z = startTopic; z < endTopic; z++) {
+			long offset = (long) z * nWords;
+			long end = offset + nWords;
+			int nTail = 0;
+			int first = i;
+			for (; i < size && keys[i] < end; i++) {
+				if (headSlots[(int) (keys[i] - offset)] < 0) {
+					nTail++;
+				}
+			}
+			if (nTail > 0) {
+				rehashTail(z, nTail);
+			}
+			int sum = 0;
+			for (int j = first; j < i; j++) {
+				addCount(z, (int) (keys[j] - offset), counts[j]);
+				sum += counts[j];
+			}
+			sums[z] = sum;
+		}
+	}
+
+	/***
+	 * number of bytes of the counts, for reporting
+	 *
+	 * @return
+	 */
+	public long getMemoryBytes() {
+		long bytes = 4L * (headCounts.length + sums.length);
+		for (int z = 0; z < nTopics; z++) {
+			bytes += 8L * tailWords[z].length;
+		}
+		return bytes;
+	}
+
+	/***
+	 * write the nonzero counts of the tail and all the counts of the head
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(nTopics);
+		out.writeInt(nWords);
+		out.writeInt(headCounts.length);
+		for (int i = 0; i < headCounts.length; i++) {
+			out.writeInt(headCounts[i]);
+		}
+		for (int z = 0; z < nTopics; z++) {
+			out.writeInt(sums[z]);
+			int nNonZeros = 0;
+			for (int i = 0; i < tailWords[z].length; i++) {
+				if (tailWords[z][i] != EMPTY && tailCounts[z][i] != 0) {
+					nNonZeros++;
+				}
+			}
+			out.writeInt(nNonZeros);
+			for (int i = 0; i < tailWords[z].length; i++) {
+				if (tailWords[z][i] != EMPTY && tailCounts[z][i] != 0) {
+					out.writeInt(tailWords[z][i]);
+					out.writeInt(tailCounts[z][i]);
+				}
+			}
+		}
+	}
+
+	/***
+	 * read the counts written by write() into this store, which must have
+	 * the same topics, words and head words, replacing its counts
+	 *
+	 * @param in
+	 * @throws IOException
+	 */
+	public void read(DataInputStream in) throws IOException {
+		if (in.readInt() != nTopics || in.readInt() != nWords || in.readInt() != headCounts.length) {
+			throw new IOException("topic-word counts of another model");
+		}
+		clear();
+		for (int i = 0; i < headCounts.length; i++) {
+			headCounts[i] = in.readInt();
+		}
+		for (int z = 0; z < nTopics; z++) {
+			sums[z] = in.readInt();
+			int nNonZeros = in.readInt();
+			rehashTail(z, nNonZeros);
+			for (int i = 0; i < nNonZeros; i++) {
+				int w = in.readInt();
+				addCount(z, w, in.readInt());
+			}
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package model;
+
+/***
+ * splits the users into contiguous chunks of (approximately) equal cost for the
+ * parallel phases. The cost of optimizing a user grows with the number of
+ * posts and with the number of (non-)followers and (non-)followings, each of
+ * which is a K-dimensional dot product, so equal-count ranges leave one thread
+ * with all the popular accounts.
+ */
+public class UserPartitioner {
+	public int nChunks;
+	public int[] startIndexes;
+	public int[] endIndexes;
+	public double[] chunkCosts;
+
+	/***
+	 * estimated cost of one alternating step for user u
+	 *
+	 * @param dataset
+	 * @param u
+	 * @param nTopics
+	 * @return
+	 */
+	public static double getUserCost(Dataset dataset, int u, int nTopics) {
+		int degree = dataset.followers.getDegree(u) + dataset.followings.getDegree(u)
+				+ dataset.nonFollowers.getDegree(u) + dataset.nonFollowings.getDegree(u);
+		return nTopics + dataset.users[u].nPosts + (double) degree * nTopics;
+	}
+
+	/***
+	 * equal-count contiguous ranges
+	 *
+	 * @param nUsers
+	 * @param _nChunks
+	 */
+	public void partitionByCount(int nUsers, int _nChunks) {
+		allocate(Math.max(1, Math.min(_nChunks, nUsers)));
+		int chunkLength = Math.floorDiv(nUsers, nChunks);
+		for (int i = 0; i < nChunks; i++) {
+			startIndexes[i] = i * chunkLength;
+			endIndexes[i] = startIndexes[i] + chunkLength;
+			chunkCosts[i] = chunkLength;
+		}
+		endIndexes[nChunks - 1] = nUsers;
+	}
+
+	/***
+	 * contiguous ranges with (approximately) equal estimated cost. A user
+	 * whose cost alone exceeds the target gets a chunk of its own.
+	 *
+	 * @param dataset
+	 * @param nTopics
+	 * @param _nChunks
+	 */
+	public void partitionByCost(Dataset dataset, int nTopics, int _nChunks) {
+		int nUsers = dataset.nUsers;
+		double[] costs = new double[nUsers];
+		double totalCost = 0;
+		for (int u = 0; u < nUsers; u++) {
+			costs[u] = getUserCost(dataset, u, nTopics);
+			totalCost += costs[u];
+		}
+		int maxChunks = Math.max(1, Math.min(_nChunks, nUsers));
+		int[] starts = new int[maxChunks];
+		int[] ends = new int[maxChunks];
+		double[] chunkCost = new double[maxChunks];
+
+		int chunk = 0;
+		int start = 0;
+		double accumulated = 0;
+		double remainingCost = totalCost;
+		for (int u = 0; u < nUsers; u++) {
+			accumulated += costs[u];
+			int remainingChunks = maxChunks - chunk;
+			double target = remainingCost / remainingChunks;
+			// every remaining chunk needs at least one user
+			boolean mustCut = nUsers - u - 1 <= remainingChunks - 1;
+			if (chunk < maxChunks - 1 && (accumulated >= target || mustCut)) {
+				starts[chunk] = start;
+				ends[chunk] = u + 1;
+				chunkCost[chunk] = accumulated;
+				remainingCost -= accumulated;
+				chunk++;
+				start = u + 1;
+				accumulated = 0;
+			}
+		}
+		if (start < nUsers) {
+			starts[chunk] = start;
+			ends[chunk] = nUsers;
+			chunkCost[chunk] = accumulated;
+			chunk++;
+		}
+
+		allocate(chunk);
+		System.arraycopy(starts, 0, startIndexes, 0, chunk);
+		System.arraycopy(ends, 0, endIndexes, 0, chunk);
+		System.arraycopy(chunkCost, 0, chunkCosts, 0, chunk);
+	}
+
+	private void allocate(int _nChunks) {
+		nChunks = _nChunks;
+		startIndexes = new int[nChunks];
+		endIndexes = new int[nChunks];
+		chunkCosts = new double[nChunks];
+	}
+}
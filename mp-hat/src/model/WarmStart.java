@@ -0,0 +1,317 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+
+import tool.HungaryMethod;
+
+/***
+ * the users' parameters of a previous model, to warm-start training on a
+ * dataset with (mostly) the same users: topical interests, authorities, hubs
+ * and topical platform preferences, mapped to the current users by their ids
+ * (dataset.userId2Index). They are read from the output directory of the
+ * previous model, outputPath/K/omega_*_phi_* with its l_user*Distributions.csv
+ * files, or from one of its checkpoints.
+ *
+ * The posts of the previous users start from topics drawn from their previous
+ * interests and platform preferences (initPostTopics), so that the Gibbs
+ * initialization starts close to the previous topics, while the posts of new
+ * users start from random topics. After the Gibbs initialization, the previous
+ * topics are matched to the new ones (getTopicMatch) and the previous
+ * parameters are written in the new order (apply).
+ */
+public class WarmStart {
+	private int nTopics;
+	private int nPlatforms;
+	private int nWarmUsers;
+	// previous parameters of current user u, null for new users: interests,
+	// authorities and hubs [k], platform preferences [k * nPlatforms + p]
+	private double[][] interests;
+	private double[][] authorities;
+	private double[][] hubs;
+	private double[][] platformPreferences;
+
+	private WarmStart(Dataset dataset, int _nTopics, int _nPlatforms) {
+		nTopics = _nTopics;
+		nPlatforms = _nPlatforms;
+		interests = new double[dataset.nUsers][];
+		authorities = new double[dataset.nUsers][];
+		hubs = new double[dataset.nUsers][];
+		platformPreferences = new double[dataset.nUsers][];
+	}
+
+	/***
+	 * read a previous model
+	 *
+	 * @param path
+	 *            output directory of the model, or a checkpoint file
+	 * @param dataset
+	 * @param nTopics
+	 * @param nPlatforms
+	 * @return
+	 */
+	public static WarmStart load(String path, Dataset dataset, int nTopics, int nPlatforms) {
+		WarmStart warmStart = new WarmStart(dataset, nTopics, nPlatforms);
+		if (new File(path).isDirectory()) {
+			warmStart.readUserRows(path + "/l_userTopicalInterestDistributions.csv", dataset, warmStart.interests);
+			warmStart.readUserRows(path + "/l_userAuthorityDistributions.csv", dataset, warmStart.authorities);
+			warmStart.readUserRows(path + "/l_userHubDistributions.csv", dataset, warmStart.hubs);
+			warmStart.readPlatformPreferences(path + "/l_userTopicalPlatformPreferenceDistributions.csv", dataset);
+		} else {
+			warmStart.readCheckpoint(path, dataset);
+		}
+		for (int u = 0; u < dataset.nUsers; u++) {
+			if (warmStart.interests[u] != null && warmStart.authorities[u] != null && warmStart.hubs[u] != null
+					&& warmStart.platformPreferences[u] != null) {
+				warmStart.nWarmUsers++;
+			} else {
+				warmStart.interests[u] = null;
+				warmStart.authorities[u] = null;
+				warmStart.hubs[u] = null;
+				warmStart.platformPreferences[u] = null;
+			}
+		}
+		return warmStart;
+	}
+
+	/***
+	 * read the lines "userId,value_0,...,value_K-1" of the current users
+	 */
+	private void readUserRows(String filename, Dataset dataset, double[][] rows) {
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(filename));
+			String line = null;
+			while ((line = br.readLine()) != null) {
+				String[] tokens = line.split(",");
+				if (tokens.length != nTopics + 1) {
+					br.close();
+					System.out.printf("[warm start] %s is not of a model of %d topics\n", filename, nTopics);
+					System.exit(-1);
+				}
+				Integer u = dataset.userId2Index.get(tokens[0]);
+				if (u == null) {
+					continue;
+				}
+				rows[u] = new double[nTopics];
+				for (int k = 0; k < nTopics; k++) {
+					rows[u][k] = Double.parseDouble(tokens[k + 1]);
+				}
+			}
+			br.close();
+		} catch (Exception e) {
+			System.out.println("Error in reading the previous model from " + filename);
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+	/***
+	 * read the lines "userId,k,value_0,...,value_P-1" of the current users
+	 */
+	private void readPlatformPreferences(String filename, Dataset dataset) {
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(filename));
+			String line = null;
+			while ((line = br.readLine()) != null) {
+				String[] tokens = line.split(",");
+				int k = Integer.parseInt(tokens[1]);
+				if (tokens.length != nPlatforms + 2 || k >= nTopics) {
+					br.close();
+					System.out.printf("[warm start] %s is not of a model of %d topics and %d platforms\n", filename,
+							nTopics, nPlatforms);
+					System.exit(-1);
+				}
+				Integer u = dataset.userId2Index.get(tokens[0]);
+				if (u == null) {
+					continue;
+				}
+				if (platformPreferences[u] == null) {
+					platformPreferences[u] = new double[nTopics * nPlatforms];
+				}
+				for (int p = 0; p < nPlatforms; p++) {
+					platformPreferences[u][k * nPlatforms + p] = Double.parseDouble(tokens[p + 2]);
+				}
+			}
+			br.close();
+		} catch (Exception e) {
+			System.out.println("Error in reading the previous model from " + filename);
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+	/***
+	 * take the kept (opt) parameters of a checkpoint
+	 */
+	private void readCheckpoint(String path, Dataset dataset) {
+		CheckpointManager.Snapshot snapshot = CheckpointManager.load(path);
+		if (snapshot.nTopics != nTopics || snapshot.nPlatforms != nPlatforms) {
+			System.out.printf("[warm start] %s is a checkpoint of %d topics and %d platforms\n", path,
+					snapshot.nTopics, snapshot.nPlatforms);
+			System.exit(-1);
+		}
+		double[] optInterests = snapshot.getParameterArray(CheckpointManager.OPT_TOPICAL_INTERESTS);
+		double[] optAuthorities = snapshot.getParameterArray(CheckpointManager.OPT_AUTHORITIES);
+		double[] optHubs = snapshot.getParameterArray(CheckpointManager.OPT_HUBS);
+		double[] optPreferences = snapshot.getParameterArray(CheckpointManager.OPT_TOPICAL_PLATFORM_PREFERENCE);
+		for (int v = 0; v < snapshot.nUsers; v++) {
+			Integer u = dataset.userId2Index.get(snapshot.userIds[v]);
+			if (u == null) {
+				continue;
+			}
+			interests[u] = new double[nTopics];
+			authorities[u] = new double[nTopics];
+			hubs[u] = new double[nTopics];
+			platformPreferences[u] = new double[nTopics * nPlatforms];
+			System.arraycopy(optInterests, v * nTopics, interests[u], 0, nTopics);
+			System.arraycopy(optAuthorities, v * nTopics, authorities[u], 0, nTopics);
+			System.arraycopy(optHubs, v * nTopics, hubs[u], 0, nTopics);
+			System.arraycopy(optPreferences, v * nTopics * nPlatforms, platformPreferences[u], 0,
+					nTopics * nPlatforms);
+		}
+	}
+
+	public int getNWarmUsers() {
+		return nWarmUsers;
+	}
+
+	public boolean isWarm(int u) {
+		return interests[u] != null;
+	}
+
+	/***
+	 * probabilities of the previous topics of a post of previous user u on
+	 * platform p, by the user's previous interests and platform preferences
+	 * (in log space, as in the model), without the words
+	 *
+	 * @param u
+	 * @param p
+	 * @param probs
+	 *            buffer of nTopics values
+	 */
+	private void getPostTopicProbs(int u, int p, double[] probs) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int k = 0; k < nTopics; k++) {
+			double preference = platformPreferences[u][k * nPlatforms + p];
+			// the user was not on p in the previous model
+			probs[k] = interests[u][k] + (Double.isInfinite(preference) ? 0 : preference);
+			max = Math.max(max, probs[k]);
+		}
+		double sum = 0;
+		for (int k = 0; k < nTopics; k++) {
+			probs[k] = Math.exp(probs[k] - max);
+			sum += probs[k];
+		}
+		for (int k = 0; k < nTopics; k++) {
+			probs[k] /= sum;
+		}
+	}
+
+	/***
+	 * draw the initial topics of the posts in batch of previous user u
+	 *
+	 * @param r
+	 * @param probs
+	 *            buffer of nTopics values
+	 * @param currUser
+	 * @param u
+	 * @param batch
+	 * @return false if u is a new user, whose topics are not drawn
+	 */
+	public boolean initPostTopics(StreamRandom r, double[] probs, User currUser, int u, int batch) {
+		if (!isWarm(u)) {
+			return false;
+		}
+		for (int n = 0; n < currUser.posts.length; n++) {
+			if (currUser.postBatches[n] != batch) {
+				continue;
+			}
+			Post currPost = currUser.posts[n];
+			getPostTopicProbs(u, currPost.platform, probs);
+			double x = r.reset(OptimizerContext.seed, StreamRandom.WARM_START_TOPIC, 0, u, n).nextDouble();
+			int z = 0;
+			for (; z < nTopics - 1; z++) {
+				x -= probs[z];
+				if (x < 0) {
+					break;
+				}
+			}
+			currPost.topic = z;
+		}
+		return true;
+	}
+
+	/***
+	 * match the previous topics to the current ones: match[a] is the current
+	 * topic of previous topic a, chosen (by the Hungarian method) to maximize
+	 * the sum over the posts of previous users of the previous probability of
+	 * a and the current topic of the post
+	 *
+	 * @param dataset
+	 * @param batch
+	 * @return
+	 */
+	public int[] getTopicMatch(Dataset dataset, int batch) {
+		double[][] overlap = new double[nTopics][nTopics];
+		double[] probs = new double[nTopics];
+		double max = 0;
+		for (int u = 0; u < dataset.nUsers; u++) {
+			if (!isWarm(u)) {
+				continue;
+			}
+			User currUser = dataset.users[u];
+			for (int n = 0; n < currUser.posts.length; n++) {
+				if (currUser.postBatches[n] != batch) {
+					continue;
+				}
+				Post currPost = currUser.posts[n];
+				getPostTopicProbs(u, currPost.platform, probs);
+				for (int a = 0; a < nTopics; a++) {
+					overlap[a][currPost.topic] += probs[a];
+					max = Math.max(max, overlap[a][currPost.topic]);
+				}
+			}
+		}
+		double[][] cost = new double[nTopics][nTopics];
+		for (int a = 0; a < nTopics; a++) {
+			for (int b = 0; b < nTopics; b++) {
+				cost[a][b] = max - overlap[a][b];
+			}
+		}
+		return new HungaryMethod(cost).execute();
+	}
+
+	/***
+	 * write the previous parameters of the previous users into parameters,
+	 * previous topic a into current topic match[a]. Platform preferences of
+	 * platforms that a user was not on before keep their current values
+	 *
+	 * @param dataset
+	 * @param parameters
+	 * @param match
+	 */
+	public void apply(Dataset dataset, ParameterStore parameters, int[] match) {
+		for (int u = 0; u < dataset.nUsers; u++) {
+			if (!isWarm(u)) {
+				continue;
+			}
+			User currUser = dataset.users[u];
+			for (int a = 0; a < nTopics; a++) {
+				int k = match[a];
+				parameters.setTopicalInterest(u, k, interests[u][a]);
+				parameters.setAuthority(u, k, authorities[u][a]);
+				parameters.setHub(u, k, hubs[u][a]);
+				for (int p = 0; p < nPlatforms; p++) {
+					double preference = platformPreferences[u][a * nPlatforms + p];
+					if (currUser.platforms[p] == 1 && !Double.isInfinite(preference)) {
+						parameters.setPlatformPreference(u, k, p, preference);
+					}
+				}
+			}
+			for (int k = 0; k < nTopics; k++) {
+				parameters.updateRelativePlatformPreference(u, k);
+			}
+		}
+	}
+}
@@ -19,6 +19,16 @@ public class Runner {
 		model.train();
 	}
 
+	static void resumeMPHAT(String datasetPath, int nTopics, int batch, String outputPath, String checkpointPath) {
+		model.MultiThreadMPHAT model = new MultiThreadMPHAT(datasetPath, nTopics, batch, outputPath);
+		model.resume(checkpointPath);
+	}
+
+	static void warmStartMPHAT(String datasetPath, int nTopics, int batch, String outputPath, String previousPath) {
+		model.MultiThreadMPHAT model = new MultiThreadMPHAT(datasetPath, nTopics, batch, outputPath);
+		model.warmStart(previousPath);
+	}
+
 	static void predict(String datasetPath, String resultPath, int nTopics, int nPlatforms, int testBatch,
 			PredictionMode predMode, String outputPath) {
 		evaluation.Prediction prediction = new Prediction(datasetPath, resultPath, nTopics, nPlatforms, testBatch,
@@ -57,6 +67,22 @@ public class Runner {
 				int batch = Integer.parseInt(args[3]);
 				String outputPath = args[4];
 				runMPHAT(datasetPath, nTopics, batch, outputPath);
+			} else if (args[0].equals("resume")) {
+				String datasetPath = args[1];
+				int nTopics = Integer.parseInt(args[2]);
+				int batch = Integer.parseInt(args[3]);
+				String outputPath = args[4];
+				String checkpointPath = (args.length > 5) ? args[5] : String.format("%s/checkpoint.bin", outputPath);
+				resumeMPHAT(datasetPath, nTopics, batch, outputPath, checkpointPath);
+			} else if (args[0].equals("warm")) {
+				String datasetPath = args[1];
+				int nTopics = Integer.parseInt(args[2]);
+				int batch = Integer.parseInt(args[3]);
+				String outputPath = args[4];
+				// output directory (outputPath/K/omega_*_phi_*) or checkpoint
+				// of the previous model
+				String previousPath = args[5];
+				warmStartMPHAT(datasetPath, nTopics, batch, outputPath, previousPath);
 			} else if (args[0].equals("predict")) {
 				String datasetPath = args[1];
 				String resultPath = args[2];
@@ -92,6 +118,10 @@ public class Runner {
 			} else {
 				System.out.printf("%s is not an option!!!");
 			}
+		} catch (IllegalStateException e) {
+			// a verification of the training failed
+			e.printStackTrace();
+			System.exit(-1);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
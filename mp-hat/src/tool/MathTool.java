@@ -11,6 +11,13 @@ public class MathTool {
 		return d;
 	}
 
+	/***
+	 * dot product of x[xFrom, xFrom + nDim) and y[yFrom, yFrom + nDim)
+	 */
+	public static double dotProduct(int nDim, double[] x, int xFrom, double[] y, int yFrom) {
+		return VectorKernels.dotProduct(nDim, x, xFrom, y, yFrom);
+	}
+
 	public static double sigmoid(double x) {
 		return 1 / (1 + Math.exp(-x));
 	}
@@ -72,4 +79,24 @@ public class MathTool {
 		}
 		return a;
 	}
+
+	/***
+	 * softmax of x[from, from + length) written into a[to, to + length)
+	 */
+	public static void softmax(double[] x, int from, int length, double[] a, int to) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < length; i++) {
+			if (max < x[from + i]) {
+				max = x[from + i];
+			}
+		}
+		double sum = 0;
+		for (int i = 0; i < length; i++) {
+			a[to + i] = Math.exp(x[from + i] - max);
+			sum += a[to + i];
+		}
+		for (int i = 0; i < length; i++) {
+			a[to + i] /= sum;
+		}
+	}
 }
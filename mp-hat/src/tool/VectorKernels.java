@@ -0,0 +1,506 @@
+package tool;
+
+import java.util.Random;
+
+/***
+ * kernels for the loops over the topic dimension and over the edges of a
+ * user. The loops are unrolled by four with independent accumulators, so that
+ * the JIT can keep four lanes in flight (and pack them into SIMD registers
+ * where it is able to) instead of one serial chain of additions. The link
+ * terms are summed by taking one logarithm of a product of four terms instead
+ * of one logarithm per term.
+ *
+ * The scalar loops are kept as the reference, and are used when enabled is
+ * false. Results of the two paths agree up to rounding: main() checks them
+ * (see check()) and exits with status 1 on a mismatch, and main("benchmark")
+ * times both paths.
+ */
+public class VectorKernels {
+	// option to use the unrolled kernels instead of the scalar loops
+	public static boolean enabled = true;
+
+	private static final int LANES = 4;
+	// products of four link terms below this are summed term by term to
+	// avoid underflow
+	private static final double MIN_PRODUCT = 1e-280;
+	private static final double LOG2 = Math.log(2);
+	// tolerance of check(), relative to the magnitudes of the terms
+	private static final double CHECK_TOLERANCE = 1e-12;
+	private static int nFailures;// of check()
+
+	/***
+	 * dot product of x[xFrom, xFrom + nDim) and y[yFrom, yFrom + nDim)
+	 */
+	public static double dotProduct(int nDim, double[] x, int xFrom, double[] y, int yFrom) {
+		if (!enabled) {
+			return scalarDotProduct(nDim, x, xFrom, y, yFrom);
+		}
+		double d0 = 0;
+		double d1 = 0;
+		double d2 = 0;
+		double d3 = 0;
+		int i = 0;
+		for (; i + LANES <= nDim; i += LANES) {
+			d0 += x[xFrom + i] * y[yFrom + i];
+			d1 += x[xFrom + i + 1] * y[yFrom + i + 1];
+			d2 += x[xFrom + i + 2] * y[yFrom + i + 2];
+			d3 += x[xFrom + i + 3] * y[yFrom + i + 3];
+		}
+		for (; i < nDim; i++) {
+			d0 += x[xFrom + i] * y[yFrom + i];
+		}
+		return (d0 + d1) + (d2 + d3);
+	}
+
+	public static double scalarDotProduct(int nDim, double[] x, int xFrom, double[] y, int yFrom) {
+		double d = 0;
+		for (int i = 0; i < nDim; i++) {
+			d += x[xFrom + i] * y[yFrom + i];
+		}
+		return d;
+	}
+
+	/***
+	 * dot product of 32-bit x[xFrom, xFrom + nDim) and y[yFrom, yFrom + nDim),
+	 * accumulated in 64 bits
+	 */
+	public static double dotProduct(int nDim, float[] x, int xFrom, float[] y, int yFrom) {
+		if (!enabled) {
+			return scalarDotProduct(nDim, x, xFrom, y, yFrom);
+		}
+		double d0 = 0;
+		double d1 = 0;
+		double d2 = 0;
+		double d3 = 0;
+		int i = 0;
+		for (; i + LANES <= nDim; i += LANES) {
+			d0 += (double) x[xFrom + i] * y[yFrom + i];
+			d1 += (double) x[xFrom + i + 1] * y[yFrom + i + 1];
+			d2 += (double) x[xFrom + i + 2] * y[yFrom + i + 2];
+			d3 += (double) x[xFrom + i + 3] * y[yFrom + i + 3];
+		}
+		for (; i < nDim; i++) {
+			d0 += (double) x[xFrom + i] * y[yFrom + i];
+		}
+		return (d0 + d1) + (d2 + d3);
+	}
+
+	public static double scalarDotProduct(int nDim, float[] x, int xFrom, float[] y, int yFrom) {
+		double d = 0;
+		for (int i = 0; i < nDim; i++) {
+			d += (double) x[xFrom + i] * y[yFrom + i];
+		}
+		return d;
+	}
+
+	/***
+	 * sum over i of x[xFrom + i] * y[yFrom + i] * w[wFrom + i * wStride], for
+	 * i in [0, nDim)
+	 */
+	public static double dotProduct(int nDim, double[] x, int xFrom, double[] y, int yFrom, double[] w, int wFrom,
+			int wStride) {
+		if (!enabled) {
+			return scalarDotProduct(nDim, x, xFrom, y, yFrom, w, wFrom, wStride);
+		}
+		double d0 = 0;
+		double d1 = 0;
+		double d2 = 0;
+		double d3 = 0;
+		int i = 0;
+		int j = wFrom;
+		for (; i + LANES <= nDim; i += LANES, j += LANES * wStride) {
+			d0 += x[xFrom + i] * y[yFrom + i] * w[j];
+			d1 += x[xFrom + i + 1] * y[yFrom + i + 1] * w[j + wStride];
+			d2 += x[xFrom + i + 2] * y[yFrom + i + 2] * w[j + 2 * wStride];
+			d3 += x[xFrom + i + 3] * y[yFrom + i + 3] * w[j + 3 * wStride];
+		}
+		for (; i < nDim; i++, j += wStride) {
+			d0 += x[xFrom + i] * y[yFrom + i] * w[j];
+		}
+		return (d0 + d1) + (d2 + d3);
+	}
+
+	public static double scalarDotProduct(int nDim, double[] x, int xFrom, double[] y, int yFrom, double[] w,
+			int wFrom, int wStride) {
+		double d = 0;
+		for (int i = 0; i < nDim; i++) {
+			d += x[xFrom + i] * y[yFrom + i] * w[wFrom + i * wStride];
+		}
+		return d;
+	}
+
+	/***
+	 * sum over i of h[hFrom + i] * hw[hwFrom + i * wStride] * a[aFrom + i] *
+	 * aw[awFrom + i * wStride], for i in [0, nDim), i.e., H_u^p * A_v^p from
+	 * the hubs and authorities and the (strided) platform preferences of the
+	 * two users
+	 */
+	public static double dotProduct(int nDim, double[] h, int hFrom, double[] hw, int hwFrom, double[] a, int aFrom,
+			double[] aw, int awFrom, int wStride) {
+		if (!enabled) {
+			return scalarDotProduct(nDim, h, hFrom, hw, hwFrom, a, aFrom, aw, awFrom, wStride);
+		}
+		double d0 = 0;
+		double d1 = 0;
+		double d2 = 0;
+		double d3 = 0;
+		int i = 0;
+		int hj = hwFrom;
+		int aj = awFrom;
+		for (; i + LANES <= nDim; i += LANES, hj += LANES * wStride, aj += LANES * wStride) {
+			d0 += h[hFrom + i] * hw[hj] * a[aFrom + i] * aw[aj];
+			d1 += h[hFrom + i + 1] * hw[hj + wStride] * a[aFrom + i + 1] * aw[aj + wStride];
+			d2 += h[hFrom + i + 2] * hw[hj + 2 * wStride] * a[aFrom + i + 2] * aw[aj + 2 * wStride];
+			d3 += h[hFrom + i + 3] * hw[hj + 3 * wStride] * a[aFrom + i + 3] * aw[aj + 3 * wStride];
+		}
+		for (; i < nDim; i++, hj += wStride, aj += wStride) {
+			d0 += h[hFrom + i] * hw[hj] * a[aFrom + i] * aw[aj];
+		}
+		return (d0 + d1) + (d2 + d3);
+	}
+
+	public static double scalarDotProduct(int nDim, double[] h, int hFrom, double[] hw, int hwFrom, double[] a,
+			int aFrom, double[] aw, int awFrom, int wStride) {
+		double d = 0;
+		for (int i = 0; i < nDim; i++) {
+			d += h[hFrom + i] * hw[hwFrom + i * wStride] * a[aFrom + i] * aw[awFrom + i * wStride];
+		}
+		return d;
+	}
+
+	/***
+	 * sum of log(1 - t) - log(1 + t) over t = expScores[from, to), i.e., the
+	 * likelihood of the links whose exp(-score) are in the range
+	 */
+	public static double linkLikelihood(double[] expScores, int from, int to) {
+		if (!enabled) {
+			return scalarLinkLikelihood(expScores, from, to);
+		}
+		double sum = 0;
+		int i = from;
+		for (; i + LANES <= to; i += LANES) {
+			double t0 = expScores[i];
+			double t1 = expScores[i + 1];
+			double t2 = expScores[i + 2];
+			double t3 = expScores[i + 3];
+			double product = ((1 - t0) / (1 + t0)) * ((1 - t1) / (1 + t1)) * ((1 - t2) / (1 + t2))
+					* ((1 - t3) / (1 + t3));
+			if (product > MIN_PRODUCT) {
+				sum += Math.log(product);
+			} else {
+				sum += scalarLinkLikelihood(expScores, i, i + LANES);
+			}
+		}
+		return sum + scalarLinkLikelihood(expScores, i, to);
+	}
+
+	/***
+	 * same as linkLikelihood(expScores, from, to) for the edges ids[from, to)
+	 */
+	public static double linkLikelihood(double[] expScores, int[] ids, int from, int to) {
+		if (!enabled) {
+			return scalarLinkLikelihood(expScores, ids, from, to);
+		}
+		double sum = 0;
+		int i = from;
+		for (; i + LANES <= to; i += LANES) {
+			double t0 = expScores[ids[i]];
+			double t1 = expScores[ids[i + 1]];
+			double t2 = expScores[ids[i + 2]];
+			double t3 = expScores[ids[i + 3]];
+			double product = ((1 - t0) / (1 + t0)) * ((1 - t1) / (1 + t1)) * ((1 - t2) / (1 + t2))
+					* ((1 - t3) / (1 + t3));
+			if (product > MIN_PRODUCT) {
+				sum += Math.log(product);
+			} else {
+				sum += scalarLinkLikelihood(expScores, ids, i, i + LANES);
+			}
+		}
+		return sum + scalarLinkLikelihood(expScores, ids, i, to);
+	}
+
+	public static double scalarLinkLikelihood(double[] expScores, int from, int to) {
+		double sum = 0;
+		for (int i = from; i < to; i++) {
+			double t = expScores[i];
+			sum += Math.log(1 - t) - Math.log(t + 1);
+		}
+		return sum;
+	}
+
+	public static double scalarLinkLikelihood(double[] expScores, int[] ids, int from, int to) {
+		double sum = 0;
+		for (int i = from; i < to; i++) {
+			double t = expScores[ids[i]];
+			sum += Math.log(1 - t) - Math.log(t + 1);
+		}
+		return sum;
+	}
+
+	/***
+	 * sum of log(2) - s - log(1 + t) over s = scores[from, to) and t =
+	 * expScores[from, to), i.e., the likelihood of the non-links in the range
+	 */
+	public static double nonLinkLikelihood(double[] scores, double[] expScores, int from, int to) {
+		if (!enabled) {
+			return scalarNonLinkLikelihood(scores, expScores, from, to);
+		}
+		double sum = 0;
+		int i = from;
+		for (; i + LANES <= to; i += LANES) {
+			double product = (1 + expScores[i]) * (1 + expScores[i + 1]) * (1 + expScores[i + 2])
+					* (1 + expScores[i + 3]);
+			sum += LANES * LOG2 - ((scores[i] + scores[i + 1]) + (scores[i + 2] + scores[i + 3])) - Math.log(product);
+		}
+		return sum + scalarNonLinkLikelihood(scores, expScores, i, to);
+	}
+
+	/***
+	 * same as nonLinkLikelihood(scores, expScores, from, to) for the edges
+	 * ids[from, to)
+	 */
+	public static double nonLinkLikelihood(double[] scores, double[] expScores, int[] ids, int from, int to) {
+		if (!enabled) {
+			return scalarNonLinkLikelihood(scores, expScores, ids, from, to);
+		}
+		double sum = 0;
+		int i = from;
+		for (; i + LANES <= to; i += LANES) {
+			int e0 = ids[i];
+			int e1 = ids[i + 1];
+			int e2 = ids[i + 2];
+			int e3 = ids[i + 3];
+			double product = (1 + expScores[e0]) * (1 + expScores[e1]) * (1 + expScores[e2]) * (1 + expScores[e3]);
+			sum += LANES * LOG2 - ((scores[e0] + scores[e1]) + (scores[e2] + scores[e3])) - Math.log(product);
+		}
+		return sum + scalarNonLinkLikelihood(scores, expScores, ids, i, to);
+	}
+
+	public static double scalarNonLinkLikelihood(double[] scores, double[] expScores, int from, int to) {
+		double sum = 0;
+		for (int i = from; i < to; i++) {
+			sum += LOG2 - scores[i] - Math.log(expScores[i] + 1);
+		}
+		return sum;
+	}
+
+	public static double scalarNonLinkLikelihood(double[] scores, double[] expScores, int[] ids, int from, int to) {
+		double sum = 0;
+		for (int i = from; i < to; i++) {
+			int e = ids[i];
+			sum += LOG2 - scores[e] - Math.log(expScores[e] + 1);
+		}
+		return sum;
+	}
+
+	/***
+	 * record a failure of the check if |value - reference| > tolerance * scale
+	 * (tolerance 0: the values must be equal)
+	 */
+	private static void expectClose(String name, double value, double reference, double tolerance, double scale) {
+		if (value == reference || Math.abs(value - reference) <= tolerance * scale) {
+			return;
+		}
+		System.out.printf("[kernel check] %s: %.17g, expected %.17g\n", name, value, reference);
+		nFailures++;
+	}
+
+	/***
+	 * check every kernel against its scalar loop, for the unrolled kernels up
+	 * to CHECK_TOLERANCE relative to the magnitudes of the terms and of their
+	 * operands, and for the fallback (enabled = false) exactly. The lengths cover all the
+	 * tails (length % LANES), and the link terms include products of four
+	 * terms that underflow.
+	 *
+	 * @param rand
+	 * @return the number of mismatches
+	 */
+	public static int check(Random rand) {
+		boolean wasEnabled = enabled;
+		nFailures = 0;
+		for (int nDim = 0; nDim <= 4 * LANES + 3; nDim++) {
+			int wStride = 1 + nDim % 3;
+			int xFrom = rand.nextInt(5);
+			int yFrom = rand.nextInt(5);
+			int wFrom = rand.nextInt(5);
+			int vFrom = rand.nextInt(5);
+			int length = 5 + nDim * wStride;
+			double[] x = new double[length];
+			double[] y = new double[length];
+			double[] w = new double[length];
+			double[] v = new double[length];
+			float[] xFloat = new float[length];
+			float[] yFloat = new float[length];
+			for (int i = 0; i < length; i++) {
+				x[i] = rand.nextDouble();
+				y[i] = rand.nextDouble();
+				w[i] = rand.nextDouble();
+				v[i] = rand.nextDouble();
+				xFloat[i] = (float) x[i];
+				yFloat[i] = (float) y[i];
+			}
+			for (int pass = 0; pass < 2; pass++) {
+				enabled = (pass == 0);
+				double tolerance = enabled ? CHECK_TOLERANCE : 0;
+				String name = String.format("%s, nDim = %d", enabled ? "unrolled" : "fallback", nDim);
+				// all the terms are positive: the scale is the reference
+				double reference = scalarDotProduct(nDim, x, xFrom, y, yFrom);
+				expectClose("dot product " + name, dotProduct(nDim, x, xFrom, y, yFrom), reference, tolerance,
+						reference);
+				reference = scalarDotProduct(nDim, xFloat, xFrom, yFloat, yFrom);
+				expectClose("32-bit dot product " + name, dotProduct(nDim, xFloat, xFrom, yFloat, yFrom), reference,
+						tolerance, reference);
+				reference = scalarDotProduct(nDim, x, xFrom, y, yFrom, w, wFrom, wStride);
+				expectClose("weighted dot product " + name, dotProduct(nDim, x, xFrom, y, yFrom, w, wFrom, wStride),
+						reference, tolerance, reference);
+				reference = scalarDotProduct(nDim, x, xFrom, w, wFrom, y, yFrom, v, vFrom, wStride);
+				expectClose("platform dot product " + name,
+						dotProduct(nDim, x, xFrom, w, wFrom, y, yFrom, v, vFrom, wStride), reference, tolerance,
+						reference);
+			}
+		}
+
+		int nEdges = 1000;
+		double[] scores = new double[nEdges];
+		double[] expScores = new double[nEdges];
+		int[] ids = new int[nEdges];
+		for (int e = 0; e < nEdges; e++) {
+			if (e < nEdges / 2) {
+				// scores from almost 0 (link terms close to -inf) to large
+				scores[e] = Math.pow(10, -12 + 14 * rand.nextDouble());
+			} else {
+				// link terms whose products of four underflow
+				scores[e] = Math.pow(10, -75 + 5 * rand.nextDouble());
+			}
+			expScores[e] = Math.exp(-scores[e]);
+			ids[e] = rand.nextInt(nEdges);
+		}
+		int[] froms = new int[] { 0, 3, nEdges / 2 - 2, nEdges / 2 + 1 };
+		for (int from : froms) {
+			for (int n = 0; n <= 4 * LANES + 3; n++) {
+				checkLikelihoods(scores, expScores, ids, from, from + n);
+			}
+		}
+		checkLikelihoods(scores, expScores, ids, 0, nEdges);
+		checkLikelihoods(scores, expScores, ids, 1, nEdges - 2);
+		enabled = wasEnabled;
+		return nFailures;
+	}
+
+	/***
+	 * check the link and non-link likelihoods of the edges [from, to) and
+	 * ids[from, to)
+	 */
+	private static void checkLikelihoods(double[] scores, double[] expScores, int[] ids, int from, int to) {
+		double linkScale = 0;
+		double nonLinkScale = 0;
+		double idLinkScale = 0;
+		double idNonLinkScale = 0;
+		// magnitudes of the operands of the terms, which bound the rounding
+		// errors, e.g., of log(2) - s - log(1 + t) close to 0 for s close to 0
+		for (int i = from; i < to; i++) {
+			linkScale += getLinkScale(expScores[i]);
+			nonLinkScale += getNonLinkScale(scores[i], expScores[i]);
+			idLinkScale += getLinkScale(expScores[ids[i]]);
+			idNonLinkScale += getNonLinkScale(scores[ids[i]], expScores[ids[i]]);
+		}
+		for (int pass = 0; pass < 2; pass++) {
+			enabled = (pass == 0);
+			double tolerance = enabled ? CHECK_TOLERANCE : 0;
+			String name = String.format("%s, edges [%d, %d)", enabled ? "unrolled" : "fallback", from, to);
+			expectClose("link likelihood " + name, linkLikelihood(expScores, from, to),
+					scalarLinkLikelihood(expScores, from, to), tolerance, linkScale);
+			expectClose("non-link likelihood " + name, nonLinkLikelihood(scores, expScores, from, to),
+					scalarNonLinkLikelihood(scores, expScores, from, to), tolerance, nonLinkScale);
+			expectClose("link likelihood by ids " + name, linkLikelihood(expScores, ids, from, to),
+					scalarLinkLikelihood(expScores, ids, from, to), tolerance, idLinkScale);
+			expectClose("non-link likelihood by ids " + name, nonLinkLikelihood(scores, expScores, ids, from, to),
+					scalarNonLinkLikelihood(scores, expScores, ids, from, to), tolerance, idNonLinkScale);
+		}
+	}
+
+	private static double getLinkScale(double t) {
+		return Math.abs(Math.log(1 - t)) + Math.log(1 + t);
+	}
+
+	private static double getNonLinkScale(double score, double t) {
+		return LOG2 + Math.abs(score) + Math.log(1 + t);
+	}
+
+	/***
+	 * time the unrolled kernels and the scalar loops on random inputs
+	 *
+	 * @param nTopics
+	 * @param nEdges
+	 * @param nRuns
+	 */
+	public static void benchmark(int nTopics, int nEdges, int nRuns) {
+		int nPlatforms = 2;
+		Random rand = new Random(1);
+
+		double[] hubs = new double[nEdges * nTopics];
+		double[] authorities = new double[nEdges * nTopics];
+		double[] preferences = new double[nEdges * nTopics * nPlatforms];
+		for (int i = 0; i < hubs.length; i++) {
+			hubs[i] = rand.nextDouble();
+			authorities[i] = rand.nextDouble();
+		}
+		for (int i = 0; i < preferences.length; i++) {
+			preferences[i] = rand.nextDouble();
+		}
+		double[] scores = new double[nEdges];
+		double[] expScores = new double[nEdges];
+		for (int e = 0; e < nEdges; e++) {
+			scores[e] = Math.pow(10, -12 + 14 * rand.nextDouble());
+			expScores[e] = Math.exp(-scores[e]);
+		}
+
+		boolean wasEnabled = enabled;
+		double sink = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			enabled = (pass == 1);
+			long dotTime = 0;
+			long linkTime = 0;
+			for (int r = 0; r < nRuns; r++) {
+				long startTime = System.nanoTime();
+				for (int e = 0; e < nEdges; e++) {
+					int from = e * nTopics;
+					sink += dotProduct(nTopics, hubs, from, preferences, from * nPlatforms, authorities, from,
+							preferences, from * nPlatforms + 1, nPlatforms);
+				}
+				dotTime += System.nanoTime() - startTime;
+				startTime = System.nanoTime();
+				sink += linkLikelihood(expScores, 0, nEdges);
+				sink += nonLinkLikelihood(scores, expScores, 0, nEdges);
+				linkTime += System.nanoTime() - startTime;
+			}
+			System.out.printf("%s: 4-way dot products %.2f ms/run, link sums %.2f ms/run\n",
+					enabled ? "unrolled" : "scalar", dotTime / 1e6 / nRuns, linkTime / 1e6 / nRuns);
+		}
+		enabled = wasEnabled;
+		System.out.println("(checksum " + sink + ")");
+	}
+
+	/***
+	 * check the kernels, and exit with status 1 on a mismatch; or, with the
+	 * argument benchmark, time them
+	 *
+	 * @param args
+	 *            [benchmark [nTopics] [nEdges] [nRuns]]
+	 */
+	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("benchmark")) {
+			int nTopics = (args.length > 1) ? Integer.parseInt(args[1]) : 50;
+			int nEdges = (args.length > 2) ? Integer.parseInt(args[2]) : 100000;
+			int nRuns = (args.length > 3) ? Integer.parseInt(args[3]) : 20;
+			benchmark(nTopics, nEdges, nRuns);
+			return;
+		}
+		int failures = check(new Random(1));
+		if (failures > 0) {
+			System.out.printf("[kernel check] %d mismatches\n", failures);
+			System.exit(1);
+		}
+		System.out.println("[kernel check] all kernels agree with the scalar loops");
+	}
+}